@@ -0,0 +1,50 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the client with the GC profiler, so that every result
+ * reports the allocation rate ({@code gc.alloc.rate.norm}, bytes per
+ * operation) next to the time per operation, in nanoseconds. The results are
+ * also written in {@code jmh-result.json}, to be compared between two builds.
+ * 
+ * Usage: {@code bench/run.sh <directory of the jars> [regex]}, which builds
+ * the benchmarks in a named package, as JMH requires, and runs this class;
+ * the regular expression selects the benchmarks. By default only the ones that don't need a running
+ * server are selected: {@code ConnectionPoolBenchmark} and
+ * {@code CartBatchBenchmark} use the server on {@code Client.PORT} and are run
+ * only if selected explicitly.
+ * 
+ * @see SerializationBenchmark
+ * @see ViewModelBenchmark
+ * @see TableRefreshBenchmark
+ * @see CellBindingBenchmark
+ * @see RoundTripBenchmark
+ * @see FacetIndexBenchmark
+ */
+public class BenchmarkRunner {
+
+	private static final String SELF_CONTAINED = "(Serialization|WireCodec|ViewModel|TableRefresh|CellBinding|RoundTrip|WineSearch|FacetIndex)Benchmark";
+
+	/**
+	 * Runs the selected benchmarks.
+	 * 
+	 * @param args the regular expression of the benchmarks, optional. [String[]]
+	 * @throws RunnerException if a benchmark fails.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : SELF_CONTAINED)
+				.addProfiler(GCProfiler.class)
+				.timeUnit(TimeUnit.NANOSECONDS)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,128 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Fills a cart with 20 wines and empties it again, once with
+ * one request per wine as the controllers used to do, once with
+ * {@code cart_batch}. The round trips per cart are printed once per trial. The
+ * server has to be running on {@code Client.HOST}:{@code Client.PORT}, with
+ * the wines 1 to 20 in stock.
+ * 
+ * @see CartBatcher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CartBatchBenchmark {
+
+	private static final String EMAIL = "user@user.com";
+	private static final int ITEMS = 20;
+
+	private Client client;
+	private int roundTrips;
+
+	/**
+	 * Creates the pooled client and prints the round trips per cart.
+	 * 
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Setup
+	public void setup() throws Exception {
+		this.client = new Client(new ConnectionPool(Client.HOST, Client.PORT, 1, 60_000, 15_000, 10_000));
+
+		this.roundTrips = 0;
+		perItem();
+		int before = this.roundTrips;
+		this.roundTrips = 0;
+		batched();
+		int after = this.roundTrips;
+		System.out.format("%n# round trips per %d-item cart: per item=%d, batched=%d%n", ITEMS, before, after);
+	}
+
+	/**
+	 * Closes the pooled client.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.client.close();
+	}
+
+	/**
+	 * One {@code add_to_cart} per wine, then one {@code remove_from_cart} per
+	 * wine, each followed by the reload of the cart.
+	 * 
+	 * @return the last response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object perItem() throws Exception {
+		Object response = null;
+		for (int i = 1; i <= ITEMS; i++) {
+			String[] toBeSent = { "add_to_cart", EMAIL, String.valueOf(i), "1" };
+			response = request(toBeSent);
+		}
+		for (int i = 1; i <= ITEMS; i++) {
+			String[] toBeSent = { "remove_from_cart", EMAIL, String.valueOf(i) };
+			request(toBeSent);
+			String[] reload = { "display_cart", EMAIL };
+			response = request(reload);
+		}
+		return response;
+	}
+
+	/**
+	 * One {@code cart_batch} adding every wine, then one removing every wine.
+	 * 
+	 * @return the last response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object batched() throws Exception {
+		request(batch(CartBatcher.ADD));
+		return request(batch(CartBatcher.REMOVE));
+	}
+
+	/**
+	 * Builds a {@code cart_batch} request with the same operation on every wine.
+	 * 
+	 * @param op the operation. [String]
+	 * @return the request. [String[]]
+	 */
+	private static String[] batch(String op) {
+		String[] toBeSent = new String[2 + ITEMS * 3];
+		toBeSent[0] = "cart_batch";
+		toBeSent[1] = EMAIL;
+		for (int i = 0; i < ITEMS; i++) {
+			toBeSent[2 + i * 3] = op;
+			toBeSent[3 + i * 3] = String.valueOf(i + 1);
+			toBeSent[4 + i * 3] = "1";
+		}
+		return toBeSent;
+	}
+
+	/**
+	 * Sends a request, counting the round trip.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	private Object request(String[] toBeSent) throws Exception {
+		this.roundTrips++;
+		return this.client.request(toBeSent);
+	}
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.util.Callback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark class. Measures the cell values computed while scrolling the
+ * catalog of {@code size} wines: every operation scrolls one screen of
+ * {@code ROWS} rows, asking each of the five columns of the homepage for the
+ * value of each row, as the TableView does when the rows are reused. The
+ * {@code PropertyValueFactory} of the old columns is compared with the
+ * {@code WineColumns}; the GC profiler of {@code BenchmarkRunner} reports the
+ * bytes allocated per screen. The JavaFX toolkit is not needed.
+ * 
+ * @see WineColumns
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CellBindingBenchmark {
+
+	private static final int ROWS = 40;
+
+	@Param({ "100000" })
+	public int size;
+
+	private ArrayList<Wine> wines;
+	private ArrayList<Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>>> reflective;
+	private ArrayList<Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>>> typed;
+	private int first;
+
+	/**
+	 * Builds the catalog and the factories of the columns.
+	 */
+	@Setup
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setup() {
+		this.wines = WireCodecBenchmark.catalog(this.size);
+		this.reflective = new ArrayList<Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>>>();
+		for (String property : new String[] { "Name", "Year", "Producer", "Grapewines", "Notes" }) {
+			this.reflective.add((Callback) new PropertyValueFactory<Wine, Object>(property));
+		}
+		this.typed = new ArrayList<Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>>>();
+		this.typed.add((Callback) WineColumns.NAME);
+		this.typed.add((Callback) WineColumns.YEAR);
+		this.typed.add((Callback) WineColumns.PRODUCER);
+		this.typed.add((Callback) WineColumns.GRAPES);
+		this.typed.add((Callback) WineColumns.NOTES);
+	}
+
+	/**
+	 * Scrolls one screen with the {@code PropertyValueFactory} of the old
+	 * columns.
+	 * 
+	 * @param blackhole consumes the values. [Blackhole]
+	 */
+	@Benchmark
+	public void propertyValueFactory(Blackhole blackhole) {
+		scroll(this.reflective, blackhole);
+	}
+
+	/**
+	 * Scrolls one screen with the {@code WineColumns}.
+	 * 
+	 * @param blackhole consumes the values. [Blackhole]
+	 */
+	@Benchmark
+	public void wineColumns(Blackhole blackhole) {
+		scroll(this.typed, blackhole);
+	}
+
+	/**
+	 * Asks every column for the value of every row of the next screen, going
+	 * back to the top at the end of the catalog.
+	 * 
+	 * @param columns   the factories of the columns. [ArrayList of Callback]
+	 * @param blackhole consumes the values. [Blackhole]
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void scroll(ArrayList<Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>>> columns,
+			Blackhole blackhole) {
+		for (int row = this.first; row < this.first + ROWS; row++) {
+			CellDataFeatures<Wine, ?> cell = new CellDataFeatures(null, null, this.wines.get(row));
+			for (Callback<CellDataFeatures<Wine, ?>, ? extends ObservableValue<?>> column : columns) {
+				blackhole.consume(column.call(cell).getValue());
+			}
+		}
+		this.first = this.first + 2 * ROWS <= this.wines.size() ? this.first + ROWS : 0;
+	}
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Compares a request sent on a new socket, as the controllers
+ * used to do, with the same request sent through the {@code ConnectionPool}.
+ * The server has to be running on {@code Client.HOST}:{@code Client.PORT}.
+ * 
+ * @see Client
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+
+	private static final String[] REQUEST = { "guest" };
+
+	private Client client;
+
+	/**
+	 * Creates the pooled client and opens its first connection.
+	 * 
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Setup
+	public void setup() throws Exception {
+		this.client = new Client(new ConnectionPool(Client.HOST, Client.PORT, 1, 60_000, 15_000, 10_000));
+		this.client.request(REQUEST);
+	}
+
+	/**
+	 * Closes the pooled client.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.client.close();
+	}
+
+	/**
+	 * One request on a brand-new socket and brand-new object streams.
+	 * 
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	@Benchmark
+	public Object perCallSocket() throws IOException, ClassNotFoundException {
+		try (Socket socket = new Socket(Client.HOST, Client.PORT)) {
+			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			out.writeObject(REQUEST);
+			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			return in.readObject();
+		}
+	}
+
+	/**
+	 * One request on a pooled keep-alive connection.
+	 * 
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	@Benchmark
+	public Object pooled() throws IOException, ClassNotFoundException {
+		return this.client.request(REQUEST);
+	}
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the latency of the {@code browse_facets} queries
+ * on catalogs of 100k and 1M wines, with {@code FacetIndex} and with a linear
+ * scan of the catalog computing the same wines and counts. Every query returns
+ * a page of {@code LIMIT} wines, as the homepage asks.
+ * 
+ * @see FacetIndex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class FacetIndexBenchmark {
+
+	private static final int LIMIT = 1000;
+
+	@Param({ "100000", "1000000" })
+	public int size;
+
+	private ArrayList<Wine> wines;
+	private FacetIndex index;
+
+	/**
+	 * Builds the catalog and indexes it.
+	 */
+	@Setup
+	public void setup() {
+		this.wines = WireCodecBenchmark.catalog(this.size);
+		this.index = new FacetIndex();
+		for (Wine wine : this.wines) {
+			this.index.add(wine);
+		}
+	}
+
+	/**
+	 * No facet selected: the counts of the whole catalog.
+	 */
+	@Benchmark
+	public FacetResult indexNothing() {
+		return this.index.browse(null, (Integer) null, null, LIMIT);
+	}
+
+	/**
+	 * Same query as {@code indexNothing}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public FacetResult scanNothing() {
+		return scan(null, null, null);
+	}
+
+	/**
+	 * A year, about one wine every thirty.
+	 */
+	@Benchmark
+	public FacetResult indexYear() {
+		return this.index.browse(null, 2005, null, LIMIT);
+	}
+
+	/**
+	 * Same query as {@code indexYear}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public FacetResult scanYear() {
+		return scan(null, 2005, null);
+	}
+
+	/**
+	 * A producer, a year and a grape.
+	 */
+	@Benchmark
+	public FacetResult indexThreeFacets() {
+		return this.index.browse("Producer 42", 2002, "Merlot 2", LIMIT);
+	}
+
+	/**
+	 * Same query as {@code indexThreeFacets}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public FacetResult scanThreeFacets() {
+		return scan("Producer 42", 2002, "Merlot 2");
+	}
+
+	/**
+	 * Linear scan with the same semantics of {@code FacetIndex.browse}.
+	 * 
+	 * @param producer the selected producer, {@code null} for any. [String]
+	 * @param year     the selected year, {@code null} for any. [Integer]
+	 * @param grape    the selected grape, {@code null} for any. [String]
+	 * @return the matching wines and the counts of the facets. [FacetResult]
+	 */
+	private FacetResult scan(String producer, Integer year, String grape) {
+		ArrayList<Wine> result = new ArrayList<Wine>();
+		int total = 0;
+		TreeMap<String, Integer> producers = new TreeMap<String, Integer>();
+		TreeMap<Integer, Integer> years = new TreeMap<Integer, Integer>();
+		TreeMap<String, Integer> grapes = new TreeMap<String, Integer>();
+
+		for (Wine wine : this.wines) {
+			TreeSet<String> wineGrapes = FacetIndex.grapes(wine);
+			boolean byProducer = producer == null || producer.equals(wine.getProducer());
+			boolean byYear = year == null || year == wine.getYear();
+			boolean byGrape = grape == null || wineGrapes.contains(grape);
+			if (byProducer && byYear && byGrape) {
+				if (result.size() < LIMIT) {
+					result.add(wine);
+				}
+				total++;
+			}
+			if (byYear && byGrape) {
+				producers.merge(wine.getProducer(), 1, Integer::sum);
+			}
+			if (byProducer && byGrape) {
+				years.merge(wine.getYear(), 1, Integer::sum);
+			}
+			if (byProducer && byYear) {
+				for (String wineGrape : wineGrapes) {
+					grapes.merge(wineGrape, 1, Integer::sum);
+				}
+			}
+		}
+		return new FacetResult(result, total, new LinkedHashMap<String, Integer>(producers),
+				new LinkedHashMap<Integer, Integer>(years), new LinkedHashMap<String, Integer>(grapes));
+	}
+}
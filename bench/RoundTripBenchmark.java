@@ -0,0 +1,202 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the full round trip of every command, from the
+ * request built by the controllers to the decoded response, against a
+ * {@code Server} started in the same process on a free port, with the old
+ * protocol, the binary one and the multiplexed binary one. The allocation rates include the server, since it runs in the
+ * same JVM.
+ * 
+ * The read-only commands are measured by {@code request}, the commands that
+ * change the data in groups that restore it: {@code cart} adds a wine to the
+ * cart and removes it, {@code checkout} orders a bottle and restocks it.
+ * {@code pageLoad} sends at once the requests of the homepage and of the cart,
+ * as the controllers do in background: with a single pooled connection they
+ * are answered one after the other, on the multiplexed connection in parallel.
+ * 
+ * @see Server
+ * @see BenchmarkRunner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+
+	private static final String EMAIL = "user@user.com";
+	private static final String PASSWORD = "pwd";
+	private static final int WINES = 1000;
+	private static final int ORDERS = 20;
+
+	@Param({ "multiplexed", "binary", "legacy" })
+	public String protocol;
+
+	private Server server;
+	private Client client;
+	private AsyncClient asyncClient;
+	private ExecutorService executor;
+
+	/**
+	 * Starts the server, gives the user a history of {@code ORDERS} orders and
+	 * connects the client.
+	 * 
+	 * @throws Exception if the server can't be started.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		ServerStore store = ServerStore.withSampleData(WINES);
+		for (int i = 1; i <= ORDERS; i++) {
+			String[] add = { "add_to_cart", EMAIL, String.valueOf(i), "1" };
+			store.handle(add);
+			String[] order = { "new_order", EMAIL };
+			store.handle(order);
+		}
+
+		this.server = new Server(0, store, 2);
+		Thread selector = new Thread(this.server, "benchmark-server");
+		selector.setDaemon(true);
+		selector.start();
+
+		ConnectionPool pool = new ConnectionPool(Client.HOST, this.server.getPort(), 1, 60_000, 15_000, 10_000);
+		pool.setBinaryProtocol(!"legacy".equals(this.protocol));
+		pool.setMultiplexing("multiplexed".equals(this.protocol));
+		this.client = new Client(pool);
+		this.executor = AsyncClient.newTaskExecutor("benchmark-request");
+		this.asyncClient = new AsyncClient(this.client, this.executor);
+	}
+
+	/**
+	 * Disconnects the client and stops the server.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.executor.shutdownNow();
+		this.client.close();
+		this.server.close();
+	}
+
+	/**
+	 * The read-only commands, measured one at a time.
+	 */
+	@State(Scope.Benchmark)
+	public static class Command {
+
+		@Param({ "ping", "login", "guest", "register_user", "get_wines", "get_wines_page", "get_wines_since",
+				"search", "display_cart", "get_orders_user", "bootstrap_user" })
+		public String command;
+
+		private String[] request;
+
+		/**
+		 * Builds the request with the arguments the controllers use.
+		 */
+		@Setup(Level.Trial)
+		public void setup() {
+			switch (this.command) {
+				case "login":
+					this.request = new String[] { this.command, EMAIL, PASSWORD };
+					break;
+				case "register_user":
+					// the email is already registered, the store is not changed
+					this.request = new String[] { this.command, "Name", "Surname", EMAIL, PASSWORD };
+					break;
+				case "get_wines_page":
+					this.request = new String[] { this.command, "0", "50" };
+					break;
+				case "get_wines_since":
+					this.request = new String[] { this.command, "0" };
+					break;
+				case "search":
+					this.request = new String[] { this.command, "rosso", "" };
+					break;
+				case "bootstrap_user":
+					// a client without cache: the first page of the catalog is sent
+					this.request = new String[] { this.command, EMAIL, "-1", "50", "30" };
+					break;
+				case "display_cart":
+				case "get_orders_user":
+					this.request = new String[] { this.command, EMAIL };
+					break;
+				default:
+					this.request = new String[] { this.command };
+			}
+		}
+	}
+
+	/**
+	 * Sends the request of a read-only command.
+	 * 
+	 * @param command the command. [Command]
+	 * @return the response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object request(Command command) throws Exception {
+		return this.client.request(command.request);
+	}
+
+	/**
+	 * Sends {@code add_to_cart} and {@code remove_from_cart}.
+	 * 
+	 * @return the response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object cart() throws Exception {
+		String[] add = { "add_to_cart", EMAIL, "1", "1" };
+		this.client.request(add);
+		String[] remove = { "remove_from_cart", EMAIL, "1" };
+		return this.client.request(remove);
+	}
+
+	/**
+	 * Sends {@code add_to_cart}, {@code new_order} and {@code restock_wine}.
+	 * 
+	 * @return the response of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object checkout() throws Exception {
+		String[] add = { "add_to_cart", EMAIL, "2", "1" };
+		this.client.request(add);
+		String[] order = { "new_order", EMAIL };
+		this.client.request(order);
+		String[] restock = { "restock_wine", "2", "1" };
+		return this.client.request(restock);
+	}
+
+	/**
+	 * Sends {@code get_wines_page}, {@code get_orders_page} and
+	 * {@code display_cart} at once and waits for all the responses.
+	 * 
+	 * @return the responses of the server. [Object]
+	 * @throws Exception if the server can't be reached.
+	 */
+	@Benchmark
+	public Object pageLoad() throws Exception {
+		String[] wines = { "get_wines_page", "0", "50" };
+		String[] orders = { "get_orders_page", EMAIL, String.valueOf(OrderPage.FIRST), "20" };
+		String[] cart = { "display_cart", EMAIL };
+		CompletableFuture<?>[] responses = { this.asyncClient.request(wines), this.asyncClient.request(orders),
+				this.asyncClient.request(cart) };
+		return CompletableFuture.allOf(responses).get();
+	}
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the Java serialization of the objects exchanged
+ * with the server, as the old protocol does: a single {@code Wine}, an
+ * {@code Order} of {@code ORDER_LINES} wines and an {@code ArrayList} of
+ * {@code size} wines, 50 being a page of the homepage and 1000 the whole
+ * catalog. Run it with {@code BenchmarkRunner} to get the allocation rates too.
+ * 
+ * @see WireCodecBenchmark
+ * @see BenchmarkRunner
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private static final int ORDER_LINES = 5;
+
+	@Param({ "50", "1000" })
+	public int size;
+
+	private Wine wine;
+	private Order order;
+	private ArrayList<Wine> wines;
+	private byte[] serializedWine;
+	private byte[] serializedOrder;
+	private byte[] serializedWines;
+
+	/**
+	 * Builds the objects and serializes them once for the deserialization
+	 * benchmarks.
+	 * 
+	 * @throws IOException if the objects can't be serialized.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		this.wines = WireCodecBenchmark.catalog(this.size);
+		this.wine = this.wines.get(0);
+		this.order = new Order(1, false, "user@user.com", WireCodecBenchmark.catalog(ORDER_LINES));
+
+		this.serializedWine = WireCodecBenchmark.serialize(this.wine);
+		this.serializedOrder = WireCodecBenchmark.serialize(this.order);
+		this.serializedWines = WireCodecBenchmark.serialize(this.wines);
+	}
+
+	/**
+	 * Serializes a single wine, as {@code add_wine} responses do.
+	 * 
+	 * @return the serialized bytes. [byte[]]
+	 * @throws IOException if the wine can't be serialized.
+	 */
+	@Benchmark
+	public byte[] serializeWine() throws IOException {
+		return WireCodecBenchmark.serialize(this.wine);
+	}
+
+	/**
+	 * Deserializes a single wine.
+	 * 
+	 * @return the wine. [Object]
+	 * @throws IOException            if the bytes are not valid.
+	 * @throws ClassNotFoundException if the class is unknown.
+	 */
+	@Benchmark
+	public Object deserializeWine() throws IOException, ClassNotFoundException {
+		return WireCodecBenchmark.deserialize(this.serializedWine);
+	}
+
+	/**
+	 * Serializes an order, as {@code new_order} responses do.
+	 * 
+	 * @return the serialized bytes. [byte[]]
+	 * @throws IOException if the order can't be serialized.
+	 */
+	@Benchmark
+	public byte[] serializeOrder() throws IOException {
+		return WireCodecBenchmark.serialize(this.order);
+	}
+
+	/**
+	 * Deserializes an order.
+	 * 
+	 * @return the order. [Object]
+	 * @throws IOException            if the bytes are not valid.
+	 * @throws ClassNotFoundException if the class is unknown.
+	 */
+	@Benchmark
+	public Object deserializeOrder() throws IOException, ClassNotFoundException {
+		return WireCodecBenchmark.deserialize(this.serializedOrder);
+	}
+
+	/**
+	 * Serializes {@code size} wines, as {@code get_wines} and {@code search}
+	 * responses do.
+	 * 
+	 * @return the serialized bytes. [byte[]]
+	 * @throws IOException if the list can't be serialized.
+	 */
+	@Benchmark
+	public byte[] serializeWineList() throws IOException {
+		return WireCodecBenchmark.serialize(this.wines);
+	}
+
+	/**
+	 * Deserializes {@code size} wines.
+	 * 
+	 * @return the list of wines. [Object]
+	 * @throws IOException            if the bytes are not valid.
+	 * @throws ClassNotFoundException if the class is unknown.
+	 */
+	@Benchmark
+	public Object deserializeWineList() throws IOException, ClassNotFoundException {
+		return WireCodecBenchmark.deserialize(this.serializedWines);
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the refresh of a table of {@code size} wines when
+ * 1% of them changes quantity and 0.1% is removed and replaced by new ones, as
+ * after a new search or a download of the cart. The old refresh builds a new
+ * list, so the table lays out every row again; the {@code KeyedListDiff}
+ * updates the displayed list in place. Besides the time on the JavaFX
+ * thread, every benchmark reports in {@code rows} the number of rows the
+ * table has to lay out again, counted by a listener as the TableView does:
+ * the total of the iteration, to be divided by the number of operations.
+ * The JavaFX toolkit is not needed.
+ * 
+ * @see KeyedListDiff
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableRefreshBenchmark {
+
+	@Param({ "1000", "50000" })
+	public int size;
+
+	private ArrayList<Wine> original;
+	private ArrayList<Wine> updated;
+	private ObservableList<Wine> displayed;
+	private KeyedListDiff<Wine> diff;
+	private boolean toggle;
+	private int rows;
+
+	/**
+	 * Builds the two versions of the content and the displayed list, with a
+	 * listener that counts the rows to lay out again.
+	 */
+	@Setup
+	public void setup() {
+		this.original = WireCodecBenchmark.catalog(this.size);
+		this.updated = new ArrayList<Wine>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			Wine wine = this.original.get(i);
+			if (i % 1000 == 500) {
+				// removed, a new wine takes its place
+				this.updated.add(new Wine(this.size + i + 1, "New wine " + i, wine.getProducer(), wine.getYear(),
+						wine.getNotes(), 10, wine.getGrapewines()));
+			} else if (i % 100 == 50) {
+				this.updated.add(new Wine(wine.getProductId(), wine.getName(), wine.getProducer(), wine.getYear(),
+						wine.getNotes(), wine.getQuantity() + 1, wine.getGrapewines()));
+			} else {
+				this.updated.add(wine);
+			}
+		}
+
+		this.displayed = FXCollections.observableArrayList(this.original);
+		this.displayed.addListener((ListChangeListener<Wine>) change -> {
+			while (change.next()) {
+				this.rows += Math.max(change.getAddedSize(), change.getRemovedSize());
+			}
+		});
+		this.diff = KeyedListDiff.forWines();
+	}
+
+	/**
+	 * Refreshes the table as {@code addToTable} used to do: a new list, whose
+	 * rows are all laid out again.
+	 * 
+	 * @param counters the rows laid out again. [Counters]
+	 * @return the new list. [ObservableList of Wine]
+	 */
+	@Benchmark
+	public ObservableList<Wine> replaceList(Counters counters) {
+		ObservableList<Wine> list = FXCollections.observableArrayList(next());
+		counters.rows += list.size();
+		return list;
+	}
+
+	/**
+	 * Refreshes the displayed list with a single {@code setAll}.
+	 * 
+	 * @param counters the rows laid out again. [Counters]
+	 * @return the displayed list. [ObservableList of Wine]
+	 */
+	@Benchmark
+	public ObservableList<Wine> setAll(Counters counters) {
+		this.rows = 0;
+		this.displayed.setAll(next());
+		counters.rows += this.rows;
+		return this.displayed;
+	}
+
+	/**
+	 * Refreshes the displayed list with the {@code KeyedListDiff}.
+	 * 
+	 * @param counters the rows laid out again. [Counters]
+	 * @return the displayed list. [ObservableList of Wine]
+	 */
+	@Benchmark
+	public ObservableList<Wine> keyedDiff(Counters counters) {
+		this.rows = 0;
+		this.diff.apply(this.displayed, next());
+		counters.rows += this.rows;
+		return this.displayed;
+	}
+
+	/**
+	 * Alternates between the two versions of the content, so that every
+	 * refresh has the same changes to apply.
+	 * 
+	 * @return the next content. [ArrayList of Wine]
+	 */
+	private ArrayList<Wine> next() {
+		this.toggle = !this.toggle;
+		return this.toggle ? this.updated : this.original;
+	}
+
+	/**
+	 * Rows laid out again, reported next to the time.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+
+		public long rows;
+	}
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the models built on the JavaFX thread when a
+ * response arrives: the {@code ObservableList} of {@code addToTable} and the
+ * {@code TreeItem} tree of {@code displayOrders}, both the first page of a
+ * long history and the whole history with every order expanded. None of them
+ * needs the JavaFX toolkit to be started.
+ * 
+ * @see ControllerHomepageUser
+ * @see OrderHistoryItem
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ViewModelBenchmark {
+
+	private static final int ORDER_LINES = 5;
+	private static final int ORDERS_PAGE_SIZE = 30;
+
+	@Param({ "50", "1000", "10000" })
+	public int size;
+
+	private ArrayList<Wine> wines;
+	private ArrayList<Order> orders;
+	private HashMap<Integer, Wine> catalog;
+	private OrderPage firstPage;
+
+	/**
+	 * Builds {@code size} wines and {@code size / 10} orders.
+	 */
+	@Setup
+	public void setup() {
+		this.wines = WireCodecBenchmark.catalog(this.size);
+		this.catalog = new HashMap<Integer, Wine>();
+		for (Wine wine : this.wines) {
+			this.catalog.put(wine.getProductId(), wine);
+		}
+		this.orders = new ArrayList<Order>();
+		for (int i = 0; i < Math.max(1, this.size / 10); i++) {
+			this.orders.add(new Order(i + 1, i % 2 == 0, "user@user.com", WireCodecBenchmark.catalog(ORDER_LINES)));
+		}
+
+		ArrayList<Order> summaries = new ArrayList<Order>();
+		for (Order order : this.orders.subList(0, Math.min(ORDERS_PAGE_SIZE, this.orders.size()))) {
+			summaries.add(new Order(order.getId(), order.getStatus(), order.getCustomer(), new ArrayList<Wine>()));
+		}
+		int nextCursor = this.orders.size() > ORDERS_PAGE_SIZE ? ORDERS_PAGE_SIZE : OrderPage.END;
+		this.firstPage = new OrderPage(summaries, nextCursor, this.orders.size());
+	}
+
+	/**
+	 * Builds the list displayed by {@code addToTable}.
+	 * 
+	 * @return the list. [ObservableList of Wine]
+	 */
+	@Benchmark
+	public ObservableList<Wine> tableItems() {
+		return FXCollections.observableArrayList(this.wines);
+	}
+
+	/**
+	 * Builds the tree displayed by {@code displayOrders} with its first page,
+	 * whatever the length of the history.
+	 * 
+	 * @return the root of the tree. [TreeItem of String]
+	 */
+	@Benchmark
+	public TreeItem<String> orderTreeFirstPage() {
+		OrderHistoryItem root = new OrderHistoryItem("user@user.com", null, ORDERS_PAGE_SIZE);
+		root.append(this.firstPage);
+		return root;
+	}
+
+	/**
+	 * Builds the tree of the whole history and expands every order, as the tree
+	 * used to be built before it was displayed.
+	 * 
+	 * @return the root of the tree. [TreeItem of String]
+	 */
+	@Benchmark
+	public TreeItem<String> orderTreeExpanded() {
+		OrderHistoryItem root = OrderHistoryItem.of(this.orders, this.catalog::get);
+		for (TreeItem<String> order : root.getChildren()) {
+			order.getChildren();
+		}
+		return root;
+	}
+}
@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Measures the latency of the queries of the {@code search}
+ * command on catalogs of 10k, 100k and 1M wines, with {@code WineSearchIndex}
+ * and with a linear scan of the catalog.
+ * 
+ * @see WineSearchIndex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class WineSearchBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private ArrayList<Wine> wines;
+	private WineSearchIndex index;
+	private int restocked;
+
+	/**
+	 * Builds the catalog and indexes it.
+	 */
+	@Setup
+	public void setup() {
+		this.wines = WireCodecBenchmark.catalog(this.size);
+		this.index = new WineSearchIndex();
+		for (Wine wine : this.wines) {
+			this.index.add(wine);
+		}
+	}
+
+	/**
+	 * Name prefix matching about one wine every thousand.
+	 */
+	@Benchmark
+	public ArrayList<Wine> indexNamePrefix() {
+		return this.index.search("wine 777", "");
+	}
+
+	/**
+	 * Same query as {@code indexNamePrefix}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public ArrayList<Wine> scanNamePrefix() {
+		return scan("wine 777", WineSearchIndex.ANY_YEAR, WineSearchIndex.ANY_YEAR);
+	}
+
+	/**
+	 * Producer prefix and exact year.
+	 */
+	@Benchmark
+	public ArrayList<Wine> indexProducerAndYear() {
+		return this.index.search("producer 42", "2005");
+	}
+
+	/**
+	 * Same query as {@code indexProducerAndYear}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public ArrayList<Wine> scanProducerAndYear() {
+		return scan("producer 42", 2005, 2005);
+	}
+
+	/**
+	 * Range of years, without text.
+	 */
+	@Benchmark
+	public ArrayList<Wine> indexYearRange() {
+		return this.index.search("", "2001-2002");
+	}
+
+	/**
+	 * Same query as {@code indexYearRange}, scanning the whole catalog.
+	 */
+	@Benchmark
+	public ArrayList<Wine> scanYearRange() {
+		return scan("", 2001, 2002);
+	}
+
+	/**
+	 * Incremental update of the index after a restock.
+	 */
+	@Benchmark
+	public Wine indexRestock() {
+		this.restocked = (this.restocked + 1) % this.size;
+		return this.index.restock(this.restocked + 1, this.restocked % 100);
+	}
+
+	/**
+	 * Linear scan with the same semantics of {@code WineSearchIndex.search}.
+	 * 
+	 * @param text     the words to search. [String]
+	 * @param fromYear the first year. [int]
+	 * @param toYear   the last year. [int]
+	 * @return the matching wines. [ArrayList of Wine]
+	 */
+	private ArrayList<Wine> scan(String text, int fromYear, int toYear) {
+		String[] prefixes = WineSearchIndex.tokenize(text);
+		ArrayList<Wine> result = new ArrayList<Wine>();
+
+		for (Wine wine : this.wines) {
+			if (fromYear != WineSearchIndex.ANY_YEAR && (wine.getYear() < fromYear || wine.getYear() > toYear)) {
+				continue;
+			}
+			String[] words = WineSearchIndex
+					.tokenize(wine.getName() + " " + wine.getProducer() + " " + wine.getGrapewines());
+			boolean matches = true;
+			for (String prefix : prefixes) {
+				boolean found = false;
+				for (String word : words) {
+					if (word.startsWith(prefix)) {
+						found = true;
+						break;
+					}
+				}
+				matches &= found;
+			}
+			if (matches) {
+				result.add(wine);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,215 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark class. Compares Java serialization with {@code WireCodec} on the
+ * two biggest responses of the server, {@code get_wines} and
+ * {@code get_orders_user}. The nanoseconds per message are measured by JMH,
+ * the bytes per message are printed once per trial.
+ * 
+ * @see WireCodec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireCodecBenchmark {
+
+	@Param({ "10", "1000" })
+	public int size;
+
+	private ArrayList<Wine> wines;
+	private ArrayList<Order> orders;
+	private byte[] serializedWines;
+	private byte[] serializedOrders;
+	private byte[] encodedWines;
+	private byte[] encodedOrders;
+	private WireCodec codec;
+
+	/**
+	 * Builds a catalog of {@code size} wines and a history of {@code size / 2}
+	 * orders of 4 wines each, then prints the bytes per message.
+	 * 
+	 * @throws Exception if the messages can't be encoded.
+	 */
+	@Setup
+	public void setup() throws Exception {
+		this.wines = catalog(this.size);
+		this.orders = new ArrayList<Order>();
+		for (int i = 0; i < Math.max(1, this.size / 2); i++) {
+			ArrayList<Wine> items = new ArrayList<Wine>(catalog(Math.min(4, this.size)));
+			this.orders.add(new Order(i, i % 2 == 0, "user@user.com", items));
+		}
+
+		this.codec = new WireCodec();
+		this.serializedWines = serialize(this.wines);
+		this.serializedOrders = serialize(this.orders);
+		this.encodedWines = encode(this.wines);
+		this.encodedOrders = encode(this.orders);
+
+		System.out.format("%n# bytes per message, size %d: get_wines java=%d binary=%d, get_orders_user java=%d binary=%d%n",
+				this.size, this.serializedWines.length, this.encodedWines.length, this.serializedOrders.length,
+				this.encodedOrders.length);
+	}
+
+	/**
+	 * Builds a catalog with realistic repetitions of producers and grapes. Every
+	 * string is a distinct instance, as the ones read from a database.
+	 * 
+	 * @param size the number of wines. [int]
+	 * @return the catalog. [ArrayList of Wine]
+	 */
+	static ArrayList<Wine> catalog(int size) {
+		ArrayList<Wine> wines = new ArrayList<Wine>(size);
+		for (int i = 0; i < size; i++) {
+			wines.add(new Wine(i + 1, "Wine " + i, "Producer " + (i % 50), 1990 + i % 30,
+					new String("Dry, with notes of red fruits and a long finish. Serve at 16-18 degrees."), i % 100,
+					"Sangiovese, Merlot " + (i % 20)));
+		}
+		return wines;
+	}
+
+	/**
+	 * Serializes {@code value} as the old protocol does.
+	 * 
+	 * @param value the object to serialize. [Object]
+	 * @return the serialized bytes. [byte[]]
+	 * @throws IOException if the object can't be serialized.
+	 */
+	static byte[] serialize(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Deserializes {@code bytes} as the old protocol does.
+	 * 
+	 * @param bytes the serialized bytes. [byte[]]
+	 * @return the object. [Object]
+	 * @throws IOException            if the bytes are not valid.
+	 * @throws ClassNotFoundException if the class of the object is unknown.
+	 */
+	static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+
+	/**
+	 * Encodes {@code value} with {@code WireCodec}, the type tag is appended.
+	 * 
+	 * @param value the object to encode. [Object]
+	 * @return the encoded bytes. [byte[]]
+	 * @throws IOException if the object can't be encoded.
+	 */
+	private byte[] encode(Object value) throws IOException {
+		this.codec.reset();
+		byte tag = this.codec.encode(value);
+		byte[] encoded = Arrays.copyOf(this.codec.buffer(), this.codec.size() + 1);
+		// the tag goes last, so that the data starts at 0
+		encoded[encoded.length - 1] = tag;
+		return encoded;
+	}
+
+	/**
+	 * Decodes the bytes returned by {@code encode}.
+	 * 
+	 * @param encoded the encoded bytes. [byte[]]
+	 * @return the object. [Object]
+	 * @throws IOException            if the bytes are not valid.
+	 * @throws ClassNotFoundException if the class of a serialized object is
+	 *                                unknown.
+	 */
+	private Object decode(byte[] encoded) throws IOException, ClassNotFoundException {
+		return this.codec.decode(encoded[encoded.length - 1], encoded, 0, encoded.length - 1);
+	}
+
+	/**
+	 * Serializes the catalog with Java serialization.
+	 */
+	@Benchmark
+	public byte[] javaSerializeWines() throws IOException {
+		return serialize(this.wines);
+	}
+
+	/**
+	 * Deserializes the catalog with Java serialization.
+	 */
+	@Benchmark
+	public Object javaDeserializeWines() throws IOException, ClassNotFoundException {
+		return deserialize(this.serializedWines);
+	}
+
+	/**
+	 * Encodes the catalog with {@code WireCodec}.
+	 */
+	@Benchmark
+	public int binaryEncodeWines() throws IOException {
+		this.codec.reset();
+		this.codec.encode(this.wines);
+		return this.codec.size();
+	}
+
+	/**
+	 * Decodes the catalog with {@code WireCodec}.
+	 */
+	@Benchmark
+	public Object binaryDecodeWines() throws IOException, ClassNotFoundException {
+		return decode(this.encodedWines);
+	}
+
+	/**
+	 * Serializes the order history with Java serialization.
+	 */
+	@Benchmark
+	public byte[] javaSerializeOrders() throws IOException {
+		return serialize(this.orders);
+	}
+
+	/**
+	 * Deserializes the order history with Java serialization.
+	 */
+	@Benchmark
+	public Object javaDeserializeOrders() throws IOException, ClassNotFoundException {
+		return deserialize(this.serializedOrders);
+	}
+
+	/**
+	 * Encodes the order history with {@code WireCodec}.
+	 */
+	@Benchmark
+	public int binaryEncodeOrders() throws IOException {
+		this.codec.reset();
+		this.codec.encode(this.orders);
+		return this.codec.size();
+	}
+
+	/**
+	 * Decodes the order history with {@code WireCodec}.
+	 */
+	@Benchmark
+	public Object binaryDecodeOrders() throws IOException, ClassNotFoundException {
+		return decode(this.encodedOrders);
+	}
+}
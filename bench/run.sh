@@ -0,0 +1,50 @@
+#!/bin/sh
+# Builds the JMH benchmarks of the client in bench/target/benchmarks.jar and
+# runs them through BenchmarkRunner, reporting ns/op and gc.alloc.rate.norm.
+#
+# JMH can't generate the harness of a class in the default package, where the
+# sources of the client are: the sources of src and bench are copied in the
+# package of the benchmarks and compiled there, with the annotation processor
+# of JMH.
+#
+# Usage: bench/run.sh <directory of the jars> [regex of the benchmarks]
+# The directory holds jmh-core, jmh-generator-annprocess, their dependencies
+# (jopt-simple, commons-math3) and the JavaFX jars (base, controls, fxml,
+# graphics).
+
+set -e
+
+if [ $# -lt 1 ]; then
+	echo "usage: $0 <directory of the jars> [regex of the benchmarks]" >&2
+	exit 1
+fi
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+LIB=$(cd "$1" && pwd)
+shift
+PACKAGE=benchmarks
+TARGET=$ROOT/bench/target
+CP=$(ls "$LIB"/*.jar | tr '\n' ':')
+
+rm -rf "$TARGET"
+mkdir -p "$TARGET/sources/$PACKAGE" "$TARGET/classes/$PACKAGE"
+
+for file in "$ROOT"/src/*.java "$ROOT"/bench/*.java; do
+	name=$(basename "$file")
+	# the tests need JUnit, not the benchmarks
+	case "$name" in *Test.java) continue ;; esac
+	{ echo "package $PACKAGE;"; echo; cat "$file"; } > "$TARGET/sources/$PACKAGE/$name"
+done
+
+# every lint but processing: the processor of JMH doesn't claim the annotations
+# of JavaFX, and says so for every build
+javac -encoding UTF-8 -Xlint:all,-processing -cp "$CP" -processorpath "$CP" -d "$TARGET/classes" \
+	"$TARGET/sources/$PACKAGE"/*.java
+# the pages and the images, loaded relatively to the classes
+cp "$ROOT"/src/*.fxml "$TARGET/classes/$PACKAGE/"
+cp -r "$ROOT"/src/img "$TARGET/classes/$PACKAGE/"
+
+jar --create --file "$TARGET/benchmarks.jar" --main-class "$PACKAGE.BenchmarkRunner" -C "$TARGET/classes" .
+
+# the forks of JMH inherit the class path
+java -cp "$TARGET/benchmarks.jar:$CP" "$PACKAGE.BenchmarkRunner" "$@"
@@ -1,10 +1,13 @@
 import java.io.IOException;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
+import javafx.application.Platform;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.Stage;
 
 /**
@@ -12,28 +15,86 @@ import javafx.stage.Stage;
  */
 public class App extends Application {
 
+	private static final String NO_WARM_UP = "--no-warm-up";
+	private static final KeyCombination DIAGNOSTICS = new KeyCodeCombination(KeyCode.D,
+			KeyCombination.CONTROL_DOWN, KeyCombination.SHIFT_DOWN);
+
 	/**
-	 * Starts the GUI.
+	 * Starts the GUI. The login page is parsed by {@code Loader}, so that it is
+	 * kept for the next visits, while the next pages are read in background.
+	 * Unless the application is started with {@code --no-warm-up}, the
+	 * {@code StartupWarmUp} runs in parallel with the parsing of the login page.
+	 * The icon is decoded in background too. The startup milestones are recorded
+	 * in the {@code StartupTimeline}. The {@code ClientMetrics} are published
+	 * through JMX, and Ctrl+Shift+D opens the diagnostics window.
 	 * 
 	 * @param stage the GUI stage. [Stage]
 	 * @throws IOException if the file cannot be read.
+	 * @see StartupWarmUp
+	 * @see StartupTimeline
+	 * @see ControllerDiagnostics
 	 */
 	@Override
 	public void start(Stage stage) throws IOException {
-		Parent root = FXMLLoader.load(getClass().getResource("./login.fxml"));
+		StartupTimeline.getShared().mark(StartupTimeline.START);
+		if (!getParameters().getRaw().contains(NO_WARM_UP)) {
+			StartupWarmUp.start();
+		}
+
+		Parent root = Loader.getRoot("login");
+		StartupTimeline.getShared().mark("login parsed");
 		Scene scene = new Scene(root);
+		watchFirstFrame(scene);
+		// the pages replace the root of the scene, so the accelerator works on all of them
+		scene.getAccelerators().put(DIAGNOSTICS, () -> ControllerDiagnostics.show(stage));
 		stage.setTitle("3rd Assignment");
 		stage.setScene(scene);
-		stage.getIcons().add(new Image(App.class.getResourceAsStream("./img/wine.png")));
+		stage.getIcons().add(new Image(App.class.getResource("./img/wine.png").toExternalForm(), true));
 		stage.show();
+		FxStallMonitor.getShared();
+		ClientMetrics.getShared();
+	}
+
+	/**
+	 * Records the first frame of the scene in the {@code StartupTimeline}, then
+	 * the moment the GUI becomes interactive: when the JavaFX application thread
+	 * is free to handle the input, after the first frame.
+	 * 
+	 * @param scene the scene of the stage. [Scene]
+	 */
+	private void watchFirstFrame(Scene scene) {
+		scene.addPostLayoutPulseListener(new Runnable() {
+			@Override
+			public void run() {
+				scene.removePostLayoutPulseListener(this);
+				StartupTimeline timeline = StartupTimeline.getShared();
+				timeline.mark(StartupTimeline.FIRST_FRAME);
+				Platform.runLater(() -> timeline.mark(StartupTimeline.INTERACTIVE));
+			}
+		});
+	}
+
+	/**
+	 * Stops the GUI, closing the subscription of the catalog cache. The
+	 * metrics are read through JMX or the diagnostics window while the
+	 * application runs.
+	 * 
+	 * @see CatalogCache
+	 * @see ClientMetrics
+	 */
+	@Override
+	public void stop() {
+		CatalogCache.getShared().close();
 	}
 
 	/**
 	 * Main method.
 	 * 
-	 * @param args argvs, actually not required for our use.
+	 * @param args argvs, {@code --no-warm-up} disables the warm-up, to measure
+	 *             the startup without it.
 	 */
 	public static void main(String[] args) {
+		StartupTimeline.getShared().mark(StartupTimeline.MAIN);
 		launch(args);
 	}
 }
\ No newline at end of file
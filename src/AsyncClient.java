@@ -0,0 +1,173 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+/**
+ * Non-blocking version of {@code Client}, to be used from the JavaFX
+ * application thread. Every request runs on its own background thread and
+ * returns a {@code CompletableFuture}: the controllers attach their callbacks
+ * with {@code FX}, so that the callbacks run back on the JavaFX application
+ * thread.
+ * 
+ * A request fails with a {@code TimeoutException} if the server doesn't answer
+ * in time. Cancelling the future abandons the request: its result, if any, is
+ * discarded. The request itself is not stopped: interrupting its thread
+ * doesn't unblock a socket read on a platform thread, so a pooled connection
+ * it was using stays borrowed until the response arrives or the socket
+ * timeout expires, and then goes back to the pool. The multiplexed connection
+ * is shared, and stays open for the other requests.
+ * 
+ * @see Client
+ */
+public class AsyncClient {
+
+	public static final long DEFAULT_TIMEOUT = 10_000;
+
+	/**
+	 * Runs the callbacks on the JavaFX application thread.
+	 */
+	public static final Executor FX = Platform::runLater;
+
+	private static AsyncClient shared;
+	private final Client client;
+	private final ExecutorService executor;
+
+	/**
+	 * {@code AsyncClient} class constructor.
+	 * 
+	 * @param client   the client used to send the requests. [Client]
+	 * @param executor the executor running the requests. [ExecutorService]
+	 */
+	public AsyncClient(Client client, ExecutorService executor) {
+		this.client = client;
+		this.executor = executor;
+	}
+
+	/**
+	 * Gets the {@code AsyncClient} shared by all the controllers, creating it on
+	 * first use. It sends its requests through {@code Client.getShared()}.
+	 * 
+	 * @return the shared client. [AsyncClient]
+	 */
+	public static synchronized AsyncClient getShared() {
+		if (shared == null) {
+			shared = new AsyncClient(Client.getShared(), newTaskExecutor("client-request"));
+		}
+		return shared;
+	}
+
+	/**
+	 * Creates an executor that runs every task on a new virtual thread when the
+	 * JVM supports them (Java 21 and later), otherwise on a pool of daemon
+	 * threads created on demand.
+	 * 
+	 * @param name the name of the threads. [String]
+	 * @return the executor. [ExecutorService]
+	 */
+	public static ExecutorService newTaskExecutor(String name) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Sends a command to the server in background, with the default timeout.
+	 * 
+	 * @param <T>      the expected type of the response.
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the future response of the server. [CompletableFuture]
+	 */
+	public <T> CompletableFuture<T> request(String[] toBeSent) {
+		return request(toBeSent, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Sends a command to the server in background.
+	 * 
+	 * @param <T>      the expected type of the response.
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param timeout  the maximum time to wait for the response, in milliseconds.
+	 *                 [long]
+	 * @return the future response of the server. [CompletableFuture]
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> request(String[] toBeSent, long timeout) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+
+		Future<?> task = this.executor.submit(() -> {
+			try {
+				// the socket timeout frees the connection even if nobody waits anymore
+				future.complete((T) this.client.request(toBeSent, (int) timeout));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+
+		future.orTimeout(timeout, TimeUnit.MILLISECONDS);
+		future.whenComplete((result, error) -> {
+			if (future.isCancelled()) {
+				// only stops a request still waiting for its thread
+				task.cancel(true);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Runs in background a task that sends blocking requests, such as a
+	 * sequence of requests depending on each other. The requests of the task
+	 * have their own timeouts.
+	 * 
+	 * @param <T>  the type of the result.
+	 * @param task the task. [Callable]
+	 * @return the future result of the task. [CompletableFuture]
+	 */
+	public <T> CompletableFuture<T> call(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		this.executor.execute(() -> {
+			try {
+				future.complete(task.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Gets the actual cause of the failure of a future.
+	 * 
+	 * @param error the error passed to the callback of a future. [Throwable]
+	 * @return the cause of the failure. [Throwable]
+	 */
+	public static Throwable unwrap(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	/**
+	 * Checks if a future failed because it has been cancelled.
+	 * 
+	 * @param error the error passed to the callback of a future. [Throwable]
+	 * @return true if the future has been cancelled, else false. [Boolean]
+	 */
+	public static boolean isCancellation(Throwable error) {
+		return unwrap(error) instanceof CancellationException;
+	}
+}
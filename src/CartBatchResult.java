@@ -0,0 +1,108 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Abstraction of the response to the {@code cart_batch} command. The batch is
+ * applied atomically: either every line succeeds and the cart is changed, or
+ * nothing is changed. In both cases the result of each line and the content
+ * of the cart after the batch are returned, so the client doesn't need to
+ * download the cart again.
+ * 
+ * @see CartBatcher
+ */
+public class CartBatchResult implements Serializable {
+
+	private static final long serialVersionUID = 6120318411842297715L;
+
+	/**
+	 * The line has been applied, or would have been if the batch hadn't failed.
+	 */
+	public static final int OK = 0;
+
+	/**
+	 * The line is not valid, for example the operation is unknown.
+	 */
+	public static final int INVALID = -2;
+
+	/**
+	 * The quantity is negative, or zero for an {@code add}.
+	 */
+	public static final int INVALID_QUANTITY = -3;
+
+	/**
+	 * The wine doesn't exist or the quantity is not in stock.
+	 */
+	public static final int NOT_AVAILABLE = -5;
+
+	/**
+	 * The wine to remove is not in the cart.
+	 */
+	public static final int NOT_IN_CART = -6;
+
+	/**
+	 * The line is valid, but it has not been applied because another line of
+	 * the same batch failed. Only reported by the {@code CartModel}.
+	 */
+	public static final int ROLLED_BACK = -7;
+
+	private int[] results;
+	private boolean applied;
+	private ArrayList<Wine> cart;
+	private int version;
+
+	/**
+	 * {@code CartBatchResult} class constructor.
+	 * 
+	 * @param results the result of each line, in the order they have been sent.
+	 *                [int[]]
+	 * @param applied true if the batch has been applied. [boolean]
+	 * @param cart    the content of the cart after the batch. [ArrayList of Wine]
+	 * @param version the version of the cart after the batch, incremented by
+	 *                every applied batch. [int]
+	 */
+	public CartBatchResult(final int[] results, final boolean applied, final ArrayList<Wine> cart,
+			final int version) {
+		this.results = results;
+		this.applied = applied;
+		this.cart = cart;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the result of each line.
+	 * 
+	 * @return the results, {@code OK} or an error code. [int[]]
+	 */
+	public int[] getResults() {
+		return this.results;
+	}
+
+	/**
+	 * Checks if the batch has been applied.
+	 * 
+	 * @return true if every line succeeded and the cart changed, else false.
+	 *         [Boolean]
+	 */
+	public boolean isApplied() {
+		return this.applied;
+	}
+
+	/**
+	 * Gets the content of the cart after the batch.
+	 * 
+	 * @return the wines in the cart, with the quantities in the cart.
+	 *         [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> getCart() {
+		return this.cart;
+	}
+
+	/**
+	 * Gets the version of the cart after the batch.
+	 * 
+	 * @return the version of the cart. [int]
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+}
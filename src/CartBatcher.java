@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Queues the changes to the cart of a {@code User} and sends them to the
+ * server in batches, with the {@code cart_batch} command: rapid clicks cost a
+ * single round trip. A batch is sent {@code DELAY} milliseconds after its first
+ * change, or at once with {@code flush}; only one batch is in flight at a time,
+ * the changes queued meanwhile go in the next one.
+ * 
+ * The request is {@code { "cart_batch", email, op, productId, quantity, ... }}
+ * with one triple per line, where op is {@code ADD}, {@code REMOVE} or
+ * {@code SET}.
+ * 
+ * @see CartBatchResult
+ */
+public class CartBatcher {
+
+	public static final String ADD = "add";
+	public static final String REMOVE = "remove";
+	public static final String SET = "set";
+	private static final long DELAY = 100;
+
+	private static final HashMap<String, CartBatcher> batchers = new HashMap<String, CartBatcher>();
+	private static ScheduledExecutorService timer;
+
+	private final String email;
+	private final AsyncClient client;
+	// lines and futures of the next batch
+	private ArrayList<String> lines = new ArrayList<String>();
+	private ArrayList<CompletableFuture<Integer>> waiting = new ArrayList<CompletableFuture<Integer>>();
+	private CompletableFuture<CartBatchResult> next;
+	private CompletableFuture<CartBatchResult> inFlight;
+	private CartBatchResult last;
+	private ScheduledFuture<?> scheduled;
+	private Consumer<CartBatchResult> onResult;
+
+	/**
+	 * {@code CartBatcher} class constructor.
+	 * 
+	 * @param email  the email of the owner of the cart. [String]
+	 * @param client the client used to send the batches. [AsyncClient]
+	 */
+	public CartBatcher(String email, AsyncClient client) {
+		this.email = email;
+		this.client = client;
+	}
+
+	/**
+	 * Gets the batcher of the cart of a {@code User}, shared by all the
+	 * controllers so that no change is lost when the scene changes.
+	 * 
+	 * @param user the owner of the cart. [User]
+	 * @return the batcher of the cart. [CartBatcher]
+	 */
+	public static synchronized CartBatcher forUser(User user) {
+		return batchers.computeIfAbsent(user.getEmail(), email -> new CartBatcher(email, AsyncClient.getShared()));
+	}
+
+	/**
+	 * Sets the callback that receives the result of every batch, for example to
+	 * display the new content of the cart. It is called on the thread that
+	 * received the response.
+	 * 
+	 * @param onResult the callback, {@code null} to remove it. [Consumer of
+	 *                 CartBatchResult]
+	 */
+	public synchronized void setOnResult(Consumer<CartBatchResult> onResult) {
+		this.onResult = onResult;
+	}
+
+	/**
+	 * Queues the addition of a wine to the cart.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the quantity to add. [int]
+	 * @return the future result of the line. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> add(int productId, int quantity) {
+		return enqueue(ADD, productId, quantity);
+	}
+
+	/**
+	 * Queues the removal of a wine from the cart.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @return the future result of the line. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> remove(int productId) {
+		return enqueue(REMOVE, productId, 0);
+	}
+
+	/**
+	 * Queues a change of the quantity of a wine in the cart.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the new quantity, 0 removes the wine. [int]
+	 * @return the future result of the line. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> set(int productId, int quantity) {
+		return enqueue(SET, productId, quantity);
+	}
+
+	/**
+	 * Sends the queued changes at once, without waiting for {@code DELAY}.
+	 * 
+	 * @return the future result of the batch containing the last queued change,
+	 *         or of the last batch if nothing is queued. [CompletableFuture of
+	 *         CartBatchResult]
+	 */
+	public synchronized CompletableFuture<CartBatchResult> flush() {
+		if (this.next == null) {
+			return this.inFlight != null ? this.inFlight : CompletableFuture.completedFuture(this.last);
+		}
+
+		CompletableFuture<CartBatchResult> batch = this.next;
+		if (this.scheduled != null) {
+			this.scheduled.cancel(false);
+			this.scheduled = null;
+		}
+		dispatch();
+		return batch;
+	}
+
+	/**
+	 * Queues a line and schedules the batch.
+	 * 
+	 * @param op        the operation. [String]
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the quantity. [int]
+	 * @return the future result of the line. [CompletableFuture of Integer]
+	 */
+	private synchronized CompletableFuture<Integer> enqueue(String op, int productId, int quantity) {
+		CompletableFuture<Integer> line = new CompletableFuture<Integer>();
+		this.lines.add(op);
+		this.lines.add(String.valueOf(productId));
+		this.lines.add(String.valueOf(quantity));
+		this.waiting.add(line);
+
+		if (this.next == null) {
+			this.next = new CompletableFuture<CartBatchResult>();
+			this.scheduled = timer().schedule(this::scheduledDispatch, DELAY, TimeUnit.MILLISECONDS);
+		}
+		return line;
+	}
+
+	/**
+	 * Sends the batch when its delay expires.
+	 */
+	private synchronized void scheduledDispatch() {
+		this.scheduled = null;
+		dispatch();
+	}
+
+	/**
+	 * Sends the queued lines, unless a batch is already in flight: in that case
+	 * they are sent as soon as it completes.
+	 */
+	private void dispatch() {
+		if (this.next == null || (this.inFlight != null && !this.inFlight.isDone())) {
+			return;
+		}
+
+		String[] toBeSent = new String[this.lines.size() + 2];
+		toBeSent[0] = "cart_batch";
+		toBeSent[1] = this.email;
+		for (int i = 0; i < this.lines.size(); i++) {
+			toBeSent[i + 2] = this.lines.get(i);
+		}
+
+		ArrayList<CompletableFuture<Integer>> waiting = this.waiting;
+		CompletableFuture<CartBatchResult> batch = this.next;
+		this.lines = new ArrayList<String>();
+		this.waiting = new ArrayList<CompletableFuture<Integer>>();
+		this.next = null;
+		this.inFlight = batch;
+
+		this.client.request(toBeSent).whenComplete((response, failure) -> {
+			CartBatchResult result = response instanceof CartBatchResult ? (CartBatchResult) response : null;
+			Throwable error = failure != null || result != null ? failure
+					: new IOException("Unexpected response to cart_batch: " + response);
+			Consumer<CartBatchResult> onResult;
+			synchronized (this) {
+				if (error == null) {
+					this.last = result;
+				}
+				onResult = this.onResult;
+			}
+
+			for (int i = 0; i < waiting.size(); i++) {
+				if (error != null) {
+					waiting.get(i).completeExceptionally(error);
+				} else {
+					int[] results = result.getResults();
+					waiting.get(i).complete(i < results.length ? results[i] : CartBatchResult.INVALID);
+				}
+			}
+			if (error != null) {
+				batch.completeExceptionally(error);
+			} else {
+				batch.complete(result);
+				if (onResult != null) {
+					onResult.accept(result);
+				}
+			}
+
+			synchronized (this) {
+				// sends what has been queued meanwhile, if its delay has already expired
+				if (this.scheduled == null) {
+					dispatch();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the timer shared by all the batchers.
+	 * 
+	 * @return the timer. [ScheduledExecutorService]
+	 */
+	private static synchronized ScheduledExecutorService timer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "cart-batcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+}
@@ -0,0 +1,456 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Local state of the cart of a {@code User}, shared by the homepage and the
+ * cart page. Adds and removes change the local state at once, so the user never
+ * waits for the server, and are sent in background through the
+ * {@code CartBatcher}. Every batch returns the content of the cart confirmed by
+ * the server with its version: the local state is rebuilt from it, replaying
+ * the changes not confirmed yet. A change the server rejects, for example
+ * because the wine ran out of stock in the meantime, disappears from the local
+ * state and its future reports why.
+ * 
+ * The model can be used from any thread, the listener is always notified on
+ * the JavaFX application thread.
+ * 
+ * @see CartBatcher
+ * @see CartBatchResult
+ */
+public class CartModel {
+
+	private static final HashMap<String, CartModel> models = new HashMap<String, CartModel>();
+
+	private final String email;
+	private final CartBatcher batcher;
+	private final AsyncClient client;
+	// content confirmed by the server, by product id, null until downloaded
+	private LinkedHashMap<Integer, Wine> confirmed;
+	private int version = -1;
+	// changes not confirmed yet, in the order they have been made
+	private final ArrayList<Change> pending = new ArrayList<Change>();
+	private ArrayList<Wine> items = new ArrayList<Wine>();
+	private Consumer<ArrayList<Wine>> onChange;
+
+	/**
+	 * {@code CartModel} class constructor. The model receives the results of
+	 * every batch of {@code batcher}.
+	 * 
+	 * @param email   the email of the {@code User}. [String]
+	 * @param batcher the batcher the changes are sent through. [CartBatcher]
+	 * @param client  the client used to download the cart. [AsyncClient]
+	 */
+	public CartModel(String email, CartBatcher batcher, AsyncClient client) {
+		this.email = email;
+		this.batcher = batcher;
+		this.client = client;
+		batcher.setOnResult(this::reconcile);
+	}
+
+	/**
+	 * Gets the model of the cart of {@code user}, creating it on first use.
+	 * 
+	 * @param user the {@code User}. [User]
+	 * @return the model of the cart. [CartModel]
+	 */
+	public static synchronized CartModel forUser(User user) {
+		return models.computeIfAbsent(user.getEmail(),
+				email -> new CartModel(email, CartBatcher.forUser(user), AsyncClient.getShared()));
+	}
+
+	/**
+	 * Sets the listener notified with the content of the cart every time it
+	 * changes, on the JavaFX application thread.
+	 * 
+	 * @param onChange the listener, {@code null} to remove it. [Consumer of
+	 *                 ArrayList of Wine]
+	 */
+	public synchronized void setOnChange(Consumer<ArrayList<Wine>> onChange) {
+		this.onChange = onChange;
+	}
+
+	/**
+	 * Checks if the content of the cart has been downloaded at least once.
+	 * 
+	 * @return true if the content is known, else false. [boolean]
+	 */
+	public synchronized boolean isLoaded() {
+		return this.confirmed != null;
+	}
+
+	/**
+	 * Gets the content of the cart, with the changes not confirmed yet.
+	 * 
+	 * @return the wines in the cart. [ArrayList of Wine]
+	 */
+	public synchronized ArrayList<Wine> getItems() {
+		return new ArrayList<Wine>(this.items);
+	}
+
+	/**
+	 * Gets the number of bottles in the cart, with the changes not confirmed
+	 * yet.
+	 * 
+	 * @return the number of bottles. [int]
+	 */
+	public synchronized int getBottles() {
+		int bottles = 0;
+		for (Wine wine : this.items) {
+			bottles += wine.getQuantity();
+		}
+		return bottles;
+	}
+
+	/**
+	 * Adds {@code quantity} bottles of {@code wine} to the cart at once and
+	 * sends the change in background.
+	 * 
+	 * @param wine     the wine. [Wine]
+	 * @param quantity the number of bottles. [int]
+	 * @return the future result of the change, {@code CartBatchResult.OK} once
+	 *         it has been applied by the server. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> add(Wine wine, int quantity) {
+		Change change = apply(new Change(CartBatcher.ADD, wine, quantity));
+		return track(change, this.batcher.add(wine.getProductId(), quantity));
+	}
+
+	/**
+	 * Removes {@code wine} from the cart at once and sends the change in
+	 * background.
+	 * 
+	 * @param wine the wine. [Wine]
+	 * @return the future result of the change, {@code CartBatchResult.OK} once
+	 *         it has been applied by the server. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> remove(Wine wine) {
+		Change change = apply(new Change(CartBatcher.REMOVE, wine, 0));
+		return track(change, this.batcher.remove(wine.getProductId()));
+	}
+
+	/**
+	 * Sets the number of bottles of {@code wine} in the cart at once and sends
+	 * the change in background.
+	 * 
+	 * @param wine     the wine. [Wine]
+	 * @param quantity the number of bottles, 0 to remove the wine. [int]
+	 * @return the future result of the change, {@code CartBatchResult.OK} once
+	 *         it has been applied by the server. [CompletableFuture of Integer]
+	 */
+	public CompletableFuture<Integer> set(Wine wine, int quantity) {
+		Change change = apply(new Change(CartBatcher.SET, wine, quantity));
+		return track(change, this.batcher.set(wine.getProductId(), quantity));
+	}
+
+	/**
+	 * Records a change already applied by the server, for example by a blocking
+	 * {@code add_to_cart}. Ignored until the cart has been downloaded.
+	 * 
+	 * @param wine     the wine. [Wine]
+	 * @param quantity the number of bottles added. [int]
+	 */
+	public void added(Wine wine, int quantity) {
+		Consumer<ArrayList<Wine>> listener;
+		ArrayList<Wine> items;
+		synchronized (this) {
+			if (this.confirmed == null) {
+				return;
+			}
+			replay(this.confirmed, new Change(CartBatcher.ADD, wine, quantity));
+			listener = this.onChange;
+			items = rebuild();
+		}
+		notify(listener, items);
+	}
+
+	/**
+	 * Empties the cart after an order: the server has ordered its content and
+	 * emptied it. The results of the batches sent before the order are not
+	 * applied anymore.
+	 */
+	public void ordered() {
+		Consumer<ArrayList<Wine>> listener;
+		ArrayList<Wine> items;
+		synchronized (this) {
+			this.confirmed = new LinkedHashMap<Integer, Wine>();
+			// the order increments the version of the cart
+			this.version++;
+			this.pending.removeIf(change -> change.settled);
+			listener = this.onChange;
+			items = rebuild();
+		}
+		notify(listener, items);
+	}
+
+	/**
+	 * Replaces the content confirmed by the server with a cart downloaded with
+	 * {@code display_cart}. While some changes are waiting for their batch, the
+	 * cart is only used if it has never been downloaded: the batch returns the
+	 * content anyway, with its version.
+	 * 
+	 * @param cart the content of the cart. [ArrayList of Wine]
+	 */
+	public void load(ArrayList<Wine> cart) {
+		Consumer<ArrayList<Wine>> listener;
+		ArrayList<Wine> items;
+		synchronized (this) {
+			if (this.confirmed != null && !this.pending.isEmpty()) {
+				return;
+			}
+			this.confirmed = toMap(cart);
+			listener = this.onChange;
+			items = rebuild();
+		}
+		notify(listener, items);
+	}
+
+	/**
+	 * Downloads the cart in background, replacing the confirmed content.
+	 * 
+	 * @return the future completed once the cart has been downloaded.
+	 *         [CompletableFuture of ArrayList of Wine]
+	 */
+	public CompletableFuture<ArrayList<Wine>> refresh() {
+		String[] toBeSent = { "display_cart", this.email };
+		return this.client.<ArrayList<Wine>>request(toBeSent).thenApply(cart -> {
+			load(cart);
+			return getItems();
+		});
+	}
+
+	/**
+	 * Sends the changes still queued in the {@code CartBatcher} at once.
+	 * 
+	 * @return the future result of the batch, {@code null} if nothing has been
+	 *         sent yet; it fails if the batch could not be sent.
+	 *         [CompletableFuture of CartBatchResult]
+	 */
+	public CompletableFuture<CartBatchResult> flushAsync() {
+		return this.batcher.flush().thenApply(result -> {
+			if (result != null) {
+				// the batcher may not have notified the model yet
+				reconcile(result);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Sends the changes still queued in the {@code CartBatcher} and waits for
+	 * their batch, so that the server knows every change made so far.
+	 * 
+	 * @return the result of the batch, {@code null} if nothing has been sent
+	 *         yet. [CartBatchResult]
+	 * @throws IOException if the batch could not be sent.
+	 */
+	public CartBatchResult flush() throws IOException {
+		try {
+			return flushAsync().join();
+		} catch (CompletionException e) {
+			Throwable cause = AsyncClient.unwrap(e);
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("The cart could not be sent", cause);
+		}
+	}
+
+	/**
+	 * Applies a change to the local state.
+	 * 
+	 * @param change the change. [Change]
+	 * @return the change. [Change]
+	 */
+	private Change apply(Change change) {
+		Consumer<ArrayList<Wine>> listener;
+		ArrayList<Wine> items;
+		synchronized (this) {
+			this.pending.add(change);
+			listener = this.onChange;
+			items = rebuild();
+		}
+		notify(listener, items);
+		return change;
+	}
+
+	/**
+	 * Follows the result of the line of a change. A rejected change is rolled
+	 * back at once; an accepted one waits for the result of its batch, since
+	 * the batch fails if any of its lines does.
+	 * 
+	 * @param change the change. [Change]
+	 * @param line   the future result of the line. [CompletableFuture of
+	 *               Integer]
+	 * @return the future result of the change. [CompletableFuture of Integer]
+	 */
+	private CompletableFuture<Integer> track(Change change, CompletableFuture<Integer> line) {
+		line.whenComplete((result, error) -> {
+			if (error == null && result == CartBatchResult.OK) {
+				synchronized (this) {
+					change.settled = true;
+				}
+				return;
+			}
+
+			Consumer<ArrayList<Wine>> listener;
+			ArrayList<Wine> items;
+			synchronized (this) {
+				this.pending.remove(change);
+				listener = this.onChange;
+				items = rebuild();
+			}
+			notify(listener, items);
+			if (error != null) {
+				change.outcome.completeExceptionally(error);
+			} else {
+				change.outcome.complete(result);
+			}
+		});
+		return change.outcome;
+	}
+
+	/**
+	 * Reconciles the local state with the result of a batch: the content of the
+	 * cart is replaced, unless a newer version is already known, and the changes
+	 * of the batch are not pending anymore. If the batch has not been applied,
+	 * its changes are rolled back.
+	 * 
+	 * @param result the result of the batch. [CartBatchResult]
+	 */
+	private void reconcile(CartBatchResult result) {
+		ArrayList<Change> settled = new ArrayList<Change>();
+		Consumer<ArrayList<Wine>> listener;
+		ArrayList<Wine> items;
+		synchronized (this) {
+			if (result.getVersion() >= this.version) {
+				this.confirmed = toMap(result.getCart());
+				this.version = result.getVersion();
+			}
+			for (Change change : this.pending) {
+				if (change.settled) {
+					settled.add(change);
+				}
+			}
+			this.pending.removeAll(settled);
+			listener = this.onChange;
+			items = rebuild();
+		}
+		notify(listener, items);
+
+		int outcome = result.isApplied() ? CartBatchResult.OK : CartBatchResult.ROLLED_BACK;
+		for (Change change : settled) {
+			change.outcome.complete(outcome);
+		}
+	}
+
+	/**
+	 * Rebuilds the displayed content: the confirmed one with the pending
+	 * changes replayed on top.
+	 * 
+	 * @return the displayed content. [ArrayList of Wine]
+	 */
+	private ArrayList<Wine> rebuild() {
+		LinkedHashMap<Integer, Wine> cart = this.confirmed != null ? new LinkedHashMap<Integer, Wine>(this.confirmed)
+				: new LinkedHashMap<Integer, Wine>();
+		for (Change change : this.pending) {
+			replay(cart, change);
+		}
+		this.items = new ArrayList<Wine>(cart.values());
+		return this.items;
+	}
+
+	/**
+	 * Applies a change to a cart, as the server does.
+	 * 
+	 * @param cart   the cart, by product id. [LinkedHashMap of Integer and Wine]
+	 * @param change the change. [Change]
+	 */
+	private static void replay(LinkedHashMap<Integer, Wine> cart, Change change) {
+		int productId = change.wine.getProductId();
+		Wine current = cart.get(productId);
+		int quantity;
+		if (CartBatcher.ADD.equals(change.op)) {
+			quantity = (current != null ? current.getQuantity() : 0) + change.quantity;
+		} else if (CartBatcher.SET.equals(change.op)) {
+			quantity = change.quantity;
+		} else {
+			quantity = 0;
+		}
+
+		if (quantity <= 0) {
+			cart.remove(productId);
+		} else {
+			Wine wine = current != null ? current : change.wine;
+			cart.put(productId, new Wine(productId, wine.getName(), wine.getProducer(), wine.getYear(),
+					wine.getNotes(), quantity, wine.getGrapewines()));
+		}
+	}
+
+	/**
+	 * Indexes the wines of a cart by product id, keeping their order.
+	 * 
+	 * @param cart the wines. [ArrayList of Wine]
+	 * @return the wines by product id. [LinkedHashMap of Integer and Wine]
+	 */
+	private static LinkedHashMap<Integer, Wine> toMap(ArrayList<Wine> cart) {
+		LinkedHashMap<Integer, Wine> map = new LinkedHashMap<Integer, Wine>();
+		for (Wine wine : cart) {
+			map.put(wine.getProductId(), wine);
+		}
+		return map;
+	}
+
+	/**
+	 * Notifies the listener on the JavaFX application thread, at once if
+	 * already on it.
+	 * 
+	 * @param listener the listener, may be {@code null}. [Consumer of ArrayList
+	 *                 of Wine]
+	 * @param items    the content of the cart. [ArrayList of Wine]
+	 */
+	private static void notify(Consumer<ArrayList<Wine>> listener, ArrayList<Wine> items) {
+		if (listener == null) {
+			return;
+		}
+		ArrayList<Wine> copy = new ArrayList<Wine>(items);
+		if (Platform.isFxApplicationThread()) {
+			listener.accept(copy);
+		} else {
+			CompletableFuture.runAsync(() -> listener.accept(copy), AsyncClient.FX);
+		}
+	}
+
+	/**
+	 * A change made locally and not confirmed yet.
+	 */
+	private static class Change {
+
+		private final String op;
+		private final Wine wine;
+		private final int quantity;
+		private final CompletableFuture<Integer> outcome = new CompletableFuture<Integer>();
+		// the line has been accepted, waiting for the result of its batch
+		private boolean settled;
+
+		/**
+		 * {@code Change} class constructor.
+		 * 
+		 * @param op       the operation, one of {@code CartBatcher.ADD},
+		 *                 {@code REMOVE} and {@code SET}. [String]
+		 * @param wine     the wine. [Wine]
+		 * @param quantity the number of bottles. [int]
+		 */
+		Change(String op, Wine wine, int quantity) {
+			this.op = op;
+			this.wine = wine;
+			this.quantity = quantity;
+		}
+	}
+}
@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Client side cache of the catalog, shared by every visit of the user
+ * homepage. The first visit downloads the catalog page by page; the next ones
+ * display the cached catalog immediately and, meanwhile, ask the server only
+ * the wines inserted, updated or restocked since the cached version, with the
+ * {@code get_wines_since} command (stale-while-revalidate).
+ * 
+ * Once the catalog is displayed, {@code subscribe} keeps it up to date while it
+ * is on screen: the server pushes the changes and the rows are replaced in
+ * place, without polling. The wines whose stock grew are reported to the
+ * {@code onRestock} callback.
+ * 
+ * Right after the login the catalog is not requested alone: {@code prefetch}
+ * sends {@code bootstrap_user}, which returns the catalog together with the
+ * rest of the homepage, and {@code getHomepage} uses that response.
+ * 
+ * The hit rate and the bytes that have not been downloaded again thanks to the
+ * cache are exported with the {@code ClientMetrics}. The bytes are measured
+ * with the binary encoding of {@code WireCodec}.
+ * 
+ * @see PagedWineList
+ * @see CatalogDelta
+ * @see CatalogSubscription
+ * @see HomepageBootstrap
+ */
+public class CatalogCache {
+
+	private static CatalogCache shared;
+
+	private PagedWineList catalog;
+	private CompletableFuture<Object> revalidation;
+	// bootstrap_user sent at the login, with the user and page size it was sent for
+	private CompletableFuture<Object> prefetched;
+	private String prefetchedEmail;
+	private int prefetchedPageSize;
+	private CatalogSubscription subscription;
+	// version of the catalog, readable from the thread of the subscription
+	private volatile int version;
+	private Consumer<ArrayList<Wine>> onRestock;
+	private final WireCodec codec = new WireCodec();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	/**
+	 * Gets the cache shared by all the controllers, creating it on first use.
+	 * 
+	 * @return the shared cache. [CatalogCache]
+	 */
+	public static synchronized CatalogCache getShared() {
+		if (shared == null) {
+			shared = new CatalogCache();
+		}
+		return shared;
+	}
+
+	/**
+	 * Gets the catalog. On a miss the first page is downloaded, blocking the
+	 * caller; on a hit the cached catalog is returned at once and brought up to
+	 * date in background.
+	 * 
+	 * @param pageSize the number of wines per page. [int]
+	 * @param maxPages the maximum number of pages kept in memory. [int]
+	 * @return the catalog, with its first page in memory. [PagedWineList]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public synchronized PagedWineList getCatalog(int pageSize, int maxPages)
+			throws IOException, ClassNotFoundException {
+		if (this.catalog != null && this.catalog.getPageSize() == pageSize && this.catalog.getFirstPage() != null) {
+			this.hits.incrementAndGet();
+			if (this.subscription == null || !this.subscription.isConnected()) {
+				revalidate();
+			}
+			return this.catalog;
+		}
+
+		this.misses.incrementAndGet();
+		PagedWineList catalog = new PagedWineList(pageSize, maxPages);
+		catalog.loadFirstPage();
+		this.catalog = catalog;
+		this.version = catalog.getVersion();
+		return catalog;
+	}
+
+	/**
+	 * Gets the cached catalog, as it is.
+	 * 
+	 * @return the catalog, {@code null} if it has never been downloaded.
+	 *         [PagedWineList]
+	 */
+	public synchronized PagedWineList getCachedCatalog() {
+		return this.catalog;
+	}
+
+	/**
+	 * Sends {@code bootstrap_user} in background, so that the data of the
+	 * homepage are on their way while the homepage is being displayed. Called
+	 * as soon as the user has logged in.
+	 * 
+	 * @param user           the logged user. [User]
+	 * @param pageSize       the number of wines per page. [int]
+	 * @param ordersPageSize the number of orders per page. [int]
+	 * @see HomepageBootstrap
+	 */
+	public synchronized void prefetch(User user, int pageSize, int ordersPageSize) {
+		this.prefetchedEmail = emailOf(user);
+		this.prefetchedPageSize = pageSize;
+		String[] toBeSent = bootstrapRequest(this.prefetchedEmail, pageSize, ordersPageSize);
+		this.prefetched = AsyncClient.getShared().request(toBeSent);
+	}
+
+	/**
+	 * Gets the data of the homepage of a user with a single request, blocking
+	 * the caller: the response of {@code prefetch} if it has been sent for the
+	 * same user, otherwise a new {@code bootstrap_user}. The cached catalog is
+	 * replaced by the first page received, or brought up to date with the
+	 * changes on the JavaFX application thread, reporting the restocked wines
+	 * to the {@code onRestock} callback. The catalog is then returned by
+	 * {@code getCachedCatalog}. The cache is not locked while waiting for the
+	 * response, so this method can run in background while the JavaFX
+	 * application thread uses the cache.
+	 * 
+	 * @param user           the logged user. [User]
+	 * @param pageSize       the number of wines per page. [int]
+	 * @param maxPages       the maximum number of pages kept in memory. [int]
+	 * @param ordersPageSize the number of orders per page. [int]
+	 * @return the data of the homepage, {@code null} if the server doesn't know
+	 *         {@code bootstrap_user}: then the catalog must be requested with
+	 *         {@code getCatalog}. [HomepageBootstrap]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public HomepageBootstrap getHomepage(User user, int pageSize, int maxPages, int ordersPageSize)
+			throws IOException, ClassNotFoundException {
+		Object response = await(requestHomepage(user, pageSize, ordersPageSize));
+		return homepageReceived(response, pageSize, maxPages);
+	}
+
+	/**
+	 * Takes the response of {@code prefetch} if it has been sent for the same
+	 * user, otherwise sends a new {@code bootstrap_user} in background.
+	 * 
+	 * @param user           the logged user. [User]
+	 * @param pageSize       the number of wines per page. [int]
+	 * @param ordersPageSize the number of orders per page. [int]
+	 * @return the future response. [CompletableFuture of Object]
+	 */
+	private synchronized CompletableFuture<Object> requestHomepage(User user, int pageSize, int ordersPageSize) {
+		String email = emailOf(user);
+		CompletableFuture<Object> prefetched = this.prefetched;
+		this.prefetched = null;
+
+		if (prefetched != null && email.equals(this.prefetchedEmail) && pageSize == this.prefetchedPageSize) {
+			return prefetched;
+		}
+		return AsyncClient.getShared().request(bootstrapRequest(email, pageSize, ordersPageSize));
+	}
+
+	/**
+	 * Applies the response of {@code bootstrap_user} to the cached catalog.
+	 * 
+	 * @param response the response. [Object]
+	 * @param pageSize the number of wines per page. [int]
+	 * @param maxPages the maximum number of pages kept in memory. [int]
+	 * @return the data of the homepage, {@code null} if the server doesn't know
+	 *         {@code bootstrap_user}. [HomepageBootstrap]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	private synchronized HomepageBootstrap homepageReceived(Object response, int pageSize, int maxPages)
+			throws IOException, ClassNotFoundException {
+		if (!(response instanceof HomepageBootstrap)) {
+			// the server doesn't know the command
+			return null;
+		}
+
+		HomepageBootstrap bootstrap = (HomepageBootstrap) response;
+		PagedWineList cached = this.catalog;
+		if (bootstrap.getFirstPage() != null) {
+			this.misses.incrementAndGet();
+			PagedWineList catalog = new PagedWineList(pageSize, maxPages);
+			catalog.loadFirstPage(bootstrap.getFirstPage());
+			this.catalog = catalog;
+			this.version = catalog.getVersion();
+		} else if (cached != null && cached.getPageSize() == pageSize && cached.getFirstPage() != null) {
+			this.hits.incrementAndGet();
+			CompletableFuture.completedFuture(bootstrap.getChanges())
+					.thenAcceptAsync(delta -> revalidated(cached, delta), AsyncClient.FX);
+		} else {
+			// the cache has been replaced after the request was sent, or its first
+			// page has been invalidated: the changes can't rebuild it
+			getCatalog(pageSize, maxPages);
+		}
+		return bootstrap;
+	}
+
+	/**
+	 * Builds the {@code bootstrap_user} request, with the version of the cached
+	 * catalog if it has the same page size.
+	 * 
+	 * @param email          the email of the user, empty for a guest. [String]
+	 * @param pageSize       the number of wines per page. [int]
+	 * @param ordersPageSize the number of orders per page. [int]
+	 * @return the request. [String[]]
+	 */
+	private String[] bootstrapRequest(String email, int pageSize, int ordersPageSize) {
+		int since = this.catalog != null && this.catalog.getPageSize() == pageSize ? this.catalog.getVersion() : -1;
+		String[] toBeSent = { "bootstrap_user", email, String.valueOf(since), String.valueOf(pageSize),
+				String.valueOf(ordersPageSize) };
+		return toBeSent;
+	}
+
+	/**
+	 * Gets the email of a user, empty for a guest.
+	 * 
+	 * @param user the user. [User]
+	 * @return the email, never {@code null}. [String]
+	 */
+	private static String emailOf(User user) {
+		return user == null || user.getEmail() == null ? "" : user.getEmail();
+	}
+
+	/**
+	 * Waits for a request sent in background.
+	 * 
+	 * @param future the future response. [CompletableFuture]
+	 * @return the response. [Object]
+	 * @throws IOException            if the server can't be reached or the
+	 *                                thread is interrupted.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	private static Object await(CompletableFuture<Object> future) throws IOException, ClassNotFoundException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the homepage", e);
+		} catch (ExecutionException e) {
+			Throwable cause = AsyncClient.unwrap(e.getCause());
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof ClassNotFoundException) {
+				throw (ClassNotFoundException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Subscribes to the changes of the catalog pushed by the server, if not
+	 * already subscribed. The changes are applied on the JavaFX application
+	 * thread.
+	 */
+	public synchronized void subscribe() {
+		if (this.catalog == null || (this.subscription != null && !this.subscription.isClosed())) {
+			return;
+		}
+
+		this.subscription = new CatalogSubscription(Client.getShared().getPool(), () -> this.version,
+				delta -> Platform.runLater(() -> apply(delta)));
+		this.subscription.start();
+	}
+
+	/**
+	 * Ends the subscription to the changes of the catalog.
+	 */
+	public synchronized void close() {
+		if (this.subscription != null) {
+			this.subscription.close();
+			this.subscription = null;
+		}
+	}
+
+	/**
+	 * Gets a wine of the cached catalog, if its page is in memory. Called on the
+	 * JavaFX application thread.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @return the wine, {@code null} if it is not in memory. [Wine]
+	 */
+	public Wine getCached(int productId) {
+		PagedWineList catalog;
+		synchronized (this) {
+			catalog = this.catalog;
+		}
+		return catalog == null ? null : catalog.getCached(productId);
+	}
+
+	/**
+	 * Sets the callback that receives the wines whose stock grew, for example
+	 * to notify the user. It is called on the JavaFX application thread.
+	 * 
+	 * @param onRestock the callback, {@code null} to remove it. [Consumer of
+	 *                  ArrayList of Wine]
+	 */
+	public synchronized void setOnRestock(Consumer<ArrayList<Wine>> onRestock) {
+		this.onRestock = onRestock;
+	}
+
+	/**
+	 * Asks the server the changes since the cached version and applies them on
+	 * the JavaFX application thread. If a request is already in flight, no new
+	 * one is sent. If the server can't compute the changes, the cached pages are
+	 * dropped and downloaded again while the user scrolls.
+	 */
+	private void revalidate() {
+		if (this.revalidation != null && !this.revalidation.isDone()) {
+			return;
+		}
+
+		PagedWineList catalog = this.catalog;
+		int version = catalog.getVersion();
+		String[] toBeSent = { "get_wines_since", String.valueOf(version) };
+
+		this.revalidation = AsyncClient.getShared().request(toBeSent);
+		this.revalidation.whenCompleteAsync((response, error) -> {
+			if (error != null) {
+				// keeps serving the cached catalog, the next visit tries again
+				ClientMetrics.getShared().recordFailure("catalog revalidation");
+				return;
+			}
+
+			CatalogDelta delta;
+			if (response instanceof CatalogDelta) {
+				delta = (CatalogDelta) response;
+			} else {
+				// the server doesn't know the command
+				delta = new CatalogDelta(version, version, new ArrayList<Wine>(), catalog.size(), false);
+			}
+
+			revalidated(catalog, delta);
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Applies the changes received for the cached catalog, counting the bytes
+	 * that have not been downloaded again. Called on the JavaFX application
+	 * thread.
+	 * 
+	 * @param catalog the cached catalog. [PagedWineList]
+	 * @param delta   the changes since its version. [CatalogDelta]
+	 */
+	private void revalidated(PagedWineList catalog, CatalogDelta delta) {
+		if (delta.isComplete()) {
+			long saved = 0;
+			for (ArrayList<Wine> page : catalog.getCachedPages()) {
+				saved += sizeOf(page);
+			}
+			this.bytesSaved.addAndGet(Math.max(0, saved - sizeOf(delta)));
+		}
+		apply(delta);
+	}
+
+	/**
+	 * Applies the changes to the cached catalog and reports the wines whose
+	 * stock grew. Only the wines in memory are compared: the others have not
+	 * been seen by the user. Called on the JavaFX application thread.
+	 * 
+	 * @param delta the changes. [CatalogDelta]
+	 */
+	private void apply(CatalogDelta delta) {
+		PagedWineList catalog;
+		Consumer<ArrayList<Wine>> onRestock;
+		synchronized (this) {
+			catalog = this.catalog;
+			onRestock = this.onRestock;
+		}
+		if (catalog == null || delta.getVersion() < catalog.getVersion()
+				|| (delta.getVersion() == catalog.getVersion() && delta.isComplete() && delta.getWines().isEmpty())) {
+			// nothing new, or older than a delta already applied
+			return;
+		}
+
+		ArrayList<Wine> restocked = new ArrayList<Wine>();
+		for (Wine wine : delta.getWines()) {
+			Wine old = catalog.getCached(wine.getProductId());
+			if (old != null && wine.getQuantity() > old.getQuantity()) {
+				restocked.add(wine);
+			}
+		}
+
+		catalog.apply(delta);
+		this.version = catalog.getVersion();
+		if (onRestock != null && !restocked.isEmpty()) {
+			onRestock.accept(restocked);
+		}
+	}
+
+	/**
+	 * Measures the binary encoding of {@code value}.
+	 * 
+	 * @param value the object to measure. [Object]
+	 * @return the number of bytes. [long]
+	 */
+	private long sizeOf(Object value) {
+		synchronized (this.codec) {
+			try {
+				this.codec.reset();
+				this.codec.encode(value);
+				return this.codec.size();
+			} catch (IOException e) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of visits served by the cache.
+	 * 
+	 * @return the number of hits. [long]
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of visits that downloaded the catalog.
+	 * 
+	 * @return the number of misses. [long]
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets the ratio between hits and visits.
+	 * 
+	 * @return the hit rate, from 0 to 1. [double]
+	 */
+	public double getHitRate() {
+		long hits = this.hits.get();
+		long total = hits + this.misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Gets the bytes that have not been downloaded again thanks to the cache,
+	 * net of the deltas.
+	 * 
+	 * @return the bytes saved. [long]
+	 */
+	public long getBytesSaved() {
+		return this.bytesSaved.get();
+	}
+}
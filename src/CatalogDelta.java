@@ -0,0 +1,93 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Abstraction of the changes of the catalog since a given version, returned by
+ * the {@code get_wines_since} command. The server increments the version of
+ * the catalog every time a wine is inserted, updated or restocked: the delta
+ * contains the current state of every wine changed after the version known by
+ * the client, sorted by product id.
+ * 
+ * If the server can't compute the changes, for example because the version
+ * known by the client is too old, the delta is not {@code complete} and the
+ * client has to download the catalog again.
+ * 
+ * @see CatalogCache
+ * @see WinePage
+ */
+public class CatalogDelta implements Serializable {
+
+	private static final long serialVersionUID = 2935517201876384101L;
+
+	private int fromVersion;
+	private int version;
+	private ArrayList<Wine> wines;
+	private int total;
+	private boolean complete;
+
+	/**
+	 * {@code CatalogDelta} class constructor.
+	 * 
+	 * @param fromVersion the version known by the client. [int]
+	 * @param version     the current version of the catalog. [int]
+	 * @param wines       the wines changed after {@code fromVersion}. [ArrayList
+	 *                    of Wine]
+	 * @param total       the number of wines in the whole catalog. [int]
+	 * @param complete    true if {@code wines} contains all the changes, false if
+	 *                    the catalog has to be downloaded again. [boolean]
+	 */
+	public CatalogDelta(final int fromVersion, final int version, final ArrayList<Wine> wines, final int total,
+			final boolean complete) {
+		this.fromVersion = fromVersion;
+		this.version = version;
+		this.wines = wines;
+		this.total = total;
+		this.complete = complete;
+	}
+
+	/**
+	 * Gets the version the changes start from.
+	 * 
+	 * @return the version known by the client. [int]
+	 */
+	public int getFromVersion() {
+		return this.fromVersion;
+	}
+
+	/**
+	 * Gets the version of the catalog once the changes are applied.
+	 * 
+	 * @return the current version of the catalog. [int]
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the wines inserted, updated or restocked after {@code fromVersion}.
+	 * 
+	 * @return the changed wines. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> getWines() {
+		return this.wines;
+	}
+
+	/**
+	 * Gets the number of wines in the whole catalog.
+	 * 
+	 * @return the size of the catalog. [int]
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Checks if the delta contains all the changes.
+	 * 
+	 * @return true if the changes can be applied, false if the catalog has to be
+	 *         downloaded again. [Boolean]
+	 */
+	public boolean isComplete() {
+		return this.complete;
+	}
+}
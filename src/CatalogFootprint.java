@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+
+/**
+ * Measures the heap used by the whole catalog on the client, kept as an
+ * {@code ArrayList} of {@code Wine} and in a {@code CatalogStore}. The wines
+ * are downloaded from an in-process {@code ServerStore} one page at a time and
+ * decoded with {@code WireCodec}, as the client does, so that the strings are
+ * shared only inside a page.
+ * 
+ * Usage: {@code java -Xmx2g CatalogFootprint [wines]}, 1000000 wines by
+ * default.
+ * 
+ * @see CatalogStore
+ */
+public class CatalogFootprint {
+
+	private static final int PAGE_SIZE = ServerStore.MAX_PAGE_SIZE;
+
+	/**
+	 * Builds the catalog in both representations and prints their size.
+	 * 
+	 * @param args the number of wines, optional. [String[]]
+	 * @throws IOException            if a page can't be encoded.
+	 * @throws ClassNotFoundException if a page can't be decoded.
+	 */
+	public static void main(String[] args) throws IOException, ClassNotFoundException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		ServerStore server = ServerStore.withSampleData(count);
+		WireCodec codec = new WireCodec();
+
+		long base = usedHeap();
+		ArrayList<Wine> list = new ArrayList<Wine>(count);
+		for (int cursor = WinePage.FIRST; cursor != WinePage.END;) {
+			WinePage page = download(server, codec, cursor);
+			list.addAll(page.getWines());
+			cursor = page.getNextCursor();
+		}
+		long listBytes = usedHeap() - base;
+
+		base = usedHeap();
+		CatalogStore store = new CatalogStore(count);
+		for (int cursor = WinePage.FIRST; cursor != WinePage.END;) {
+			WinePage page = download(server, codec, cursor);
+			store.addAll(page.getWines());
+			cursor = page.getNextCursor();
+		}
+		store.trimToSize();
+		long storeBytes = usedHeap() - base;
+
+		System.out.format("%d wines\n", count);
+		System.out.format("ArrayList<Wine>: %,d bytes, %.1f bytes per wine\n", listBytes,
+				(double) listBytes / list.size());
+		System.out.format("CatalogStore:    %,d bytes, %.1f bytes per wine\n", storeBytes,
+				(double) storeBytes / store.size());
+		System.out.format("CatalogStore uses %.1f%% of the heap of ArrayList<Wine>\n", 100.0 * storeBytes / listBytes);
+	}
+
+	/**
+	 * Downloads a page as the client would: encoded by the server and decoded
+	 * in new objects.
+	 * 
+	 * @param server the store of the server. [ServerStore]
+	 * @param codec  the codec. [WireCodec]
+	 * @param cursor the cursor of the page. [int]
+	 * @return the decoded page. [WinePage]
+	 * @throws IOException            if the page can't be encoded.
+	 * @throws ClassNotFoundException if the page can't be decoded.
+	 */
+	private static WinePage download(ServerStore server, WireCodec codec, int cursor)
+			throws IOException, ClassNotFoundException {
+		codec.reset();
+		byte tag = codec.encode(server.getWinesPage(cursor, PAGE_SIZE));
+		return (WinePage) codec.decode(tag, codec.buffer(), 0, codec.size());
+	}
+
+	/**
+	 * Measures the heap in use after a few garbage collections.
+	 * 
+	 * @return the bytes in use. [long]
+	 */
+	private static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
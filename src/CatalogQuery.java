@@ -0,0 +1,308 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Filters and sorts the catalog in memory, without asking the server. The
+ * wines are filtered with the same rules of the {@code search} command, plus
+ * the name, the producer, the grapes and a range of years; the result can be
+ * sorted on any column of the table.
+ * 
+ * The order of the catalog on each column is computed once, the first time
+ * the column is sorted, as a permutation of the positions of the wines. Every
+ * query then walks the permutation of the sorted column, keeping the wines
+ * that match: filtering and sorting take O(n), whatever the column and the
+ * direction. The words of the wines are also extracted once, on the first
+ * query with a text.
+ * 
+ * The query is built on a copy of the catalog and is never changed: a new one
+ * is built when the catalog changes.
+ * 
+ * @see PagedWineList#snapshot()
+ * @see WineSearchIndex
+ */
+public class CatalogQuery {
+
+	/**
+	 * Sorts on the name.
+	 */
+	public static final int NAME = 0;
+
+	/**
+	 * Sorts on the year.
+	 */
+	public static final int YEAR = 1;
+
+	/**
+	 * Sorts on the producer.
+	 */
+	public static final int PRODUCER = 2;
+
+	/**
+	 * Sorts on the grapes.
+	 */
+	public static final int GRAPES = 3;
+
+	/**
+	 * Sorts on the notes.
+	 */
+	public static final int NOTES = 4;
+
+	/**
+	 * Sorts on the quantity.
+	 */
+	public static final int QUANTITY = 5;
+
+	/**
+	 * Keeps the order of the catalog.
+	 */
+	public static final int UNSORTED = -1;
+
+	private static final int COLUMNS = 6;
+
+	private final ArrayList<Wine> wines;
+	private final int version;
+	// permutations of the positions, by column, computed on first use
+	private final int[][] orders = new int[COLUMNS][];
+	private String[][] terms;
+
+	/**
+	 * {@code CatalogQuery} class constructor.
+	 * 
+	 * @param wines   the whole catalog, in catalog order. [ArrayList of Wine]
+	 * @param version the version of the catalog. [int]
+	 */
+	public CatalogQuery(ArrayList<Wine> wines, int version) {
+		this.wines = wines;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the version of the catalog the query has been built on.
+	 * 
+	 * @return the version. [int]
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the number of wines of the catalog.
+	 * 
+	 * @return the number of wines. [int]
+	 */
+	public int size() {
+		return this.wines.size();
+	}
+
+	/**
+	 * Finds the wines matching {@code filter}, sorted on {@code column}.
+	 * 
+	 * @param filter    the filter, {@code null} to keep every wine. [Filter]
+	 * @param column    the column, one of the constants of this class, or
+	 *                  {@code UNSORTED}. [int]
+	 * @param ascending true to sort in ascending order, else false. [boolean]
+	 * @return the matching wines. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> query(Filter filter, int column, boolean ascending) {
+		boolean[] matching = filter != null ? filter.apply(this) : null;
+		int[] order = column != UNSORTED ? getOrder(column) : null;
+		int size = this.wines.size();
+
+		ArrayList<Wine> result = new ArrayList<Wine>();
+		for (int i = 0; i < size; i++) {
+			int position = ascending ? i : size - 1 - i;
+			if (order != null) {
+				position = order[position];
+			}
+			if (matching == null || matching[position]) {
+				result.add(this.wines.get(position));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the positions of the wines sorted on a column, computing them on
+	 * first use. Wines with the same value keep the order of the catalog.
+	 * 
+	 * @param column the column, one of the constants of this class. [int]
+	 * @return the positions, in ascending order of the column. [int[]]
+	 */
+	public synchronized int[] getOrder(int column) {
+		if (this.orders[column] == null) {
+			Comparator<Wine> comparator = comparator(column);
+			Integer[] positions = new Integer[this.wines.size()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = i;
+			}
+			// the sort is stable, the ties stay in catalog order
+			Arrays.sort(positions, (a, b) -> comparator.compare(this.wines.get(a), this.wines.get(b)));
+
+			int[] order = new int[positions.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = positions[i];
+			}
+			this.orders[column] = order;
+		}
+		return this.orders[column];
+	}
+
+	/**
+	 * Gets the words of every wine, extracting them on first use.
+	 * 
+	 * @return the words of each wine, by position. [String[][]]
+	 */
+	private synchronized String[][] getTerms() {
+		if (this.terms == null) {
+			String[][] terms = new String[this.wines.size()][];
+			for (int i = 0; i < terms.length; i++) {
+				terms[i] = WineSearchIndex.terms(this.wines.get(i));
+			}
+			this.terms = terms;
+		}
+		return this.terms;
+	}
+
+	/**
+	 * Gets the comparator of a column, the same order of the TableView.
+	 * 
+	 * @param column the column, one of the constants of this class. [int]
+	 * @return the comparator. [Comparator of Wine]
+	 */
+	private static Comparator<Wine> comparator(int column) {
+		switch (column) {
+			case NAME:
+				return Comparator.comparing(Wine::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+			case YEAR:
+				return Comparator.comparingInt(Wine::getYear);
+			case PRODUCER:
+				return Comparator.comparing(Wine::getProducer, Comparator.nullsFirst(Comparator.naturalOrder()));
+			case GRAPES:
+				return Comparator.comparing(Wine::getGrapewines, Comparator.nullsFirst(Comparator.naturalOrder()));
+			case NOTES:
+				return Comparator.comparing(Wine::getNotes, Comparator.nullsFirst(Comparator.naturalOrder()));
+			case QUANTITY:
+				return Comparator.comparingInt(Wine::getQuantity);
+			default:
+				throw new IllegalArgumentException("Unknown column: " + column);
+		}
+	}
+
+	/**
+	 * Conditions on the wines of a query, all of which must be met.
+	 */
+	public static class Filter {
+
+		private final String[] prefixes;
+		private final String name;
+		private final String producer;
+		private final String grapes;
+		private final int fromYear;
+		private final int toYear;
+
+		/**
+		 * {@code Filter} class constructor.
+		 * 
+		 * @param text     the words to search, as the {@code search} command does,
+		 *                 {@code null} or empty for any. [String]
+		 * @param name     the text the name must contain, ignoring the case,
+		 *                 {@code null} or empty for any. [String]
+		 * @param producer the text the producer must contain, ignoring the case,
+		 *                 {@code null} or empty for any. [String]
+		 * @param grapes   the text the grapes must contain, ignoring the case,
+		 *                 {@code null} or empty for any. [String]
+		 * @param fromYear the first year, {@code WineSearchIndex.ANY_YEAR} for no
+		 *                 lower bound. [int]
+		 * @param toYear   the last year, {@code WineSearchIndex.ANY_YEAR} for no
+		 *                 upper bound. [int]
+		 */
+		public Filter(String text, String name, String producer, String grapes, int fromYear, int toYear) {
+			this.prefixes = WineSearchIndex.tokenize(text);
+			this.name = lowerCase(name);
+			this.producer = lowerCase(producer);
+			this.grapes = lowerCase(grapes);
+			this.fromYear = fromYear;
+			this.toYear = toYear;
+		}
+
+		/**
+		 * Creates the filter of the search boxes, with the same rules of the
+		 * {@code search} command.
+		 * 
+		 * @param text the text typed in the name box. [String]
+		 * @param year the year or range of years typed in the year box. [String]
+		 * @return the filter, {@code null} if the year is not valid. [Filter]
+		 */
+		public static Filter ofSearch(String text, String year) {
+			int[] years = WineSearchIndex.parseYears(year);
+			return years != null ? new Filter(text, null, null, null, years[0], years[1]) : null;
+		}
+
+		/**
+		 * Checks every wine of the catalog.
+		 * 
+		 * @param query the query on the catalog. [CatalogQuery]
+		 * @return true for the matching wines, by position. [boolean[]]
+		 */
+		private boolean[] apply(CatalogQuery query) {
+			String[][] terms = this.prefixes.length > 0 ? query.getTerms() : null;
+			int low = this.fromYear == WineSearchIndex.ANY_YEAR ? Integer.MIN_VALUE : this.fromYear;
+			int high = this.toYear == WineSearchIndex.ANY_YEAR ? Integer.MAX_VALUE : this.toYear;
+
+			boolean[] matching = new boolean[query.wines.size()];
+			for (int i = 0; i < matching.length; i++) {
+				Wine wine = query.wines.get(i);
+				matching[i] = wine.getYear() >= low && wine.getYear() <= high
+						&& (terms == null || matchesAll(terms[i])) && contains(wine.getName(), this.name)
+						&& contains(wine.getProducer(), this.producer) && contains(wine.getGrapewines(), this.grapes);
+			}
+			return matching;
+		}
+
+		/**
+		 * Checks if the words of a wine contain a word starting with each
+		 * prefix.
+		 * 
+		 * @param words the words of the wine. [String[]]
+		 * @return true if every prefix matches. [boolean]
+		 */
+		private boolean matchesAll(String[] words) {
+			for (String prefix : this.prefixes) {
+				boolean found = false;
+				for (String word : words) {
+					if (word.startsWith(prefix)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks if a value contains a text, ignoring the case.
+		 * 
+		 * @param value the value. [String]
+		 * @param text  the lowercase text, {@code null} for any. [String]
+		 * @return true if the value contains the text. [boolean]
+		 */
+		private static boolean contains(String value, String text) {
+			return text == null || (value != null && value.toLowerCase(Locale.ROOT).contains(text));
+		}
+
+		/**
+		 * Converts a condition to lowercase.
+		 * 
+		 * @param text the text. [String]
+		 * @return the lowercase text, {@code null} if it is empty. [String]
+		 */
+		private static String lowerCase(String text) {
+			return text == null || text.isBlank() ? null : text.trim().toLowerCase(Locale.ROOT);
+		}
+	}
+}
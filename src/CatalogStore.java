@@ -0,0 +1,379 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact storage of a part of the catalog, sorted by product id. The columns
+ * are kept in arrays instead of one {@code Wine} per row: product id, year and
+ * quantity as primitives, producer and grapes as codes of a
+ * {@code StringDictionary}, since few producers and blends repeat over the
+ * whole catalog. Stores can share their dictionaries, so that each value is
+ * kept once for all of them. Names and notes, different for every wine, are
+ * kept as UTF-8 bytes in a single array, without a {@code String} per row.
+ * 
+ * {@code get} returns a flyweight view of the row, which reads the arrays
+ * instead of copying them and is serialized as a plain {@code Wine}. The views
+ * are meant to be displayed in a TableView and thrown away: a view reads the
+ * current content of its row, so a row replaced by {@code set} changes its
+ * views too.
+ * 
+ * @see StringDictionary
+ * @see PagedWineList
+ */
+public class CatalogStore {
+
+	private final StringDictionary producers;
+	private final StringDictionary grapes;
+	private int size;
+	private int[] productIds;
+	private int[] years;
+	private int[] quantities;
+	private int[] producerCodes;
+	private int[] grapeCodes;
+	// start of the name and the notes of each row in text, prefixed by their length
+	private int[] nameOffsets;
+	private int[] notesOffsets;
+	private byte[] text;
+	private int textSize;
+
+	/**
+	 * {@code CatalogStore} class constructor, with its own dictionaries.
+	 * 
+	 * @param capacity the number of wines that can be added before the arrays
+	 *                 grow. [int]
+	 */
+	public CatalogStore(int capacity) {
+		this(new StringDictionary(), new StringDictionary(), capacity);
+	}
+
+	/**
+	 * {@code CatalogStore} class constructor, sharing the dictionaries.
+	 * 
+	 * @param producers the dictionary of the producers. [StringDictionary]
+	 * @param grapes    the dictionary of the grapes. [StringDictionary]
+	 * @param capacity  the number of wines that can be added before the arrays
+	 *                  grow. [int]
+	 */
+	public CatalogStore(StringDictionary producers, StringDictionary grapes, int capacity) {
+		this.producers = producers;
+		this.grapes = grapes;
+		this.productIds = new int[capacity];
+		this.years = new int[capacity];
+		this.quantities = new int[capacity];
+		this.producerCodes = new int[capacity];
+		this.grapeCodes = new int[capacity];
+		this.nameOffsets = new int[capacity];
+		this.notesOffsets = new int[capacity];
+		// names and notes are usually a few tens of characters
+		this.text = new byte[capacity * 48];
+	}
+
+	/**
+	 * Adds wines at the end of the store.
+	 * 
+	 * @param wines the wines, sorted by product id, all after the ones already
+	 *              stored. [Collection of Wine]
+	 */
+	public void addAll(Collection<Wine> wines) {
+		ensureCapacity(this.size + wines.size());
+		for (Wine wine : wines) {
+			add(wine);
+		}
+	}
+
+	/**
+	 * Adds a wine at the end of the store.
+	 * 
+	 * @param wine the wine, whose product id follows the ones already stored.
+	 *             [Wine]
+	 */
+	public void add(Wine wine) {
+		ensureCapacity(this.size + 1);
+		write(this.size++, wine);
+	}
+
+	/**
+	 * Replaces a row, for example with a restocked wine. The previous name and
+	 * notes stay in the store until it is dropped.
+	 * 
+	 * @param index the position of the row. [int]
+	 * @param wine  the new content of the row, with the same product id. [Wine]
+	 * @return a copy of the previous content of the row. [Wine]
+	 */
+	public Wine set(int index, Wine wine) {
+		Wine old = copyOf(index);
+		write(index, wine);
+		return old;
+	}
+
+	/**
+	 * Gets a flyweight view of a row.
+	 * 
+	 * @param index the position of the row. [int]
+	 * @return the view. [Wine]
+	 */
+	public Wine get(int index) {
+		checkIndex(index);
+		return new View(this, index);
+	}
+
+	/**
+	 * Gets a copy of a row, independent of the store.
+	 * 
+	 * @param index the position of the row. [int]
+	 * @return the wine. [Wine]
+	 */
+	public Wine copyOf(int index) {
+		checkIndex(index);
+		return new Wine(this.productIds[index], readText(this.nameOffsets[index]),
+				this.producers.decode(this.producerCodes[index]), this.years[index],
+				readText(this.notesOffsets[index]), this.quantities[index],
+				this.grapes.decode(this.grapeCodes[index]));
+	}
+
+	/**
+	 * Gets the views of all the rows.
+	 * 
+	 * @return the views, sorted by product id. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> toList() {
+		ArrayList<Wine> wines = new ArrayList<Wine>(this.size);
+		for (int i = 0; i < this.size; i++) {
+			wines.add(new View(this, i));
+		}
+		return wines;
+	}
+
+	/**
+	 * Gets the number of wines in the store.
+	 * 
+	 * @return the number of wines. [int]
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Finds a wine by its product id.
+	 * 
+	 * @param productId the product id. [int]
+	 * @return the position of the wine, -1 if it is missing. [int]
+	 */
+	public int indexOf(int productId) {
+		int index = Arrays.binarySearch(this.productIds, 0, this.size, productId);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * Shrinks the arrays to the number of wines, once the store is complete.
+	 */
+	public void trimToSize() {
+		if (this.productIds.length != this.size) {
+			resize(this.size);
+		}
+		if (this.text.length != this.textSize) {
+			this.text = Arrays.copyOf(this.text, this.textSize);
+		}
+	}
+
+	/**
+	 * Writes a wine in a row.
+	 * 
+	 * @param index the position of the row. [int]
+	 * @param wine  the wine. [Wine]
+	 */
+	private void write(int index, Wine wine) {
+		this.productIds[index] = wine.getProductId();
+		this.years[index] = wine.getYear();
+		this.quantities[index] = wine.getQuantity();
+		this.producerCodes[index] = this.producers.encode(wine.getProducer());
+		this.grapeCodes[index] = this.grapes.encode(wine.getGrapewines());
+		this.nameOffsets[index] = writeText(wine.getName());
+		this.notesOffsets[index] = writeText(wine.getNotes());
+	}
+
+	/**
+	 * Appends a string to the text, prefixed by its length in bytes plus one, 0
+	 * for {@code null}: one byte below 128, otherwise 7 bits per byte with the
+	 * highest bit set on all but the last one.
+	 * 
+	 * @param value the string, possibly {@code null}. [String]
+	 * @return the position of the string in the text. [int]
+	 */
+	private int writeText(String value) {
+		byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		if (this.textSize + bytes.length + 5 > this.text.length) {
+			this.text = Arrays.copyOf(this.text,
+					Math.max(this.textSize + bytes.length + 5, this.text.length + (this.text.length >> 1)));
+		}
+
+		int offset = this.textSize;
+		int length = value == null ? 0 : bytes.length + 1;
+		while (length >= 0x80) {
+			this.text[this.textSize++] = (byte) (length | 0x80);
+			length >>>= 7;
+		}
+		this.text[this.textSize++] = (byte) length;
+		System.arraycopy(bytes, 0, this.text, this.textSize, bytes.length);
+		this.textSize += bytes.length;
+		return offset;
+	}
+
+	/**
+	 * Reads a string written by {@code writeText}.
+	 * 
+	 * @param offset the position of the string in the text. [int]
+	 * @return the string, possibly {@code null}. [String]
+	 */
+	private String readText(int offset) {
+		byte[] text = this.text;
+		int length = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = text[offset++];
+			length |= (current & 0x7f) << shift;
+			shift += 7;
+		} while (current < 0);
+		return length == 0 ? null : new String(text, offset, length - 1, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Grows the arrays, by half of their length at least.
+	 * 
+	 * @param capacity the number of wines the arrays must hold. [int]
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > this.productIds.length) {
+			resize(Math.max(capacity, this.productIds.length + (this.productIds.length >> 1)));
+		}
+	}
+
+	/**
+	 * Copies the columns in arrays of a new length.
+	 * 
+	 * @param length the new length. [int]
+	 */
+	private void resize(int length) {
+		this.productIds = Arrays.copyOf(this.productIds, length);
+		this.years = Arrays.copyOf(this.years, length);
+		this.quantities = Arrays.copyOf(this.quantities, length);
+		this.producerCodes = Arrays.copyOf(this.producerCodes, length);
+		this.grapeCodes = Arrays.copyOf(this.grapeCodes, length);
+		this.nameOffsets = Arrays.copyOf(this.nameOffsets, length);
+		this.notesOffsets = Arrays.copyOf(this.notesOffsets, length);
+	}
+
+	/**
+	 * Checks that a row exists.
+	 * 
+	 * @param index the position of the row. [int]
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+	}
+
+	/**
+	 * Flyweight view of a row. It only holds the store and the position of the
+	 * row; when serialized, it is replaced by a copy of the row.
+	 */
+	private static class View extends Wine {
+
+		private static final long serialVersionUID = 1L;
+		private final transient CatalogStore store;
+		private final int index;
+
+		/**
+		 * {@code View} class constructor.
+		 * 
+		 * @param store the store. [CatalogStore]
+		 * @param index the position of the row. [int]
+		 */
+		View(CatalogStore store, int index) {
+			this.store = store;
+			this.index = index;
+		}
+
+		/**
+		 * Gets the name of the {@code Wine}.
+		 * 
+		 * @return the name of the {@code Wine}. [String]
+		 */
+		@Override
+		public String getName() {
+			return this.store.readText(this.store.nameOffsets[this.index]);
+		}
+
+		/**
+		 * Gets the producer of the {@code Wine}.
+		 * 
+		 * @return the producer of the {@code Wine}. [String]
+		 */
+		@Override
+		public String getProducer() {
+			return this.store.producers.decode(this.store.producerCodes[this.index]);
+		}
+
+		/**
+		 * Gets the year of production of the {@code Wine}.
+		 * 
+		 * @return the year of the {@code Wine}. [int]
+		 */
+		@Override
+		public int getYear() {
+			return this.store.years[this.index];
+		}
+
+		/**
+		 * Gets the notes of the {@code Wine}.
+		 * 
+		 * @return the notes of the {@code Wine}. [String]
+		 */
+		@Override
+		public String getNotes() {
+			return this.store.readText(this.store.notesOffsets[this.index]);
+		}
+
+		/**
+		 * Gets the quantity in stock of the {@code Wine}.
+		 * 
+		 * @return the quantity of the {@code Wine}. [int]
+		 */
+		@Override
+		public int getQuantity() {
+			return this.store.quantities[this.index];
+		}
+
+		/**
+		 * Gets the grapes of the {@code Wine}.
+		 * 
+		 * @return the grapes of the {@code Wine}. [String]
+		 */
+		@Override
+		public String getGrapewines() {
+			return this.store.grapes.decode(this.store.grapeCodes[this.index]);
+		}
+
+		/**
+		 * Gets the product id of the {@code Wine}.
+		 * 
+		 * @return the product id of the {@code Wine}. [int]
+		 */
+		@Override
+		public int getProductId() {
+			return this.store.productIds[this.index];
+		}
+
+		/**
+		 * Replaces the view with a copy of the row when serialized.
+		 * 
+		 * @return the copy. [Object]
+		 */
+		private Object writeReplace() {
+			return this.store.copyOf(this.index);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * Long-lived subscription to the changes of the catalog. A dedicated
+ * connection sends {@code subscribe_catalog} with the version of the catalog
+ * known by the client, then receives a {@code CatalogDelta} every time the
+ * server pushes the restocked, updated or new wines. If the connection drops,
+ * it is opened again after a growing delay and the subscription restarts from
+ * the version known at that moment, so no change is lost. A server that
+ * doesn't know the command ends the subscription: the clients keep asking the
+ * changes with {@code get_wines_since}. So does an older server that closes
+ * the connection instead of answering {@code subscribe_catalog}: retrying
+ * would open a connection every {@code MAX_RETRY} milliseconds forever.
+ * 
+ * @see Server
+ * @see CatalogCache
+ */
+public class CatalogSubscription implements Runnable {
+
+	private static final long MIN_RETRY = 1_000;
+	private static final long MAX_RETRY = 30_000;
+
+	private final ConnectionPool pool;
+	private final IntSupplier version;
+	private final Consumer<CatalogDelta> onDelta;
+	// guards the connection against a concurrent close
+	private final Object lock = new Object();
+	private volatile PooledConnection connection;
+	private volatile boolean connected;
+	private volatile boolean closed;
+
+	/**
+	 * {@code CatalogSubscription} class constructor. The subscription starts
+	 * with {@code start}.
+	 * 
+	 * @param pool    the pool of the server to subscribe to. [ConnectionPool]
+	 * @param version the version of the catalog known by the client, read at
+	 *                every (re)connection. [IntSupplier]
+	 * @param onDelta the callback receiving the changes, called on the thread of
+	 *                the subscription. [Consumer of CatalogDelta]
+	 */
+	public CatalogSubscription(ConnectionPool pool, IntSupplier version, Consumer<CatalogDelta> onDelta) {
+		this.pool = pool;
+		this.version = version;
+		this.onDelta = onDelta;
+	}
+
+	/**
+	 * Starts the subscription on a daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "catalog-subscription");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Receives the changes until {@code close} is called, reconnecting when the
+	 * connection drops.
+	 */
+	@Override
+	public void run() {
+		long retry = MIN_RETRY;
+		while (!this.closed) {
+			try {
+				PooledConnection connection = this.pool.openDedicated();
+				synchronized (this.lock) {
+					this.connection = connection;
+					if (this.closed) {
+						// closed while connecting, the connection is closed below
+						break;
+					}
+				}
+
+				String[] toBeSent = { Server.SUBSCRIBE, String.valueOf(this.version.getAsInt()) };
+				Object response;
+				try {
+					response = connection.request(toBeSent);
+				} catch (EOFException e) {
+					// the server closed the connection instead of answering
+					break;
+				}
+				if (!(response instanceof CatalogDelta)) {
+					// the server can't push the changes
+					break;
+				}
+
+				this.connected = true;
+				retry = MIN_RETRY;
+				while (!this.closed) {
+					this.onDelta.accept((CatalogDelta) response);
+					response = connection.receive(0);
+					if (!(response instanceof CatalogDelta)) {
+						throw new IOException("Unexpected push: " + response);
+					}
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				// the server went away, tries again later
+			} finally {
+				this.connected = false;
+				if (this.connection != null) {
+					this.connection.close();
+				}
+			}
+
+			try {
+				Thread.sleep(retry);
+			} catch (InterruptedException e) {
+				break;
+			}
+			retry = Math.min(retry * 2, MAX_RETRY);
+		}
+		this.closed = true;
+	}
+
+	/**
+	 * Checks if the changes are being received right now.
+	 * 
+	 * @return true if the subscription is connected, else false. [Boolean]
+	 */
+	public boolean isConnected() {
+		return this.connected;
+	}
+
+	/**
+	 * Checks if the subscription has ended, because it has been closed or the
+	 * server doesn't support it.
+	 * 
+	 * @return true if no more changes will be received, else false. [Boolean]
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Ends the subscription and closes its connection. A connection opened at
+	 * the same time is closed by the thread of the subscription.
+	 */
+	public void close() {
+		PooledConnection connection;
+		synchronized (this.lock) {
+			this.closed = true;
+			connection = this.connection;
+		}
+		if (connection != null) {
+			connection.close();
+		}
+	}
+}
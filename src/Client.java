@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Entry point for every request sent to the server. All the controllers share
+ * the same {@code Client}, so they share its pool of keep-alive connections
+ * instead of opening a new socket for each request. When the server supports
+ * it, the requests are sent on the multiplexed connection of the pool, so the
+ * requests of different threads are in flight at the same time instead of
+ * each one waiting for a free connection.
+ * 
+ * @see ConnectionPool
+ * @see MultiplexedConnection
+ */
+public class Client {
+
+	public static final String HOST = "localhost";
+	public static final int PORT = 4316;
+	private static final int MAX_CONNECTIONS = 8;
+	private static final long IDLE_TIMEOUT = 60_000;
+	private static final long VALIDATION_INTERVAL = 15_000;
+	private static final long BORROW_TIMEOUT = 10_000;
+
+	private static Client shared;
+	private final ConnectionPool pool;
+	private volatile boolean answered;
+
+	/**
+	 * {@code Client} class constructor.
+	 * 
+	 * @param pool the pool used to reach the server. [ConnectionPool]
+	 */
+	public Client(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the {@code Client} shared by all the controllers, creating it on first
+	 * use.
+	 * 
+	 * @return the shared client. [Client]
+	 */
+	public static synchronized Client getShared() {
+		if (shared == null) {
+			shared = new Client(new ConnectionPool(HOST, PORT, MAX_CONNECTIONS, IDLE_TIMEOUT, VALIDATION_INTERVAL,
+					BORROW_TIMEOUT));
+		}
+		return shared;
+	}
+
+	/**
+	 * Sends a command to the server and waits for its response. If a reused
+	 * connection turns out to be closed by the server, a read-only request is
+	 * sent again once on a new connection; the others fail, since the server
+	 * may have already executed them.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public Object request(String[] toBeSent) throws IOException, ClassNotFoundException {
+		return request(toBeSent, 0);
+	}
+
+	/**
+	 * Sends a command to the server and waits at most {@code timeout}
+	 * milliseconds for its response. If a reused connection turns out to be
+	 * closed by the server, a read-only request is sent again once on a new
+	 * connection; the others fail, since the server may have already executed
+	 * them.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param timeout  the maximum time to wait for the response, in
+	 *                 milliseconds, 0 to wait forever. [int]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if the server can't be reached or doesn't
+	 *                                respond in time.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 * @see Protocol#isReadOnly(String)
+	 */
+	public Object request(String[] toBeSent, int timeout) throws IOException, ClassNotFoundException {
+		boolean readOnly = toBeSent.length > 0 && Protocol.isReadOnly(toBeSent[0]);
+		MultiplexedConnection multiplexed = this.pool.getMultiplexed();
+		if (multiplexed != null) {
+			// only a read-only request can be sent again, the others may have run
+			boolean retry = multiplexed.isReused() && readOnly;
+			try {
+				Object response = multiplexed.request(toBeSent, timeout);
+				markAnswered();
+				return response;
+			} catch (InterruptedIOException e) {
+				// timed out or interrupted, the connection is still fine
+				throw e;
+			} catch (IOException e) {
+				if (!retry) {
+					throw e;
+				}
+			}
+
+			// the server closed the connection, retries on a new one
+			multiplexed = this.pool.getMultiplexed();
+			if (multiplexed != null) {
+				Object response = multiplexed.request(toBeSent, timeout);
+				markAnswered();
+				return response;
+			}
+		}
+
+		PooledConnection connection = this.pool.borrow();
+		boolean retry = connection.isReused() && readOnly;
+
+		try {
+			Object response = connection.request(toBeSent, timeout);
+			this.pool.release(connection);
+			markAnswered();
+			return response;
+		} catch (SocketTimeoutException e) {
+			this.pool.invalidate(connection);
+			throw e;
+		} catch (IOException e) {
+			this.pool.invalidate(connection);
+			if (!retry) {
+				throw e;
+			}
+		} catch (ClassNotFoundException | RuntimeException e) {
+			this.pool.invalidate(connection);
+			throw e;
+		}
+
+		// the server closed the idle connection, retries on a new one
+		connection = this.pool.borrow(true);
+		try {
+			Object response = connection.request(toBeSent, timeout);
+			this.pool.release(connection);
+			markAnswered();
+			return response;
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			this.pool.invalidate(connection);
+			throw e;
+		}
+	}
+
+	/**
+	 * Records the first response of the server in the startup timeline.
+	 * 
+	 * @see StartupTimeline
+	 */
+	private void markAnswered() {
+		if (!this.answered) {
+			this.answered = true;
+			StartupTimeline.getShared().mark(StartupTimeline.FIRST_RESPONSE);
+		}
+	}
+
+	/**
+	 * Gets the pool used by this {@code Client}.
+	 * 
+	 * @return the connection pool. [ConnectionPool]
+	 */
+	public ConnectionPool getPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Closes all the connections of this {@code Client}.
+	 */
+	public void close() {
+		this.pool.close();
+	}
+}
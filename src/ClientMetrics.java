@@ -0,0 +1,308 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the requests sent by the client: for every command a latency
+ * histogram, the errors and the bytes sent and received, plus the time taken
+ * to open the connections, handshake included, the time taken by the
+ * navigations between the pages of the GUI, the stalls of the JavaFX
+ * application thread and the failures of the tasks run in background. The
+ * metrics are published through JMX under the {@code EcommerceClient}
+ * domain, displayed by the diagnostics window of the GUI and can be exported
+ * to a CSV file.
+ * 
+ * @see CommandMetrics
+ * @see PooledConnection
+ * @see ControllerDiagnostics
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+
+	public static final String DOMAIN = "EcommerceClient";
+	private static ClientMetrics shared;
+
+	private final ConcurrentHashMap<String, CommandMetrics> commands = new ConcurrentHashMap<String, CommandMetrics>();
+	private final LatencyHistogram connectionSetup = new LatencyHistogram();
+	private final AtomicLong connectionFailures = new AtomicLong();
+	private final ConcurrentHashMap<String, LatencyHistogram> navigations = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final LatencyHistogram stalls = new LatencyHistogram();
+	private final ConcurrentHashMap<String, AtomicLong> failures = new ConcurrentHashMap<String, AtomicLong>();
+	private final boolean published;
+
+	/**
+	 * {@code ClientMetrics} class constructor.
+	 * 
+	 * @param published true to publish the metrics through JMX. [boolean]
+	 */
+	public ClientMetrics(boolean published) {
+		this.published = published;
+		if (published) {
+			register(this, "type=Client");
+		}
+	}
+
+	/**
+	 * Gets the metrics of the whole client, published through JMX, creating
+	 * them on first use.
+	 * 
+	 * @return the shared metrics. [ClientMetrics]
+	 */
+	public static synchronized ClientMetrics getShared() {
+		if (shared == null) {
+			shared = new ClientMetrics(true);
+		}
+		return shared;
+	}
+
+	/**
+	 * Gets the metrics of a command, creating them the first time the command
+	 * is sent.
+	 * 
+	 * @param command the name of the command. [String]
+	 * @return the metrics of the command. [CommandMetrics]
+	 */
+	public CommandMetrics forCommand(String command) {
+		CommandMetrics metrics = this.commands.get(command);
+		if (metrics != null) {
+			return metrics;
+		}
+		return this.commands.computeIfAbsent(command, name -> {
+			CommandMetrics created = new CommandMetrics(name);
+			if (this.published) {
+				register(created, "type=Command,name=" + ObjectName.quote(name));
+			}
+			return created;
+		});
+	}
+
+	/**
+	 * Records a connection opened.
+	 * 
+	 * @param nanos the time taken to open it, handshake included, in
+	 *              nanoseconds. [long]
+	 */
+	public void recordConnection(long nanos) {
+		this.connectionSetup.record(nanos);
+	}
+
+	/**
+	 * Records a connection that couldn't be opened.
+	 */
+	public void recordConnectionFailure() {
+		this.connectionFailures.incrementAndGet();
+	}
+
+	/**
+	 * Records a navigation to a page of the GUI.
+	 * 
+	 * @param page  the page, with whether it was parsed or taken from the
+	 *              cache. [String]
+	 * @param nanos the time taken to display it, in nanoseconds. [long]
+	 * @see Loader
+	 */
+	public void recordNavigation(String page, long nanos) {
+		this.navigations.computeIfAbsent(page, name -> new LatencyHistogram()).record(nanos);
+	}
+
+	/**
+	 * Records a stall of the JavaFX application thread.
+	 * 
+	 * @param nanos the time a probe waited before running, in nanoseconds.
+	 *              [long]
+	 * @see FxStallMonitor
+	 */
+	public void recordStall(long nanos) {
+		this.stalls.record(nanos);
+	}
+
+	/**
+	 * Records the failure of a task run in background, which has no caller
+	 * to report it to.
+	 * 
+	 * @param task the task, for example the download of a page. [String]
+	 */
+	public void recordFailure(String task) {
+		this.failures.computeIfAbsent(task, name -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * Gets the metrics of every command sent so far.
+	 * 
+	 * @return the metrics, sorted by command. [ArrayList of CommandMetrics]
+	 */
+	public ArrayList<CommandMetrics> getCommandMetrics() {
+		ArrayList<CommandMetrics> metrics = new ArrayList<CommandMetrics>(this.commands.values());
+		metrics.sort(Comparator.comparing(CommandMetrics::getCommand));
+		return metrics;
+	}
+
+	/**
+	 * Gets the commands sent so far.
+	 * 
+	 * @return the names of the commands. [String[]]
+	 */
+	@Override
+	public String[] getCommands() {
+		return getCommandMetrics().stream().map(CommandMetrics::getCommand).toArray(String[]::new);
+	}
+
+	/**
+	 * Gets the number of connections opened.
+	 * 
+	 * @return the number of connections. [long]
+	 */
+	@Override
+	public long getConnectionsOpened() {
+		return this.connectionSetup.getCount();
+	}
+
+	/**
+	 * Gets the number of connections that couldn't be opened.
+	 * 
+	 * @return the number of failures. [long]
+	 */
+	@Override
+	public long getConnectionFailures() {
+		return this.connectionFailures.get();
+	}
+
+	/**
+	 * Gets the average time to open a connection, handshake included.
+	 * 
+	 * @return the mean, in milliseconds. [double]
+	 */
+	@Override
+	public double getConnectionSetupMeanMillis() {
+		return this.connectionSetup.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gets the 99th percentile of the time to open a connection.
+	 * 
+	 * @return the 99th percentile, in milliseconds. [double]
+	 */
+	@Override
+	public double getConnectionSetupP99Millis() {
+		return this.connectionSetup.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes all the metrics in a CSV file: a line per command, then a line
+	 * for the connections, a line for the {@code CatalogCache}, a line per page
+	 * of the GUI, a line for the stalls of the JavaFX application thread, a
+	 * line per task failed in background and a line per milestone of the
+	 * {@code StartupTimeline}, whose time since the JVM started is in every
+	 * time column.
+	 * 
+	 * @param file the path of the file. [Path]
+	 * @throws IOException if the file can't be written.
+	 */
+	public void export(Path file) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+			out.println("command,requests,errors,bytes_sent,bytes_received,mean_ms,p50_ms,p99_ms,p999_ms,max_ms");
+			for (CommandMetrics metrics : getCommandMetrics()) {
+				out.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f\n", metrics.getCommand(),
+						metrics.getRequests(), metrics.getErrors(), metrics.getBytesSent(), metrics.getBytesReceived(),
+						metrics.getMeanMillis(), metrics.getP50Millis(), metrics.getP99Millis(),
+						metrics.getP999Millis(), metrics.getMaxMillis());
+			}
+			out.format(Locale.ROOT, "(connection setup),%d,%d,0,0,%.3f,%.3f,%.3f,%.3f,%.3f\n", getConnectionsOpened(),
+					getConnectionFailures(), getConnectionSetupMeanMillis(),
+					this.connectionSetup.getPercentile(50, TimeUnit.MILLISECONDS), getConnectionSetupP99Millis(),
+					this.connectionSetup.getPercentile(99.9, TimeUnit.MILLISECONDS),
+					(double) this.connectionSetup.getMax() / TimeUnit.MILLISECONDS.toNanos(1));
+			// visits in requests, misses in errors, bytes not downloaded again
+			// in bytes received
+			CatalogCache cache = CatalogCache.getShared();
+			out.format(Locale.ROOT, "(catalog cache),%d,%d,0,%d,0,0,0,0,0\n", cache.getHits() + cache.getMisses(),
+					cache.getMisses(), cache.getBytesSaved());
+			for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(this.navigations)
+					.entrySet()) {
+				LatencyHistogram histogram = entry.getValue();
+				out.format(Locale.ROOT, "(navigation %s),%d,0,0,0,%.3f,%.3f,%.3f,%.3f,%.3f\n", entry.getKey(),
+						histogram.getCount(), histogram.getMean() / TimeUnit.MILLISECONDS.toNanos(1),
+						histogram.getPercentile(50, TimeUnit.MILLISECONDS),
+						histogram.getPercentile(99, TimeUnit.MILLISECONDS),
+						histogram.getPercentile(99.9, TimeUnit.MILLISECONDS),
+						(double) histogram.getMax() / TimeUnit.MILLISECONDS.toNanos(1));
+			}
+			out.format(Locale.ROOT, "(fx stall),%d,0,0,0,%.3f,%.3f,%.3f,%.3f,%.3f\n", this.stalls.getCount(),
+					this.stalls.getMean() / TimeUnit.MILLISECONDS.toNanos(1),
+					this.stalls.getPercentile(50, TimeUnit.MILLISECONDS),
+					this.stalls.getPercentile(99, TimeUnit.MILLISECONDS),
+					this.stalls.getPercentile(99.9, TimeUnit.MILLISECONDS),
+					(double) this.stalls.getMax() / TimeUnit.MILLISECONDS.toNanos(1));
+			for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(this.failures).entrySet()) {
+				long failed = entry.getValue().get();
+				out.format(Locale.ROOT, "(failure %s),%d,%d,0,0,0.000,0.000,0.000,0.000,0.000\n", entry.getKey(), failed,
+						failed);
+			}
+			StartupTimeline timeline = StartupTimeline.getShared();
+			for (String milestone : timeline.getMilestones()) {
+				double millis = timeline.getMillis(milestone);
+				out.format(Locale.ROOT, "(startup %s),1,0,0,0,%.3f,%.3f,%.3f,%.3f,%.3f\n", milestone, millis, millis,
+						millis, millis, millis);
+			}
+		}
+	}
+
+	/**
+	 * Writes all the metrics in a CSV file.
+	 * 
+	 * @param file the path of the file. [String]
+	 * @return the absolute path of the file. [String]
+	 * @throws IOException if the file can't be written.
+	 */
+	@Override
+	public String exportTo(String file) throws IOException {
+		Path path = Paths.get(file).toAbsolutePath();
+		export(path);
+		return path.toString();
+	}
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	@Override
+	public void reset() {
+		for (CommandMetrics metrics : this.commands.values()) {
+			metrics.reset();
+		}
+		this.connectionSetup.reset();
+		this.connectionFailures.set(0);
+		this.navigations.clear();
+		this.stalls.reset();
+		this.failures.clear();
+	}
+
+	/**
+	 * Publishes an object through JMX.
+	 * 
+	 * @param bean       the object. [Object]
+	 * @param properties the key properties of its name. [String]
+	 */
+	private static void register(Object bean, String properties) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+
+/**
+ * JMX interface of the metrics of the client. The metrics of each command are
+ * published separately.
+ * 
+ * @see ClientMetrics
+ * @see CommandMetricsMBean
+ */
+public interface ClientMetricsMBean {
+	/**
+	 * Gets the commands sent so far.
+	 * 
+	 * @return the names of the commands. [String[]]
+	 */
+	String[] getCommands();
+
+	/**
+	 * Gets the number of connections opened.
+	 * 
+	 * @return the number of connections. [long]
+	 */
+	long getConnectionsOpened();
+
+	/**
+	 * Gets the number of connections that couldn't be opened.
+	 * 
+	 * @return the number of failures. [long]
+	 */
+	long getConnectionFailures();
+
+	/**
+	 * Gets the average time to open a connection, handshake included.
+	 * 
+	 * @return the mean, in milliseconds. [double]
+	 */
+	double getConnectionSetupMeanMillis();
+
+	/**
+	 * Gets the 99th percentile of the time to open a connection.
+	 * 
+	 * @return the 99th percentile, in milliseconds. [double]
+	 */
+	double getConnectionSetupP99Millis();
+
+	/**
+	 * Writes all the metrics in a CSV file.
+	 * 
+	 * @param file the path of the file. [String]
+	 * @return the absolute path of the file. [String]
+	 * @throws IOException if the file can't be written.
+	 */
+	String exportTo(String file) throws IOException;
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	void reset();
+}
@@ -0,0 +1,174 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of a command sent by the client: latency histogram, errors and
+ * bytes sent and received. Recording only updates a few atomic counters, so
+ * every request can be measured. Many threads can record at the same time.
+ * 
+ * @see ClientMetrics
+ * @see LatencyHistogram
+ */
+public class CommandMetrics implements CommandMetricsMBean {
+
+	private final String command;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * {@code CommandMetrics} class constructor.
+	 * 
+	 * @param command the name of the command. [String]
+	 */
+	public CommandMetrics(String command) {
+		this.command = command;
+	}
+
+	/**
+	 * Records a request that got a response.
+	 * 
+	 * @param nanos    the time between the request and the response, in
+	 *                 nanoseconds. [long]
+	 * @param sent     the bytes of the request. [long]
+	 * @param received the bytes of the response. [long]
+	 */
+	public void record(long nanos, long sent, long received) {
+		this.latency.record(nanos);
+		this.bytesSent.addAndGet(sent);
+		this.bytesReceived.addAndGet(received);
+	}
+
+	/**
+	 * Records a request that failed.
+	 * 
+	 * @param sent     the bytes sent before the failure. [long]
+	 * @param received the bytes received before the failure. [long]
+	 */
+	public void recordError(long sent, long received) {
+		this.errors.incrementAndGet();
+		this.bytesSent.addAndGet(sent);
+		this.bytesReceived.addAndGet(received);
+	}
+
+	/**
+	 * Records bytes received without a request, for example a change pushed
+	 * by the server.
+	 * 
+	 * @param received the bytes received. [long]
+	 */
+	public void recordReceived(long received) {
+		this.bytesReceived.addAndGet(received);
+	}
+
+	/**
+	 * Forgets every recorded value.
+	 */
+	public void reset() {
+		this.latency.reset();
+		this.errors.set(0);
+		this.bytesSent.set(0);
+		this.bytesReceived.set(0);
+	}
+
+	/**
+	 * Gets the name of the command.
+	 * 
+	 * @return the command. [String]
+	 */
+	@Override
+	public String getCommand() {
+		return this.command;
+	}
+
+	/**
+	 * Gets the number of requests that got a response.
+	 * 
+	 * @return the number of requests. [long]
+	 */
+	@Override
+	public long getRequests() {
+		return this.latency.getCount();
+	}
+
+	/**
+	 * Gets the number of requests that failed.
+	 * 
+	 * @return the number of errors. [long]
+	 */
+	@Override
+	public long getErrors() {
+		return this.errors.get();
+	}
+
+	/**
+	 * Gets the bytes sent to the server.
+	 * 
+	 * @return the bytes sent. [long]
+	 */
+	@Override
+	public long getBytesSent() {
+		return this.bytesSent.get();
+	}
+
+	/**
+	 * Gets the bytes received from the server.
+	 * 
+	 * @return the bytes received. [long]
+	 */
+	@Override
+	public long getBytesReceived() {
+		return this.bytesReceived.get();
+	}
+
+	/**
+	 * Gets the average latency.
+	 * 
+	 * @return the mean, in milliseconds. [double]
+	 */
+	@Override
+	public double getMeanMillis() {
+		return this.latency.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gets the median latency.
+	 * 
+	 * @return the 50th percentile, in milliseconds. [double]
+	 */
+	@Override
+	public double getP50Millis() {
+		return this.latency.getPercentile(50, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the 99th percentile of the latency.
+	 * 
+	 * @return the 99th percentile, in milliseconds. [double]
+	 */
+	@Override
+	public double getP99Millis() {
+		return this.latency.getPercentile(99, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the 99.9th percentile of the latency.
+	 * 
+	 * @return the 99.9th percentile, in milliseconds. [double]
+	 */
+	@Override
+	public double getP999Millis() {
+		return this.latency.getPercentile(99.9, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the highest latency.
+	 * 
+	 * @return the maximum, in milliseconds. [double]
+	 */
+	@Override
+	public double getMaxMillis() {
+		return (double) this.latency.getMax() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
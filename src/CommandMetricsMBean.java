@@ -0,0 +1,76 @@
+/**
+ * JMX interface of the metrics of a command sent by the client.
+ * 
+ * @see CommandMetrics
+ */
+public interface CommandMetricsMBean {
+	/**
+	 * Gets the name of the command.
+	 * 
+	 * @return the command. [String]
+	 */
+	String getCommand();
+
+	/**
+	 * Gets the number of requests that got a response.
+	 * 
+	 * @return the number of requests. [long]
+	 */
+	long getRequests();
+
+	/**
+	 * Gets the number of requests that failed.
+	 * 
+	 * @return the number of errors. [long]
+	 */
+	long getErrors();
+
+	/**
+	 * Gets the bytes sent to the server.
+	 * 
+	 * @return the bytes sent. [long]
+	 */
+	long getBytesSent();
+
+	/**
+	 * Gets the bytes received from the server.
+	 * 
+	 * @return the bytes received. [long]
+	 */
+	long getBytesReceived();
+
+	/**
+	 * Gets the average latency.
+	 * 
+	 * @return the mean, in milliseconds. [double]
+	 */
+	double getMeanMillis();
+
+	/**
+	 * Gets the median latency.
+	 * 
+	 * @return the 50th percentile, in milliseconds. [double]
+	 */
+	double getP50Millis();
+
+	/**
+	 * Gets the 99th percentile of the latency.
+	 * 
+	 * @return the 99th percentile, in milliseconds. [double]
+	 */
+	double getP99Millis();
+
+	/**
+	 * Gets the 99.9th percentile of the latency.
+	 * 
+	 * @return the 99.9th percentile, in milliseconds. [double]
+	 */
+	double getP999Millis();
+
+	/**
+	 * Gets the highest latency.
+	 * 
+	 * @return the maximum, in milliseconds. [double]
+	 */
+	double getMaxMillis();
+}
@@ -0,0 +1,464 @@
+import java.util.Arrays;
+
+/**
+ * Set of non-negative ints stored as a compressed bitmap. The values are split
+ * in chunks of 65536 by their upper 16 bits, and each chunk is stored in the
+ * cheapest way: a sorted array of the lower 16 bits while it holds at most
+ * {@code ARRAY_LIMIT} values, a plain bitmap of 1024 longs when it holds more.
+ * A sparse set takes 2 bytes per value, a dense one 1 bit per possible value.
+ * 
+ * Intersections work chunk by chunk, choosing the algorithm by the kind of
+ * the two chunks: merging two arrays, probing a bitmap with an array, or a
+ * word-by-word AND of two bitmaps. {@code andCardinality} counts the values
+ * of an intersection without building it.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @see FacetIndex
+ */
+public class CompressedBitmap {
+
+	// above this number of values an array chunk takes more than a bitmap
+	private static final int ARRAY_LIMIT = 4096;
+	private static final int WORDS = 1024;
+
+	// upper 16 bits of each chunk, sorted
+	private char[] keys = new char[4];
+	private Chunk[] chunks = new Chunk[4];
+	private int size;
+
+	/**
+	 * Adds a value to the set.
+	 * 
+	 * @param value the value, not negative. [int]
+	 */
+	public void add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value: " + value);
+		}
+		char key = (char) (value >>> 16);
+		int index = indexOf(key);
+		if (index < 0) {
+			index = -index - 1;
+			if (this.size == this.keys.length) {
+				this.keys = Arrays.copyOf(this.keys, this.size * 2);
+				this.chunks = Arrays.copyOf(this.chunks, this.size * 2);
+			}
+			System.arraycopy(this.keys, index, this.keys, index + 1, this.size - index);
+			System.arraycopy(this.chunks, index, this.chunks, index + 1, this.size - index);
+			this.keys[index] = key;
+			this.chunks[index] = new Chunk();
+			this.size++;
+		}
+		this.chunks[index].add((char) value);
+	}
+
+	/**
+	 * Removes a value from the set.
+	 * 
+	 * @param value the value. [int]
+	 */
+	public void remove(int value) {
+		int index = value < 0 ? -1 : indexOf((char) (value >>> 16));
+		if (index < 0) {
+			return;
+		}
+		Chunk chunk = this.chunks[index];
+		chunk.remove((char) value);
+		if (chunk.cardinality == 0) {
+			System.arraycopy(this.keys, index + 1, this.keys, index, this.size - index - 1);
+			System.arraycopy(this.chunks, index + 1, this.chunks, index, this.size - index - 1);
+			this.size--;
+			this.chunks[this.size] = null;
+		}
+	}
+
+	/**
+	 * Checks if the set contains a value.
+	 * 
+	 * @param value the value. [int]
+	 * @return true if the value is in the set, else false. [boolean]
+	 */
+	public boolean contains(int value) {
+		int index = value < 0 ? -1 : indexOf((char) (value >>> 16));
+		return index >= 0 && this.chunks[index].contains((char) value);
+	}
+
+	/**
+	 * Gets the number of values in the set.
+	 * 
+	 * @return the number of values. [int]
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < this.size; i++) {
+			cardinality += this.chunks[i].cardinality;
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Computes the intersection with another set.
+	 * 
+	 * @param other the other set. [CompressedBitmap]
+	 * @return the values in both sets. [CompressedBitmap]
+	 */
+	public CompressedBitmap and(CompressedBitmap other) {
+		CompressedBitmap result = new CompressedBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < this.size && j < other.size) {
+			if (this.keys[i] < other.keys[j]) {
+				i++;
+			} else if (this.keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				Chunk chunk = this.chunks[i].and(other.chunks[j]);
+				if (chunk.cardinality > 0) {
+					result.append(this.keys[i], chunk);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the values in both sets, without computing the intersection.
+	 * 
+	 * @param other the other set. [CompressedBitmap]
+	 * @return the number of values in both sets. [int]
+	 */
+	public int andCardinality(CompressedBitmap other) {
+		int cardinality = 0;
+		int i = 0;
+		int j = 0;
+		while (i < this.size && j < other.size) {
+			if (this.keys[i] < other.keys[j]) {
+				i++;
+			} else if (this.keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				cardinality += this.chunks[i].andCardinality(other.chunks[j]);
+				i++;
+				j++;
+			}
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Copies the set storing every chunk as a bitmap. The copy takes more
+	 * memory, but intersecting it with a sparse set probes a bit per value
+	 * instead of merging two arrays: worth it when the same set is intersected
+	 * with many others.
+	 * 
+	 * @return the copy. [CompressedBitmap]
+	 */
+	public CompressedBitmap toDense() {
+		CompressedBitmap dense = new CompressedBitmap();
+		for (int i = 0; i < this.size; i++) {
+			Chunk chunk = this.chunks[i];
+			Chunk copy = new Chunk();
+			copy.values = null;
+			copy.words = chunk.words != null ? chunk.words.clone() : new long[WORDS];
+			if (chunk.words == null) {
+				for (int j = 0; j < chunk.cardinality; j++) {
+					char low = chunk.values[j];
+					copy.words[low >>> 6] |= 1L << low;
+				}
+			}
+			copy.cardinality = chunk.cardinality;
+			dense.append(this.keys[i], copy);
+		}
+		return dense;
+	}
+
+	/**
+	 * Gets the smallest values of the set.
+	 * 
+	 * @param limit the maximum number of values. [int]
+	 * @return the values, in ascending order. [int[]]
+	 */
+	public int[] toArray(int limit) {
+		int[] values = new int[Math.min(limit, cardinality())];
+		int count = 0;
+		for (int i = 0; i < this.size && count < values.length; i++) {
+			count = this.chunks[i].copyTo(this.keys[i] << 16, values, count);
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the bytes taken by the chunks, to compare the compression with a
+	 * plain bitmap.
+	 * 
+	 * @return the approximate size in bytes. [long]
+	 */
+	public long getSizeInBytes() {
+		long bytes = this.keys.length * 2L + this.chunks.length * 4L;
+		for (int i = 0; i < this.size; i++) {
+			Chunk chunk = this.chunks[i];
+			bytes += chunk.words != null ? chunk.words.length * 8L : chunk.values.length * 2L;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Adds a chunk after the last one.
+	 * 
+	 * @param key   the upper 16 bits of the chunk. [char]
+	 * @param chunk the chunk. [Chunk]
+	 */
+	private void append(char key, Chunk chunk) {
+		if (this.size == this.keys.length) {
+			this.keys = Arrays.copyOf(this.keys, this.size * 2);
+			this.chunks = Arrays.copyOf(this.chunks, this.size * 2);
+		}
+		this.keys[this.size] = key;
+		this.chunks[this.size++] = chunk;
+	}
+
+	/**
+	 * Finds the chunk of the upper 16 bits of a value.
+	 * 
+	 * @param key the upper 16 bits. [char]
+	 * @return the position of the chunk, or {@code -(insertion point) - 1} if
+	 *         there is none. [int]
+	 */
+	private int indexOf(char key) {
+		return Arrays.binarySearch(this.keys, 0, this.size, key);
+	}
+
+	/**
+	 * Values sharing the same upper 16 bits, as a sorted array or as a bitmap.
+	 */
+	private static class Chunk {
+
+		// exactly one of them is not null
+		private char[] values = new char[4];
+		private long[] words;
+		private int cardinality;
+
+		/**
+		 * Adds the lower 16 bits of a value.
+		 * 
+		 * @param low the lower 16 bits. [char]
+		 */
+		void add(char low) {
+			if (this.words != null) {
+				long bit = 1L << low;
+				if ((this.words[low >>> 6] & bit) == 0) {
+					this.words[low >>> 6] |= bit;
+					this.cardinality++;
+				}
+				return;
+			}
+
+			int index = Arrays.binarySearch(this.values, 0, this.cardinality, low);
+			if (index >= 0) {
+				return;
+			}
+			if (this.cardinality == ARRAY_LIMIT) {
+				toBitmap();
+				add(low);
+				return;
+			}
+			index = -index - 1;
+			if (this.cardinality == this.values.length) {
+				this.values = Arrays.copyOf(this.values, Math.min(this.cardinality * 2, ARRAY_LIMIT));
+			}
+			System.arraycopy(this.values, index, this.values, index + 1, this.cardinality - index);
+			this.values[index] = low;
+			this.cardinality++;
+		}
+
+		/**
+		 * Removes the lower 16 bits of a value.
+		 * 
+		 * @param low the lower 16 bits. [char]
+		 */
+		void remove(char low) {
+			if (this.words != null) {
+				long bit = 1L << low;
+				if ((this.words[low >>> 6] & bit) != 0) {
+					this.words[low >>> 6] &= ~bit;
+					this.cardinality--;
+				}
+				return;
+			}
+
+			int index = Arrays.binarySearch(this.values, 0, this.cardinality, low);
+			if (index >= 0) {
+				System.arraycopy(this.values, index + 1, this.values, index, this.cardinality - index - 1);
+				this.cardinality--;
+			}
+		}
+
+		/**
+		 * Checks if the chunk contains the lower 16 bits of a value.
+		 * 
+		 * @param low the lower 16 bits. [char]
+		 * @return true if the value is in the chunk, else false. [boolean]
+		 */
+		boolean contains(char low) {
+			if (this.words != null) {
+				return (this.words[low >>> 6] & (1L << low)) != 0;
+			}
+			return Arrays.binarySearch(this.values, 0, this.cardinality, low) >= 0;
+		}
+
+		/**
+		 * Computes the intersection with another chunk.
+		 * 
+		 * @param other the other chunk. [Chunk]
+		 * @return the values in both chunks. [Chunk]
+		 */
+		Chunk and(Chunk other) {
+			Chunk result = new Chunk();
+			if (this.words != null && other.words != null) {
+				long[] words = new long[WORDS];
+				int cardinality = 0;
+				for (int i = 0; i < WORDS; i++) {
+					words[i] = this.words[i] & other.words[i];
+					cardinality += Long.bitCount(words[i]);
+				}
+				result.words = words;
+				result.values = null;
+				result.cardinality = cardinality;
+				if (cardinality <= ARRAY_LIMIT) {
+					result.toArray();
+				}
+				return result;
+			}
+
+			// the result is not larger than the array chunk
+			Chunk array = this.words == null ? this : other;
+			Chunk probed = array == this ? other : this;
+			result.values = new char[Math.max(array.cardinality, 1)];
+			if (probed.words != null) {
+				for (int i = 0; i < array.cardinality; i++) {
+					char low = array.values[i];
+					if ((probed.words[low >>> 6] & (1L << low)) != 0) {
+						result.values[result.cardinality++] = low;
+					}
+				}
+			} else {
+				int i = 0;
+				int j = 0;
+				while (i < array.cardinality && j < probed.cardinality) {
+					if (array.values[i] < probed.values[j]) {
+						i++;
+					} else if (array.values[i] > probed.values[j]) {
+						j++;
+					} else {
+						result.values[result.cardinality++] = array.values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Counts the values in both chunks.
+		 * 
+		 * @param other the other chunk. [Chunk]
+		 * @return the number of values in both chunks. [int]
+		 */
+		int andCardinality(Chunk other) {
+			int cardinality = 0;
+			if (this.words != null && other.words != null) {
+				for (int i = 0; i < WORDS; i++) {
+					cardinality += Long.bitCount(this.words[i] & other.words[i]);
+				}
+				return cardinality;
+			}
+
+			Chunk array = this.words == null ? this : other;
+			Chunk probed = array == this ? other : this;
+			if (probed.words != null) {
+				for (int i = 0; i < array.cardinality; i++) {
+					char low = array.values[i];
+					if ((probed.words[low >>> 6] & (1L << low)) != 0) {
+						cardinality++;
+					}
+				}
+				return cardinality;
+			}
+
+			int i = 0;
+			int j = 0;
+			while (i < array.cardinality && j < probed.cardinality) {
+				if (array.values[i] < probed.values[j]) {
+					i++;
+				} else if (array.values[i] > probed.values[j]) {
+					j++;
+				} else {
+					cardinality++;
+					i++;
+					j++;
+				}
+			}
+			return cardinality;
+		}
+
+		/**
+		 * Copies the values of the chunk, in ascending order, until the
+		 * destination is full.
+		 * 
+		 * @param high        the upper 16 bits, already shifted. [int]
+		 * @param destination the destination. [int[]]
+		 * @param count       the values already in the destination. [int]
+		 * @return the values in the destination after the copy. [int]
+		 */
+		int copyTo(int high, int[] destination, int count) {
+			if (this.words == null) {
+				for (int i = 0; i < this.cardinality && count < destination.length; i++) {
+					destination[count++] = high | this.values[i];
+				}
+				return count;
+			}
+			for (int i = 0; i < WORDS && count < destination.length; i++) {
+				long word = this.words[i];
+				while (word != 0 && count < destination.length) {
+					destination[count++] = high | (i << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Converts the array to a bitmap, when it becomes too large.
+		 */
+		private void toBitmap() {
+			long[] words = new long[WORDS];
+			for (int i = 0; i < this.cardinality; i++) {
+				char low = this.values[i];
+				words[low >>> 6] |= 1L << low;
+			}
+			this.words = words;
+			this.values = null;
+		}
+
+		/**
+		 * Converts the bitmap to an array, when it holds few values.
+		 */
+		private void toArray() {
+			char[] values = new char[Math.max(this.cardinality, 1)];
+			int count = 0;
+			for (int i = 0; i < WORDS; i++) {
+				long word = this.words[i];
+				while (word != 0) {
+					values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			this.values = values;
+			this.words = null;
+		}
+	}
+}
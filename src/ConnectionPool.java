@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of keep-alive connections to the server. A connection is
+ * borrowed for a single request and released right after. Only the
+ * connections using the binary protocol are kept alive: with the old one,
+ * every request opens its own connection. Connections that
+ * have been idle for a while are health checked before being handed out again
+ * and connections idle for too long are evicted in background.
+ * 
+ * If the server supports it, the pool also keeps a single multiplexed
+ * connection, not counted among the pooled ones, on which every thread can
+ * send its requests at the same time.
+ * 
+ * @see PooledConnection
+ * @see MultiplexedConnection
+ * @see Client
+ */
+public class ConnectionPool {
+
+	private final String host;
+	private final int port;
+	private final int maxConnections;
+	private final long idleTimeout;
+	private final long validationInterval;
+	private final long borrowTimeout;
+	private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+	private final ScheduledExecutorService evictor;
+	private int open;
+	private volatile boolean closed;
+	// null until the first connection has been negotiated
+	private volatile Boolean binary;
+	private final Object multiplexLock = new Object();
+	private MultiplexedConnection multiplexed;
+	// null until the first multiplexed connection has been negotiated
+	private volatile Boolean multiplexing;
+
+	/**
+	 * {@code ConnectionPool} class constructor.
+	 * 
+	 * @param host               the host of the server. [String]
+	 * @param port               the port of the server. [int]
+	 * @param maxConnections     the maximum number of open connections. [int]
+	 * @param idleTimeout        idle time after which a connection is evicted, in
+	 *                           milliseconds. [long]
+	 * @param validationInterval idle time after which a connection is health
+	 *                           checked before being reused, in milliseconds.
+	 *                           [long]
+	 * @param borrowTimeout      maximum time to wait for a free connection, in
+	 *                           milliseconds. [long]
+	 */
+	public ConnectionPool(String host, int port, int maxConnections, long idleTimeout, long validationInterval,
+			long borrowTimeout) {
+		this.host = host;
+		this.port = port;
+		this.maxConnections = maxConnections;
+		this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+		this.validationInterval = TimeUnit.MILLISECONDS.toNanos(validationInterval);
+		this.borrowTimeout = TimeUnit.MILLISECONDS.toNanos(borrowTimeout);
+		this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, idleTimeout / 2);
+		this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection, reusing an idle one when possible. If all the
+	 * connections are in use it waits until one is released.
+	 * 
+	 * @return a connection ready to be used. [PooledConnection]
+	 * @throws IOException if the connection can't be opened or no connection has
+	 *                     been released in time.
+	 */
+	public PooledConnection borrow() throws IOException {
+		return borrow(false);
+	}
+
+	/**
+	 * Borrows a connection. If {@code fresh} is true, the idle connections are
+	 * skipped and a new one is always opened.
+	 * 
+	 * @param fresh true to open a new connection. [Boolean]
+	 * @return a connection ready to be used. [PooledConnection]
+	 * @throws IOException if the connection can't be opened or no connection has
+	 *                     been released in time.
+	 */
+	public PooledConnection borrow(boolean fresh) throws IOException {
+		long deadline = System.nanoTime() + this.borrowTimeout;
+
+		while (true) {
+			PooledConnection connection = null;
+
+			synchronized (this) {
+				while (true) {
+					if (this.closed) {
+						throw new IOException("Connection pool is closed");
+					}
+					if (!fresh && !this.idle.isEmpty()) {
+						// most recently used first, it is the most likely to be alive
+						connection = this.idle.pollFirst();
+						break;
+					}
+					if (this.open < this.maxConnections) {
+						// reserves the slot, the socket is opened outside the lock
+						this.open++;
+						break;
+					}
+					if (fresh && !this.idle.isEmpty()) {
+						// makes room for the new connection
+						destroy(this.idle.pollLast());
+						continue;
+					}
+
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						throw new IOException("Timed out waiting for a connection");
+					}
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted while waiting for a connection", e);
+					}
+				}
+			}
+
+			if (connection == null) {
+				try {
+					return connect(false);
+				} catch (IOException | RuntimeException e) {
+					synchronized (this) {
+						this.open--;
+						notifyAll();
+					}
+					throw e;
+				}
+			}
+
+			// health check for connections that have been idle for a while
+			long now = System.nanoTime();
+			if (connection.idleFor(now) < this.validationInterval || connection.validate(1000)) {
+				return connection;
+			}
+			invalidate(connection);
+		}
+	}
+
+	/**
+	 * Opens a connection that is not counted by the pool and is never given
+	 * back to it, for long-lived uses such as a push channel. It negotiates the
+	 * protocol like the pooled ones.
+	 * 
+	 * @return the new connection, to be closed by the caller. [PooledConnection]
+	 * @throws IOException if the connection can't be opened.
+	 */
+	public PooledConnection openDedicated() throws IOException {
+		return connect(false);
+	}
+
+	/**
+	 * Gets the multiplexed connection, opening a new one if there is none yet
+	 * or the previous one dropped. Returns {@code null} if the server doesn't
+	 * support multiplexing or it has been disabled: then the requests must
+	 * borrow a connection.
+	 * 
+	 * @return the multiplexed connection, {@code null} if not available.
+	 *         [MultiplexedConnection]
+	 * @throws IOException if the pool is closed or the connection can't be
+	 *                     opened.
+	 */
+	public MultiplexedConnection getMultiplexed() throws IOException {
+		if (Boolean.FALSE.equals(this.multiplexing) || Boolean.FALSE.equals(this.binary)) {
+			return null;
+		}
+
+		synchronized (this.multiplexLock) {
+			if (this.closed) {
+				throw new IOException("Connection pool is closed");
+			}
+			if (this.multiplexed != null && !this.multiplexed.isBroken()) {
+				return this.multiplexed;
+			}
+
+			PooledConnection connection = connect(true);
+			if (!connection.isMultiplexed()) {
+				// an older server, the requests keep borrowing connections
+				connection.close();
+				this.multiplexing = false;
+				return null;
+			}
+			this.multiplexing = true;
+			this.multiplexed = new MultiplexedConnection(connection, ClientMetrics.getShared());
+			return this.multiplexed;
+		}
+	}
+
+	/**
+	 * Enables or disables the multiplexed connection. It is enabled by default,
+	 * and only used if the binary protocol is enabled too.
+	 * 
+	 * @param enabled false to always borrow a connection for each request.
+	 *                [Boolean]
+	 */
+	public void setMultiplexing(boolean enabled) {
+		this.multiplexing = enabled ? null : Boolean.FALSE;
+	}
+
+	/**
+	 * Opens a new connection, recording the time taken, handshake included, or
+	 * the failure in the {@code ClientMetrics}.
+	 * 
+	 * @param multiplex true to ask for a multiplexed connection. [Boolean]
+	 * @return the new connection. [PooledConnection]
+	 * @throws IOException if the connection can't be opened.
+	 * @see ClientMetrics
+	 */
+	private PooledConnection connect(boolean multiplex) throws IOException {
+		ClientMetrics metrics = ClientMetrics.getShared();
+		long start = System.nanoTime();
+		try {
+			PooledConnection connection = open(multiplex);
+			metrics.recordConnection(System.nanoTime() - start);
+			return connection;
+		} catch (IOException e) {
+			metrics.recordConnectionFailure();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a new connection and negotiates the binary protocol, unless the
+	 * server is already known to speak only the old one. A server that refuses
+	 * the handshake may have closed the socket, so the connection is replaced by
+	 * a plain one. Once the server has accepted the binary protocol, a failed
+	 * handshake is an ordinary connection error: a transient reset doesn't move
+	 * the pool back to the old protocol.
+	 * 
+	 * @param multiplex true to ask for a multiplexed connection. [Boolean]
+	 * @return the new connection. [PooledConnection]
+	 * @throws IOException if the connection can't be opened.
+	 * @see Protocol
+	 */
+	private PooledConnection open(boolean multiplex) throws IOException {
+		if (!Boolean.FALSE.equals(this.binary)) {
+			PooledConnection connection = new PooledConnection(this.host, this.port);
+			try {
+				if (connection.negotiate(multiplex)) {
+					this.binary = true;
+					return connection;
+				}
+			} catch (IOException e) {
+				if (this.binary != null) {
+					// the server speaks the binary protocol, the connection failed
+					connection.close();
+					throw e;
+				}
+				// the server doesn't know the handshake and closed the connection
+			}
+			connection.close();
+			this.binary = false;
+		}
+		return new PooledConnection(this.host, this.port);
+	}
+
+	/**
+	 * Enables or disables the negotiation of the binary protocol for the new
+	 * connections. It is enabled by default.
+	 * 
+	 * @param enabled false to always use the old protocol. [Boolean]
+	 */
+	public void setBinaryProtocol(boolean enabled) {
+		this.binary = enabled ? null : Boolean.FALSE;
+	}
+
+	/**
+	 * Gives back a borrowed connection. Broken connections are closed, and so
+	 * are the connections using the old protocol: an old server may answer a
+	 * single request per connection, and a request that isn't read-only can't
+	 * be sent again once it finds the connection closed.
+	 * 
+	 * @param connection the connection to give back. [PooledConnection]
+	 */
+	public synchronized void release(PooledConnection connection) {
+		if (this.closed || connection.isBroken() || !connection.isBinary()) {
+			destroy(connection);
+		} else {
+			connection.touch();
+			this.idle.addFirst(connection);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Closes a borrowed connection that can't be used anymore.
+	 * 
+	 * @param connection the connection to discard. [PooledConnection]
+	 */
+	public synchronized void invalidate(PooledConnection connection) {
+		destroy(connection);
+		notifyAll();
+	}
+
+	/**
+	 * Closes all the connections that have been idle for longer than the idle
+	 * timeout. This method is automatically called in background.
+	 */
+	public synchronized void evictIdle() {
+		long now = System.nanoTime();
+		Iterator<PooledConnection> iterator = this.idle.iterator();
+
+		while (iterator.hasNext()) {
+			PooledConnection connection = iterator.next();
+			if (connection.isBroken() || connection.idleFor(now) >= this.idleTimeout) {
+				iterator.remove();
+				destroy(connection);
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets the number of open connections, both idle and borrowed.
+	 * 
+	 * @return the number of open connections. [int]
+	 */
+	public synchronized int getOpenConnections() {
+		return this.open;
+	}
+
+	/**
+	 * Gets the number of idle connections.
+	 * 
+	 * @return the number of idle connections. [int]
+	 */
+	public synchronized int getIdleConnections() {
+		return this.idle.size();
+	}
+
+	/**
+	 * Closes the pool, all its idle connections and the multiplexed one.
+	 * Borrowed connections are closed as soon as they are released.
+	 */
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+			while (!this.idle.isEmpty()) {
+				destroy(this.idle.pollFirst());
+			}
+			this.evictor.shutdownNow();
+			notifyAll();
+		}
+		synchronized (this.multiplexLock) {
+			if (this.multiplexed != null) {
+				this.multiplexed.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the connection and frees its slot. Must be called holding the lock.
+	 * 
+	 * @param connection the connection to close. [PooledConnection]
+	 */
+	private void destroy(PooledConnection connection) {
+		connection.close();
+		this.open--;
+	}
+}
@@ -12,7 +12,18 @@ public interface Controller {
 	 * {@code Loader} class.
 	 * 
 	 * @param user the {@code User} we want to pass. [User]
+	 * @return the data loaded for the {@code User}, null if none. [Object]
 	 * @see Loader
 	 */
-	void initData(User user);
-}
\ No newline at end of file
+	Object initData(User user);
+
+	/**
+	 * Clears the state left by the previous visit. {@code Loader} reuses the
+	 * page and its controller, so this method is called every time the page is
+	 * displayed again, before {@code initData}. By default it does nothing.
+	 * 
+	 * @see Loader
+	 */
+	default void reset() {
+	}
+}
@@ -1,11 +1,6 @@
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -13,7 +8,6 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -22,9 +16,12 @@ import javafx.scene.control.TableView;
  * Controller for Cart, page accessible by {@code User} with permission > 0 (aka
  * everyone)
  */
-public class ControllerCart {
+public class ControllerCart implements Controller {
 
 	private User currentUser;
+	// content of the cart, updated in place by the diff
+	private final ObservableList<Wine> items = FXCollections.observableArrayList();
+	private final KeyedListDiff<Wine> diff = KeyedListDiff.forWines();
 
 	@FXML
 	private AnchorPane rootPane;
@@ -48,54 +45,81 @@ public class ControllerCart {
 	 * Initialize {@code this.currentUser} with the passed value. This method is
 	 * made to be called from another controller, using the {@code load} method in
 	 * {@code Loader} class. This method has been modified for testing purposes.
+	 * The cart is taken from the {@code CartModel} and displayed at once, then
+	 * downloaded again in background. Only the tests wait for the first
+	 * download, the table is filled when the cart arrives.
 	 * 
 	 * @param user the {@code User} we want to pass. [User]
 	 * @see Loader
+	 * @see CartModel
 	 * @return the list of {@Wine} in the cart. [ArrayList of Wine]
 	 */
 	@SuppressWarnings("unchecked")
 	public ArrayList<Wine> initData(User user) {
 		this.currentUser = user;
-		ArrayList<Wine> cartResult = new ArrayList<Wine>();
+		CartModel model = CartModel.forUser(user);
 
-		try {
-			Socket socket = new Socket("localhost", 4316);
-
-			// client -> server
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
-			String[] toBeSent = { "display_cart", this.currentUser.getEmail() };
-			out.writeObject(toBeSent);
-
-			// server -> client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
+		if (this.tableView != null) {
+			// the table is filled when the cart arrives, the first visit too
+			model.setOnChange(this::addToTable);
+			boolean firstVisit = !model.isLoaded();
+			model.refresh().whenCompleteAsync((cartResult, error) -> {
+				if (error != null && firstVisit) {
+					showServerError();
+				}
+			}, AsyncClient.FX);
+		} else if (model.isLoaded()) {
+			model.refresh();
+		} else {
+			try {
+				String[] toBeSent = { "display_cart", this.currentUser.getEmail() };
+				model.load((ArrayList<Wine>) Client.getShared().request(toBeSent));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
 
-			cartResult = (ArrayList<Wine>) in.readObject();
-			socket.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+		ArrayList<Wine> cartResult = model.getItems();
+		if (this.tableView != null) {
+			addToTable(cartResult);
 		}
 		return cartResult;
 	}
 
+	/**
+	 * Sets up the columns in the table, once: they don't depend on the items.
+	 * 
+	 * @see WineColumns
+	 */
+	@FXML
+	public void initialize() {
+		this.nameColumn.setCellValueFactory(WineColumns.NAME);
+		this.yearColumn.setCellValueFactory(WineColumns.YEAR);
+		this.producerColumn.setCellValueFactory(WineColumns.PRODUCER);
+		this.quantityColumn.setCellValueFactory(WineColumns.QUANTITY);
+		this.tableView.setItems(this.items);
+	}
+
+	/**
+	 * Empties the table, which still displays the cart of the previous visit.
+	 */
+	@Override
+	public void reset() {
+		this.items.clear();
+	}
+
 	/**
 	 * Loads the specified ArrayList of Wines in the table view. This method will
-	 * override the previous content of the table.
+	 * override the previous content of the table, updating only the rows that
+	 * changed, so that the selection and the scroll position are kept.
 	 * 
 	 * @param wines the content that needs to be displayed on the table. [Arraylist
 	 *              of Wine]
 	 * @see Wine
+	 * @see KeyedListDiff
 	 */
 	public void addToTable(ArrayList<Wine> wines) {
-		// set up the columns in the table
-		this.nameColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Name"));
-		this.yearColumn.setCellValueFactory(new PropertyValueFactory<Wine, Integer>("Year"));
-		this.producerColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Producer"));
-		this.quantityColumn.setCellValueFactory(new PropertyValueFactory<Wine, Integer>("Quantity"));
-		ObservableList<Wine> oListWine = FXCollections.observableArrayList(wines);
-		// load data
-		tableView.setItems(oListWine);
+		this.diff.apply(this.items, wines);
 	}
 
 	/**
@@ -106,15 +130,55 @@ public class ControllerCart {
 	 */
 	@FXML
 	public void back(ActionEvent event) throws IOException {
+		CartModel.forUser(this.currentUser).setOnChange(null);
 		Loader loader = new Loader(this.currentUser, this.rootPane);
 		loader.load("homepage_user");
 	}
 
 	/**
-	 * Allows the {@code User} to buy the items in his cart. 
-	 * This method has been modified for testing purposes.
+	 * Buys the items in the cart when the {@code User} clicks on Buy. The
+	 * changes still queued in the {@code CartBatcher} are sent first, then the
+	 * order, both in background; the outcome is notified when the server
+	 * answers.
 	 * 
 	 * @param event GUI event. [ActionEvent]
+	 * @see CartModel
+	 */
+	@FXML
+	public void buy(ActionEvent event) {
+		if (this.currentUser.getPermission() <= 0) {
+			return;
+		}
+
+		CartModel model = CartModel.forUser(this.currentUser);
+		String[] toBeSent = { "new_order", this.currentUser.getEmail() };
+		model.flushAsync().thenCompose(result -> AsyncClient.getShared().<Order>request(toBeSent))
+				.whenCompleteAsync((order, error) -> {
+					if (error != null) {
+						showServerError();
+					} else if (order == null || order.getWines().isEmpty()) {
+						// nothing has been bought, the cart is downloaded again
+						model.refresh();
+						Alert alert = new Alert(AlertType.WARNING);
+						alert.setTitle("Not ordered");
+						alert.setHeaderText("The cart is empty or some wines are not available anymore.");
+						alert.showAndWait();
+					} else {
+						model.ordered();
+						Alert alert = new Alert(AlertType.INFORMATION);
+						alert.setTitle("Order placed");
+						alert.setHeaderText(String.format("Order %d has been placed.", order.getId()));
+						alert.showAndWait();
+					}
+				}, AsyncClient.FX);
+	}
+
+	/**
+	 * Allows the {@code User} to buy the items in his cart. 
+	 * This method has been modified for testing purposes. The changes still
+	 * queued in the {@code CartBatcher} are sent first, so that the order
+	 * contains what the {@code User} sees.
+	 * 
 	 * @throws UnknownHostException if the IP address of the host could not be
 	 *                              determined.
 	 * @throws IOException          if an I/O error occurs when creating the socket.
@@ -125,26 +189,17 @@ public class ControllerCart {
 
 		if (this.currentUser.getPermission() > 0) {
 			// user is authorized to perform the action
-			Socket socket = new Socket("localhost", 4316);
-
-			// client -> server
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
 			String[] toBeSent = { "new_order", this.currentUser.getEmail() };
-			out.writeObject(toBeSent);
-
-			// server -> client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
+			CartModel model = CartModel.forUser(this.currentUser);
+			model.flush();
 
 			try {
-				Order newOrder = (Order) in.readObject();
-				socket.close();
+				Order newOrder = (Order) Client.getShared().request(toBeSent);
+				model.ordered();
 				winesAfterOrder = newOrder.getWines();
 				return winesAfterOrder;
 			} catch (ClassNotFoundException e) {
 				e.printStackTrace();
-				socket.close();
 				winesAfterOrder.add(new Wine());
 				return winesAfterOrder;
 			}
@@ -156,82 +211,67 @@ public class ControllerCart {
 	}
 
 	/**
-	 * Allows anyone to search for wines.
+	 * Displays the content of the cart. The local content is displayed at once,
+	 * then the cart is downloaded in background.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws UnknownHostException if the IP address of the host could not be
-	 *                              determined.
-	 * @throws IOException          if an I/O error occurs when creating the socket.
+	 * @see CartModel
 	 */
 	@FXML
-	@SuppressWarnings("unchecked")
-	public void displayCart(ActionEvent event) throws IOException {
-		Socket socket = new Socket("localhost", 4316);
-
-		// client -> server
-		OutputStream outputStream = socket.getOutputStream();
-		ObjectOutputStream out = new ObjectOutputStream(outputStream);
-		String[] toBeSent = { "display_cart", this.currentUser.getEmail() };
-		out.writeObject(toBeSent);
-
-		// server -> client
-		InputStream inputStream = socket.getInputStream();
-		ObjectInputStream in = new ObjectInputStream(inputStream);
-
-		try {
-			ArrayList<Wine> cartResult = (ArrayList<Wine>) in.readObject();
-			addToTable(cartResult);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		socket.close();
+	public void displayCart(ActionEvent event) {
+		CartModel model = CartModel.forUser(this.currentUser);
+		addToTable(model.getItems());
+		model.refresh().whenCompleteAsync((cartResult, error) -> {
+			if (error != null) {
+				showServerError();
+			}
+		}, AsyncClient.FX);
 	}
 
 	/**
-	 * Allows the {@code User} to remove wines from his cart.
+	 * Allows the {@code User} to remove wines from his cart. The wine
+	 * disappears from the table at once, the removal is sent in background by
+	 * the {@code CartModel}; if the server rejects it, the wine is displayed
+	 * again.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws UnknownHostException if the IP address of the host could not be
-	 *                              determined.
-	 * @throws IOException          if an I/O error occurs when creating the socket.
 	 * @see User
+	 * @see CartModel
 	 */
 	@FXML
-	public void removeFromCart(ActionEvent event) throws UnknownHostException, IOException {
-		Socket socket = new Socket("localhost", 4316);
-		try {
-			// getting selection of the tableview
-			Wine wine = tableView.getSelectionModel().getSelectedItem();
-
-			// client -> server
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
-			String[] toBeSent = { "remove_from_cart", this.currentUser.getEmail(),
-					String.valueOf(wine.getProductId()) };
-			out.writeObject(toBeSent);
-
-			// server -> client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
-			Boolean removeResult = (Boolean) in.readObject();
-
-			if (removeResult) {
-				// if result is true, the wine has been correctly removed from cart
-				initData(this.currentUser);
-				Alert alert = new Alert(AlertType.INFORMATION);
-				alert.setTitle(String.format("Removed from cart"));
-				alert.setHeaderText(String.format("Removed %s from cart.", wine.getName()));
-				alert.showAndWait();
-			} else {
-				// else, the wine has not been correctly removed from cart
+	public void removeFromCart(ActionEvent event) {
+		// getting selection of the tableview
+		Wine wine = tableView.getSelectionModel().getSelectedItem();
+
+		if (wine == null) {
+			// the wine has not been selected
+			Alert alert = new Alert(AlertType.WARNING);
+			alert.setTitle(String.format("Select a wine"));
+			alert.setHeaderText("You have to click on a Wine and then Remove.");
+			alert.showAndWait();
+			return;
+		}
+
+		CartModel.forUser(this.currentUser).remove(wine).whenCompleteAsync((removeResult, error) -> {
+			if (error != null) {
+				showServerError();
+			} else if (removeResult != CartBatchResult.OK) {
+				// the wine has not been correctly removed from cart
 				Alert alert = new Alert(AlertType.WARNING);
-				alert.setTitle(String.format("Select a wine"));
-				alert.setHeaderText("You have to click on a Wine and then Remove.");
+				alert.setTitle(String.format("Not removed"));
+				alert.setHeaderText(String.format("%s can't be removed from the cart.", wine.getName()));
 				alert.showAndWait();
 			}
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-		socket.close();
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Notifies the {@code User} that the server can't be reached.
+	 */
+	private void showServerError() {
+		Alert alert = new Alert(AlertType.ERROR);
+		alert.setTitle("Cannot connect to server");
+		alert.setHeaderText("Server is unreachable. Try again later.");
+		alert.showAndWait();
 	}
 }
\ No newline at end of file
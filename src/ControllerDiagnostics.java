@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.AnchorPane;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+/**
+ * Controller for the diagnostics window, hidden from the users: it is opened
+ * with Ctrl+Shift+D from any page. It displays the {@code ClientMetrics} of
+ * every command, refreshed every second, and exports them to a CSV file in
+ * the working directory.
+ * 
+ * @see ClientMetrics
+ */
+public class ControllerDiagnostics {
+
+	private static final Duration REFRESH = Duration.seconds(1);
+	private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+	private static Stage stage;
+
+	private final ClientMetrics metrics = ClientMetrics.getShared();
+	private Timeline refresh;
+
+	@FXML
+	private AnchorPane rootPane;
+
+	@FXML
+	private TableView<CommandMetrics> tableView;
+
+	@FXML
+	private TableColumn<CommandMetrics, String> commandColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Long> requestsColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Long> errorsColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Long> sentColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Long> receivedColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Double> meanColumn;
+
+	@FXML
+	private TableColumn<CommandMetrics, Double> p50Column;
+
+	@FXML
+	private TableColumn<CommandMetrics, Double> p99Column;
+
+	@FXML
+	private TableColumn<CommandMetrics, Double> p999Column;
+
+	@FXML
+	private TableColumn<CommandMetrics, Double> maxColumn;
+
+	@FXML
+	private Label connections;
+
+	/**
+	 * Opens the diagnostics window, or brings it to the front if it is already
+	 * open.
+	 * 
+	 * @param owner the window of the application. [Window]
+	 */
+	public static void show(Window owner) {
+		if (stage != null) {
+			stage.toFront();
+			return;
+		}
+
+		try {
+			FXMLLoader loader = new FXMLLoader(ControllerDiagnostics.class.getResource("diagnostics.fxml"));
+			Parent root = loader.load();
+			ControllerDiagnostics controller = loader.getController();
+
+			stage = new Stage();
+			stage.initOwner(owner);
+			stage.setTitle("Diagnostics");
+			stage.setScene(new Scene(root));
+			stage.setOnHidden(event -> {
+				controller.refresh.stop();
+				stage = null;
+			});
+			stage.show();
+		} catch (IOException e) {
+			Alert alert = new Alert(AlertType.ERROR);
+			alert.setTitle("Cannot open the diagnostics");
+			alert.setHeaderText(e.getMessage());
+			alert.showAndWait();
+		}
+	}
+
+	/**
+	 * Sets up the columns and starts refreshing the table. Called by the
+	 * FXMLLoader.
+	 */
+	@FXML
+	public void initialize() {
+		this.commandColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, String>("Command"));
+		this.requestsColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Long>("Requests"));
+		this.errorsColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Long>("Errors"));
+		this.sentColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Long>("BytesSent"));
+		this.receivedColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Long>("BytesReceived"));
+		this.meanColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Double>("MeanMillis"));
+		this.p50Column.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Double>("P50Millis"));
+		this.p99Column.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Double>("P99Millis"));
+		this.p999Column.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Double>("P999Millis"));
+		this.maxColumn.setCellValueFactory(new PropertyValueFactory<CommandMetrics, Double>("MaxMillis"));
+
+		this.refresh = new Timeline(new KeyFrame(REFRESH, event -> update()));
+		this.refresh.setCycleCount(Animation.INDEFINITE);
+		this.refresh.play();
+		update();
+	}
+
+	/**
+	 * Displays the current metrics.
+	 */
+	private void update() {
+		this.tableView.getItems().setAll(this.metrics.getCommandMetrics());
+		this.tableView.refresh();
+		this.connections.setText(String.format("Connections: %d opened, %d failed, setup mean %.2f ms, p99 %.2f ms",
+				this.metrics.getConnectionsOpened(), this.metrics.getConnectionFailures(),
+				this.metrics.getConnectionSetupMeanMillis(), this.metrics.getConnectionSetupP99Millis()));
+	}
+
+	/**
+	 * Exports the metrics to a CSV file in the working directory.
+	 * 
+	 * @param event GUI event. [ActionEvent]
+	 */
+	@FXML
+	public void export(ActionEvent event) {
+		Path file = Paths.get("client-metrics-" + LocalDateTime.now().format(FILE_DATE) + ".csv").toAbsolutePath();
+		try {
+			this.metrics.export(file);
+			Alert alert = new Alert(AlertType.INFORMATION);
+			alert.setTitle("Metrics exported");
+			alert.setHeaderText("The metrics have been written to " + file);
+			alert.showAndWait();
+		} catch (IOException e) {
+			Alert alert = new Alert(AlertType.ERROR);
+			alert.setTitle("Cannot export the metrics");
+			alert.setHeaderText(e.getMessage());
+			alert.showAndWait();
+		}
+	}
+
+	/**
+	 * Forgets the metrics recorded so far.
+	 * 
+	 * @param event GUI event. [ActionEvent]
+	 */
+	@FXML
+	public void reset(ActionEvent event) {
+		this.metrics.reset();
+		update();
+	}
+}
@@ -1,33 +1,81 @@
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.AnchorPane;
+import javafx.util.Duration;
 
 /**
  * Controller for the User Homepage.
  */
-public class ControllerHomepageUser {
+public class ControllerHomepageUser implements Controller {
+
+	private static final int PAGE_SIZE = 50;
+	private static final int CACHED_PAGES = 20;
+	private static final int ORDERS_PAGE_SIZE = 30;
+	private static final Duration SEARCH_DELAY = Duration.millis(200);
+	// the server never returns more wines per request, see ServerStore.MAX_PAGE_SIZE
+	private static final int FACET_PAGE_SIZE = 1000;
+	// item of the facet boxes meaning "any value"
+	private static final String ANY = "";
 
 	private User currentUser;
+	private PagedWineList catalog;
+	// search results, updated in place by the diff
+	private final ObservableList<Wine> results = FXCollections.observableArrayList();
+	private final KeyedListDiff<Wine> diff = KeyedListDiff.forWines();
+	// first page of the orders, received with the catalog
+	private OrderPage firstOrders;
+	private int cartSize;
+	private String cartText;
+	private CompletableFuture<HomepageBootstrap> pendingHomepage;
+	private CompletableFuture<ArrayList<Wine>> pendingSearch;
+	private PauseTransition searchDelay;
+	// last query answered by the server, reused while the user refines it and
+	// the catalog doesn't change
+	private String lastText;
+	private String lastYear;
+	private ArrayList<Wine> lastResult;
+	private PagedWineList lastCatalog;
+	private int lastVersion;
+	// the catalog in memory, and the filter and the order of the results taken from it
+	private CatalogQuery query;
+	private CatalogQuery.Filter filter;
+	private boolean localResults;
+	private int sortColumn = CatalogQuery.UNSORTED;
+	private boolean ascending = true;
+
+	// the facet selection being browsed, and the counts displayed by the facet boxes
+	private CompletableFuture<FacetResult> pendingFacets;
+	private boolean facetsLoaded;
+	private boolean updatingFacets;
+	private final HashMap<String, Integer> producerCounts = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> yearCounts = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> grapeCounts = new HashMap<String, Integer>();
+
+	// restocks pushed while a notification is open
+	private final ArrayList<Wine> pendingRestocks = new ArrayList<Wine>();
+	private boolean notifying;
 
 	@FXML
 	private AnchorPane rootPane;
@@ -38,6 +86,15 @@ public class ControllerHomepageUser {
 	@FXML
 	private TextField searchboxYear;
 
+	@FXML
+	private ComboBox<String> producerFacet;
+
+	@FXML
+	private ComboBox<String> yearFacet;
+
+	@FXML
+	private ComboBox<String> grapeFacet;
+
 	@FXML
 	private TreeView<String> treeView;
 
@@ -62,63 +119,244 @@ public class ControllerHomepageUser {
 	@FXML
 	private TextField quantity;
 
+	@FXML
+	private Button cartButton;
+
+	/**
+	 * Binds the search to the search boxes: the search starts by itself when the
+	 * user stops typing for {@code SEARCH_DELAY}, and keeps the text of the cart
+	 * button, which displays the size of the cart. The columns of the table are
+	 * set up once, and sorted by {@code sort}. Selecting a producer, a year or
+	 * a grape browses the catalog by facets. Called by the FXMLLoader.
+	 */
+	@FXML
+	public void initialize() {
+		this.cartText = cartButton.getText();
+		setUpColumns();
+		setUpFacet(producerFacet, this.producerCounts, "Producer");
+		setUpFacet(yearFacet, this.yearCounts, "Year");
+		setUpFacet(grapeFacet, this.grapeCounts, "Grape");
+		tableView.setSortPolicy(table -> sort());
+		this.searchDelay = new PauseTransition(SEARCH_DELAY);
+		this.searchDelay.setOnFinished(event -> runSearch());
+		searchboxName.textProperty().addListener((observable, oldValue, newValue) -> this.searchDelay.playFromStart());
+		searchboxYear.textProperty().addListener((observable, oldValue, newValue) -> this.searchDelay.playFromStart());
+	}
+
 	/**
 	 * Initialize {@code this.currentUser} with the passed value. This method is
 	 * made to be called from another controller, using the {@code load} method in
-	 * {@code Loader} class. It also adds all the wines to display to the TableView
-	 * and handles the process to display the notifications. This method has been
-	 * modified for testing purposes.
+	 * {@code Loader} class. It also gets the catalog from {@code CatalogCache}:
+	 * the first visit downloads its first page, the other pages are downloaded
+	 * while the user scrolls the TableView. The catalog, the first page of the
+	 * orders and the size of the cart arrive together with a single
+	 * {@code bootstrap_user} request, usually sent by {@code prefetch} at the
+	 * login; the wines restocked since the last visit are notified. When the
+	 * page is displayed, the data are downloaded in background and bound to
+	 * the table and the tree when they arrive, so the JavaFX application thread
+	 * never waits for the server. This method has been modified for testing
+	 * purposes: without the page, the data are downloaded at once.
 	 * 
 	 * @param user the {@code User} we want to pass. [User]
 	 * @see Loader
 	 * @see Wine
-	 * @return the list of all the {@Wine}. [ArrayList of Wine]
+	 * @see PagedWineList
+	 * @see CatalogCache
+	 * @see HomepageBootstrap
+	 * @return the first page of the catalog, empty when the page is displayed or
+	 *         the catalog can't be downloaded, never {@code null}. [ArrayList of
+	 *         Wine]
 	 */
-	@SuppressWarnings("unchecked")
 	public ArrayList<Wine> initData(User user) {
 		this.currentUser = user;
-		ArrayList<Wine> wines = new ArrayList<Wine>();
+		CatalogCache.getShared().setOnRestock(this::notifyRestocked);
+
+		if (tableView != null) {
+			// loaded from the FXML, not by the tests
+			this.pendingHomepage = AsyncClient.getShared().call(() -> downloadHomepage(user));
+			this.pendingHomepage.whenCompleteAsync((bootstrap, error) -> {
+				if (error != null) {
+					if (!AsyncClient.isCancellation(error)) {
+						showServerError();
+					}
+					return;
+				}
+				showHomepage(bootstrap);
+				displayCatalog();
+				if (user.getPermission() > 0) {
+					displayOrders();
+				}
+			}, AsyncClient.FX);
+			return new ArrayList<Wine>();
+		}
 
 		try {
-			// Fill the frontpage with wines.
-			Socket socket = new Socket("localhost", 4316);
-
-			// client -> server
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
-			String[] toBeSent = { "get_wines" };
-			out.writeObject(toBeSent);
-
-			// server ->client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
-			wines = (ArrayList<Wine>) in.readObject();
-			socket.close();
-			return wines;
+			showHomepage(downloadHomepage(user));
+			ArrayList<Wine> firstPage = this.catalog.getFirstPage();
+			if (firstPage != null) {
+				return firstPage;
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		return wines;
+		return new ArrayList<Wine>();
+	}
+
+	/**
+	 * Downloads the data of the homepage, blocking the caller.
+	 * 
+	 * @param user the logged user. [User]
+	 * @return the data of the homepage, {@code null} if the server doesn't know
+	 *         {@code bootstrap_user}: then only the catalog has been
+	 *         downloaded. [HomepageBootstrap]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 * @see CatalogCache
+	 */
+	private static HomepageBootstrap downloadHomepage(User user) throws IOException, ClassNotFoundException {
+		CatalogCache cache = CatalogCache.getShared();
+		HomepageBootstrap bootstrap = cache.getHomepage(user, PAGE_SIZE, CACHED_PAGES, ORDERS_PAGE_SIZE);
+		if (bootstrap == null) {
+			cache.getCatalog(PAGE_SIZE, CACHED_PAGES);
+		}
+		return bootstrap;
+	}
+
+	/**
+	 * Keeps the catalog, the first page of the orders and the size of the cart
+	 * downloaded for the homepage.
+	 * 
+	 * @param bootstrap the data of the homepage, {@code null} if only the
+	 *                  catalog has been downloaded. [HomepageBootstrap]
+	 */
+	private void showHomepage(HomepageBootstrap bootstrap) {
+		this.catalog = CatalogCache.getShared().getCachedCatalog();
+		if (bootstrap != null) {
+			this.firstOrders = bootstrap.getOrders();
+			setCartSize(bootstrap.getCartSize());
+		}
+	}
+
+	/**
+	 * Sends the request of the homepage in background, so that its data are on
+	 * their way while the homepage is being displayed. Called right after the
+	 * login.
+	 * 
+	 * @param user the logged user. [User]
+	 * @see CatalogCache
+	 */
+	public static void prefetch(User user) {
+		CatalogCache.getShared().prefetch(user, PAGE_SIZE, ORDERS_PAGE_SIZE);
+	}
+
+	/**
+	 * Displays the number of bottles in the cart on its button.
+	 * 
+	 * @param cartSize the number of bottles. [int]
+	 */
+	private void setCartSize(int cartSize) {
+		this.cartSize = cartSize;
+		if (this.cartButton != null) {
+			this.cartButton.setText(cartSize > 0 ? String.format("%s (%d)", this.cartText, cartSize) : this.cartText);
+		}
+	}
+
+	/**
+	 * Clears the search, the facets, the table, the orders and the
+	 * notifications of the previous visit, which may belong to another
+	 * {@code User}.
+	 */
+	@Override
+	public void reset() {
+		if (this.pendingHomepage != null) {
+			this.pendingHomepage.cancel(false);
+			this.pendingHomepage = null;
+		}
+		if (this.pendingSearch != null) {
+			this.pendingSearch.cancel(false);
+			this.pendingSearch = null;
+		}
+		if (this.pendingFacets != null) {
+			this.pendingFacets.cancel(false);
+			this.pendingFacets = null;
+		}
+		this.updatingFacets = true;
+		this.producerFacet.setValue(ANY);
+		this.yearFacet.setValue(ANY);
+		this.grapeFacet.setValue(ANY);
+		this.updatingFacets = false;
+		// the counts are downloaded again when a facet is opened
+		this.facetsLoaded = false;
+		this.searchboxName.clear();
+		this.searchboxYear.clear();
+		// clearing the search boxes starts a search
+		this.searchDelay.stop();
+		this.quantity.clear();
+		this.lastText = null;
+		this.lastYear = null;
+		this.lastResult = null;
+		this.lastCatalog = null;
+		this.filter = null;
+		this.localResults = false;
+		this.pendingRestocks.clear();
+		this.tableView.setItems(null);
+		this.treeView.setRoot(null);
+		this.firstOrders = null;
+		setCartSize(0);
+	}
+
+	/**
+	 * Displays the whole catalog in the table view. Only the visible pages are
+	 * downloaded, while the user scrolls. From now on the server pushes the
+	 * changes of the catalog: the rows are updated in place and the restocked
+	 * wines are notified.
+	 * 
+	 * @see PagedWineList
+	 * @see CatalogCache
+	 */
+	public void displayCatalog() {
+		// the catalog is shown in its own order, it can't be sorted yet
+		tableView.getSortOrder().clear();
+		// load data
+		tableView.setItems(this.catalog);
+
+		CatalogCache cache = CatalogCache.getShared();
+		cache.setOnRestock(this::notifyRestocked);
+		cache.subscribe();
 	}
 
 	/**
 	 * Loads the specified ArrayList of Wines in the table view. This method will
-	 * override the previous content of the table.
+	 * override the previous content of the table. If the table already displays
+	 * search results, only the rows that changed are updated, so that the
+	 * selection and the scroll position are kept.
 	 * 
 	 * @param wines the content that needs to be displayed on the table. [Arraylist
 	 *              of Wine]
 	 * @see Wine
+	 * @see KeyedListDiff
 	 */
 	public void addToTable(ArrayList<Wine> wines) {
-		// set up the columns in the table
-		nameColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Name"));
-		yearColumn.setCellValueFactory(new PropertyValueFactory<Wine, Integer>("Year"));
-		producerColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Producer"));
-		grapesColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Grapewines"));
-		notesColumn.setCellValueFactory(new PropertyValueFactory<Wine, String>("Notes"));
-		ObservableList<Wine> oListWine = FXCollections.observableArrayList(wines);
+		if (tableView.getItems() == this.results) {
+			this.diff.apply(this.results, wines);
+			return;
+		}
 		// load data
-		tableView.setItems(oListWine);
+		this.results.setAll(wines);
+		tableView.setItems(this.results);
+	}
+
+	/**
+	 * Sets up the columns in the table, once: they don't depend on the items.
+	 * 
+	 * @see WineColumns
+	 */
+	private void setUpColumns() {
+		nameColumn.setCellValueFactory(WineColumns.NAME);
+		yearColumn.setCellValueFactory(WineColumns.YEAR);
+		producerColumn.setCellValueFactory(WineColumns.PRODUCER);
+		grapesColumn.setCellValueFactory(WineColumns.GRAPES);
+		notesColumn.setCellValueFactory(WineColumns.NOTES);
 	}
 
 	/**
@@ -145,6 +383,33 @@ public class ControllerHomepageUser {
 		}
 	}
 
+	/**
+	 * Notifies the wines restocked while the homepage is open. The restocks
+	 * pushed while a notification is open are shown together when it is
+	 * closed.
+	 * 
+	 * @param wines the restocked wines. [ArrayList of Wine]
+	 */
+	private void notifyRestocked(ArrayList<Wine> wines) {
+		// the quantities of the last result are out of date
+		this.lastResult = null;
+		this.pendingRestocks.addAll(wines);
+		if (this.notifying) {
+			return;
+		}
+
+		this.notifying = true;
+		try {
+			while (!this.pendingRestocks.isEmpty()) {
+				ArrayList<Wine> restocked = new ArrayList<Wine>(this.pendingRestocks);
+				this.pendingRestocks.clear();
+				displayNotifications(restocked);
+			}
+		} finally {
+			this.notifying = false;
+		}
+	}
+
 	/**
 	 * Allows the {@code User} to add the wines to his cart. This method has been
 	 * modified for testing purposes.
@@ -170,25 +435,16 @@ public class ControllerHomepageUser {
 	public int addToCart(Wine wine, int quantity) throws UnknownHostException, IOException {
 		// permission check, guests can't add to cart
 		if (this.currentUser.getPermission() > 0) {
-			Socket socket = new Socket("localhost", 4316);
-
 			try {
 				// quantity check
 				if (quantity > 0) {
-					// client -> server
-					OutputStream outputStream = socket.getOutputStream();
-					ObjectOutputStream out = new ObjectOutputStream(outputStream);
 					String[] toBeSent = { "add_to_cart", this.currentUser.getEmail(),
 							String.valueOf(wine.getProductId()), String.valueOf(quantity) };
-					out.writeObject(toBeSent);
-
-					// server -> client
-					InputStream inputStream = socket.getInputStream();
-					ObjectInputStream in = new ObjectInputStream(inputStream);
-					Boolean addResult = (Boolean) in.readObject();
+					Boolean addResult = (Boolean) Client.getShared().request(toBeSent);
 
 					if (addResult) {
 						// operation addToCart was successful
+						CartModel.forUser(this.currentUser).added(wine, quantity);
 						return 0;
 					} else {
 						// operation addToCart was not successful
@@ -196,16 +452,13 @@ public class ControllerHomepageUser {
 					}
 				} else {
 					// quantity is negative
-					socket.close();
 					return -3;
 				}
 			} catch (ClassNotFoundException e) {
 				// unexpected response from server
-				socket.close();
 				return -4;
 			} catch (NumberFormatException e) {
 				// the quantity was non inserted correctly
-				socket.close();
 				return -2;
 			}
 		} else {
@@ -215,47 +468,444 @@ public class ControllerHomepageUser {
 	}
 
 	/**
-	 * Allows anyone to search for wines.
+	 * Adds the selected wine to the cart of the {@code User}, with the quantity
+	 * typed in the quantity box. The cart is updated at once by the
+	 * {@code CartModel}, which sends the change in background; if the server
+	 * rejects it, the change is rolled back and an alert is shown.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws UnknownHostException if the IP address of the host could not be
-	 *                              determined.
-	 * @throws IOException          if an I/O error occurs when creating the socket.
+	 * @see CartModel
 	 */
 	@FXML
-	@SuppressWarnings("unchecked")
-	public void search(ActionEvent event) throws IOException, ClassNotFoundException {
-		Socket socket = new Socket("localhost", 4316);
+	public void addToCart(ActionEvent event) {
+		Wine wine = tableView.getSelectionModel().getSelectedItem();
 
-		// client -> server
-		OutputStream outputStream = socket.getOutputStream();
-		ObjectOutputStream out = new ObjectOutputStream(outputStream);
-		String[] toBeSent = { "search", searchboxName.getText(), searchboxYear.getText() };
-		out.writeObject(toBeSent);
+		if (this.currentUser.getPermission() <= 0) {
+			// the User is a guest, so he needs to login first
+			Alert alert = new Alert(AlertType.INFORMATION);
+			alert.setTitle("Please login");
+			alert.setHeaderText("You need to login to perform this action.");
+			alert.showAndWait();
+			return;
+		}
 
-		// server -> client
-		InputStream inputStream = socket.getInputStream();
-		ObjectInputStream in = new ObjectInputStream(inputStream);
-		ArrayList<Wine> searchResult = (ArrayList<Wine>) in.readObject();
+		int amount;
+		try {
+			amount = Integer.parseInt(quantity.getText().trim());
+		} catch (NumberFormatException e) {
+			amount = -1;
+		}
+
+		if (wine == null || wine == PagedWineList.PLACEHOLDER || amount <= 0) {
+			Alert alert = new Alert(AlertType.WARNING);
+			alert.setTitle("Select a wine");
+			alert.setHeaderText("You have to click on a Wine, type a positive quantity and then Add to Cart.");
+			alert.showAndWait();
+			return;
+		}
 
-		// displays the result in the tableview
-		addToTable(searchResult);
-		socket.close();
+		int added = amount;
+		setCartSize(this.cartSize + added);
+		CartModel.forUser(this.currentUser).add(wine, added).whenCompleteAsync((result, error) -> {
+			if (result != null && result == CartBatchResult.OK) {
+				return;
+			}
+			// rolled back
+			setCartSize(this.cartSize - added);
+			if (error != null) {
+				showServerError();
+			} else {
+				Alert alert = new Alert(AlertType.WARNING);
+				alert.setTitle("Not available");
+				alert.setHeaderText(String.format("%s can't be added to the cart in the specified quantity.",
+						wine.getName()));
+				alert.showAndWait();
+			}
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Allows anyone to search for wines, without waiting for the search that
+	 * starts by itself while typing.
+	 * 
+	 * @param event GUI event. [ActionEvent]
+	 * @see AsyncClient
+	 */
+	@FXML
+	public void search(ActionEvent event) {
+		this.searchDelay.stop();
+		runSearch();
+	}
+
+	/**
+	 * Searches the wines matching the search boxes. If the whole catalog is in
+	 * memory, the server is not asked at all: the wines are filtered and sorted
+	 * by {@code CatalogQuery}. If the user has only refined the last query
+	 * answered by the server, for example by typing a longer name, its result
+	 * is filtered locally. Otherwise the request runs in background, and
+	 * cancels the previous one if it is still running. Empty boxes display the
+	 * whole catalog again.
+	 * 
+	 * @see WineSearchIndex
+	 * @see CatalogQuery
+	 */
+	private void runSearch() {
+		String text = searchboxName.getText().trim();
+		String year = searchboxYear.getText().trim();
+
+		if (this.pendingSearch != null) {
+			this.pendingSearch.cancel(true);
+			this.pendingSearch = null;
+		}
+
+		if (text.isEmpty() && year.isEmpty()) {
+			displayCatalog();
+			return;
+		}
+
+		if (localQuery() != null) {
+			// the whole catalog is in memory, no need to ask the server
+			this.filter = CatalogQuery.Filter.ofSearch(text, year);
+			showQuery();
+			return;
+		}
+
+		if (isRefinement(text, year)) {
+			ArrayList<Wine> refined = new ArrayList<Wine>();
+			for (Wine wine : this.lastResult) {
+				if (WineSearchIndex.matches(wine, text)) {
+					refined.add(wine);
+				}
+			}
+			this.localResults = false;
+			addToTable(refined);
+			return;
+		}
+
+		// the result is at least as recent as the catalog in memory now
+		PagedWineList catalog = this.catalog;
+		int version = catalog != null ? catalog.getVersion() : 0;
+		String[] toBeSent = { "search", text, year };
+		CompletableFuture<ArrayList<Wine>> search = AsyncClient.getShared().request(toBeSent);
+		this.pendingSearch = search;
+		search.whenCompleteAsync((searchResult, error) -> {
+			if (search != this.pendingSearch) {
+				// superseded by a newer search
+				return;
+			}
+			this.pendingSearch = null;
+
+			if (error == null) {
+				this.lastText = text;
+				this.lastYear = year;
+				this.lastResult = searchResult;
+				this.lastCatalog = catalog;
+				this.lastVersion = version;
+				// displays the result in the tableview
+				this.localResults = false;
+				addToTable(searchResult);
+			} else if (!AsyncClient.isCancellation(error)) {
+				showServerError();
+			}
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Gets the query on the copy of the catalog in memory, building it again if
+	 * the catalog has changed.
+	 * 
+	 * @return the query, {@code null} while the copy is being downloaded.
+	 *         [CatalogQuery]
+	 * @see CatalogQuery
+	 */
+	private CatalogQuery localQuery() {
+		if (this.catalog == null) {
+			return null;
+		}
+		if (this.query == null || this.query.getVersion() != this.catalog.getVersion()
+				|| this.query.size() != this.catalog.size()) {
+			ArrayList<Wine> wines = this.catalog.snapshot();
+			this.query = wines != null ? new CatalogQuery(wines, this.catalog.getVersion()) : null;
+		}
+		return this.query;
+	}
+
+	/**
+	 * Displays the wines of the catalog in memory matching {@code this.filter},
+	 * in the order of the table.
+	 */
+	private void showQuery() {
+		readSortOrder();
+		this.localResults = true;
+		ArrayList<Wine> wines = this.filter != null ? this.query.query(this.filter, this.sortColumn, this.ascending)
+				: new ArrayList<Wine>();
+		addToTable(wines);
+	}
+
+	/**
+	 * Sorts the table when the user clicks on a column. The catalog in memory
+	 * and the results taken from it are sorted by {@code CatalogQuery} with
+	 * its precomputed orders; the results of the server are sorted as usual.
+	 * The paged catalog can't be sorted until its copy has been downloaded: the
+	 * sort is rejected, telling the user why.
+	 * 
+	 * @return true if the table has been sorted, else false. [Boolean]
+	 * @see CatalogQuery
+	 */
+	private Boolean sort() {
+		ObservableList<Wine> items = tableView.getItems();
+		if (items == null || items.isEmpty()) {
+			return true;
+		}
+		if (items == this.results && !this.localResults) {
+			return TableView.DEFAULT_SORT_POLICY.call(tableView);
+		}
+
+		int column = this.sortColumn;
+		boolean ascending = this.ascending;
+		readSortOrder();
+		if (items == this.catalog) {
+			if (this.sortColumn == CatalogQuery.UNSORTED) {
+				return true;
+			}
+			if (localQuery() == null) {
+				// the table puts back its previous order
+				boolean clicked = column != this.sortColumn || ascending != this.ascending;
+				this.sortColumn = column;
+				this.ascending = ascending;
+				if (clicked) {
+					Platform.runLater(() -> {
+						Alert alert = new Alert(AlertType.INFORMATION);
+						alert.setTitle("Cannot sort the catalog");
+						alert.setHeaderText("The catalog is being downloaded to be sorted, try again in a moment or "
+								+ "search to sort the results.");
+						alert.showAndWait();
+					});
+				}
+				return false;
+			}
+			// the whole catalog, sorted
+			this.filter = new CatalogQuery.Filter(null, null, null, null, WineSearchIndex.ANY_YEAR,
+					WineSearchIndex.ANY_YEAR);
+			showQuery();
+		} else if (column != this.sortColumn || ascending != this.ascending) {
+			// also called when the results change, they are already sorted then
+			showQuery();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the column the table is sorted on and its direction.
+	 */
+	private void readSortOrder() {
+		this.sortColumn = CatalogQuery.UNSORTED;
+		this.ascending = true;
+		if (!tableView.getSortOrder().isEmpty()) {
+			TableColumn<Wine, ?> column = tableView.getSortOrder().get(0);
+			this.ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+			if (column == nameColumn) {
+				this.sortColumn = CatalogQuery.NAME;
+			} else if (column == yearColumn) {
+				this.sortColumn = CatalogQuery.YEAR;
+			} else if (column == producerColumn) {
+				this.sortColumn = CatalogQuery.PRODUCER;
+			} else if (column == grapesColumn) {
+				this.sortColumn = CatalogQuery.GRAPES;
+			} else if (column == notesColumn) {
+				this.sortColumn = CatalogQuery.NOTES;
+			}
+		}
+	}
+
+	/**
+	 * Sets up a facet box: its items are the values of the facet, each one
+	 * displayed with the number of wines the customer would find selecting it.
+	 * The counts are downloaded the first time the box is opened, then every
+	 * time a facet is selected.
+	 * 
+	 * @param facet  the facet box. [ComboBox of String]
+	 * @param counts the number of wines of each value. [HashMap of String and
+	 *               Integer]
+	 * @param name   the name of the facet, displayed when any value is
+	 *               selected. [String]
+	 */
+	private void setUpFacet(ComboBox<String> facet, HashMap<String, Integer> counts, String name) {
+		facet.getItems().setAll(ANY);
+		facet.setValue(ANY);
+		facet.setCellFactory(list -> new FacetCell(counts, "Any " + name.toLowerCase(Locale.ROOT)));
+		facet.setButtonCell(new FacetCell(null, name));
+		facet.setOnShowing(event -> {
+			if (!this.facetsLoaded && this.pendingFacets == null) {
+				browseFacets(false);
+			}
+		});
+		facet.valueProperty().addListener((observable, oldValue, newValue) -> {
+			if (!this.updatingFacets) {
+				browseFacets(true);
+			}
+		});
+	}
+
+	/**
+	 * Browses the catalog by the selected facets: a single
+	 * {@code browse_facets} request, in background, returns the matching wines
+	 * and the new counts of every facet. The request cancels the previous one
+	 * if it is still running, so that clicking quickly displays only the last
+	 * selection. Without any selected facet the whole catalog is displayed
+	 * again. At most {@code FACET_PAGE_SIZE} wines are returned: when more of
+	 * them match, the {@code User} is told to narrow the selection.
+	 * 
+	 * @param display true to display the result in the table, false to only
+	 *                update the counts. [boolean]
+	 * @see FacetIndex
+	 * @see FacetResult
+	 */
+	private void browseFacets(boolean display) {
+		if (this.pendingFacets != null) {
+			this.pendingFacets.cancel(true);
+			this.pendingFacets = null;
+		}
+
+		String producer = facetValue(producerFacet);
+		String year = facetValue(yearFacet);
+		String grape = facetValue(grapeFacet);
+		boolean selected = !producer.isEmpty() || !year.isEmpty() || !grape.isEmpty();
+
+		String[] toBeSent = { "browse_facets", producer, year, grape, String.valueOf(FACET_PAGE_SIZE) };
+		CompletableFuture<FacetResult> browse = AsyncClient.getShared().request(toBeSent);
+		this.pendingFacets = browse;
+		browse.whenCompleteAsync((result, error) -> {
+			if (browse != this.pendingFacets) {
+				// superseded by a newer selection
+				return;
+			}
+			this.pendingFacets = null;
+
+			if (error == null && result != null) {
+				showFacets(result);
+				if (display && selected) {
+					this.localResults = false;
+					addToTable(result.getWines());
+					if (result.getTotal() > result.getWines().size()) {
+						showTruncated(result);
+					}
+				} else if (display) {
+					displayCatalog();
+				}
+			} else if (error != null && !AsyncClient.isCancellation(error)) {
+				showServerError();
+			}
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Notifies the {@code User} that only the first wines matching the facets
+	 * are displayed.
+	 * 
+	 * @param result the result. [FacetResult]
+	 */
+	private void showTruncated(FacetResult result) {
+		Alert alert = new Alert(AlertType.INFORMATION);
+		alert.setTitle("Too many wines");
+		alert.setHeaderText(String.format("Only the first %d of the %d matching wines are displayed, select more "
+				+ "filters to narrow the results.", result.getWines().size(), result.getTotal()));
+		alert.showAndWait();
+	}
+
+	/**
+	 * Displays the counts of a {@code browse_facets} result in the facet
+	 * boxes, keeping the selected values.
+	 * 
+	 * @param result the result. [FacetResult]
+	 */
+	private void showFacets(FacetResult result) {
+		LinkedHashMap<String, Integer> years = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<Integer, Integer> year : result.getYears().entrySet()) {
+			years.put(String.valueOf(year.getKey()), year.getValue());
+		}
+
+		// changing the items would browse again
+		this.updatingFacets = true;
+		try {
+			showFacet(producerFacet, this.producerCounts, result.getProducers());
+			showFacet(yearFacet, this.yearCounts, years);
+			showFacet(grapeFacet, this.grapeCounts, result.getGrapes());
+		} finally {
+			this.updatingFacets = false;
+		}
+		this.facetsLoaded = true;
+	}
+
+	/**
+	 * Replaces the values of a facet box and their counts.
+	 * 
+	 * @param facet     the facet box. [ComboBox of String]
+	 * @param counts    the counts displayed by the box. [HashMap of String and
+	 *                  Integer]
+	 * @param newCounts the new counts, sorted by value. [LinkedHashMap of String
+	 *                  and Integer]
+	 */
+	private void showFacet(ComboBox<String> facet, HashMap<String, Integer> counts,
+			LinkedHashMap<String, Integer> newCounts) {
+		String value = facetValue(facet);
+		counts.clear();
+		counts.putAll(newCounts);
+		ArrayList<String> items = new ArrayList<String>(newCounts.size() + 1);
+		items.add(ANY);
+		items.addAll(newCounts.keySet());
+		facet.getItems().setAll(items);
+		facet.setValue(value);
+	}
+
+	/**
+	 * Gets the value selected in a facet box.
+	 * 
+	 * @param facet the facet box. [ComboBox of String]
+	 * @return the value, {@code ANY} if no value is selected. [String]
+	 */
+	private static String facetValue(ComboBox<String> facet) {
+		return facet.getValue() != null ? facet.getValue() : ANY;
+	}
+
+	/**
+	 * Checks if a query can only match a subset of the last result: same year,
+	 * and a name that extends the last one. The last result is cleared as soon
+	 * as the catalog has changed, since the wines added or updated since then
+	 * are not in it.
+	 * 
+	 * @param text the name to search. [String]
+	 * @param year the year to search. [String]
+	 * @return true if the last result can be filtered locally. [Boolean]
+	 */
+	private boolean isRefinement(String text, String year) {
+		if (this.lastResult != null && (this.catalog == null || this.catalog != this.lastCatalog
+				|| this.catalog.getVersion() != this.lastVersion)) {
+			this.lastResult = null;
+		}
+		return this.lastResult != null && year.equals(this.lastYear)
+				&& text.toLowerCase(Locale.ROOT).startsWith(this.lastText.toLowerCase(Locale.ROOT));
 	}
 
 	/**
 	 * Goes to the cart page. It also checks the permission of the {@code User},
 	 * onlu users with permission > 0 can access to the cart page (users, employees,
-	 * administrators but not guests).
+	 * administrators but not guests). The cart page is displayed at once: it
+	 * takes the changes not confirmed yet from the {@code CartModel}.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws IOException if the file can't be accessed.
+	 * @see CartModel
 	 */
 	@FXML
-	public void showCart(ActionEvent event) throws IOException {
+	public void showCart(ActionEvent event) {
 		if (this.currentUser.getPermission() > 0) {
-			Loader loader = new Loader(this.currentUser, this.rootPane);
-			loader.load("cart");
+			CatalogCache.getShared().setOnRestock(null);
+			try {
+				Loader loader = new Loader(this.currentUser, this.rootPane);
+				loader.load("cart");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		} else {
 			Alert alert = new Alert(AlertType.INFORMATION);
 			alert.setTitle("Please login");
@@ -265,59 +915,42 @@ public class ControllerHomepageUser {
 	}
 
 	/**
-	 * Displays all the orders made by the {@code User} in the TreeView.
+	 * Displays the orders made by the {@code User} in the TreeView. Only the
+	 * first page of orders is downloaded, in background, unless it has arrived
+	 * with the catalog: the next pages and the wines of each order are
+	 * downloaded when the user expands them.
 	 * 
-	 * @throws UnknownHostException if the IP address of the host could not be
-	 *                              determined.
-	 * @throws IOException          if an I/O error occurs when creating the socket.
 	 * @see Order
 	 * @see User
+	 * @see OrderHistoryItem
 	 */
-	@SuppressWarnings("unchecked")
-	public void displayOrders() throws IOException {
+	public void displayOrders() {
 		// user is authorized to perform the action
-		Socket socket = new Socket("localhost", 4316);
-
-		// client -> server
-		OutputStream outputStream = socket.getOutputStream();
-		ObjectOutputStream out = new ObjectOutputStream(outputStream);
-		String[] toBeSent = { "get_orders_user", this.currentUser.getEmail() };
-		out.writeObject(toBeSent);
-
-		// server ->client
-		InputStream inputStream = socket.getInputStream();
-		ObjectInputStream in = new ObjectInputStream(inputStream);
-
-		try {
-			// receives the ArrayList of orders from the server
-			ArrayList<Order> orders = (ArrayList<Order>) in.readObject();
-			// creates the TreeView's root
-			TreeItem<String> rootItem = new TreeItem<String>("Orders");
-
-			for (Order order : orders) {
-				// fills the TreeView with the orders
-				TreeItem<String> rootOrder = new TreeItem<String>(Integer.toString(order.getId()));
-				TreeItem<String> id = new TreeItem<String>("Order ID: " + order.getId());
-				TreeItem<String> status = new TreeItem<String>("Status: " + order.getStatus());
-				TreeItem<String> customer = new TreeItem<String>("Customer: " + order.getCustomer());
-				rootOrder.getChildren().addAll(id, status, customer);
-
-				// for each order it displays each wine of the order
-				for (Wine wine : order.getWines()) {
-					TreeItem<String> rootProduct = new TreeItem<String>(
-							String.format("%d - %s %s", wine.getProductId(), wine.getName(), wine.getYear()));
-					TreeItem<String> quantity = new TreeItem<String>("Quantity: " + wine.getQuantity());
-					rootProduct.getChildren().add(quantity);
-					rootOrder.getChildren().add(rootProduct);
-				}
-				rootItem.getChildren().add(rootOrder);
-			}
-			treeView.setRoot(rootItem);
-			treeView.setShowRoot(false);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+		OrderHistoryItem rootItem = new OrderHistoryItem(this.currentUser.getEmail(), AsyncClient.getShared(),
+				ORDERS_PAGE_SIZE);
+		treeView.setRoot(rootItem);
+		treeView.setShowRoot(false);
+
+		if (this.firstOrders != null) {
+			rootItem.append(this.firstOrders);
+			this.firstOrders = null;
+			return;
 		}
-		socket.close();
+		rootItem.loadNextPage().whenCompleteAsync((result, error) -> {
+			if (error != null) {
+				showServerError();
+			}
+		}, AsyncClient.FX);
+	}
+
+	/**
+	 * Notifies the {@code User} that the server can't be reached.
+	 */
+	private void showServerError() {
+		Alert alert = new Alert(AlertType.ERROR);
+		alert.setTitle("Cannot connect to server");
+		alert.setHeaderText("Server is unreachable. Try again later.");
+		alert.showAndWait();
 	}
 
 	/**
@@ -328,7 +961,51 @@ public class ControllerHomepageUser {
 	 */
 	@FXML
 	public void logout(ActionEvent event) throws IOException {
-		AnchorPane pane = FXMLLoader.load(getClass().getResource("./login.fxml"));
-		rootPane.getChildren().setAll(pane);
+		CatalogCache cache = CatalogCache.getShared();
+		cache.setOnRestock(null);
+		cache.close();
+		Loader loader = new Loader(null, this.rootPane);
+		loader.load("login");
+	}
+
+	/**
+	 * Cell of a facet box, displaying a value with its number of wines.
+	 */
+	private static class FacetCell extends ListCell<String> {
+
+		private final HashMap<String, Integer> counts;
+		private final String anyText;
+
+		/**
+		 * {@code FacetCell} class constructor.
+		 * 
+		 * @param counts  the number of wines of each value, {@code null} to
+		 *                display only the value. [HashMap of String and Integer]
+		 * @param anyText the text displayed for {@code ANY}. [String]
+		 */
+		FacetCell(HashMap<String, Integer> counts, String anyText) {
+			this.counts = counts;
+			this.anyText = anyText;
+		}
+
+		/**
+		 * Displays a value of the facet.
+		 * 
+		 * @param item  the value. [String]
+		 * @param empty true if the cell is empty. [boolean]
+		 */
+		@Override
+		protected void updateItem(String item, boolean empty) {
+			super.updateItem(item, empty);
+			if (empty || item == null) {
+				setText(null);
+			} else if (item.equals(ANY)) {
+				setText(this.anyText);
+			} else if (this.counts != null) {
+				setText(String.format("%s (%d)", item, this.counts.getOrDefault(item, 0)));
+			} else {
+				setText(item);
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -1,16 +1,10 @@
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.ConnectException;
-import java.net.Socket;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Alert;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
@@ -21,7 +15,7 @@ import javafx.scene.layout.AnchorPane;
  * Controller for Login, page accessible by {@code User} with permission > 0
  * (aka everyone)
  */
-public class ControllerLogin {
+public class ControllerLogin implements Controller {
 
 	private User currentUser;
 
@@ -34,6 +28,30 @@ public class ControllerLogin {
 	@FXML
 	private PasswordField password;
 
+	/**
+	 * Initialize {@code this.currentUser} with the passed value. This method is
+	 * made to be called from another controller, using the {@code load} method in
+	 * {@code Loader} class.
+	 * 
+	 * @param user the {@code User} we want to pass. [User]
+	 * @return null, the login page doesn't load anything. [Object]
+	 * @see Loader
+	 */
+	public Object initData(User user) {
+		this.currentUser = user;
+		return null;
+	}
+
+	/**
+	 * Clears the credentials typed at the previous visit.
+	 */
+	@Override
+	public void reset() {
+		this.currentUser = null;
+		this.email.clear();
+		this.password.clear();
+	}
+
 	/**
 	 * Checks if the provided String is an email or not. This method uses RegEx.
 	 * 
@@ -58,16 +76,18 @@ public class ControllerLogin {
 	 */
 	@FXML
 	public void loadRegister(ActionEvent event) throws IOException {
-		AnchorPane pane = FXMLLoader.load(getClass().getResource("./register.fxml"));
-		rootPane.getChildren().setAll(pane);
+		Loader loader = new Loader(this.currentUser, this.rootPane);
+		loader.load("register");
 	}
 
 	/**
 	 * Login with the data provided by the user. Server responds with the correct
 	 * {@code User} (permission>=1) else it will respond with {@code nullUser}
-	 * (permission=0). This method has been modified for testing purposes.
+	 * (permission=0). Once logged, the data of the homepage are requested at
+	 * once, in background. This method has been modified for testing purposes.
 	 * 
-	 * @param event GUI event. [ActionEvent]
+	 * @param mail the email of the {@code User}. [String]
+	 * @param pass the password of the {@code User}. [String]
 	 * @throws IOException if an I/O error occurs when creating the socket.
 	 * @see User
 	 * @return <ul>
@@ -83,35 +103,26 @@ public class ControllerLogin {
 		// gets the informations
 
 		try {
-			Socket socket = new Socket("localhost", 4316);
 			// checks if the email and the password have been inserted
 			if (mail.length() > 0 && pass.length() > 0) {
 				// checks if the email is valid
 				if (isMail(mail)) {
 					// if the email is valid the client receives the object User from the server
-					// client -> server
-					OutputStream outputStream = socket.getOutputStream();
-					ObjectOutputStream out = new ObjectOutputStream(outputStream);
 					String[] toBeSent = { "login", mail, pass };
-					out.writeObject(toBeSent);
-
-					// server -> client
-					InputStream inputStream = socket.getInputStream();
-					ObjectInputStream in = new ObjectInputStream(inputStream);
-					User user = (User) in.readObject();
+					User user = (User) Client.getShared().request(toBeSent);
 
 					int permission = user.getPermission();
 					this.currentUser = user;
-					socket.close();
+					if (permission > 0) {
+						ControllerHomepageUser.prefetch(user);
+					}
 					return permission;
 				} else {
 					// email not valid
-					socket.close();
 					return -1;
 				}
 			} else {
 				// notifies if some fields are not filled
-				socket.close();
 				return -2;
 			}
 		} catch (ConnectException e) {
@@ -125,42 +136,94 @@ public class ControllerLogin {
 		}
 	}
 
+	/**
+	 * Login with the data typed by the user when somebody clicks on Login. The
+	 * credentials are sent in background, the homepage is opened when the server
+	 * accepts them.
+	 * 
+	 * @param event GUI event. [ActionEvent]
+	 * @see User
+	 */
+	@FXML
+	public void login(ActionEvent event) {
+		String mail = this.email.getText();
+		String pass = this.password.getText();
+
+		if (mail == null || pass == null || mail.isEmpty() || pass.isEmpty()) {
+			// notifies if some fields are not filled
+			Alert alert = new Alert(AlertType.WARNING);
+			alert.setTitle("All fields must be filled");
+			alert.setHeaderText("Please fill all the fields");
+			alert.showAndWait();
+			return;
+		}
+		if (!isMail(mail)) {
+			Alert alert = new Alert(AlertType.WARNING);
+			alert.setTitle("Email not valid");
+			alert.setHeaderText("Please type a valid email.");
+			alert.showAndWait();
+			return;
+		}
+
+		String[] toBeSent = { "login", mail, pass };
+		AsyncClient.getShared().<User>request(toBeSent).whenCompleteAsync((user, error) -> {
+			if (error != null || user == null) {
+				showServerError();
+			} else if (user.getPermission() <= 0) {
+				Alert alert = new Alert(AlertType.WARNING);
+				alert.setTitle("Wrong credentials");
+				alert.setHeaderText("The email or the password are not correct.");
+				alert.showAndWait();
+			} else {
+				openHomepage(user);
+			}
+		}, AsyncClient.FX);
+	}
+
 	/**
 	 * Opens the user's homepage once somebody clicks on the "Continue as Guest"
-	 * button in the
+	 * button in the login page. The guest is requested in background, then the
+	 * data of the homepage are requested while it is being loaded.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws IOException if an I/O error occurs when creating the socket.
 	 * @see User
 	 */
 	@FXML
-	public void guestLogin(ActionEvent event) throws IOException {
-		try {
-			// client -> server
-			Socket socket = new Socket("localhost", 4316);
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
-			String[] toBeSent = { "guest" };
-			out.writeObject(toBeSent);
-
-			// server -> client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
-			User user = (User) in.readObject();
-			this.currentUser = user;
+	public void guestLogin(ActionEvent event) {
+		String[] toBeSent = { "guest" };
+		AsyncClient.getShared().<User>request(toBeSent).whenCompleteAsync((user, error) -> {
+			if (error != null || user == null) {
+				showServerError();
+			} else {
+				openHomepage(user);
+			}
+		}, AsyncClient.FX);
+	}
 
+	/**
+	 * Opens the homepage of the logged {@code User}, requesting its data in
+	 * background while it is being loaded.
+	 * 
+	 * @param user the logged {@code User}. [User]
+	 */
+	private void openHomepage(User user) {
+		this.currentUser = user;
+		ControllerHomepageUser.prefetch(user);
+		try {
 			Loader loader = new Loader(this.currentUser, this.rootPane);
 			loader.load("homepage_user");
-			socket.close();
-		} catch (ConnectException e) {
-			// notifies if the server can not be reached
-			Alert alert = new Alert(AlertType.ERROR);
-			alert.setTitle("Cannot connect to server");
-			alert.setHeaderText("Server is unreachable. Try again later.");
-			alert.showAndWait();
-		} catch (ClassNotFoundException e) {
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
 
+	/**
+	 * Notifies the {@code User} that the server can't be reached.
+	 */
+	private void showServerError() {
+		Alert alert = new Alert(AlertType.ERROR);
+		alert.setTitle("Cannot connect to server");
+		alert.setHeaderText("Server is unreachable. Try again later.");
+		alert.showAndWait();
 	}
 }
@@ -1,12 +1,6 @@
 
 // import java.io.IOException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -46,10 +40,23 @@ public class ControllerRegister implements Controller {
 	 * {@code Loader} class.
 	 * 
 	 * @param user the {@code User} we want to pass. [User]
+	 * @return null, the register page doesn't load anything. [Object]
 	 * @see Loader
 	 */
-	public void initData(User user) {
+	public Object initData(User user) {
 		this.currentUser = user;
+		return null;
+	}
+
+	/**
+	 * Clears the fields filled at the previous visit.
+	 */
+	@Override
+	public void reset() {
+		this.name.clear();
+		this.surname.clear();
+		this.email.clear();
+		this.password.clear();
 	}
 
 	/**
@@ -69,16 +76,15 @@ public class ControllerRegister implements Controller {
 	}
 
 	/**
-	 * Registers the user with the provided data to the ecommerce.
+	 * Registers the user with the provided data to the ecommerce. The request
+	 * runs in background, the homepage is loaded once the server has answered.
 	 * 
 	 * @param event GUI event. [ActionEvent]
-	 * @throws UnknownHostException if the IP address of the host could not be
-	 *                              determined.
-	 * @throws IOException          if an I/O error occurs when creating the socket.
 	 * @see Order
+	 * @see AsyncClient
 	 */
 	@FXML
-	public void register(ActionEvent event) throws UnknownHostException, IOException {
+	public void register(ActionEvent event) {
 
 		// gets data from the page
 		String nam = name.getText();
@@ -100,27 +106,26 @@ public class ControllerRegister implements Controller {
 			alert.showAndWait();
 		} else {
 			// all the data is good
-			Socket socket = new Socket("localhost", 4316);
-
-			// client -> server
-			OutputStream outputStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outputStream);
 			String[] toBeSent = { "register_user", nam, sur, mail, pass };
-			out.writeObject(toBeSent);
-
-			// server -> client
-			InputStream inputStream = socket.getInputStream();
-			ObjectInputStream in = new ObjectInputStream(inputStream);
-
-			// loads the homepage
-			try {
-				this.currentUser = (User) in.readObject();
-				Loader loader = new Loader(this.currentUser, this.rootPane);
-				loader.load("homepage_user");
-			} catch (ClassNotFoundException e) {
-				e.printStackTrace();
-			}
-			socket.close();
+
+			AsyncClient.getShared().<User>request(toBeSent).whenCompleteAsync((user, error) -> {
+				if (error != null) {
+					Alert alert = new Alert(AlertType.ERROR);
+					alert.setTitle("Cannot connect to server");
+					alert.setHeaderText("Server is unreachable. Try again later.");
+					alert.showAndWait();
+					return;
+				}
+
+				// loads the homepage
+				try {
+					this.currentUser = user;
+					Loader loader = new Loader(this.currentUser, this.rootPane);
+					loader.load("homepage_user");
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}, AsyncClient.FX);
 		}
 	}
 }
\ No newline at end of file
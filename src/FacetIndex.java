@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Faceted browsing of the catalog, used to answer the {@code browse_facets}
+ * command. Every producer, year and grape is mapped to the
+ * {@code CompressedBitmap} of the product ids of its wines, so that narrowing
+ * the catalog on several facets is an intersection of bitmaps instead of a
+ * scan of the wines.
+ * 
+ * Along with the matching wines, a query counts the wines of every value of
+ * every facet, as the customer would find them selecting that value instead of
+ * the current one: the counts of a facet are restricted by the selections of
+ * the other facets only. Each count is the cardinality of an intersection,
+ * computed without building it against a copy of the selection stored as
+ * plain bitmaps, so counting a facet takes time proportional to its wines.
+ * 
+ * The indexes are updated incrementally when a wine is added or restocked.
+ * Queries can run concurrently, updates are exclusive.
+ * 
+ * @see FacetResult
+ * @see WineSearchIndex
+ */
+public class FacetIndex {
+
+	private final HashMap<Integer, Wine> wines = new HashMap<Integer, Wine>();
+	private final CompressedBitmap all = new CompressedBitmap();
+	private final TreeMap<String, CompressedBitmap> producers = new TreeMap<String, CompressedBitmap>();
+	private final TreeMap<Integer, CompressedBitmap> years = new TreeMap<Integer, CompressedBitmap>();
+	private final TreeMap<String, CompressedBitmap> grapes = new TreeMap<String, CompressedBitmap>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Adds a wine to the index, or replaces the wine with the same product id.
+	 * 
+	 * @param wine the wine to add. [Wine]
+	 */
+	public void add(Wine wine) {
+		this.lock.writeLock().lock();
+		try {
+			int id = wine.getProductId();
+			Wine old = this.wines.put(id, wine);
+			if (old != null && sameFacets(old, wine)) {
+				// restock, the facets didn't change
+				return;
+			}
+			if (old != null) {
+				unindex(this.producers, old.getProducer(), id);
+				unindex(this.years, old.getYear(), id);
+				for (String grape : grapes(old)) {
+					unindex(this.grapes, grape, id);
+				}
+			}
+			this.all.add(id);
+			index(this.producers, wine.getProducer(), id);
+			index(this.years, wine.getYear(), id);
+			for (String grape : grapes(wine)) {
+				index(this.grapes, grape, id);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of wines in the index.
+	 * 
+	 * @return the number of wines. [int]
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.wines.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Answers the arguments of the {@code browse_facets} command: the selected
+	 * producer, year and grape, each one empty for any value.
+	 * 
+	 * @param producer the selected producer, empty for any. [String]
+	 * @param year     the selected year, empty for any. [String]
+	 * @param grape    the selected grape, empty for any. [String]
+	 * @param limit    the maximum number of wines to return. [int]
+	 * @return the matching wines and the counts of the facets. [FacetResult]
+	 * @throws NumberFormatException if the year is not a number.
+	 */
+	public FacetResult browse(String producer, String year, String grape, int limit) {
+		Integer selectedYear = year == null || year.isBlank() ? null : Integer.valueOf(year.trim());
+		return browse(emptyToNull(producer), selectedYear, emptyToNull(grape), limit);
+	}
+
+	/**
+	 * Finds the wines of the selected facets and counts the wines of every
+	 * value of the facets.
+	 * 
+	 * @param producer the selected producer, {@code null} for any. [String]
+	 * @param year     the selected year, {@code null} for any. [Integer]
+	 * @param grape    the selected grape, {@code null} for any. [String]
+	 * @param limit    the maximum number of wines to return. [int]
+	 * @return the matching wines, sorted by product id, and the counts of the
+	 *         facets. [FacetResult]
+	 */
+	public FacetResult browse(String producer, Integer year, String grape, int limit) {
+		this.lock.readLock().lock();
+		try {
+			CompressedBitmap byProducer = producer != null ? get(this.producers, producer) : null;
+			CompressedBitmap byYear = year != null ? get(this.years, year) : null;
+			CompressedBitmap byGrape = grape != null ? get(this.grapes, grape) : null;
+
+			// the counts of each facet ignore its own selection
+			CompressedBitmap producerBase = and(byYear, byGrape);
+			CompressedBitmap yearBase = and(byProducer, byGrape);
+			CompressedBitmap grapeBase = and(byProducer, byYear);
+			CompressedBitmap matching = and(producerBase, byProducer);
+
+			int[] ids = matching.toArray(Math.max(limit, 0));
+			ArrayList<Wine> result = new ArrayList<Wine>(ids.length);
+			for (int id : ids) {
+				result.add(this.wines.get(id));
+			}
+			return new FacetResult(result, matching.cardinality(), count(this.producers, producerBase, producer),
+					count(this.years, yearBase, year), count(this.grapes, grapeBase, grape));
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Intersects two selections.
+	 * 
+	 * @param a the first selection, {@code null} for any wine. [CompressedBitmap]
+	 * @param b the second selection, {@code null} for any wine.
+	 *          [CompressedBitmap]
+	 * @return the wines of both selections, {@code all} if both are
+	 *         {@code null}. [CompressedBitmap]
+	 */
+	private CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+		if (a == null) {
+			return b != null ? b : this.all;
+		}
+		return b != null ? a.and(b) : a;
+	}
+
+	/**
+	 * Counts the wines of every value of a facet among a selection. The values
+	 * without wines are left out, except the selected one.
+	 * 
+	 * @param <K>      the type of the values.
+	 * @param facet    the bitmaps of the values. [TreeMap of K and
+	 *                 CompressedBitmap]
+	 * @param base     the selection. [CompressedBitmap]
+	 * @param selected the selected value, {@code null} for any. [K]
+	 * @return the number of wines of each value, sorted by value.
+	 *         [LinkedHashMap of K and Integer]
+	 */
+	private <K> LinkedHashMap<K, Integer> count(TreeMap<K, CompressedBitmap> facet, CompressedBitmap base,
+			K selected) {
+		LinkedHashMap<K, Integer> counts = new LinkedHashMap<K, Integer>();
+		// probing the bits of the selection is faster than merging it with
+		// every value
+		CompressedBitmap probe = base != this.all ? base.toDense() : null;
+		for (Map.Entry<K, CompressedBitmap> entry : facet.entrySet()) {
+			CompressedBitmap wines = entry.getValue();
+			int count = probe == null ? wines.cardinality() : wines.andCardinality(probe);
+			if (count > 0 || entry.getKey().equals(selected)) {
+				counts.put(entry.getKey(), count);
+			}
+		}
+		if (selected != null && !counts.containsKey(selected)) {
+			// unknown value, still shown as selected
+			counts.put(selected, 0);
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the bitmap of a value.
+	 * 
+	 * @param <K>   the type of the values.
+	 * @param facet the bitmaps of the values. [TreeMap of K and CompressedBitmap]
+	 * @param value the value. [K]
+	 * @return the bitmap, empty if no wine has the value. [CompressedBitmap]
+	 */
+	private static <K> CompressedBitmap get(TreeMap<K, CompressedBitmap> facet, K value) {
+		CompressedBitmap wines = facet.get(value);
+		return wines != null ? wines : new CompressedBitmap();
+	}
+
+	/**
+	 * Adds a wine to the bitmap of a value.
+	 * 
+	 * @param <K>   the type of the values.
+	 * @param facet the bitmaps of the values. [TreeMap of K and CompressedBitmap]
+	 * @param value the value, ignored if {@code null}. [K]
+	 * @param id    the product id of the wine. [int]
+	 */
+	private static <K> void index(TreeMap<K, CompressedBitmap> facet, K value, int id) {
+		if (value != null) {
+			facet.computeIfAbsent(value, key -> new CompressedBitmap()).add(id);
+		}
+	}
+
+	/**
+	 * Removes a wine from the bitmap of a value, and the value if it has no
+	 * more wines.
+	 * 
+	 * @param <K>   the type of the values.
+	 * @param facet the bitmaps of the values. [TreeMap of K and CompressedBitmap]
+	 * @param value the value, ignored if {@code null}. [K]
+	 * @param id    the product id of the wine. [int]
+	 */
+	private static <K> void unindex(TreeMap<K, CompressedBitmap> facet, K value, int id) {
+		CompressedBitmap wines = value != null ? facet.get(value) : null;
+		if (wines != null) {
+			wines.remove(id);
+			if (wines.cardinality() == 0) {
+				facet.remove(value);
+			}
+		}
+	}
+
+	/**
+	 * Splits the grapes of a wine, separated by commas.
+	 * 
+	 * @param wine the wine. [Wine]
+	 * @return the distinct grapes, trimmed. [TreeSet of String]
+	 */
+	static TreeSet<String> grapes(Wine wine) {
+		TreeSet<String> grapes = new TreeSet<String>();
+		if (wine.getGrapewines() != null) {
+			for (String grape : wine.getGrapewines().split(",")) {
+				if (!grape.isBlank()) {
+					grapes.add(grape.trim());
+				}
+			}
+		}
+		return grapes;
+	}
+
+	/**
+	 * Checks if two versions of a wine have the same facets.
+	 * 
+	 * @param a the first version. [Wine]
+	 * @param b the second version. [Wine]
+	 * @return true if the producer, the year and the grapes are the same.
+	 *         [boolean]
+	 */
+	private static boolean sameFacets(Wine a, Wine b) {
+		return String.valueOf(a.getProducer()).equals(String.valueOf(b.getProducer())) && a.getYear() == b.getYear()
+				&& String.valueOf(a.getGrapewines()).equals(String.valueOf(b.getGrapewines()));
+	}
+
+	/**
+	 * Converts an empty selection to {@code null}.
+	 * 
+	 * @param value the selection. [String]
+	 * @return the trimmed selection, {@code null} if it is empty. [String]
+	 */
+	private static String emptyToNull(String value) {
+		return value == null || value.isBlank() ? null : value.trim();
+	}
+}
@@ -0,0 +1,91 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Response of the {@code browse_facets} command: the wines of the selected
+ * producer, year and grape, and the number of wines of every value of the
+ * three facets, so that a single request refreshes both the table and the
+ * facet boxes. The counts of a facet ignore its own selection: they are the
+ * wines the customer would find selecting that value instead.
+ * 
+ * @see FacetIndex
+ * @see ControllerHomepageUser
+ */
+public class FacetResult implements Serializable {
+
+	private static final long serialVersionUID = 2817409963504185732L;
+
+	private ArrayList<Wine> wines;
+	private int total;
+	private LinkedHashMap<String, Integer> producers;
+	private LinkedHashMap<Integer, Integer> years;
+	private LinkedHashMap<String, Integer> grapes;
+
+	/**
+	 * {@code FacetResult} class constructor.
+	 * 
+	 * @param wines     the matching wines, possibly only the first ones.
+	 *                  [ArrayList of Wine]
+	 * @param total     the number of matching wines. [int]
+	 * @param producers the number of wines of each producer. [LinkedHashMap of
+	 *                  String and Integer]
+	 * @param years     the number of wines of each year. [LinkedHashMap of
+	 *                  Integer and Integer]
+	 * @param grapes    the number of wines of each grape. [LinkedHashMap of
+	 *                  String and Integer]
+	 */
+	public FacetResult(final ArrayList<Wine> wines, final int total, final LinkedHashMap<String, Integer> producers,
+			final LinkedHashMap<Integer, Integer> years, final LinkedHashMap<String, Integer> grapes) {
+		this.wines = wines;
+		this.total = total;
+		this.producers = producers;
+		this.years = years;
+		this.grapes = grapes;
+	}
+
+	/**
+	 * Gets the matching wines, sorted by product id.
+	 * 
+	 * @return the wines, possibly only the first ones. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> getWines() {
+		return this.wines;
+	}
+
+	/**
+	 * Gets the number of matching wines, including those not returned.
+	 * 
+	 * @return the number of matching wines. [int]
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Gets the number of wines of each producer, sorted by producer.
+	 * 
+	 * @return the counts. [LinkedHashMap of String and Integer]
+	 */
+	public LinkedHashMap<String, Integer> getProducers() {
+		return this.producers;
+	}
+
+	/**
+	 * Gets the number of wines of each year, sorted by year.
+	 * 
+	 * @return the counts. [LinkedHashMap of Integer and Integer]
+	 */
+	public LinkedHashMap<Integer, Integer> getYears() {
+		return this.years;
+	}
+
+	/**
+	 * Gets the number of wines of each grape, sorted by grape.
+	 * 
+	 * @return the counts. [LinkedHashMap of String and Integer]
+	 */
+	public LinkedHashMap<String, Integer> getGrapes() {
+		return this.grapes;
+	}
+}
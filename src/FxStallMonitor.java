@@ -0,0 +1,95 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+
+/**
+ * Measures the responsiveness of the GUI. Every few milliseconds a probe is
+ * posted to the JavaFX application thread: the time the probe waits before
+ * running is the time the thread has been stalled, for example by a blocking
+ * request. Every stall is recorded in the {@code ClientMetrics}.
+ * 
+ * @see ClientMetrics
+ */
+public class FxStallMonitor {
+
+	private static final long PERIOD = 10;
+	private static FxStallMonitor shared;
+
+	private final ScheduledExecutorService scheduler;
+	private final AtomicBoolean pending = new AtomicBoolean();
+	private volatile long maxStall;
+	private volatile long lastStall;
+
+	/**
+	 * {@code FxStallMonitor} class constructor.
+	 */
+	private FxStallMonitor() {
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fx-stall-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Gets the monitor of the GUI, starting it on first use.
+	 * 
+	 * @return the monitor. [FxStallMonitor]
+	 */
+	public static synchronized FxStallMonitor getShared() {
+		if (shared == null) {
+			shared = new FxStallMonitor();
+			shared.scheduler.scheduleAtFixedRate(shared::probe, PERIOD, PERIOD, TimeUnit.MILLISECONDS);
+		}
+		return shared;
+	}
+
+	/**
+	 * Posts a probe, unless the previous one is still waiting.
+	 */
+	private void probe() {
+		if (!this.pending.compareAndSet(false, true)) {
+			return;
+		}
+
+		long posted = System.nanoTime();
+		Platform.runLater(() -> {
+			long stall = System.nanoTime() - posted;
+			this.lastStall = stall;
+			ClientMetrics.getShared().recordStall(stall);
+			if (stall > this.maxStall) {
+				this.maxStall = stall;
+			}
+			this.pending.set(false);
+		});
+	}
+
+	/**
+	 * Gets the longest stall of the JavaFX application thread since the last
+	 * {@code reset}.
+	 * 
+	 * @return the longest stall, in milliseconds. [long]
+	 */
+	public long getMaxStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.maxStall);
+	}
+
+	/**
+	 * Gets the stall measured by the last probe.
+	 * 
+	 * @return the last stall, in milliseconds. [long]
+	 */
+	public long getLastStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.lastStall);
+	}
+
+	/**
+	 * Forgets the longest stall measured so far.
+	 */
+	public void reset() {
+		this.maxStall = 0;
+	}
+}
@@ -0,0 +1,83 @@
+import java.io.Serializable;
+
+/**
+ * Everything the user homepage needs right after the login, returned by the
+ * {@code bootstrap_user} command in a single response instead of one request
+ * each: the catalog, the order history and the size of the cart.
+ * 
+ * The catalog is either its first page, or the changes since the version
+ * cached by the client if the server still knows them: the restocked wines
+ * the homepage notifies are found among those changes.
+ * 
+ * @see ServerStore
+ * @see CatalogCache
+ * @see ControllerHomepageUser
+ */
+public class HomepageBootstrap implements Serializable {
+
+	private static final long serialVersionUID = 6390742518263318150L;
+
+	private WinePage firstPage;
+	private CatalogDelta changes;
+	private OrderPage orders;
+	private int cartSize;
+
+	/**
+	 * {@code HomepageBootstrap} class constructor.
+	 * 
+	 * @param firstPage the first page of the catalog, {@code null} if the
+	 *                  changes are sent instead. [WinePage]
+	 * @param changes   the changes since the version cached by the client,
+	 *                  {@code null} if the first page is sent instead.
+	 *                  [CatalogDelta]
+	 * @param orders    the first page of the order history, {@code null} if the
+	 *                  user is not registered. [OrderPage]
+	 * @param cartSize  the number of bottles in the cart. [int]
+	 */
+	public HomepageBootstrap(final WinePage firstPage, final CatalogDelta changes, final OrderPage orders,
+			final int cartSize) {
+		this.firstPage = firstPage;
+		this.changes = changes;
+		this.orders = orders;
+		this.cartSize = cartSize;
+	}
+
+	/**
+	 * Gets the first page of the catalog.
+	 * 
+	 * @return the first page, {@code null} if the changes have been sent
+	 *         instead. [WinePage]
+	 */
+	public WinePage getFirstPage() {
+		return this.firstPage;
+	}
+
+	/**
+	 * Gets the changes of the catalog since the version cached by the client.
+	 * 
+	 * @return the changes, {@code null} if the first page has been sent
+	 *         instead. [CatalogDelta]
+	 */
+	public CatalogDelta getChanges() {
+		return this.changes;
+	}
+
+	/**
+	 * Gets the first page of the order history.
+	 * 
+	 * @return the first page, {@code null} if the user is not registered.
+	 *         [OrderPage]
+	 */
+	public OrderPage getOrders() {
+		return this.orders;
+	}
+
+	/**
+	 * Gets the number of bottles in the cart.
+	 * 
+	 * @return the number of bottles. [int]
+	 */
+	public int getCartSize() {
+		return this.cartSize;
+	}
+}
@@ -0,0 +1,251 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+import javafx.collections.ObservableList;
+
+/**
+ * Updates an {@code ObservableList} displayed by a TableView to a new content
+ * with the fewest changes, matching the items by key. The items still present
+ * keep their position in the list, the changed ones are replaced in place and
+ * only the missing ones are inserted or removed, in contiguous ranges. The
+ * table therefore keeps its selection and scroll position, and lays out only
+ * the rows that have changed instead of all of them.
+ * 
+ * The items that changed their relative order are the only ones moved: the
+ * longest sequence of items already in the right order stays where it is. If
+ * most of the list changes, it is replaced with a single {@code setAll}.
+ * 
+ * @param <T> the type of the items.
+ */
+public class KeyedListDiff<T> {
+
+	// above this share of changed items, a single setAll is cheaper
+	private static final double REPLACE_ALL = 0.5;
+
+	private final ToIntFunction<T> key;
+	private final BiPredicate<T, T> unchanged;
+
+	/**
+	 * {@code KeyedListDiff} class constructor.
+	 * 
+	 * @param key       the key of an item, unique in a list. [ToIntFunction]
+	 * @param unchanged checks if two items with the same key display the same
+	 *                  values. [BiPredicate]
+	 */
+	public KeyedListDiff(ToIntFunction<T> key, BiPredicate<T, T> unchanged) {
+		this.key = key;
+		this.unchanged = unchanged;
+	}
+
+	/**
+	 * Creates the diff of the wines, matched by product id.
+	 * 
+	 * @return the diff. [KeyedListDiff of Wine]
+	 */
+	public static KeyedListDiff<Wine> forWines() {
+		return new KeyedListDiff<Wine>(Wine::getProductId, KeyedListDiff::sameWine);
+	}
+
+	/**
+	 * Updates {@code target} to the content of {@code updated}.
+	 * 
+	 * @param target  the list displayed. [ObservableList]
+	 * @param updated the new content. [List]
+	 * @return the number of items inserted, removed or replaced. [int]
+	 */
+	public int apply(ObservableList<T> target, List<T> updated) {
+		// the items at the start and at the end usually stay where they are
+		int shorter = Math.min(target.size(), updated.size());
+		int prefix = 0;
+		while (prefix < shorter && sameKey(target.get(prefix), updated.get(prefix))) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < shorter - prefix
+				&& sameKey(target.get(target.size() - 1 - suffix), updated.get(updated.size() - 1 - suffix))) {
+			suffix++;
+		}
+		boolean[] kept = new boolean[target.size()];
+		Arrays.fill(kept, 0, prefix, true);
+		Arrays.fill(kept, target.size() - suffix, target.size(), true);
+
+		// open addressing table from key to position in updated, without boxing
+		int middle = updated.size() - suffix;
+		int capacity = Integer.highestOneBit(Math.max(middle - prefix, 1) * 2) << 1;
+		int[] keys = new int[capacity];
+		int[] positions = new int[capacity];
+		Arrays.fill(positions, -1);
+		for (int i = prefix; i < middle; i++) {
+			int key = this.key.applyAsInt(updated.get(i));
+			int slot = slot(keys, positions, key);
+			keys[slot] = key;
+			positions[slot] = i;
+		}
+
+		// position in updated of every item of target, -1 if removed
+		int[] moved = new int[target.size() - suffix - prefix];
+		for (int i = 0; i < moved.length; i++) {
+			moved[i] = positions[slot(keys, positions, this.key.applyAsInt(target.get(prefix + i)))];
+		}
+		boolean[] increasing = longestIncreasing(moved);
+		System.arraycopy(increasing, 0, kept, prefix, increasing.length);
+
+		int removed = 0;
+		for (boolean keep : kept) {
+			if (!keep) {
+				removed++;
+			}
+		}
+		int inserted = updated.size() - (target.size() - removed);
+		if (removed + inserted > REPLACE_ALL * Math.max(target.size(), updated.size())) {
+			int changes = target.size() + updated.size();
+			target.setAll(updated);
+			return changes;
+		}
+
+		// removes from the end, so that the positions before are still valid
+		for (int end = target.size(); end > 0;) {
+			if (kept[end - 1]) {
+				end--;
+				continue;
+			}
+			int start = end - 1;
+			while (start > 0 && !kept[start - 1]) {
+				start--;
+			}
+			target.remove(start, end);
+			end = start;
+		}
+
+		// target is now a subsequence of updated
+		int replaced = 0;
+		int i = 0;
+		while (i < updated.size()) {
+			T item = updated.get(i);
+			if (i < target.size() && sameKey(target.get(i), item)) {
+				T current = target.get(i);
+				if (current != item && !this.unchanged.test(current, item)) {
+					target.set(i, item);
+					replaced++;
+				}
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			// new items up to the next one kept, which is still at position i
+			while (end < updated.size() && !isAt(target, i, updated.get(end))) {
+				end++;
+			}
+			target.addAll(i, updated.subList(i, end));
+			i = end;
+		}
+		return removed + inserted + replaced;
+	}
+
+	/**
+	 * Finds the slot of {@code key} in an open addressing table, or the empty
+	 * slot where it would be.
+	 * 
+	 * @param keys      the keys of the table. [int[]]
+	 * @param positions the values of the table, -1 for the empty slots. [int[]]
+	 * @param key       the key. [int]
+	 * @return the slot. [int]
+	 */
+	private static int slot(int[] keys, int[] positions, int key) {
+		int mask = keys.length - 1;
+		int hash = key * 0x9E3779B9;
+		int slot = (hash ^ hash >>> 16) & mask;
+		while (positions[slot] >= 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Checks if {@code item} has the same key of the item of {@code target} at
+	 * {@code index}.
+	 * 
+	 * @param target the list. [List]
+	 * @param index  the position in the list. [int]
+	 * @param item   the item. [Object]
+	 * @return true if the keys are the same, else false. [boolean]
+	 */
+	private boolean isAt(List<T> target, int index, T item) {
+		return index < target.size() && sameKey(target.get(index), item);
+	}
+
+	/**
+	 * Checks if two items have the same key.
+	 * 
+	 * @param a the first item. [Object]
+	 * @param b the second item. [Object]
+	 * @return true if the keys are the same, else false. [boolean]
+	 */
+	private boolean sameKey(T a, T b) {
+		return this.key.applyAsInt(a) == this.key.applyAsInt(b);
+	}
+
+	/**
+	 * Finds the longest increasing subsequence of the positions, ignoring the
+	 * negative ones: its items are already in the right order and stay where
+	 * they are.
+	 * 
+	 * @param positions the new position of each item, -1 if removed. [int[]]
+	 * @return true for the items of the subsequence. [boolean[]]
+	 */
+	private static boolean[] longestIncreasing(int[] positions) {
+		// tails[length - 1] is the index of the smallest tail of a subsequence of that length
+		int[] tails = new int[positions.length];
+		int[] previous = new int[positions.length];
+		int length = 0;
+		for (int i = 0; i < positions.length; i++) {
+			if (positions[i] < 0) {
+				continue;
+			}
+			// the items are usually already in order
+			int slot;
+			if (length == 0 || positions[tails[length - 1]] < positions[i]) {
+				slot = length;
+			} else {
+				int low = 0;
+				int high = length - 1;
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (positions[tails[middle]] < positions[i]) {
+						low = middle + 1;
+					} else {
+						high = middle;
+					}
+				}
+				slot = low;
+			}
+			previous[i] = slot > 0 ? tails[slot - 1] : -1;
+			tails[slot] = i;
+			if (slot == length) {
+				length++;
+			}
+		}
+
+		boolean[] kept = new boolean[positions.length];
+		for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+			kept[i] = true;
+		}
+		return kept;
+	}
+
+	/**
+	 * Checks if two wines display the same values.
+	 * 
+	 * @param a the first wine. [Wine]
+	 * @param b the second wine. [Wine]
+	 * @return true if every displayed value is the same, else false. [boolean]
+	 */
+	private static boolean sameWine(Wine a, Wine b) {
+		return a.getQuantity() == b.getQuantity() && a.getYear() == b.getYear()
+				&& Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getProducer(), b.getProducer())
+				&& Objects.equals(a.getNotes(), b.getNotes()) && Objects.equals(a.getGrapewines(), b.getGrapewines());
+	}
+}
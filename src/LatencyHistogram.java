@@ -0,0 +1,189 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, in nanoseconds. The values are counted in
+ * logarithmic buckets, each one split in {@code SUB_BUCKETS} linear
+ * sub-buckets: the percentiles have a relative error below 2% with a fixed
+ * memory footprint, whatever the number of values. Many threads can record at
+ * the same time.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	// values below LINEAR have a bucket each
+	private static final int LINEAR = SUB_BUCKETS * 2;
+	private static final int BUCKETS = LINEAR + (62 - SUB_BITS) * SUB_BUCKETS;
+
+	// indexes of totals
+	private static final int COUNT = 0;
+	private static final int SUM = 1;
+	private static final int MAX = 2;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray totals = new AtomicLongArray(3);
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param nanos the latency, in nanoseconds. Negative values count as 0.
+	 *              [long]
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(bucketOf(value));
+		this.totals.incrementAndGet(COUNT);
+		this.totals.addAndGet(SUM, value);
+		updateMax(value);
+	}
+
+	/**
+	 * Records the time elapsed since {@code start}.
+	 * 
+	 * @param start the start, as returned by {@code System.nanoTime()}. [long]
+	 * @return the recorded latency, in nanoseconds. [long]
+	 */
+	public long recordSince(long start) {
+		long nanos = System.nanoTime() - start;
+		record(nanos);
+		return nanos;
+	}
+
+	/**
+	 * Gets the number of recorded latencies.
+	 * 
+	 * @return the number of latencies. [long]
+	 */
+	public long getCount() {
+		return this.totals.get(COUNT);
+	}
+
+	/**
+	 * Gets the highest recorded latency.
+	 * 
+	 * @return the maximum, in nanoseconds, 0 if nothing has been recorded. [long]
+	 */
+	public long getMax() {
+		return this.totals.get(MAX);
+	}
+
+	/**
+	 * Gets the average recorded latency.
+	 * 
+	 * @return the mean, in nanoseconds, 0 if nothing has been recorded. [double]
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) this.totals.get(SUM) / count;
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies.
+	 * 
+	 * @param percentile the percentile, between 0 and 100, for example 99.9.
+	 *                   [double]
+	 * @return the highest value of the bucket containing the percentile, in
+	 *         nanoseconds, never above the maximum; 0 if nothing has been
+	 *         recorded. [long]
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies in the specified unit.
+	 * 
+	 * @param percentile the percentile, between 0 and 100. [double]
+	 * @param unit       the unit of the result. [TimeUnit]
+	 * @return the percentile. [double]
+	 */
+	public double getPercentile(double percentile, TimeUnit unit) {
+		return (double) getPercentile(percentile) / unit.toNanos(1);
+	}
+
+	/**
+	 * Adds the values of another histogram to this one.
+	 * 
+	 * @param other the other histogram. [LatencyHistogram]
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long count = other.counts.get(i);
+			if (count > 0) {
+				this.counts.addAndGet(i, count);
+			}
+		}
+		this.totals.addAndGet(COUNT, other.totals.get(COUNT));
+		this.totals.addAndGet(SUM, other.totals.get(SUM));
+		updateMax(other.getMax());
+	}
+
+	/**
+	 * Removes every recorded value. The values recorded by other threads while
+	 * the histogram is being reset may be partially lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		for (int i = 0; i < this.totals.length(); i++) {
+			this.totals.set(i, 0);
+		}
+	}
+
+	/**
+	 * Raises the maximum to {@code value}, if it is lower.
+	 * 
+	 * @param value the new value. [long]
+	 */
+	private void updateMax(long value) {
+		long max;
+		while ((max = this.totals.get(MAX)) < value && !this.totals.compareAndSet(MAX, max, value)) {
+			// another thread changed the maximum, try again
+		}
+	}
+
+	/**
+	 * Finds the bucket of a value.
+	 * 
+	 * @param value the value, not negative. [long]
+	 * @return the index of the bucket. [int]
+	 */
+	private static int bucketOf(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int top = (int) (value >>> shift);
+		return LINEAR + (shift - 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+	}
+
+	/**
+	 * Finds the highest value counted in a bucket.
+	 * 
+	 * @param bucket the index of the bucket. [int]
+	 * @return the highest value. [long]
+	 */
+	private static long highestValueOf(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+		long top = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test driver. Replays the scenario of {@code BuyWineTest.procedure} with
+ * many concurrent virtual users: each one takes a row of {@code testSet.csv},
+ * logs in, loads the catalog, adds the wine to the cart and submits the order,
+ * pausing for a random think time between the steps, and starts again until
+ * the test ends. The users are started gradually during the ramp-up, one
+ * virtual thread each when the JVM supports them.
+ * 
+ * Every {@code REPORT_INTERVAL} seconds the throughput and the latencies of the
+ * interval are printed together with the number of active users: the
+ * saturation point is where the throughput stops growing with the users and
+ * the latencies start growing instead. At the end the throughput and the
+ * p50/p99/p999 latencies of each command are printed for the whole test.
+ * 
+ * Usage: {@code java LoadGenerator [users] [ramp-up seconds] [think time ms]
+ * [duration seconds] [connections] [host] [port] [csv file]}
+ * 
+ * @see BuyWineTest
+ * @see LatencyHistogram
+ */
+public class LoadGenerator {
+
+	private static final int REPORT_INTERVAL = 5;
+	private static final String[] COMMANDS = { "login", "get_wines", "add_to_cart", "new_order" };
+
+	private final List<String[]> rows;
+	private final int users;
+	private final long rampUp;
+	private final long thinkTime;
+	private final long duration;
+	private final Client client;
+	private final LinkedHashMap<String, CommandStats> stats = new LinkedHashMap<String, CommandStats>();
+	private final AtomicInteger activeUsers = new AtomicInteger();
+	private long start;
+	private long lastReport;
+
+	/**
+	 * {@code LoadGenerator} class constructor.
+	 * 
+	 * @param rows      the rows of the scenario, as in {@code testSet.csv}.
+	 *                  [List of String[]]
+	 * @param users     the number of virtual users. [int]
+	 * @param rampUp    the time to start all the users, in milliseconds. [long]
+	 * @param thinkTime the average pause between two steps, in milliseconds.
+	 *                  [long]
+	 * @param duration  the duration of the test, ramp-up included, in
+	 *                  milliseconds. [long]
+	 * @param client    the client used by all the users. [Client]
+	 */
+	public LoadGenerator(List<String[]> rows, int users, long rampUp, long thinkTime, long duration, Client client) {
+		this.rows = rows;
+		this.users = users;
+		this.rampUp = rampUp;
+		this.thinkTime = thinkTime;
+		this.duration = duration;
+		this.client = client;
+		for (String command : COMMANDS) {
+			this.stats.put(command, new CommandStats());
+		}
+	}
+
+	/**
+	 * Runs a load test and prints its results.
+	 * 
+	 * @param args the number of users, the ramp-up in seconds, the think time
+	 *             in milliseconds, the duration in seconds, the number of
+	 *             connections, the host, the port and the scenario file, all
+	 *             optional. [String[]]
+	 * @throws Exception if the scenario can't be read.
+	 */
+	public static void main(String[] args) throws Exception {
+		int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long rampUp = args.length > 1 ? Long.parseLong(args[1]) * 1000 : 30_000;
+		long thinkTime = args.length > 2 ? Long.parseLong(args[2]) : 500;
+		long duration = args.length > 3 ? Long.parseLong(args[3]) * 1000 : 60_000;
+		int connections = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+		String host = args.length > 5 ? args[5] : Client.HOST;
+		int port = args.length > 6 ? Integer.parseInt(args[6]) : Client.PORT;
+		String csv = args.length > 7 ? args[7] : "testSet.csv";
+
+		Client client = new Client(new ConnectionPool(host, port, connections, 60_000, 15_000, 60_000));
+		LoadGenerator generator = new LoadGenerator(readScenario(csv), users, rampUp, thinkTime, duration, client);
+		System.out.format("%d users, ramp-up %d s, think time %d ms, %d s, %d connections to %s:%d%n", users,
+				rampUp / 1000, thinkTime, duration / 1000, connections, host, port);
+		generator.run();
+		generator.printSummary();
+		client.close();
+	}
+
+	/**
+	 * Reads the rows of the scenario, skipping the header. The fields are
+	 * trimmed as {@code CsvFileSource} does.
+	 * 
+	 * @param file the path of the file. [String]
+	 * @return the rows, with 9 fields each. [List of String[]]
+	 * @throws IOException if the file can't be read or is empty.
+	 */
+	public static List<String[]> readScenario(String file) throws IOException {
+		List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			String[] fields = line.split(",", -1);
+			String[] row = new String[9];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = i < fields.length ? fields[i].trim() : "";
+			}
+			rows.add(row);
+		}
+		if (rows.isEmpty()) {
+			throw new IOException("No rows in " + file);
+		}
+		return rows;
+	}
+
+	/**
+	 * Runs the test, printing a report every {@code REPORT_INTERVAL} seconds.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting for the users.
+	 */
+	public void run() throws InterruptedException {
+		this.start = System.nanoTime();
+		this.lastReport = this.start;
+		long end = this.start + TimeUnit.MILLISECONDS.toNanos(this.duration);
+
+		ExecutorService executor = AsyncClient.newTaskExecutor("virtual-user");
+		for (int i = 0; i < this.users; i++) {
+			long delay = this.users > 1 ? this.rampUp * i / (this.users - 1) : 0;
+			String[] row = this.rows.get(i % this.rows.size());
+			executor.execute(() -> virtualUser(row, this.start + TimeUnit.MILLISECONDS.toNanos(delay), end));
+		}
+		executor.shutdown();
+
+		long nextReport = this.start + TimeUnit.SECONDS.toNanos(REPORT_INTERVAL);
+		while (!executor.awaitTermination(Math.max(0, nextReport - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+			printInterval();
+			nextReport += TimeUnit.SECONDS.toNanos(REPORT_INTERVAL);
+		}
+		printInterval();
+	}
+
+	/**
+	 * Repeats the scenario of a row until the end of the test.
+	 * 
+	 * @param row   the row of the scenario. [String[]]
+	 * @param from  when the user starts, as {@code System.nanoTime()}. [long]
+	 * @param until when the test ends, as {@code System.nanoTime()}. [long]
+	 */
+	private void virtualUser(String[] row, long from, long until) {
+		try {
+			sleepNanos(from - System.nanoTime());
+			this.activeUsers.incrementAndGet();
+			try {
+				while (System.nanoTime() < until) {
+					scenario(row);
+				}
+			} finally {
+				this.activeUsers.decrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Runs the scenario of {@code BuyWineTest.procedure} once: login, catalog,
+	 * cart and order. The steps after the login are skipped if the credentials
+	 * are not valid, and the order if the wine couldn't be added.
+	 * 
+	 * @param row the row of the scenario. [String[]]
+	 * @throws InterruptedException if interrupted during a think time.
+	 */
+	private void scenario(String[] row) throws InterruptedException {
+		String mail = row[0];
+		String[] login = { "login", mail, row[1] };
+		Object user = send(login, User.class);
+		if (!(user instanceof User) || ((User) user).getPermission() < 1) {
+			think();
+			return;
+		}
+		think();
+
+		String[] catalog = { "get_wines" };
+		send(catalog, ArrayList.class);
+		think();
+
+		String[] add = { "add_to_cart", mail, row[2].isEmpty() ? "0" : row[2], row[7].isEmpty() ? "0" : row[7] };
+		Object added = send(add, Boolean.class);
+		think();
+
+		if (Boolean.TRUE.equals(added)) {
+			String[] order = { "new_order", mail };
+			send(order, Order.class);
+			think();
+		}
+	}
+
+	/**
+	 * Sends a request and records its latency. Failed requests and responses of
+	 * the wrong type are counted as errors.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param expected the expected type of the response. [Class]
+	 * @return the response, {@code null} if the request failed. [Object]
+	 */
+	private Object send(String[] toBeSent, Class<?> expected) {
+		CommandStats stats = this.stats.get(toBeSent[0]);
+		long start = System.nanoTime();
+		try {
+			Object response = this.client.request(toBeSent);
+			stats.record(start);
+			if (!expected.isInstance(response)) {
+				stats.errors.incrementAndGet();
+			}
+			return response;
+		} catch (IOException | ClassNotFoundException e) {
+			stats.record(start);
+			stats.errors.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Pauses for a random time between half and one and a half times the think
+	 * time.
+	 * 
+	 * @throws InterruptedException if interrupted.
+	 */
+	private void think() throws InterruptedException {
+		if (this.thinkTime > 0) {
+			long pause = ThreadLocalRandom.current().nextLong(this.thinkTime / 2, this.thinkTime * 3 / 2 + 1);
+			Thread.sleep(pause);
+		}
+	}
+
+	/**
+	 * Sleeps for the specified time, if positive.
+	 * 
+	 * @param nanos the time. [long]
+	 * @throws InterruptedException if interrupted.
+	 */
+	private static void sleepNanos(long nanos) throws InterruptedException {
+		if (nanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		}
+	}
+
+	/**
+	 * Prints the throughput and the latencies since the previous report, then
+	 * starts a new interval.
+	 */
+	private void printInterval() {
+		long now = System.nanoTime();
+		double seconds = Math.max(1, now - this.lastReport) / 1e9;
+		this.lastReport = now;
+		long elapsed = TimeUnit.NANOSECONDS.toSeconds(now - this.start);
+		StringBuilder line = new StringBuilder(String.format("[%4ds] users %6d |", elapsed, this.activeUsers.get()));
+		long total = 0;
+		for (Map.Entry<String, CommandStats> entry : this.stats.entrySet()) {
+			LatencyHistogram interval = entry.getValue().interval;
+			total += interval.getCount();
+			line.append(String.format(" %s %.0f/s p99 %.1f ms |", entry.getKey(), interval.getCount() / seconds,
+					millis(interval.getPercentile(99))));
+			interval.reset();
+		}
+		line.append(String.format(" total %.0f req/s", total / seconds));
+		System.out.println(line);
+	}
+
+	/**
+	 * Prints the throughput and the latencies of each command for the whole
+	 * test.
+	 */
+	public void printSummary() {
+		double seconds = Math.max(1, this.duration) / 1000.0;
+		System.out.format("%n%-12s %10s %8s %10s %10s %10s %10s %10s%n", "command", "requests", "errors", "req/s",
+				"p50 ms", "p99 ms", "p999 ms", "max ms");
+		for (Map.Entry<String, CommandStats> entry : this.stats.entrySet()) {
+			CommandStats stats = entry.getValue();
+			LatencyHistogram total = stats.total;
+			System.out.format("%-12s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), total.getCount(),
+					stats.errors.get(), total.getCount() / seconds, millis(total.getPercentile(50)),
+					millis(total.getPercentile(99)), millis(total.getPercentile(99.9)), millis(total.getMax()));
+		}
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds.
+	 * 
+	 * @param nanos the time in nanoseconds. [long]
+	 * @return the time in milliseconds. [double]
+	 */
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	/**
+	 * Latencies and errors of a command.
+	 */
+	private static class CommandStats {
+
+		private final LatencyHistogram total = new LatencyHistogram();
+		private final LatencyHistogram interval = new LatencyHistogram();
+		private final AtomicLong errors = new AtomicLong();
+
+		/**
+		 * Records the latency of a request.
+		 * 
+		 * @param start when the request started, as {@code System.nanoTime()}.
+		 *              [long]
+		 */
+		void record(long start) {
+			long nanos = this.total.recordSince(start);
+			this.interval.record(nanos);
+		}
+	}
+}
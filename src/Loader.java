@@ -1,13 +1,53 @@
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
 import javafx.scene.layout.AnchorPane;
 
 /**
- * Helper class, used to pass data between FXML files.
+ * Helper class, used to pass data between FXML files. Every FXML file is
+ * parsed once: the page and its controller are kept and displayed again at the
+ * next visit, after calling {@code reset} on the controller. The pages the
+ * user usually opens next are prepared as soon as a page is displayed, so that
+ * even the first visit rarely waits for the parser: their FXML files are read
+ * in background, then the nodes and the controllers are built on the JavaFX
+ * application thread, where {@code initialize} may create animations and
+ * cells.
+ * 
+ * Apart from {@code preload}, which can be called from any thread, the pages
+ * must only be loaded from the JavaFX application thread.
+ * 
+ * The time spent on every navigation is recorded in the {@code ClientMetrics},
+ * separating the pages that had to be parsed from the ones already in cache.
+ * 
+ * @see Controller
  */
 public class Loader {
 
+	// pages usually opened from each page
+	private static final Map<String, String[]> NEXT = Map.of(
+			"login", new String[] { "homepage_user", "register" },
+			"register", new String[] { "homepage_user" },
+			"homepage_user", new String[] { "cart", "login" },
+			"cart", new String[] { "homepage_user" });
+
+	// the content of the FXML files, read in background
+	private static final Map<String, CompletableFuture<byte[]>> SOURCES = new ConcurrentHashMap<String, CompletableFuture<byte[]>>();
+	// the pages built, only used on the JavaFX application thread
+	private static final Map<String, View> VIEWS = new HashMap<String, View>();
+	private static ExecutorService preloader;
+
 	private AnchorPane rootPane;
 	private User currentUser;
 
@@ -23,21 +63,192 @@ public class Loader {
 	}
 
 	/**
-	 * Loads the {@code filename}, access the controller and calls {@code initData}
-	 * method. The controller needs to implement the {@code Controller} interface in
-	 * order to be used properly.
+	 * Loads the {@code filename}, access the controller and calls {@code reset}
+	 * and {@code initData} methods. The controller needs to implement the
+	 * {@code Controller} interface in order to be used properly. The page
+	 * replaces the root of the scene, so that it can be displayed again later.
 	 * 
 	 * @param filename the FXML we want to access.
 	 * @throws IOException if the {@code filename} cannot be read.
 	 * @see Controller
 	 */
 	public void load(String filename) throws IOException {
-		FXMLLoader loader = new FXMLLoader();
-		loader.setLocation(getClass().getResource(filename + ".fxml"));
-		AnchorPane parent = loader.load();
+		long start = System.nanoTime();
+		boolean cached = VIEWS.containsKey(filename);
+		View view = getView(filename);
 
-		Controller controller = loader.getController();
+		Controller controller = view.controller;
+		controller.reset();
 		controller.initData(this.currentUser);
-		this.rootPane.getChildren().setAll(parent);
+
+		Scene scene = this.rootPane.getScene();
+		if (scene != null) {
+			scene.setRoot(view.root);
+		} else {
+			this.rootPane.getChildren().setAll(view.root);
+		}
+		preload(NEXT.getOrDefault(filename, new String[0]));
+
+		String key = filename + (cached ? " (cached)" : " (parsed)");
+		ClientMetrics.getShared().recordNavigation(key, System.nanoTime() - start);
+	}
+
+	/**
+	 * Gets the page of {@code filename}, parsing it if it isn't in cache, and
+	 * starts parsing the pages usually opened next. Used to display the first
+	 * page, when there is no scene yet.
+	 * 
+	 * @param filename the FXML we want to access. [String]
+	 * @return the root of the page. [Parent]
+	 * @throws IOException if the {@code filename} cannot be read.
+	 */
+	public static Parent getRoot(String filename) throws IOException {
+		Parent root = getView(filename).root;
+		preload(NEXT.getOrDefault(filename, new String[0]));
+		return root;
+	}
+
+	/**
+	 * Reads the FXML files in background, then builds their pages on the JavaFX
+	 * application thread, unless they are already in cache or being read.
+	 * 
+	 * @param filenames the FXML files. [String[]]
+	 * @return the future completed when all the pages have been built.
+	 *         [CompletableFuture]
+	 */
+	public static CompletableFuture<Void> preload(String... filenames) {
+		CompletableFuture<?>[] built = new CompletableFuture<?>[filenames.length];
+		for (int i = 0; i < filenames.length; i++) {
+			String filename = filenames[i];
+			CompletableFuture<byte[]> source = SOURCES.computeIfAbsent(filename,
+					name -> CompletableFuture.supplyAsync(() -> {
+						try {
+							return read(name);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}, getPreloader()));
+			built[i] = source.thenAcceptAsync(bytes -> {
+				if (!VIEWS.containsKey(filename)) {
+					try {
+						VIEWS.put(filename, build(filename, bytes));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			}, AsyncClient.FX);
+		}
+		return CompletableFuture.allOf(built);
+	}
+
+	/**
+	 * Removes every page from the cache: the next visits parse them again. Must
+	 * be called on the JavaFX application thread.
+	 */
+	public static void clear() {
+		SOURCES.clear();
+		VIEWS.clear();
+	}
+
+	/**
+	 * Gets a page from the cache or builds it, waiting if its FXML file is
+	 * being read in background. A file whose background reading failed is read
+	 * again, so that the error is thrown.
+	 * 
+	 * @param filename the FXML we want to access. [String]
+	 * @return the page. [View]
+	 * @throws IOException if the {@code filename} cannot be read.
+	 */
+	private static View getView(String filename) throws IOException {
+		View view = VIEWS.get(filename);
+		if (view != null) {
+			return view;
+		}
+
+		byte[] source = null;
+		CompletableFuture<byte[]> future = SOURCES.get(filename);
+		if (future != null) {
+			try {
+				// the reading never waits for the JavaFX application thread
+				source = future.join();
+			} catch (CompletionException e) {
+				SOURCES.remove(filename, future);
+			}
+		}
+		if (source == null) {
+			source = read(filename);
+			SOURCES.put(filename, CompletableFuture.completedFuture(source));
+		}
+
+		view = build(filename, source);
+		VIEWS.put(filename, view);
+		return view;
+	}
+
+	/**
+	 * Reads a FXML file. Called in background.
+	 * 
+	 * @param filename the FXML we want to access. [String]
+	 * @return the content of the file. [byte[]]
+	 * @throws IOException if the {@code filename} cannot be read.
+	 */
+	private static byte[] read(String filename) throws IOException {
+		URL location = Loader.class.getResource(filename + ".fxml");
+		if (location == null) {
+			throw new IOException("Cannot find " + filename + ".fxml");
+		}
+		try (InputStream in = location.openStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+	/**
+	 * Builds the nodes and the controller of a page from its FXML file. Must be
+	 * called on the JavaFX application thread.
+	 * 
+	 * @param filename the FXML we want to access. [String]
+	 * @param source   the content of the file. [byte[]]
+	 * @return the page. [View]
+	 * @throws IOException if the file is not valid.
+	 */
+	private static View build(String filename, byte[] source) throws IOException {
+		FXMLLoader loader = new FXMLLoader();
+		// the images are resolved relatively to the file
+		loader.setLocation(Loader.class.getResource(filename + ".fxml"));
+		Parent root = loader.load(new ByteArrayInputStream(source));
+		return new View(root, loader.getController());
+	}
+
+	/**
+	 * Gets the executor reading the FXML files in background, creating it on first
+	 * use.
+	 * 
+	 * @return the executor. [ExecutorService]
+	 */
+	private static synchronized ExecutorService getPreloader() {
+		if (preloader == null) {
+			preloader = AsyncClient.newTaskExecutor("fxml-preloader");
+		}
+		return preloader;
+	}
+
+	/**
+	 * A parsed page with its controller.
+	 */
+	private static class View {
+
+		private final Parent root;
+		private final Controller controller;
+
+		/**
+		 * {@code View} class constructor.
+		 * 
+		 * @param root       the root of the page. [Parent]
+		 * @param controller the controller of the page. [Controller]
+		 */
+		View(Parent root, Controller controller) {
+			this.root = root;
+			this.controller = controller;
+		}
 	}
 }
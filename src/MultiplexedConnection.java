@@ -0,0 +1,238 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection to the server shared by all the threads of the client, on which
+ * many requests can be in flight at the same time. Every request is tagged
+ * with a correlation id and written at once; a reader thread receives the
+ * responses in the order the server completes them and hands each one to the
+ * request with the same id. Independent requests are therefore answered in
+ * parallel: a page that needs several of them waits for the slowest one,
+ * instead of their sum.
+ * 
+ * A request that times out or is cancelled is forgotten, its response is
+ * discarded when it arrives, and the connection stays open for the others. If
+ * the connection drops, every request in flight fails with an
+ * {@code IOException} and the pool opens a new connection for the next ones.
+ * 
+ * @see ConnectionPool
+ * @see Protocol
+ */
+public class MultiplexedConnection implements Closeable {
+
+	private final PooledConnection connection;
+	private final ClientMetrics metrics;
+	private final Map<Integer, Pending> pending = new ConcurrentHashMap<Integer, Pending>();
+	private final AtomicInteger ids = new AtomicInteger();
+	private final Object writeLock = new Object();
+	private volatile boolean reused;
+	private volatile boolean broken;
+
+	/**
+	 * {@code MultiplexedConnection} class constructor, starts the reader thread.
+	 * 
+	 * @param connection a connection negotiated as multiplexed.
+	 *                   [PooledConnection]
+	 * @param metrics    the metrics the requests are recorded in.
+	 *                   [ClientMetrics]
+	 * @see PooledConnection#negotiate(boolean)
+	 */
+	public MultiplexedConnection(PooledConnection connection, ClientMetrics metrics) {
+		this.connection = connection;
+		this.metrics = metrics;
+		Thread reader = new Thread(this::readReplies, "multiplexed-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Sends {@code toBeSent} to the server without waiting for its response.
+	 * Cancelling the future forgets the request.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the future response of the server, completed on the reader
+	 *         thread. [CompletableFuture]
+	 */
+	public CompletableFuture<Object> send(String[] toBeSent) {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		// never NO_ID, even after the counter wraps around
+		int id = this.ids.getAndIncrement() & Integer.MAX_VALUE;
+		Pending request = new Pending(future,
+				this.metrics.forCommand(toBeSent.length > 0 ? String.valueOf(toBeSent[0]) : ""));
+
+		try {
+			synchronized (this.writeLock) {
+				request.sent = this.connection.encode(id, toBeSent);
+				request.start = System.nanoTime();
+				// published complete, the reader may get the response as soon as it is written
+				this.pending.put(id, request);
+				if (this.broken) {
+					throw new IOException("Connection closed");
+				}
+				this.connection.writeEncoded(id);
+			}
+		} catch (IOException e) {
+			fail(e);
+			return future;
+		}
+
+		future.whenComplete((response, error) -> {
+			// still pending only if cancelled or timed out by the caller
+			if (this.pending.remove(id) != null) {
+				request.command.recordError(request.sent, 0);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Sends {@code toBeSent} to the server and waits at most {@code timeout}
+	 * milliseconds for its response. The other requests in flight are not
+	 * affected by the timeout.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param timeout  the maximum time to wait for the response, in
+	 *                 milliseconds, 0 to wait forever. [int]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if the connection drops, the server doesn't
+	 *                                respond in time or the thread is
+	 *                                interrupted.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public Object request(String[] toBeSent, int timeout) throws IOException, ClassNotFoundException {
+		CompletableFuture<Object> future = send(toBeSent);
+		try {
+			return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw new SocketTimeoutException("No response in " + timeout + " ms");
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the response");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof ClassNotFoundException) {
+				throw (ClassNotFoundException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Receives the responses until the connection drops, completing the
+	 * request with the same correlation id.
+	 */
+	private void readReplies() {
+		try {
+			while (true) {
+				long receivedBefore = this.connection.getBytesReceived();
+				Protocol.Reply reply = this.connection.receiveReply();
+				long received = this.connection.getBytesReceived() - receivedBefore;
+
+				Pending request = this.pending.remove(reply.getId());
+				if (request == null) {
+					// timed out or cancelled, nobody waits for it anymore
+					this.metrics.forCommand("discarded").recordReceived(received);
+					continue;
+				}
+				this.reused = true;
+				request.command.record(System.nanoTime() - request.start, request.sent, received);
+				request.future.complete(reply.getResponse());
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			fail(e instanceof IOException ? (IOException) e : new IOException(e));
+		}
+	}
+
+	/**
+	 * Closes the connection and fails every request in flight.
+	 * 
+	 * @param cause the reason of the failure. [IOException]
+	 */
+	private void fail(IOException cause) {
+		this.broken = true;
+		this.connection.close();
+		for (Integer id : this.pending.keySet()) {
+			Pending request = this.pending.remove(id);
+			if (request != null) {
+				request.command.recordError(request.sent, 0);
+				request.future.completeExceptionally(cause);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the connection has already answered at least one request. A
+	 * reused connection may have been closed by the server in the meantime.
+	 * 
+	 * @return true if a response has been received, else false. [Boolean]
+	 */
+	public boolean isReused() {
+		return this.reused;
+	}
+
+	/**
+	 * Checks if the connection can't be used anymore.
+	 * 
+	 * @return true if the connection dropped or has been closed, else false.
+	 *         [Boolean]
+	 */
+	public boolean isBroken() {
+		return this.broken;
+	}
+
+	/**
+	 * Gets the number of requests waiting for their response.
+	 * 
+	 * @return the number of requests in flight. [int]
+	 */
+	public int getInFlight() {
+		return this.pending.size();
+	}
+
+	/**
+	 * Closes the connection, the requests in flight fail.
+	 */
+	@Override
+	public void close() {
+		fail(new IOException("Connection closed"));
+	}
+
+	/**
+	 * A request waiting for its response.
+	 */
+	private static class Pending {
+
+		private final CompletableFuture<Object> future;
+		private final CommandMetrics command;
+		// set by the sender before publishing the request, read by the reader thread
+		private volatile long start;
+		private volatile long sent;
+
+		/**
+		 * {@code Pending} class constructor.
+		 * 
+		 * @param future  the future completed with the response.
+		 *                [CompletableFuture]
+		 * @param command the metrics of the command. [CommandMetrics]
+		 */
+		Pending(CompletableFuture<Object> future, CommandMetrics command) {
+			this.future = future;
+			this.command = command;
+		}
+	}
+}
@@ -1,11 +1,17 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
  * Abstraction of a determined Order. Every order has an id, an email which
  * relates the order to the {@code User} who placed it, a status (true if the
- * order has been shipped, false otherwise) and the list of {@code Wine} that
- * the {@code User} has ordered.
+ * order has been shipped, false otherwise) and the lines of the order: the
+ * product id of each wine the {@code User} has ordered, with its quantity.
+ * The name and the other details of the wines are not part of the order, they
+ * are taken from the catalog when the order is displayed.
+ * Orders serialized by a legacy server, which still carry the whole wines,
+ * are converted to the lines when they are read.
  * 
  * @see Wine
  * @see User
@@ -13,7 +19,9 @@ import java.util.ArrayList;
 public class Order implements Serializable{
 
 	private static final long serialVersionUID = -2138142735104663987L;
-	private ArrayList<Wine> items = new ArrayList<Wine>();
+	private static final int[] NO_LINES = new int[0];
+	private int[] productIds = NO_LINES;
+	private int[] quantities = NO_LINES;
 	private int id;
 	private String customer;
 	private Boolean shipped;
@@ -33,15 +41,37 @@ public class Order implements Serializable{
 	 *                 {@code false}. [Boolean]
 	 * @param customer email of the {@code User} who placed the {@code Order}.
 	 *                 [String]
-	 * @param wines    the wines the {@code User} wants to buy. [ArrayList of Wine]
+	 * @param wines    the wines the {@code User} wants to buy, only their product
+	 *                 id and quantity are kept. [ArrayList of Wine]
 	 * @see Wine
 	 * @see User
 	 */
 	public Order(final int id, final Boolean ship, final String customer, final ArrayList<Wine> wines) {
+		this(id, ship, customer, new int[wines.size()], new int[wines.size()]);
+		for (int i = 0; i < wines.size(); i++) {
+			this.productIds[i] = wines.get(i).getProductId();
+			this.quantities[i] = wines.get(i).getQuantity();
+		}
+	}
+
+	/**
+	 * {@code Order} class constructor.
+	 * 
+	 * @param id         of the {@code Order}. [Int]
+	 * @param ship       {@code true} if the order has been shipped, otherwise
+	 *                   {@code false}. [Boolean]
+	 * @param customer   email of the {@code User} who placed the {@code Order}.
+	 *                   [String]
+	 * @param productIds the product id of each line. [int[]]
+	 * @param quantities the quantity of each line. [int[]]
+	 */
+	public Order(final int id, final Boolean ship, final String customer, final int[] productIds,
+			final int[] quantities) {
 		this.id = id;
 		this.shipped = ship;
 		this.customer = customer;
-		this.items = wines;
+		this.productIds = productIds;
+		this.quantities = quantities;
 	}
 
 	/**
@@ -74,12 +104,85 @@ public class Order implements Serializable{
 	}
 
 	/**
-	 * Gets the wines from the selected {@code Order}.
+	 * Gets the number of lines of the selected {@code Order}.
+	 * 
+	 * @return the number of lines. [int]
+	 */
+	public int getLineCount() {
+		return this.productIds.length;
+	}
+
+	/**
+	 * Gets the product id of a line.
+	 * 
+	 * @param line the index of the line. [int]
+	 * @return the product id of the ordered wine. [int]
+	 */
+	public int getProductId(int line) {
+		return this.productIds[line];
+	}
+
+	/**
+	 * Gets the quantity of a line.
+	 * 
+	 * @param line the index of the line. [int]
+	 * @return the ordered bottles. [int]
+	 */
+	public int getQuantity(int line) {
+		return this.quantities[line];
+	}
+
+	/**
+	 * Gets the wines from the selected {@code Order}. Only their product id and
+	 * the ordered quantity are known.
 	 * 
 	 * @return the wines of the {@code Order}. [ArrayList of Wine]
 	 * @see Wine
 	 */
 	public ArrayList<Wine> getWines() {
-		return this.items;
+		ArrayList<Wine> wines = new ArrayList<Wine>(this.productIds.length);
+		for (int i = 0; i < this.productIds.length; i++) {
+			wines.add(new Wine(this.productIds[i], "", "", 0, "", this.quantities[i], ""));
+		}
+		return wines;
+	}
+
+	/**
+	 * Reads an {@code Order} serialized with Java serialization. The orders of
+	 * a legacy server have the list of wines instead of the lines: only the
+	 * product id and the quantity of each wine are kept.
+	 * 
+	 * @param in the stream to read from. [ObjectInputStream]
+	 * @throws IOException            if the stream can't be read.
+	 * @throws ClassNotFoundException if a wine has an unknown class.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		this.id = fields.get("id", 0);
+		this.customer = (String) fields.get("customer", null);
+		this.shipped = (Boolean) fields.get("shipped", Boolean.FALSE);
+
+		if (fields.getObjectStreamClass().getField("items") != null) {
+			// legacy format, the whole wines
+			Object items = fields.get("items", null);
+			ArrayList<?> wines = items instanceof ArrayList<?> ? (ArrayList<?>) items : new ArrayList<Wine>();
+			this.productIds = new int[wines.size()];
+			this.quantities = new int[wines.size()];
+			for (int i = 0; i < wines.size(); i++) {
+				Wine wine = (Wine) wines.get(i);
+				this.productIds[i] = wine.getProductId();
+				this.quantities[i] = wine.getQuantity();
+			}
+			return;
+		}
+
+		int[] productIds = (int[]) fields.get("productIds", null);
+		int[] quantities = (int[]) fields.get("quantities", null);
+		if (productIds == null || quantities == null || productIds.length != quantities.length) {
+			productIds = NO_LINES;
+			quantities = NO_LINES;
+		}
+		this.productIds = productIds;
+		this.quantities = quantities;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+
+/**
+ * Root of the TreeView of the orders of a {@code User}, filled lazily. The
+ * history is downloaded one page at a time with {@code get_orders_page}: the
+ * first page is displayed at once, whatever the length of the history, and
+ * the next one when the user expands the last item. Each order is a single
+ * item until it is expanded: only then its details are created and its wines
+ * downloaded with {@code get_order_lines}.
+ * 
+ * If the server doesn't know {@code get_orders_page}, the whole history is
+ * downloaded with {@code get_orders_user}, still creating the children of an
+ * order only when it is expanded. Those orders only carry the product id and
+ * the quantity of each wine: the other details are taken from the catalog in
+ * memory, and downloaded with {@code get_order_lines} if a wine is missing.
+ * 
+ * This item must only be used from the JavaFX application thread.
+ * 
+ * @see OrderPage
+ */
+public class OrderHistoryItem extends TreeItem<String> {
+
+	private static final String LOADING = "Loading...";
+
+	private final String email;
+	private final AsyncClient client;
+	private final int pageSize;
+	private final IntFunction<Wine> catalog;
+	private int cursor = OrderPage.FIRST;
+	private int loaded;
+	private TreeItem<String> more;
+	private CompletableFuture<Void> loading;
+
+	/**
+	 * {@code OrderHistoryItem} class constructor. The orders are downloaded by
+	 * {@code loadNextPage}, the details of the wines are taken from the
+	 * {@code CatalogCache}.
+	 * 
+	 * @param email    the email of the {@code User}. [String]
+	 * @param client   the client used to download the orders. [AsyncClient]
+	 * @param pageSize the number of orders per page. [int]
+	 */
+	public OrderHistoryItem(String email, AsyncClient client, int pageSize) {
+		this(email, client, pageSize, productId -> CatalogCache.getShared().getCached(productId));
+	}
+
+	/**
+	 * {@code OrderHistoryItem} class constructor. The orders are downloaded by
+	 * {@code loadNextPage}.
+	 * 
+	 * @param email    the email of the {@code User}. [String]
+	 * @param client   the client used to download the orders. [AsyncClient]
+	 * @param pageSize the number of orders per page. [int]
+	 * @param catalog  the wines in memory by product id, returning {@code null}
+	 *                 for the missing ones. [IntFunction of Wine]
+	 */
+	public OrderHistoryItem(String email, AsyncClient client, int pageSize, IntFunction<Wine> catalog) {
+		super("Orders");
+		this.email = email;
+		this.client = client;
+		this.pageSize = pageSize;
+		this.catalog = catalog;
+		setExpanded(true);
+	}
+
+	/**
+	 * Creates the tree of orders already downloaded with their lines.
+	 * 
+	 * @param orders  the orders. [ArrayList of Order]
+	 * @param catalog the wines in memory by product id, returning {@code null}
+	 *                for the missing ones. [IntFunction of Wine]
+	 * @return the root of the tree. [OrderHistoryItem]
+	 */
+	public static OrderHistoryItem of(ArrayList<Order> orders, IntFunction<Wine> catalog) {
+		OrderHistoryItem root = new OrderHistoryItem(null, null, orders.size(), catalog);
+		root.appendAll(orders);
+		return root;
+	}
+
+	/**
+	 * Downloads the next page of the history and appends it. If a page is
+	 * already being downloaded, no new request is sent.
+	 * 
+	 * @return the future completed on the JavaFX application thread once the
+	 *         page has been appended. [CompletableFuture]
+	 */
+	public CompletableFuture<Void> loadNextPage() {
+		if (this.loading != null && !this.loading.isDone()) {
+			return this.loading;
+		}
+		if (this.cursor == OrderPage.END) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		String[] toBeSent = { "get_orders_page", this.email, String.valueOf(this.cursor),
+				String.valueOf(this.pageSize) };
+		this.loading = this.client.request(toBeSent).thenComposeAsync(response -> {
+			if (response instanceof OrderPage) {
+				append((OrderPage) response);
+				return CompletableFuture.completedFuture(null);
+			}
+
+			// the server doesn't know the command, downloads the whole history
+			String[] all = { "get_orders_user", this.email };
+			return this.client.<ArrayList<Order>>request(all).thenAcceptAsync(this::appendAll, AsyncClient.FX);
+		}, AsyncClient.FX);
+		return this.loading;
+	}
+
+	/**
+	 * Appends a page of orders, whose wines are downloaded when expanded.
+	 * 
+	 * @param page the page. [OrderPage]
+	 */
+	public void append(OrderPage page) {
+		ArrayList<TreeItem<String>> items = new ArrayList<TreeItem<String>>(page.getOrders().size() + 1);
+		for (Order order : page.getOrders()) {
+			items.add(new OrderItem(order, false));
+		}
+
+		this.cursor = page.getNextCursor();
+		this.loaded += page.getOrders().size();
+		replaceMore(items, this.cursor != OrderPage.END ? page.getTotal() - this.loaded : 0);
+	}
+
+	/**
+	 * Appends orders already downloaded with their lines.
+	 * 
+	 * @param orders the orders. [ArrayList of Order]
+	 */
+	private void appendAll(ArrayList<Order> orders) {
+		ArrayList<TreeItem<String>> items = new ArrayList<TreeItem<String>>(orders.size());
+		for (Order order : orders) {
+			items.add(new OrderItem(order, true));
+		}
+
+		this.cursor = OrderPage.END;
+		this.loaded += orders.size();
+		replaceMore(items, 0);
+	}
+
+	/**
+	 * Adds items at the end of the history, before the item that loads the
+	 * next page.
+	 * 
+	 * @param items     the items to add. [ArrayList of TreeItem]
+	 * @param remaining the number of orders still to be downloaded, 0 to remove
+	 *                  the item that loads the next page. [int]
+	 */
+	private void replaceMore(ArrayList<TreeItem<String>> items, int remaining) {
+		if (this.more != null) {
+			// it is always the last item
+			getChildren().remove(getChildren().size() - 1);
+		}
+
+		if (remaining > 0) {
+			if (this.more == null) {
+				TreeItem<String> more = new TreeItem<String>();
+				// a child makes the item expandable, expanding it loads the next page
+				more.getChildren().add(new TreeItem<String>(LOADING));
+				more.expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+					if (expanded) {
+						loadNextPage().whenCompleteAsync((result, error) -> more.setExpanded(false), AsyncClient.FX);
+					}
+				});
+				this.more = more;
+			}
+			this.more.setValue(String.format("Show more orders (%d more)", remaining));
+			items.add(this.more);
+		} else {
+			this.more = null;
+		}
+		getChildren().addAll(items);
+	}
+
+	/**
+	 * Item of an order. Its details and wines are created when it is expanded
+	 * for the first time.
+	 */
+	private class OrderItem extends TreeItem<String> {
+
+		private final Order order;
+		private final boolean linesKnown;
+		private boolean built;
+
+		/**
+		 * {@code OrderItem} class constructor.
+		 * 
+		 * @param order      the order. [Order]
+		 * @param linesKnown true if the lines of the order have been downloaded.
+		 *                   [boolean]
+		 */
+		OrderItem(Order order, boolean linesKnown) {
+			super(Integer.toString(order.getId()));
+			this.order = order;
+			this.linesKnown = linesKnown;
+		}
+
+		/**
+		 * An order always has children, even before they are created.
+		 * 
+		 * @return false. [boolean]
+		 */
+		@Override
+		public boolean isLeaf() {
+			return false;
+		}
+
+		/**
+		 * Gets the children, creating them on first use.
+		 * 
+		 * @return the children. [ObservableList of TreeItem]
+		 */
+		@Override
+		public ObservableList<TreeItem<String>> getChildren() {
+			if (!this.built) {
+				this.built = true;
+				build();
+			}
+			return super.getChildren();
+		}
+
+		/**
+		 * Creates the details of the order and its wines, downloading them if
+		 * the lines are not known or some wines are not in memory.
+		 */
+		private void build() {
+			ArrayList<TreeItem<String>> children = new ArrayList<TreeItem<String>>();
+			children.add(new TreeItem<String>("Order ID: " + this.order.getId()));
+			children.add(new TreeItem<String>("Status: " + this.order.getStatus()));
+			children.add(new TreeItem<String>("Customer: " + this.order.getCustomer()));
+
+			ArrayList<Wine> resolved = this.linesKnown ? resolve() : null;
+			if (resolved != null || client == null) {
+				addLines(children, resolved != null ? resolved : this.order.getWines());
+				super.getChildren().setAll(children);
+				return;
+			}
+
+			TreeItem<String> placeholder = new TreeItem<String>(LOADING);
+			children.add(placeholder);
+			super.getChildren().setAll(children);
+
+			String[] toBeSent = { "get_order_lines", email, Integer.toString(this.order.getId()) };
+			client.<ArrayList<Wine>>request(toBeSent).whenCompleteAsync((wines, error) -> {
+				if (error != null) {
+					placeholder.setValue("Cannot reach the server");
+					return;
+				}
+				ArrayList<TreeItem<String>> lines = new ArrayList<TreeItem<String>>(wines.size());
+				addLines(lines, wines);
+				int position = super.getChildren().indexOf(placeholder);
+				super.getChildren().remove(position);
+				super.getChildren().addAll(position, lines);
+			}, AsyncClient.FX);
+		}
+
+		/**
+		 * Takes the details of the wines of the order from the catalog.
+		 * 
+		 * @return the wines, with the ordered quantities; {@code null} if a wine
+		 *         is not in memory. [ArrayList of Wine]
+		 */
+		private ArrayList<Wine> resolve() {
+			ArrayList<Wine> wines = new ArrayList<Wine>(this.order.getLineCount());
+			for (int i = 0; i < this.order.getLineCount(); i++) {
+				Wine wine = catalog.apply(this.order.getProductId(i));
+				if (wine == null) {
+					return null;
+				}
+				wines.add(new Wine(wine.getProductId(), wine.getName(), wine.getProducer(), wine.getYear(),
+						wine.getNotes(), this.order.getQuantity(i), wine.getGrapewines()));
+			}
+			return wines;
+		}
+
+		/**
+		 * Creates an item for each wine of the order.
+		 * 
+		 * @param items the list the items are added to. [ArrayList of TreeItem]
+		 * @param wines the wines, with the ordered quantities. [ArrayList of
+		 *              Wine]
+		 */
+		private void addLines(ArrayList<TreeItem<String>> items, ArrayList<Wine> wines) {
+			for (Wine wine : wines) {
+				TreeItem<String> rootProduct = new TreeItem<String>(
+						String.format("%d - %s %s", wine.getProductId(), wine.getName(), wine.getYear()));
+				rootProduct.getChildren().add(new TreeItem<String>("Quantity: " + wine.getQuantity()));
+				items.add(rootProduct);
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Abstraction of a page of the order history of a {@code User}, returned by the
+ * {@code get_orders_page} command. The orders are sorted by id and carry only
+ * their header: the wines of an order are downloaded with
+ * {@code get_order_lines} when the user opens it. The cursor of the next page
+ * is the id of the last order of this page.
+ * 
+ * @see Order
+ * @see OrderHistoryItem
+ */
+public class OrderPage implements Serializable {
+
+	private static final long serialVersionUID = 2093561839145637702L;
+
+	/**
+	 * Cursor of the first page of the history.
+	 */
+	public static final int FIRST = -1;
+
+	/**
+	 * Cursor returned after the last page of the history.
+	 */
+	public static final int END = Integer.MAX_VALUE;
+
+	private ArrayList<Order> orders;
+	private int nextCursor;
+	private int total;
+
+	/**
+	 * {@code OrderPage} class constructor.
+	 * 
+	 * @param orders     the orders of the page, without their wines. [ArrayList
+	 *                   of Order]
+	 * @param nextCursor the cursor of the next page, {@code END} if this is the
+	 *                   last one. [int]
+	 * @param total      the number of orders in the whole history. [int]
+	 */
+	public OrderPage(final ArrayList<Order> orders, final int nextCursor, final int total) {
+		this.orders = orders;
+		this.nextCursor = nextCursor;
+		this.total = total;
+	}
+
+	/**
+	 * Gets the orders of the page.
+	 * 
+	 * @return the orders, without their wines. [ArrayList of Order]
+	 */
+	public ArrayList<Order> getOrders() {
+		return this.orders;
+	}
+
+	/**
+	 * Gets the cursor of the next page.
+	 * 
+	 * @return the cursor of the next page, {@code END} if this is the last one.
+	 *         [int]
+	 */
+	public int getNextCursor() {
+		return this.nextCursor;
+	}
+
+	/**
+	 * Gets the number of orders in the whole history.
+	 * 
+	 * @return the size of the history. [int]
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+}
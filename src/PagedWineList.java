@@ -0,0 +1,565 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read-only view of the whole catalog, to be displayed in a TableView. Only
+ * the pages the TableView actually shows are downloaded, with the
+ * {@code get_wines_page} command, and only the most recently used ones are
+ * kept in memory. Rows whose page hasn't arrived yet show {@code PLACEHOLDER}
+ * and are replaced as soon as the page is downloaded. The first page is never
+ * evicted. A page far from the known ones is downloaded with the pages before
+ * it in a single request, instead of one request per page.
+ * 
+ * The whole catalog can also be copied, for example to filter and sort it
+ * without the server: the copy is downloaded on its own, in requests of
+ * {@code MAX_RANGE} wines, and doesn't depend on the pages in memory.
+ * 
+ * The pages are kept in {@code CatalogStore}s sharing the same dictionaries,
+ * and the rows are returned as flyweight views: a producer or a blend repeated
+ * over many pages is kept once, and many more pages fit in the same heap.
+ * 
+ * The list remembers the version of the catalog it has been read from, so that
+ * it can be brought up to date with a {@code CatalogDelta} instead of being
+ * downloaded again.
+ * 
+ * Apart from {@code loadFirstPage}, this list must only be used from the
+ * JavaFX application thread.
+ * 
+ * @see WinePage
+ * @see CatalogCache
+ */
+public class PagedWineList extends ObservableListBase<Wine> {
+
+	public static final Wine PLACEHOLDER = new Wine(-1, "Loading...", "", 0, "", 0, "");
+
+	// the most wines returned by get_wines_page
+	private static final int MAX_RANGE = 1000;
+	// the largest catalog copied by snapshot
+	private static final int MAX_SNAPSHOT = 100_000;
+
+	private final int pageSize;
+	private final StringDictionary producers = new StringDictionary();
+	private final StringDictionary grapes = new StringDictionary();
+	private CatalogStore firstPage;
+	private final LinkedHashMap<Integer, CatalogStore> pages;
+	// cursors.get(p) is the cursor of page p, known once page p - 1 has been read
+	private final ArrayList<Integer> cursors = new ArrayList<Integer>();
+	private final HashSet<Integer> loading = new HashSet<Integer>();
+	private int wanted = -1;
+	private int total;
+	private int version;
+	// incremented when the pages are invalidated, to discard the pages in flight
+	private int generation;
+	// copy of the whole catalog, independent of the pages in memory
+	private CatalogStore all;
+	private int allVersion;
+	private boolean loadingAll;
+
+	/**
+	 * {@code PagedWineList} class constructor.
+	 * 
+	 * @param pageSize the number of wines per page. [int]
+	 * @param maxPages the maximum number of pages kept in memory. [int]
+	 */
+	public PagedWineList(final int pageSize, final int maxPages) {
+		this.pageSize = pageSize;
+		this.pages = new LinkedHashMap<Integer, CatalogStore>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, CatalogStore> eldest) {
+				return size() > maxPages;
+			}
+		};
+		this.cursors.add(WinePage.FIRST);
+	}
+
+	/**
+	 * Downloads the first page of the catalog, blocking the caller. It must be
+	 * called before the list is displayed.
+	 * 
+	 * @return the wines of the first page. [ArrayList of Wine]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public ArrayList<Wine> loadFirstPage() throws IOException, ClassNotFoundException {
+		return loadFirstPage(fetch(WinePage.FIRST));
+	}
+
+	/**
+	 * Uses a first page of the catalog already downloaded, for example with the
+	 * other data of the homepage. It must be called before the list is
+	 * displayed.
+	 * 
+	 * @param page the first page of the catalog. [WinePage]
+	 * @return the wines of the first page. [ArrayList of Wine]
+	 * @see HomepageBootstrap
+	 */
+	public ArrayList<Wine> loadFirstPage(WinePage page) {
+		this.total = page.getTotal();
+		this.version = page.getVersion();
+		store(0, page);
+		return getFirstPage();
+	}
+
+	/**
+	 * Gets the first page of the catalog, downloaded by {@code loadFirstPage}.
+	 * 
+	 * @return the wines of the first page. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> getFirstPage() {
+		return this.firstPage == null ? null : this.firstPage.toList();
+	}
+
+	/**
+	 * Gets the number of wines per page.
+	 * 
+	 * @return the number of wines per page. [int]
+	 */
+	public int getPageSize() {
+		return this.pageSize;
+	}
+
+	/**
+	 * Gets the version of the catalog the list is up to date with.
+	 * 
+	 * @return the version of the catalog. [int]
+	 * @see CatalogDelta
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the pages currently in memory, the first one included.
+	 * 
+	 * @return the pages in memory. [Collection of ArrayList of Wine]
+	 */
+	public Collection<ArrayList<Wine>> getCachedPages() {
+		ArrayList<ArrayList<Wine>> cached = new ArrayList<ArrayList<Wine>>(this.pages.size() + 1);
+		for (CatalogStore page : this.pages.values()) {
+			cached.add(page.toList());
+		}
+		if (this.firstPage != null) {
+			cached.add(this.firstPage.toList());
+		}
+		return cached;
+	}
+
+	/**
+	 * Gets a wine, if its page is in memory. No page is requested.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @return the wine, {@code null} if it is not in memory. [Wine]
+	 */
+	public Wine getCached(int productId) {
+		CatalogStore page = page(pageOf(productId));
+		int offset = page == null ? -1 : page.indexOf(productId);
+		return offset >= 0 ? page.copyOf(offset) : null;
+	}
+
+	/**
+	 * Gets the wine at the specified position. If its page is not in memory the
+	 * page is requested in background and {@code PLACEHOLDER} is returned.
+	 * 
+	 * @param index the position of the wine. [int]
+	 * @return the wine, or {@code PLACEHOLDER}. [Wine]
+	 */
+	@Override
+	public Wine get(int index) {
+		if (index < 0 || index >= this.total) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.total);
+		}
+
+		int pageIndex = index / this.pageSize;
+		CatalogStore page = page(pageIndex);
+		int offset = index % this.pageSize;
+
+		if (page != null && offset < page.size()) {
+			return page.get(offset);
+		}
+		request(pageIndex);
+		return PLACEHOLDER;
+	}
+
+	/**
+	 * Gets the number of wines in the catalog, as reported by the server with
+	 * the last page.
+	 * 
+	 * @return the size of the catalog. [int]
+	 */
+	@Override
+	public int size() {
+		return this.total;
+	}
+
+	/**
+	 * Checks if the whole catalog is in memory.
+	 * 
+	 * @return true if every page is in memory, else false. [Boolean]
+	 */
+	public boolean isFullyLoaded() {
+		int count = (this.total + this.pageSize - 1) / this.pageSize;
+		for (int i = 0; i < count; i++) {
+			if (page(i) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the whole catalog. The first call downloads the copy in
+	 * background, unless the catalog has more than {@code MAX_SNAPSHOT} wines;
+	 * the copy is then kept up to date by {@code apply}, or downloaded again
+	 * when new wines are inserted.
+	 * 
+	 * @return the wines in catalog order, independent of the pages;
+	 *         {@code null} while the copy is being downloaded. [ArrayList of
+	 *         Wine]
+	 * @see CatalogQuery
+	 */
+	public ArrayList<Wine> snapshot() {
+		if (this.all == null || this.all.size() != this.total) {
+			if (this.all == null) {
+				downloadAll();
+			}
+			return null;
+		}
+		ArrayList<Wine> wines = new ArrayList<Wine>(this.total);
+		for (int i = 0; i < this.total; i++) {
+			wines.add(this.all.copyOf(i));
+		}
+		return wines;
+	}
+
+	/**
+	 * Downloads the copy of the whole catalog in background, unless it is
+	 * already being downloaded or the catalog is too large.
+	 */
+	private void downloadAll() {
+		if (this.loadingAll || this.total > MAX_SNAPSHOT) {
+			return;
+		}
+		this.loadingAll = true;
+		downloadAll(WinePage.FIRST, new CatalogStore(this.producers, this.grapes, this.total), -1);
+	}
+
+	/**
+	 * Downloads the next wines of the copy of the whole catalog. The copy is
+	 * dropped if the catalog changes while it is being downloaded: the next
+	 * {@code snapshot} downloads it again.
+	 * 
+	 * @param cursor  the cursor after the wines already downloaded. [int]
+	 * @param wines   the wines already downloaded. [CatalogStore]
+	 * @param version the version of the wines already downloaded, -1 if none.
+	 *                [int]
+	 */
+	private void downloadAll(int cursor, CatalogStore wines, int version) {
+		int generation = this.generation;
+		AsyncClient.getShared().<WinePage>request(pageRequest(cursor, MAX_RANGE))
+				.whenCompleteAsync((page, error) -> {
+					if (error != null) {
+						ClientMetrics.getShared().recordFailure("catalog snapshot");
+						this.loadingAll = false;
+					} else if (generation != this.generation || (version >= 0 && page.getVersion() != version)) {
+						// the catalog has changed meanwhile
+						this.loadingAll = false;
+					} else if (page.getNextCursor() != WinePage.END && !page.getWines().isEmpty()) {
+						wines.addAll(page.getWines());
+						downloadAll(page.getNextCursor(), wines, page.getVersion());
+					} else {
+						wines.addAll(page.getWines());
+						wines.trimToSize();
+						this.loadingAll = false;
+						this.all = wines;
+						this.allVersion = page.getVersion();
+					}
+				}, AsyncClient.FX);
+	}
+
+	/**
+	 * Requests a page in background. Since pages are identified by cursors, a
+	 * page whose cursor is not known yet is downloaded together with the pages
+	 * before it, starting from the last known one, in a single request of up to
+	 * {@code MAX_RANGE} wines.
+	 * 
+	 * @param pageIndex the page to download. [int]
+	 */
+	private void request(int pageIndex) {
+		int known = Math.min(pageIndex, this.cursors.size() - 1);
+		int count = Math.min(pageIndex - known + 1, Math.max(1, MAX_RANGE / this.pageSize));
+		if (known + count - 1 < pageIndex) {
+			this.wanted = Math.max(this.wanted, pageIndex);
+		}
+		if (!this.loading.add(known)) {
+			this.wanted = Math.max(this.wanted, pageIndex);
+			return;
+		}
+
+		int generation = this.generation;
+		AsyncClient.getShared().<WinePage>request(pageRequest(this.cursors.get(known), count * this.pageSize))
+				.whenCompleteAsync((page, error) -> {
+					if (generation != this.generation) {
+						// the pages have been invalidated meanwhile
+						return;
+					} else if (error == null) {
+						installRange(known, page);
+					} else {
+						// the page will be requested again by the next get
+						ClientMetrics.getShared().recordFailure("catalog page");
+						this.loading.remove(known);
+					}
+				}, AsyncClient.FX);
+	}
+
+	/**
+	 * Splits the wines downloaded from {@code firstIndex} on into pages and
+	 * installs them, then keeps walking towards the page that was actually
+	 * requested, if it was beyond the range. Called on the JavaFX application
+	 * thread.
+	 * 
+	 * @param firstIndex the index of the first page. [int]
+	 * @param range      the downloaded wines. [WinePage]
+	 */
+	private void installRange(int firstIndex, WinePage range) {
+		this.loading.remove(firstIndex);
+		ArrayList<Wine> wines = range.getWines();
+		int count = Math.max(1, (wines.size() + this.pageSize - 1) / this.pageSize);
+		for (int i = 0; i < count; i++) {
+			int from = i * this.pageSize;
+			int to = Math.min(from + this.pageSize, wines.size());
+			// the cursor of the next page is the last wine of this one
+			int nextCursor = i < count - 1 ? wines.get(to - 1).getProductId() : range.getNextCursor();
+			install(firstIndex + i, new WinePage(new ArrayList<Wine>(wines.subList(from, to)), nextCursor,
+					range.getTotal(), range.getVersion()));
+		}
+
+		int lastIndex = firstIndex + count - 1;
+		if (this.wanted > lastIndex) {
+			int next = this.wanted;
+			this.wanted = -1;
+			request(next);
+		} else {
+			this.wanted = -1;
+		}
+	}
+
+	/**
+	 * Stores a downloaded page and notifies the TableView about the rows that
+	 * changed. Called on the JavaFX application thread.
+	 * 
+	 * @param pageIndex the index of the page. [int]
+	 * @param page      the downloaded page. [WinePage]
+	 */
+	private void install(int pageIndex, WinePage page) {
+		store(pageIndex, page);
+
+		int oldTotal = this.total;
+		int newTotal = page.getTotal();
+		int from = pageIndex * this.pageSize;
+		int to = Math.min(from + page.getWines().size(), Math.min(oldTotal, newTotal));
+
+		beginChange();
+		for (int i = from; i < to; i++) {
+			nextSet(i, PLACEHOLDER);
+		}
+		this.total = newTotal;
+		if (newTotal > oldTotal) {
+			nextAdd(oldTotal, newTotal);
+		} else if (newTotal < oldTotal) {
+			for (int i = oldTotal - 1; i >= newTotal; i--) {
+				nextRemove(i, PLACEHOLDER);
+			}
+		}
+		endChange();
+	}
+
+	/**
+	 * Stores a page and records the cursor of the next one.
+	 * 
+	 * @param pageIndex the index of the page. [int]
+	 * @param page      the page. [WinePage]
+	 */
+	private void store(int pageIndex, WinePage page) {
+		CatalogStore wines = new CatalogStore(this.producers, this.grapes, page.getWines().size());
+		wines.addAll(page.getWines());
+		if (pageIndex == 0) {
+			this.firstPage = wines;
+		} else {
+			this.pages.put(pageIndex, wines);
+		}
+		if (pageIndex + 1 == this.cursors.size() && page.getNextCursor() != WinePage.END) {
+			this.cursors.add(page.getNextCursor());
+		}
+	}
+
+	/**
+	 * Gets a page, if it is in memory.
+	 * 
+	 * @param pageIndex the index of the page. [int]
+	 * @return the page, {@code null} if it is not in memory. [CatalogStore]
+	 */
+	private CatalogStore page(int pageIndex) {
+		return pageIndex == 0 ? this.firstPage : this.pages.get(pageIndex);
+	}
+
+	/**
+	 * Brings the list up to date with the changes of the catalog. The wines
+	 * in memory are replaced in place; if new wines have been inserted, the
+	 * pages from the first insertion on are dropped and downloaded again when
+	 * displayed. A delta that is not complete drops every page. Called on the
+	 * JavaFX application thread.
+	 * 
+	 * @param delta the changes since {@code getVersion()}. [CatalogDelta]
+	 */
+	public void apply(CatalogDelta delta) {
+		int oldTotal = this.total;
+		int newTotal = delta.getTotal();
+		applyToAll(delta);
+
+		if (!delta.isComplete()) {
+			this.version = delta.getVersion();
+			invalidate(0, oldTotal, newTotal);
+			return;
+		}
+
+		int firstInsert = Integer.MAX_VALUE;
+		beginChange();
+		for (Wine wine : delta.getWines()) {
+			int pageIndex = pageOf(wine.getProductId());
+			CatalogStore page = page(pageIndex);
+			int offset = page == null ? -1 : page.indexOf(wine.getProductId());
+
+			if (offset >= 0) {
+				// updated or restocked
+				Wine old = page.set(offset, wine);
+				nextSet(pageIndex * this.pageSize + offset, old);
+			} else if (newTotal != oldTotal) {
+				// possibly inserted, the following wines have been shifted
+				firstInsert = Math.min(firstInsert, pageIndex);
+			}
+			// else the wine is in a page that is not in memory and will be
+			// downloaded up to date
+		}
+		endChange();
+
+		this.version = delta.getVersion();
+		if (firstInsert != Integer.MAX_VALUE || newTotal != oldTotal) {
+			invalidate(Math.min(firstInsert, this.cursors.size() - 1), oldTotal, newTotal);
+		}
+	}
+
+	/**
+	 * Brings the copy of the whole catalog up to date with the changes. The
+	 * copy is dropped if wines have been inserted or the changes are not
+	 * complete.
+	 * 
+	 * @param delta the changes. [CatalogDelta]
+	 */
+	private void applyToAll(CatalogDelta delta) {
+		if (this.all == null || delta.getVersion() <= this.allVersion) {
+			return;
+		}
+		if (!delta.isComplete()) {
+			this.all = null;
+			return;
+		}
+		for (Wine wine : delta.getWines()) {
+			int index = this.all.indexOf(wine.getProductId());
+			if (index < 0) {
+				// inserted, the copy is downloaded again
+				this.all = null;
+				return;
+			}
+			this.all.set(index, wine);
+		}
+		this.allVersion = delta.getVersion();
+	}
+
+	/**
+	 * Drops the pages from {@code pageIndex} on and notifies the TableView that
+	 * the corresponding rows have been replaced.
+	 * 
+	 * @param pageIndex the first page to drop. [int]
+	 * @param oldTotal  the size of the list before the change. [int]
+	 * @param newTotal  the size of the list after the change. [int]
+	 */
+	private void invalidate(int pageIndex, int oldTotal, int newTotal) {
+		this.generation++;
+		this.loading.clear();
+		this.wanted = -1;
+		this.pages.keySet().removeIf(index -> index >= pageIndex);
+		if (pageIndex == 0) {
+			this.firstPage = null;
+		}
+		// the cursor of pageIndex is the last wine of the previous page, still valid
+		while (this.cursors.size() > pageIndex + 1) {
+			this.cursors.remove(this.cursors.size() - 1);
+		}
+
+		int from = Math.min(pageIndex * this.pageSize, Math.min(oldTotal, newTotal));
+		this.total = newTotal;
+		beginChange();
+		if (oldTotal > from) {
+			nextRemove(from, Collections.nCopies(oldTotal - from, PLACEHOLDER));
+		}
+		if (newTotal > from) {
+			nextAdd(from, newTotal);
+		}
+		endChange();
+	}
+
+	/**
+	 * Finds the page that contains, or would contain, a wine. Only pages whose
+	 * cursor is known are considered.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @return the index of the page. [int]
+	 */
+	private int pageOf(int productId) {
+		// cursors are sorted, page p holds the ids after cursors.get(p)
+		int low = 0;
+		int high = this.cursors.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (this.cursors.get(middle) < productId) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Downloads the page starting after {@code cursor}.
+	 * 
+	 * @param cursor the cursor of the page. [int]
+	 * @return the page. [WinePage]
+	 * @throws IOException            if the server can't be reached.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	private WinePage fetch(int cursor) throws IOException, ClassNotFoundException {
+		return (WinePage) Client.getShared().request(pageRequest(cursor, this.pageSize));
+	}
+
+	/**
+	 * Builds the request of the wines after {@code cursor}.
+	 * 
+	 * @param cursor the cursor of the first page. [int]
+	 * @param size   the number of wines. [int]
+	 * @return the request. [String[]]
+	 */
+	private String[] pageRequest(int cursor, int size) {
+		String[] toBeSent = { "get_wines_page", String.valueOf(cursor), String.valueOf(size) };
+		return toBeSent;
+	}
+}
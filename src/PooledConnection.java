@@ -0,0 +1,491 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Keep-alive connection to the server, handed out by a {@code ConnectionPool}.
+ * A new connection speaks the old protocol: every request and every response
+ * is a complete serialization stream, exactly like the ones sent on a one-shot
+ * socket, so the same socket can carry any number of requests one after the
+ * other. After a successful {@code negotiate} the connection switches to the
+ * binary frames of {@code Protocol}. A connection negotiated as multiplexed is
+ * not used for a request at a time: it is handed to a
+ * {@code MultiplexedConnection}, which sends the requests with {@code send}
+ * and reads the responses with {@code receiveReply}.
+ * 
+ * Every request is measured in the {@code ClientMetrics}: the time from the
+ * request to the response and the bytes actually written on the socket and
+ * read from it.
+ * 
+ * @see ConnectionPool
+ * @see Protocol
+ * @see ClientMetrics
+ * @see MultiplexedConnection
+ */
+public class PooledConnection implements Closeable {
+
+	private final Socket socket;
+	private final DataOutputStream outputStream;
+	private final DataInputStream inputStream;
+	private final WireCodec codec = new WireCodec();
+	// opcode of the request encoded in codec, not written yet
+	private byte encoded;
+	// the responses of a multiplexed connection are decoded while requests are encoded
+	private final WireCodec replyCodec = new WireCodec();
+	private final CountingOutputStream sent;
+	private final CountingInputStream received;
+	private final ClientMetrics metrics;
+	private boolean binary;
+	private boolean multiplexed;
+	private int timeout;
+	private long lastUsed;
+	private boolean reused;
+	private boolean broken;
+
+	/**
+	 * {@code PooledConnection} class constructor, opens the socket.
+	 * 
+	 * @param host the host of the server. [String]
+	 * @param port the port of the server. [int]
+	 * @throws IOException if an I/O error occurs when creating the socket.
+	 */
+	public PooledConnection(String host, int port) throws IOException {
+		this(host, port, ClientMetrics.getShared());
+	}
+
+	/**
+	 * {@code PooledConnection} class constructor, opens the socket.
+	 * 
+	 * @param host    the host of the server. [String]
+	 * @param port    the port of the server. [int]
+	 * @param metrics the metrics the requests are recorded in. [ClientMetrics]
+	 * @throws IOException if an I/O error occurs when creating the socket.
+	 */
+	public PooledConnection(String host, int port, ClientMetrics metrics) throws IOException {
+		this.socket = new Socket(host, port);
+		this.socket.setTcpNoDelay(true);
+		this.socket.setKeepAlive(true);
+		this.metrics = metrics;
+		this.sent = new CountingOutputStream(this.socket.getOutputStream());
+		this.received = new CountingInputStream(this.socket.getInputStream());
+		this.outputStream = new DataOutputStream(new BufferedOutputStream(this.sent));
+		this.inputStream = new DataInputStream(new BufferedInputStream(this.received));
+		this.lastUsed = System.nanoTime();
+	}
+
+	/**
+	 * Sends {@code toBeSent} to the server and waits for its response. If an I/O
+	 * error occurs the connection is marked as broken and must not be reused.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if an I/O error occurs on the socket.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public Object request(String[] toBeSent) throws IOException, ClassNotFoundException {
+		return request(toBeSent, 0);
+	}
+
+	/**
+	 * Sends {@code toBeSent} to the server and waits at most {@code timeout}
+	 * milliseconds for its response. If an I/O error occurs, the timeout
+	 * included, the connection is marked as broken and must not be reused.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param timeout  the maximum time to wait for the response, in
+	 *                 milliseconds, 0 to wait forever. [int]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if an I/O error occurs on the socket.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	public Object request(String[] toBeSent, int timeout) throws IOException, ClassNotFoundException {
+		CommandMetrics command = this.metrics.forCommand(toBeSent.length > 0 ? String.valueOf(toBeSent[0]) : "");
+		long sentBefore = this.sent.count;
+		long receivedBefore = this.received.count;
+		long start = System.nanoTime();
+		try {
+			Object response = exchange(toBeSent, timeout);
+			command.record(System.nanoTime() - start, this.sent.count - sentBefore,
+					this.received.count - receivedBefore);
+			return response;
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			command.recordError(this.sent.count - sentBefore, this.received.count - receivedBefore);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a request and reads its response.
+	 * 
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @param timeout  the maximum time to wait for the response, in
+	 *                 milliseconds, 0 to wait forever. [int]
+	 * @return the response of the server. [Object]
+	 * @throws IOException            if an I/O error occurs on the socket.
+	 * @throws ClassNotFoundException if the server responds in an unexpected way.
+	 */
+	private Object exchange(String[] toBeSent, int timeout) throws IOException, ClassNotFoundException {
+		try {
+			if (this.timeout != timeout) {
+				this.socket.setSoTimeout(timeout);
+				this.timeout = timeout;
+			}
+
+			if (this.binary) {
+				Protocol.writeRequest(this.outputStream, this.codec, toBeSent);
+				return Protocol.readResponse(this.inputStream, this.codec);
+			}
+
+			// client -> server
+			ObjectOutputStream out = new ObjectOutputStream(this.outputStream);
+			out.writeObject(toBeSent);
+			out.flush();
+
+			// server -> client
+			ObjectInputStream in = new ObjectInputStream(this.inputStream);
+			return in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			this.broken = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for a message pushed by the server, without sending anything. Used
+	 * by the connections subscribed to the changes of the catalog.
+	 * 
+	 * @param timeout the maximum time to wait, in milliseconds, 0 to wait
+	 *                forever. [int]
+	 * @return the message. [Object]
+	 * @throws IOException            if an I/O error occurs on the socket.
+	 * @throws ClassNotFoundException if the server sends an unexpected object.
+	 * @see CatalogSubscription
+	 */
+	public Object receive(int timeout) throws IOException, ClassNotFoundException {
+		long receivedBefore = this.received.count;
+		try {
+			if (this.timeout != timeout) {
+				this.socket.setSoTimeout(timeout);
+				this.timeout = timeout;
+			}
+
+			Object message;
+			if (this.binary) {
+				message = Protocol.readResponse(this.inputStream, this.codec);
+			} else {
+				message = new ObjectInputStream(this.inputStream).readObject();
+			}
+			this.metrics.forCommand("push").recordReceived(this.received.count - receivedBefore);
+			return message;
+		} catch (IOException | ClassNotFoundException e) {
+			this.broken = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Encodes a request of a multiplexed connection, to be written by
+	 * {@code writeEncoded}. Must not be called by two threads at the same time.
+	 * 
+	 * @param id       the correlation id of the request. [int]
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the number of bytes that will be written on the socket. [long]
+	 * @see MultiplexedConnection
+	 */
+	long encode(int id, String[] toBeSent) {
+		this.encoded = Protocol.encodeRequest(this.codec, toBeSent);
+		return Protocol.frameSize(id, this.codec);
+	}
+
+	/**
+	 * Writes the request encoded by {@code encode}, without waiting for its
+	 * response. If an I/O error occurs the connection is marked as broken.
+	 * 
+	 * @param id the correlation id of the request. [int]
+	 * @throws IOException if an I/O error occurs on the socket.
+	 * @see MultiplexedConnection
+	 */
+	void writeEncoded(int id) throws IOException {
+		try {
+			Protocol.writeFrame(this.outputStream, this.encoded, id, this.codec);
+		} catch (IOException e) {
+			this.broken = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits for the next response of a multiplexed connection, whatever its
+	 * request. Must not be called by two threads at the same time, but can be
+	 * called while another thread sends. If an I/O error occurs the connection
+	 * is marked as broken.
+	 * 
+	 * @return the response with the correlation id of its request. [Reply]
+	 * @throws IOException            if an I/O error occurs on the socket.
+	 * @throws ClassNotFoundException if the server sends an unexpected object.
+	 * @see MultiplexedConnection
+	 */
+	Protocol.Reply receiveReply() throws IOException, ClassNotFoundException {
+		try {
+			return Protocol.readReply(this.inputStream, this.replyCodec);
+		} catch (IOException | ClassNotFoundException e) {
+			this.broken = true;
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes read from the socket so far.
+	 * 
+	 * @return the number of bytes. [long]
+	 */
+	long getBytesReceived() {
+		return this.received.count;
+	}
+
+	/**
+	 * Asks the server to switch to the binary protocol. If the server doesn't
+	 * accept, the connection keeps using the old protocol, but a server that
+	 * doesn't know the handshake may also have closed it: in that case the caller
+	 * should discard it.
+	 * 
+	 * @return true if the connection now uses the binary protocol, else false.
+	 *         [Boolean]
+	 * @throws IOException if an I/O error occurs during the handshake.
+	 * @see Protocol
+	 */
+	public boolean negotiate() throws IOException {
+		return negotiate(false);
+	}
+
+	/**
+	 * Asks the server to switch to the binary protocol, multiplexed if
+	 * {@code multiplex} is true. A server that doesn't support multiplexing
+	 * answers with the plain binary protocol. If the server doesn't accept the
+	 * binary protocol at all, the connection keeps using the old one, but a
+	 * server that doesn't know the handshake may also have closed it: in that
+	 * case the caller should discard it.
+	 * 
+	 * @param multiplex true to ask for a multiplexed connection. [Boolean]
+	 * @return true if the connection now uses the binary protocol, else false.
+	 *         [Boolean]
+	 * @throws IOException if an I/O error occurs during the handshake.
+	 * @see Protocol
+	 */
+	public boolean negotiate(boolean multiplex) throws IOException {
+		String[] toBeSent = multiplex
+				? new String[] { Protocol.HANDSHAKE, Protocol.BINARY, String.valueOf(Protocol.VERSION),
+						Protocol.MULTIPLEX }
+				: new String[] { Protocol.HANDSHAKE, Protocol.BINARY, String.valueOf(Protocol.VERSION) };
+
+		try {
+			Object accepted = request(toBeSent);
+			this.multiplexed = multiplex && Integer.valueOf(Protocol.MULTIPLEXED_VERSION).equals(accepted);
+			this.binary = this.multiplexed || Integer.valueOf(Protocol.VERSION).equals(accepted);
+		} catch (ClassNotFoundException e) {
+			this.binary = false;
+		}
+		return this.binary;
+	}
+
+	/**
+	 * Checks if the connection uses the binary protocol.
+	 * 
+	 * @return true if the binary protocol has been negotiated, else false.
+	 *         [Boolean]
+	 */
+	public boolean isBinary() {
+		return this.binary;
+	}
+
+	/**
+	 * Checks if the connection has been negotiated as multiplexed.
+	 * 
+	 * @return true if the responses carry the correlation id of their request,
+	 *         else false. [Boolean]
+	 */
+	public boolean isMultiplexed() {
+		return this.multiplexed;
+	}
+
+	/**
+	 * Health check, sends a {@code ping} to the server and waits at most
+	 * {@code timeout} milliseconds for the answer.
+	 * 
+	 * @param timeout the maximum time to wait for the answer, in milliseconds.
+	 *                [int]
+	 * @return true if the server answered correctly, else false. [Boolean]
+	 */
+	public boolean validate(int timeout) {
+		if (this.broken || this.socket.isClosed() || this.socket.isInputShutdown()
+				|| this.socket.isOutputShutdown()) {
+			return false;
+		}
+
+		try {
+			String[] toBeSent = { "ping" };
+			Object pong = request(toBeSent, timeout);
+			return Boolean.TRUE.equals(pong);
+		} catch (SocketTimeoutException e) {
+			this.broken = true;
+			return false;
+		} catch (IOException | ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Marks the connection as used right now.
+	 */
+	void touch() {
+		this.lastUsed = System.nanoTime();
+		this.reused = true;
+	}
+
+	/**
+	 * Gets how long the connection has been idle.
+	 * 
+	 * @param now the current time, as returned by {@code System.nanoTime()}.
+	 *            [long]
+	 * @return the idle time, in nanoseconds. [long]
+	 */
+	long idleFor(long now) {
+		return now - this.lastUsed;
+	}
+
+	/**
+	 * Checks if the connection has already served at least one request. A reused
+	 * connection may have been closed by the server in the meantime.
+	 * 
+	 * @return true if the connection has been used before, else false. [Boolean]
+	 */
+	public boolean isReused() {
+		return this.reused;
+	}
+
+	/**
+	 * Checks if the connection can't be used anymore.
+	 * 
+	 * @return true if an error occurred on the connection, else false. [Boolean]
+	 */
+	public boolean isBroken() {
+		return this.broken || this.socket.isClosed();
+	}
+
+	/**
+	 * Closes the socket, errors are ignored.
+	 */
+	@Override
+	public void close() {
+		this.broken = true;
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			// nothing to do, the connection is discarded anyway
+		}
+	}
+
+	/**
+	 * Stream that counts the bytes written on the socket.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count;
+
+		/**
+		 * {@code CountingOutputStream} class constructor.
+		 * 
+		 * @param out the stream of the socket. [OutputStream]
+		 */
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		/**
+		 * Writes a byte.
+		 * 
+		 * @param b the byte. [int]
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		/**
+		 * Writes a block of bytes at once.
+		 * 
+		 * @param b      the bytes. [byte[]]
+		 * @param offset the position of the first byte. [int]
+		 * @param length the number of bytes. [int]
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException {
+			this.out.write(b, offset, length);
+			this.count += length;
+		}
+	}
+
+	/**
+	 * Stream that counts the bytes read from the socket.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		/**
+		 * {@code CountingInputStream} class constructor.
+		 * 
+		 * @param in the stream of the socket. [InputStream]
+		 */
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		/**
+		 * Reads a byte.
+		 * 
+		 * @return the byte, -1 at the end of the stream. [int]
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Override
+		public int read() throws IOException {
+			int b = this.in.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		/**
+		 * Reads a block of bytes.
+		 * 
+		 * @param b      the destination. [byte[]]
+		 * @param offset the position of the first byte. [int]
+		 * @param length the maximum number of bytes. [int]
+		 * @return the number of bytes read, -1 at the end of the stream. [int]
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@Override
+		public int read(byte[] b, int offset, int length) throws IOException {
+			int read = this.in.read(b, offset, length);
+			if (read > 0) {
+				this.count += read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,371 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary wire protocol spoken with the server once both sides have agreed on
+ * it. Every message is a frame made of:
+ * <ul>
+ * <li>the length of the rest of the frame. [int, 4 bytes]</li>
+ * <li>the protocol version. [1 byte]</li>
+ * <li>the opcode of the command for requests, the {@code WireCodec} type tag
+ * for responses. [1 byte]</li>
+ * <li>the payload, encoded by {@code WireCodec}.</li>
+ * </ul>
+ * The arguments of a request are encoded as strings, exactly as the ones of the
+ * old {@code String[]} commands. The connection starts with the old protocol:
+ * the client sends {@code { "protocol", "binary", VERSION }} and switches to
+ * binary frames only if the server answers with the version it accepts.
+ * 
+ * A client that adds {@code MULTIPLEX} to the handshake asks for a multiplexed
+ * connection: a server that supports it answers {@code MULTIPLEXED_VERSION}
+ * instead of {@code VERSION}, and from then on every frame carries that
+ * version and, right after the opcode or type tag, the correlation id of the
+ * request [int, 4 bytes]. The response carries the id of its request, so many
+ * requests can be in flight on the same connection and their responses can
+ * arrive in any order. An older server ignores the extra argument and answers
+ * {@code VERSION}.
+ * 
+ * @see WireCodec
+ * @see PooledConnection
+ */
+public class Protocol {
+
+	public static final int VERSION = 1;
+	public static final String HANDSHAKE = "protocol";
+	public static final String BINARY = "binary";
+	public static final String MULTIPLEX = "multiplex";
+	public static final int MULTIPLEXED_VERSION = 2;
+	public static final int NO_ID = -1;
+	public static final int MAX_FRAME = 64 * 1024 * 1024;
+
+	// opcode 0 is reserved, NAMED is used for commands without an opcode.
+	// New commands are appended, the opcodes of the others must not change.
+	public static final byte NAMED = 127;
+	private static final String[] COMMANDS = { null, "login", "guest", "register_user", "get_wines", "search",
+			"add_to_cart", "remove_from_cart", "display_cart", "new_order", "get_orders_user", "ping",
+			"get_wines_page", "get_wines_since", "cart_batch", "subscribe_catalog", "get_orders_page", "get_order_lines",
+			"bootstrap_user", "browse_facets" };
+	// commands that don't change the data of the server, safe to send twice
+	private static final String[] READ_ONLY = { "ping", "login", "guest", "get_wines", "get_wines_page",
+			"get_wines_since", "search", "display_cart", "get_orders_user", "get_orders_page", "get_order_lines",
+			"bootstrap_user", "browse_facets" };
+
+	/**
+	 * Gets the opcode of {@code command}.
+	 * 
+	 * @param command the name of the command. [String]
+	 * @return the opcode, {@code NAMED} if the command has no opcode. [byte]
+	 */
+	public static byte opcode(String command) {
+		for (int i = 1; i < COMMANDS.length; i++) {
+			if (COMMANDS[i].equals(command)) {
+				return (byte) i;
+			}
+		}
+		return NAMED;
+	}
+
+	/**
+	 * Checks if a command only reads the data of the server, so that it can be
+	 * sent again when the connection drops before its response: the server may
+	 * have already executed it, and a command like {@code new_order} or
+	 * {@code add_to_cart} would be executed twice.
+	 * 
+	 * @param command the name of the command. [String]
+	 * @return true if the command can be sent again, else false. [boolean]
+	 */
+	public static boolean isReadOnly(String command) {
+		for (String readOnly : READ_ONLY) {
+			if (readOnly.equals(command)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the name of the command identified by {@code opcode}.
+	 * 
+	 * @param opcode the opcode. [byte]
+	 * @return the name of the command, {@code null} if the opcode is unknown.
+	 *         [String]
+	 */
+	public static String command(byte opcode) {
+		return opcode > 0 && opcode < COMMANDS.length ? COMMANDS[opcode] : null;
+	}
+
+	/**
+	 * Writes a request frame.
+	 * 
+	 * @param out      the stream of the connection. [DataOutputStream]
+	 * @param codec    the codec of the connection. [WireCodec]
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeRequest(DataOutputStream out, WireCodec codec, String[] toBeSent) throws IOException {
+		writeRequest(out, codec, NO_ID, toBeSent);
+	}
+
+	/**
+	 * Writes a request frame of a multiplexed connection.
+	 * 
+	 * @param out      the stream of the connection. [DataOutputStream]
+	 * @param codec    the codec of the connection. [WireCodec]
+	 * @param id       the correlation id, {@code NO_ID} for a plain frame. [int]
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeRequest(DataOutputStream out, WireCodec codec, int id, String[] toBeSent)
+			throws IOException {
+		writeFrame(out, encodeRequest(codec, toBeSent), id, codec);
+	}
+
+	/**
+	 * Encodes the arguments of a request in {@code codec}, to be written by
+	 * {@code writeFrame}.
+	 * 
+	 * @param codec    the codec of the connection. [WireCodec]
+	 * @param toBeSent the command and its arguments. [String[]]
+	 * @return the opcode of the command. [byte]
+	 */
+	public static byte encodeRequest(WireCodec codec, String[] toBeSent) {
+		byte opcode = opcode(toBeSent[0]);
+		codec.reset();
+		// named commands keep their name as first argument
+		int first = opcode == NAMED ? 0 : 1;
+		codec.writeInt(toBeSent.length - first);
+		for (int i = first; i < toBeSent.length; i++) {
+			codec.writeString(toBeSent[i]);
+		}
+		return opcode;
+	}
+
+	/**
+	 * Gets the number of bytes {@code writeFrame} writes for the content of
+	 * {@code codec}, the length included.
+	 * 
+	 * @param id    the correlation id, {@code NO_ID} for a plain frame. [int]
+	 * @param codec the codec containing the payload. [WireCodec]
+	 * @return the size of the frame. [int]
+	 */
+	public static int frameSize(int id, WireCodec codec) {
+		return 4 + (id == NO_ID ? 2 : 6) + codec.size();
+	}
+
+	/**
+	 * Reads a request frame.
+	 * 
+	 * @param in    the stream of the connection. [DataInputStream]
+	 * @param codec the codec of the connection. [WireCodec]
+	 * @return the command and its arguments. [String[]]
+	 * @throws IOException if an I/O error occurs or the frame is not valid.
+	 */
+	public static String[] readRequest(DataInputStream in, WireCodec codec) throws IOException {
+		byte[] frame = readFrame(in);
+		return decodeRequest(codec, frame, 0, frame.length);
+	}
+
+	/**
+	 * Decodes the content of a request frame, the length excluded. The
+	 * correlation id of a multiplexed frame is read by {@code readId}.
+	 * 
+	 * @param codec  the codec of the connection. [WireCodec]
+	 * @param frame  the content of the frame. [byte[]]
+	 * @param offset the position of the version byte. [int]
+	 * @param length the length of the content. [int]
+	 * @return the command and its arguments. [String[]]
+	 * @throws IOException if the frame is not valid.
+	 */
+	public static String[] decodeRequest(WireCodec codec, byte[] frame, int offset, int length) throws IOException {
+		int header = headerLength(frame[offset], length);
+		byte opcode = frame[offset + 1];
+		String command = command(opcode);
+		if (command == null && opcode != NAMED) {
+			throw new IOException("Unknown opcode " + opcode);
+		}
+		return codec.decodeRequest(command, frame, offset + header, length - header);
+	}
+
+	/**
+	 * Reads the correlation id of a frame, the length excluded.
+	 * 
+	 * @param frame  the content of the frame. [byte[]]
+	 * @param offset the position of the version byte. [int]
+	 * @return the correlation id, {@code NO_ID} if the frame is not multiplexed.
+	 *         [int]
+	 */
+	public static int readId(byte[] frame, int offset) {
+		if (frame[offset] != MULTIPLEXED_VERSION) {
+			return NO_ID;
+		}
+		return ((frame[offset + 2] & 0xff) << 24) | ((frame[offset + 3] & 0xff) << 16)
+				| ((frame[offset + 4] & 0xff) << 8) | (frame[offset + 5] & 0xff);
+	}
+
+	/**
+	 * Writes a response frame.
+	 * 
+	 * @param out      the stream of the connection. [DataOutputStream]
+	 * @param codec    the codec of the connection. [WireCodec]
+	 * @param response the response. [Object]
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeResponse(DataOutputStream out, WireCodec codec, Object response) throws IOException {
+		writeResponse(out, codec, NO_ID, response);
+	}
+
+	/**
+	 * Writes a response frame of a multiplexed connection.
+	 * 
+	 * @param out      the stream of the connection. [DataOutputStream]
+	 * @param codec    the codec of the connection. [WireCodec]
+	 * @param id       the correlation id of the request, {@code NO_ID} for a
+	 *                 plain frame. [int]
+	 * @param response the response. [Object]
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeResponse(DataOutputStream out, WireCodec codec, int id, Object response)
+			throws IOException {
+		codec.reset();
+		byte tag = codec.encode(response);
+		writeFrame(out, tag, id, codec);
+	}
+
+	/**
+	 * Reads a response frame.
+	 * 
+	 * @param in    the stream of the connection. [DataInputStream]
+	 * @param codec the codec of the connection. [WireCodec]
+	 * @return the response. [Object]
+	 * @throws IOException            if an I/O error occurs or the frame is not
+	 *                                valid.
+	 * @throws ClassNotFoundException if a serialized object has an unknown class.
+	 */
+	public static Object readResponse(DataInputStream in, WireCodec codec) throws IOException, ClassNotFoundException {
+		byte[] frame = readFrame(in);
+		int header = headerLength(frame[0], frame.length);
+		return codec.decode(frame[1], frame, header, frame.length - header);
+	}
+
+	/**
+	 * Reads a response frame of a multiplexed connection.
+	 * 
+	 * @param in    the stream of the connection. [DataInputStream]
+	 * @param codec the codec of the connection. [WireCodec]
+	 * @return the response with the correlation id of its request. [Reply]
+	 * @throws IOException            if an I/O error occurs or the frame is not
+	 *                                valid.
+	 * @throws ClassNotFoundException if a serialized object has an unknown class.
+	 */
+	public static Reply readReply(DataInputStream in, WireCodec codec) throws IOException, ClassNotFoundException {
+		byte[] frame = readFrame(in);
+		int header = headerLength(frame[0], frame.length);
+		return new Reply(readId(frame, 0), codec.decode(frame[1], frame, header, frame.length - header));
+	}
+
+	/**
+	 * Writes the frame header followed by the content of {@code codec}.
+	 * 
+	 * @param out    the stream of the connection. [DataOutputStream]
+	 * @param opcode the opcode or type tag. [byte]
+	 * @param id     the correlation id, {@code NO_ID} for a plain frame. [int]
+	 * @param codec  the codec containing the payload. [WireCodec]
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeFrame(DataOutputStream out, byte opcode, int id, WireCodec codec) throws IOException {
+		if (id == NO_ID) {
+			out.writeInt(codec.size() + 2);
+			out.writeByte(VERSION);
+			out.writeByte(opcode);
+		} else {
+			out.writeInt(codec.size() + 6);
+			out.writeByte(MULTIPLEXED_VERSION);
+			out.writeByte(opcode);
+			out.writeInt(id);
+		}
+		out.write(codec.buffer(), 0, codec.size());
+		out.flush();
+	}
+
+	/**
+	 * Reads a whole frame, the length excluded.
+	 * 
+	 * @param in the stream of the connection. [DataInputStream]
+	 * @return the content of the frame. [byte[]]
+	 * @throws IOException if an I/O error occurs or the length is not valid.
+	 */
+	private static byte[] readFrame(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 2 || length > MAX_FRAME) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return frame;
+	}
+
+	/**
+	 * Checks the version byte of a frame and gets the length of its header.
+	 * 
+	 * @param version the version byte. [byte]
+	 * @param length  the length of the frame, the length field excluded. [int]
+	 * @return the length of the header, from the version byte to the payload.
+	 *         [int]
+	 * @throws IOException if the version is not supported or the frame is too
+	 *                     short.
+	 */
+	private static int headerLength(byte version, int length) throws IOException {
+		int header;
+		if (version == VERSION) {
+			header = 2;
+		} else if (version == MULTIPLEXED_VERSION) {
+			header = 6;
+		} else {
+			throw new IOException("Unsupported protocol version " + version);
+		}
+		if (length < header) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		return header;
+	}
+
+	/**
+	 * Response read from a multiplexed connection.
+	 */
+	public static class Reply {
+
+		private final int id;
+		private final Object response;
+
+		/**
+		 * {@code Reply} class constructor.
+		 * 
+		 * @param id       the correlation id of the request. [int]
+		 * @param response the response. [Object]
+		 */
+		Reply(int id, Object response) {
+			this.id = id;
+			this.response = response;
+		}
+
+		/**
+		 * Gets the correlation id of the request.
+		 * 
+		 * @return the correlation id, {@code NO_ID} if the frame is not
+		 *         multiplexed. [int]
+		 */
+		public int getId() {
+			return this.id;
+		}
+
+		/**
+		 * Gets the response.
+		 * 
+		 * @return the response. [Object]
+		 */
+		public Object getResponse() {
+			return this.response;
+		}
+	}
+}
@@ -0,0 +1,583 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reference server, speaking the same protocol of the controllers on
+ * {@code Client.PORT}. A single thread owns a non-blocking NIO selector: it
+ * accepts the connections, reads the requests and writes the responses, while
+ * the requests are answered by a pool of worker threads. The requests of the
+ * same connection are answered in order, one at a time, unless the connection
+ * is multiplexed: then up to {@code MAX_IN_FLIGHT} of its requests are
+ * answered in parallel, and each response is written as soon as it is ready,
+ * tagged with the correlation id of its request.
+ * 
+ * Every connection starts with the old protocol, a Java serialization stream
+ * for each message; after the {@code protocol} handshake it switches to the
+ * binary frames of {@code Protocol}.
+ * 
+ * A connection that sends {@code subscribe_catalog} with the version of the
+ * catalog it knows becomes a push channel: it receives at once the changes
+ * since that version, then a {@code CatalogDelta} every time the catalog
+ * changes, and no further request is read. The changes are coalesced per
+ * connection: a delta is sent at most every {@code PUSH_DELAY} milliseconds,
+ * and not before the previous one has been written, so a burst of restocks or
+ * a slow client costs a single delta with the last state of each wine.
+ * 
+ * Usage: {@code java Server [port] [number of wines] [worker threads]}
+ * 
+ * @see ServerStore
+ * @see Protocol
+ */
+public class Server implements Runnable {
+
+	public static final String SUBSCRIBE = "subscribe_catalog";
+	private static final int DEFAULT_WINES = 1000;
+	private static final int READ_BUFFER = 64 * 1024;
+	private static final long PUSH_DELAY = 250;
+	private static final int MAX_IN_FLIGHT = 64;
+
+	// only String[] requests are accepted from the network
+	private static final ObjectInputFilter REQUEST_FILTER = info -> {
+		Class<?> type = info.serialClass();
+		if (info.depth() > 2 || info.arrayLength() > 100_000) {
+			return ObjectInputFilter.Status.REJECTED;
+		} else if (type == null || type == String[].class || type == String.class) {
+			return ObjectInputFilter.Status.ALLOWED;
+		}
+		return ObjectInputFilter.Status.REJECTED;
+	};
+
+	private final ServerStore store;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService workers;
+	private final ThreadLocal<WireCodec> codecs = ThreadLocal.withInitial(WireCodec::new);
+	// sessions whose response is ready, written by the selector thread
+	private final ConcurrentLinkedQueue<Session> ready = new ConcurrentLinkedQueue<Session>();
+	private final Set<Session> subscribers = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService pusher;
+	private volatile boolean running = true;
+
+	/**
+	 * {@code Server} class constructor. Binds the port, the server starts
+	 * accepting connections with {@code run}.
+	 * 
+	 * @param port    the port. [int]
+	 * @param store   the data of the server. [ServerStore]
+	 * @param threads the number of worker threads. [int]
+	 * @throws IOException if the port can't be bound.
+	 */
+	public Server(int port, ServerStore store, int threads) throws IOException {
+		this.store = store;
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(port), 1024);
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "server-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "server-push");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.store.addChangeListener(this::catalogChanged);
+	}
+
+	/**
+	 * Starts the server.
+	 * 
+	 * @param args the port, the number of wines and the number of worker
+	 *             threads, all optional. [String[]]
+	 * @throws IOException if the port can't be bound.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : Client.PORT;
+		int wines = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WINES;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		Server server = new Server(port, ServerStore.withSampleData(wines), threads);
+		System.out.format("Server listening on port %d with %d wines and %d workers\n", port, wines, threads);
+		server.run();
+	}
+
+	/**
+	 * Gets the port the server is listening on, useful when it has been
+	 * created with port 0.
+	 * 
+	 * @return the local port. [int]
+	 */
+	public int getPort() {
+		return this.serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Runs the selector loop until {@code close} is called.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (this.running) {
+				this.selector.select();
+
+				Session session;
+				while ((session = this.ready.poll()) != null) {
+					answered(session);
+				}
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						} else if (key.isAcceptable()) {
+							accept();
+						} else {
+							if (key.isWritable()) {
+								write((Session) key.attachment());
+							}
+							if (key.isValid() && key.isReadable()) {
+								read((Session) key.attachment());
+							}
+						}
+					} catch (IOException e) {
+						// the client went away
+						if (key.attachment() != null) {
+							((Session) key.attachment()).close();
+						}
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// closed by another thread
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Stops the server and closes every connection.
+	 */
+	public void close() {
+		this.running = false;
+		this.selector.wakeup();
+		this.workers.shutdownNow();
+		this.pusher.shutdownNow();
+		try {
+			for (SelectionKey key : this.selector.keys()) {
+				key.channel().close();
+			}
+			this.serverChannel.close();
+			this.selector.close();
+		} catch (IOException e) {
+			// nothing to do, the server is stopping anyway
+		} catch (ClosedSelectorException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Accepts a new connection.
+	 * 
+	 * @throws IOException if the connection can't be configured.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel = this.serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Session session = new Session(channel);
+		session.key = channel.register(this.selector, SelectionKey.OP_READ, session);
+	}
+
+	/**
+	 * Reads the available bytes of a connection and dispatches the next request,
+	 * if it is complete.
+	 * 
+	 * @param session the connection. [Session]
+	 * @throws IOException if the connection is closed or the request is not
+	 *                     valid.
+	 */
+	private void read(Session session) throws IOException {
+		session.ensureRoom();
+		int count = session.channel.read(session.in);
+		if (count < 0) {
+			session.close();
+			return;
+		}
+		dispatch(session);
+	}
+
+	/**
+	 * Sends the next complete requests of a connection to the workers: one at a
+	 * time, waiting for the previous one to be answered, or up to
+	 * {@code MAX_IN_FLIGHT} at once if the connection is multiplexed.
+	 * 
+	 * @param session the connection. [Session]
+	 * @throws IOException if a request is not valid.
+	 */
+	private void dispatch(Session session) throws IOException {
+		while (!session.subscribed && session.inFlight < (session.multiplexed ? MAX_IN_FLIGHT : 1)) {
+			String[] request = session.nextRequest();
+			if (request == null) {
+				return;
+			}
+			session.inFlight++;
+			dispatch(session, request, session.lastId);
+		}
+	}
+
+	/**
+	 * Sends a request to the workers, or answers it at once if it changes the
+	 * protocol of the connection.
+	 * 
+	 * @param session the connection. [Session]
+	 * @param request the request. [String[]]
+	 * @param id      the correlation id of the request, {@code NO_ID} if the
+	 *                connection is not multiplexed. [int]
+	 */
+	private void dispatch(Session session, String[] request, int id) {
+		boolean binary = session.binary;
+		if (Protocol.HANDSHAKE.equals(request[0])) {
+			// answered with the old protocol, the next request will be binary
+			boolean accepted = request.length > 2 && Protocol.BINARY.equals(request[1])
+					&& String.valueOf(Protocol.VERSION).equals(request[2]);
+			boolean multiplexed = accepted && request.length > 3 && Protocol.MULTIPLEX.equals(request[3]);
+			session.binary = accepted;
+			session.multiplexed = multiplexed;
+			Object answer = multiplexed ? Integer.valueOf(Protocol.MULTIPLEXED_VERSION)
+					: accepted ? Integer.valueOf(Protocol.VERSION) : Boolean.FALSE;
+			respond(session, Protocol.NO_ID, answer, false);
+			return;
+		}
+
+		if (SUBSCRIBE.equals(request[0]) && !session.multiplexed) {
+			// from now on the connection only receives the changes of the catalog
+			session.subscribed = true;
+			session.pushedVersion = parseVersion(request);
+			this.subscribers.add(session);
+			this.workers.execute(() -> push(session, true));
+			return;
+		}
+
+		this.workers.execute(() -> answer(session, request, id, binary));
+	}
+
+	/**
+	 * Answers a request with the response of the store. Called by the workers.
+	 * 
+	 * @param session the connection. [Session]
+	 * @param request the request. [String[]]
+	 * @param id      the correlation id of the request, {@code NO_ID} if the
+	 *                connection is not multiplexed. [int]
+	 * @param binary  true to use the binary protocol. [boolean]
+	 */
+	private void answer(Session session, String[] request, int id, boolean binary) {
+		Object response;
+		try {
+			response = this.store.handle(request);
+		} catch (RuntimeException e) {
+			// the client is still waiting for a reply
+			e.printStackTrace();
+			response = null;
+		}
+		respond(session, id, response, binary);
+	}
+
+	/**
+	 * Reads the version of a {@code subscribe_catalog} request.
+	 * 
+	 * @param request the request. [String[]]
+	 * @return the version known by the client, 0 if missing or not valid. [int]
+	 */
+	private static int parseVersion(String[] request) {
+		try {
+			return request.length > 1 ? Integer.parseInt(request[1]) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Schedules a push to every subscribed connection. Called by the store on
+	 * every change of the catalog.
+	 */
+	private void catalogChanged() {
+		for (Session session : this.subscribers) {
+			schedulePush(session);
+		}
+	}
+
+	/**
+	 * Schedules a push to a connection, unless one is already scheduled: the
+	 * changes are coalesced until it runs.
+	 * 
+	 * @param session the subscribed connection. [Session]
+	 */
+	private void schedulePush(Session session) {
+		if (session.pushScheduled.compareAndSet(false, true)) {
+			try {
+				this.pusher.schedule(() -> push(session, false), PUSH_DELAY, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// the server is stopping
+			}
+		}
+	}
+
+	/**
+	 * Sends a subscribed connection the changes since the last version it
+	 * received. If the previous delta hasn't been written yet, the push is
+	 * postponed and the changes keep being coalesced.
+	 * 
+	 * @param session the subscribed connection. [Session]
+	 * @param always  true to send the delta even if it is empty, as the answer
+	 *                to the subscription. [boolean]
+	 */
+	private void push(Session session, boolean always) {
+		synchronized (session) {
+			session.pushScheduled.set(false);
+			if (!session.channel.isOpen()) {
+				this.subscribers.remove(session);
+				return;
+			}
+			if (!always && !session.out.isEmpty()) {
+				// slow client
+				schedulePush(session);
+				return;
+			}
+
+			CatalogDelta delta = this.store.getWinesSince(session.pushedVersion);
+			if (!always && delta.isComplete() && delta.getVersion() == session.pushedVersion) {
+				return;
+			}
+			session.pushedVersion = delta.getVersion();
+			respond(session, Protocol.NO_ID, delta, session.binary);
+		}
+	}
+
+	/**
+	 * Encodes a response and hands it to the selector thread.
+	 * 
+	 * @param session  the connection. [Session]
+	 * @param id       the correlation id of the request, {@code NO_ID} if the
+	 *                 connection is not multiplexed. [int]
+	 * @param response the response. [Object]
+	 * @param binary   true to use the binary protocol. [boolean]
+	 */
+	private void respond(Session session, int id, Object response, boolean binary) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try {
+			if (binary) {
+				Protocol.writeResponse(new DataOutputStream(bytes), this.codecs.get(), id, response);
+			} else {
+				ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(response);
+				out.flush();
+			}
+		} catch (IOException | RuntimeException e) {
+			// the connection is closed, so the client doesn't wait for the reply
+			e.printStackTrace();
+			session.failed = true;
+		}
+
+		session.out.add(ByteBuffer.wrap(bytes.toByteArray()));
+		this.ready.add(session);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Starts writing a response and dispatches the next requests. Called on the
+	 * selector thread.
+	 * 
+	 * @param session the connection. [Session]
+	 */
+	private void answered(Session session) {
+		if (!session.key.isValid()) {
+			return;
+		}
+
+		try {
+			if (session.inFlight > 0) {
+				// the pushes are not counted
+				session.inFlight--;
+			}
+			if (session.failed) {
+				session.close();
+				return;
+			}
+			write(session);
+			dispatch(session);
+		} catch (IOException e) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Writes as much as possible of the pending responses of a connection. If
+	 * the socket buffer is full, the selector waits for it to be writable.
+	 * 
+	 * @param session the connection. [Session]
+	 * @throws IOException if the connection is closed.
+	 */
+	private void write(Session session) throws IOException {
+		ByteBuffer buffer;
+		while ((buffer = session.out.peek()) != null) {
+			session.channel.write(buffer);
+			if (buffer.hasRemaining()) {
+				session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			session.out.poll();
+		}
+		session.key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * State of a connection. Apart from {@code out}, it is only used by the
+	 * selector thread.
+	 */
+	private static class Session {
+
+		private final SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+		private final ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<ByteBuffer>();
+		private final WireCodec codec = new WireCodec();
+		private boolean binary;
+		private boolean multiplexed;
+		// requests sent to the workers and not answered yet
+		private int inFlight;
+		// correlation id of the last request returned by nextRequest
+		private int lastId = Protocol.NO_ID;
+		private volatile boolean failed;
+		// push channel state, see push
+		private volatile boolean subscribed;
+		private int pushedVersion;
+		private final AtomicBoolean pushScheduled = new AtomicBoolean();
+
+		/**
+		 * {@code Session} class constructor.
+		 * 
+		 * @param channel the channel of the connection. [SocketChannel]
+		 */
+		Session(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Makes room for the next read, growing the buffer if it is full.
+		 * 
+		 * @throws IOException if the pending request is too big.
+		 */
+		void ensureRoom() throws IOException {
+			if (this.in.hasRemaining()) {
+				return;
+			}
+			if (this.in.capacity() >= Protocol.MAX_FRAME) {
+				throw new IOException("Request too big");
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(Math.min(this.in.capacity() * 2, Protocol.MAX_FRAME));
+			this.in.flip();
+			bigger.put(this.in);
+			this.in = bigger;
+		}
+
+		/**
+		 * Extracts the next complete request from the bytes read so far.
+		 * 
+		 * @return the request, {@code null} if it is not complete yet. [String[]]
+		 * @throws IOException if the request is not valid.
+		 */
+		String[] nextRequest() throws IOException {
+			byte[] data = this.in.array();
+			int available = this.in.position();
+			String[] request;
+			int consumed;
+
+			if (this.binary) {
+				if (available < 4) {
+					return null;
+				}
+				int length = ByteBuffer.wrap(data, 0, 4).getInt();
+				if (length < 2 || length > Protocol.MAX_FRAME) {
+					throw new IOException("Invalid frame length " + length);
+				}
+				if (available < 4 + length) {
+					return null;
+				}
+				request = Protocol.decodeRequest(this.codec, data, 4, length);
+				this.lastId = Protocol.readId(data, 4);
+				consumed = 4 + length;
+			} else {
+				ByteArrayInputStream bytes = new ByteArrayInputStream(data, 0, available);
+				try {
+					ObjectInputStream in = new ObjectInputStream(bytes);
+					in.setObjectInputFilter(REQUEST_FILTER);
+					request = (String[]) in.readObject();
+				} catch (EOFException e) {
+					// the stream is not complete yet
+					return null;
+				} catch (ClassNotFoundException | ClassCastException e) {
+					throw new IOException("Invalid request", e);
+				}
+				consumed = available - bytes.available();
+			}
+
+			if (request == null || request.length == 0 || request[0] == null) {
+				throw new IOException("Empty request");
+			}
+
+			// keeps the bytes of the next requests
+			this.in.flip();
+			this.in.position(consumed);
+			this.in.compact();
+			return request;
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		void close() {
+			if (this.key != null) {
+				this.key.cancel();
+			}
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				// nothing to do, the connection is discarded anyway
+			}
+		}
+	}
+}
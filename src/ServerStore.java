@@ -0,0 +1,657 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory data of the reference server: users, catalog, carts and orders.
+ * {@code handle} answers a request of the {@code String[]} protocol with the
+ * same objects the controllers expect. The methods reading or changing the
+ * users, the catalog, the carts and the orders are synchronized, so the
+ * requests coming from the worker threads of {@code Server} are applied one at
+ * a time. Searches and faceted browsing don't take the lock of the store:
+ * they are answered by {@code WineSearchIndex} and {@code FacetIndex}, whose
+ * read/write locks let them run concurrently with each other and wait only
+ * for the updates of the catalog.
+ * 
+ * The catalog has a version, incremented every time a wine is inserted,
+ * updated, restocked or sold, so that clients can ask only the changes since
+ * the version they know. Listeners are notified of every change, so that the
+ * server can push the changes to the subscribed clients.
+ * 
+ * @see Server
+ * @see WineSearchIndex
+ * @see FacetIndex
+ */
+public class ServerStore {
+
+	public static final int MAX_PAGE_SIZE = 1000;
+	private static final String[] STYLES = { "Rosso", "Bianco", "Riserva", "Classico", "Superiore", "Spumante",
+			"Passito", "Novello" };
+	private static final String[] REGIONS = { "Toscana", "Piemonte", "Veneto", "Sicilia", "Puglia", "Friuli",
+			"Umbria", "Marche", "Sardegna", "Campania" };
+	private static final String[] GRAPES = { "Sangiovese", "Nebbiolo", "Barbera", "Merlot", "Glera", "Nero d'Avola",
+			"Primitivo", "Vermentino", "Aglianico", "Trebbiano", "Corvina", "Montepulciano" };
+
+	private final HashMap<String, User> users = new HashMap<String, User>();
+	private final TreeMap<Integer, Wine> wines = new TreeMap<Integer, Wine>();
+	private final WineSearchIndex index = new WineSearchIndex();
+	private final FacetIndex facets = new FacetIndex();
+	private final HashMap<String, LinkedHashMap<Integer, Integer>> carts = new HashMap<String, LinkedHashMap<Integer, Integer>>();
+	private final HashMap<String, Integer> cartVersions = new HashMap<String, Integer>();
+	private final HashMap<String, ArrayList<Order>> orders = new HashMap<String, ArrayList<Order>>();
+	private int nextOrderId = 1;
+
+	// changes of the catalog: version -> product id, only the last change of each wine is kept
+	private int baseVersion;
+	private int version;
+	private final TreeMap<Integer, Integer> changes = new TreeMap<Integer, Integer>();
+	private final HashMap<Integer, Integer> changedAt = new HashMap<Integer, Integer>();
+	private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+	/**
+	 * {@code ServerStore} class constructor. The version of the catalog starts
+	 * from the current time, so that a client that knows the catalog of a
+	 * previous run of the server downloads it again.
+	 */
+	public ServerStore() {
+		this.baseVersion = (int) (System.currentTimeMillis() / 1000);
+		this.version = this.baseVersion;
+	}
+
+	/**
+	 * Creates a store with the users of {@code testSet.csv}, all with password
+	 * {@code pwd}, and a generated catalog.
+	 * 
+	 * @param wineCount the number of wines of the catalog. [int]
+	 * @return the store. [ServerStore]
+	 */
+	public static ServerStore withSampleData(int wineCount) {
+		ServerStore store = new ServerStore();
+		store.addUser(new User("User", "User", "user@user.com", "pwd", 1));
+		store.addUser(new User("Employee", "Employee", "employee@employee.com", "pwd", 2));
+		store.addUser(new User("Admin", "Admin", "admin@admin.com", "pwd", 3));
+		store.addUser(new User("User", "Two", "user2@user.com", "pwd", 1));
+
+		for (int i = 1; i <= wineCount; i++) {
+			String region = REGIONS[i % REGIONS.length];
+			String name = String.format("%s %s %d", STYLES[i % STYLES.length], region, i);
+			String producer = String.format("Cantina %s %d", region, i % 97);
+			String grapes = GRAPES[i % GRAPES.length] + ", " + GRAPES[(i / 3) % GRAPES.length];
+			store.addWine(new Wine(i, name, producer, 1980 + i % 42, "Notes of " + name, 10 + i % 40, grapes));
+		}
+		// the sample catalog is the starting point, not a change
+		store.forgetChanges();
+		return store;
+	}
+
+	/**
+	 * Answers a request.
+	 * 
+	 * @param request the command and its arguments. [String[]]
+	 * @return the response, {@code null} if the command is unknown or its
+	 *         arguments are not valid, whatever the exception they cause.
+	 *         [Object]
+	 */
+	public Object handle(String[] request) {
+		try {
+			switch (request[0]) {
+				case "ping":
+					return Boolean.TRUE;
+				case "login":
+					return login(request[1], request[2]);
+				case "guest":
+					return new User();
+				case "register_user":
+					return register(request[1], request[2], request[3], request[4]);
+				case "get_wines":
+					return getWines();
+				case "get_wines_page":
+					return getWinesPage(Integer.parseInt(request[1]), Integer.parseInt(request[2]));
+				case "get_wines_since":
+					return getWinesSince(Integer.parseInt(request[1]));
+				case "search":
+					return this.index.search(request[1], request.length > 2 ? request[2] : "");
+				case "add_to_cart":
+					return addToCart(request[1], Integer.parseInt(request[2]), Integer.parseInt(request[3]));
+				case "remove_from_cart":
+					return removeFromCart(request[1], Integer.parseInt(request[2]));
+				case "display_cart":
+					return displayCart(request[1]);
+				case "cart_batch":
+					return cartBatch(request);
+				case "new_order":
+					return newOrder(request[1]);
+				case "get_orders_user":
+					return getOrders(request[1]);
+				case "get_orders_page":
+					return getOrdersPage(request[1], Integer.parseInt(request[2]), Integer.parseInt(request[3]));
+				case "get_order_lines":
+					return getOrderLines(request[1], Integer.parseInt(request[2]));
+				case "bootstrap_user":
+					return bootstrap(request[1], Integer.parseInt(request[2]), Integer.parseInt(request[3]),
+							Integer.parseInt(request[4]));
+				case "browse_facets":
+					return this.facets.browse(request[1], request[2], request[3],
+							Math.min(Integer.parseInt(request[4]), MAX_PAGE_SIZE));
+				case "add_wine":
+					return addWine(new Wine(0, request[1], request[2], Integer.parseInt(request[3]), request[4],
+							Integer.parseInt(request[5]), request[6]));
+				case "restock_wine":
+					return restock(Integer.parseInt(request[1]), Integer.parseInt(request[2]));
+				default:
+					return null;
+			}
+		} catch (RuntimeException e) {
+			// missing or malformed arguments
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a user, replacing the one with the same email.
+	 * 
+	 * @param user the user. [User]
+	 */
+	public synchronized void addUser(User user) {
+		this.users.put(user.getEmail(), user);
+	}
+
+	/**
+	 * Checks the credentials of a user.
+	 * 
+	 * @param email    the email. [String]
+	 * @param password the password. [String]
+	 * @return the user, or a user with permission 0 if the credentials are not
+	 *         valid. [User]
+	 */
+	public synchronized User login(String email, String password) {
+		User user = this.users.get(email);
+		return user != null && user.getPassword().equals(password) ? user : new User();
+	}
+
+	/**
+	 * Registers a new user, with permission 1.
+	 * 
+	 * @param name     the name. [String]
+	 * @param surname  the surname. [String]
+	 * @param email    the email. [String]
+	 * @param password the password. [String]
+	 * @return the new user, or a user with permission 0 if the email is already
+	 *         registered. [User]
+	 */
+	public synchronized User register(String name, String surname, String email, String password) {
+		if (this.users.containsKey(email)) {
+			return new User();
+		}
+		User user = new User(name, surname, email, password, 1);
+		this.users.put(email, user);
+		return user;
+	}
+
+	/**
+	 * Adds a wine to the catalog. A product id lower than 1 assigns the next
+	 * free one.
+	 * 
+	 * @param wine the wine. [Wine]
+	 * @return the wine added to the catalog. [Wine]
+	 */
+	public synchronized Wine addWine(Wine wine) {
+		if (wine.getProductId() < 1) {
+			int id = this.wines.isEmpty() ? 1 : this.wines.lastKey() + 1;
+			wine = new Wine(id, wine.getName(), wine.getProducer(), wine.getYear(), wine.getNotes(),
+					wine.getQuantity(), wine.getGrapewines());
+		}
+		this.wines.put(wine.getProductId(), wine);
+		this.index.add(wine);
+		this.facets.add(wine);
+		changed(wine.getProductId());
+		return wine;
+	}
+
+	/**
+	 * Adds bottles of a wine to its stock.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the bottles to add. [int]
+	 * @return true if the wine exists and the quantity is positive. [Boolean]
+	 */
+	public synchronized Boolean restock(int productId, int quantity) {
+		Wine wine = this.wines.get(productId);
+		if (wine == null || quantity <= 0) {
+			return false;
+		}
+		setStock(wine, wine.getQuantity() + quantity);
+		return true;
+	}
+
+	/**
+	 * Gets the whole catalog.
+	 * 
+	 * @return the wines, sorted by product id. [ArrayList of Wine]
+	 */
+	public synchronized ArrayList<Wine> getWines() {
+		return new ArrayList<Wine>(this.wines.values());
+	}
+
+	/**
+	 * Gets a page of the catalog.
+	 * 
+	 * @param cursor   the product id after which the page starts. [int]
+	 * @param pageSize the number of wines, at most {@code MAX_PAGE_SIZE}. [int]
+	 * @return the page. [WinePage]
+	 */
+	public synchronized WinePage getWinesPage(int cursor, int pageSize) {
+		int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+		ArrayList<Wine> page = new ArrayList<Wine>(size);
+		for (Wine wine : this.wines.tailMap(cursor, false).values()) {
+			if (page.size() == size) {
+				break;
+			}
+			page.add(wine);
+		}
+
+		int last = page.isEmpty() ? cursor : page.get(page.size() - 1).getProductId();
+		int nextCursor = this.wines.higherKey(last) == null ? WinePage.END : last;
+		return new WinePage(page, nextCursor, this.wines.size(), this.version);
+	}
+
+	/**
+	 * Gets the wines changed after a version of the catalog.
+	 * 
+	 * @param since the version known by the client. [int]
+	 * @return the changes, not complete if the version is unknown. [CatalogDelta]
+	 */
+	public synchronized CatalogDelta getWinesSince(int since) {
+		if (since < this.baseVersion || since > this.version) {
+			return new CatalogDelta(since, this.version, new ArrayList<Wine>(), this.wines.size(), false);
+		}
+
+		TreeSet<Integer> ids = new TreeSet<Integer>(this.changes.tailMap(since, false).values());
+		ArrayList<Wine> changed = new ArrayList<Wine>(ids.size());
+		for (int id : ids) {
+			changed.add(this.wines.get(id));
+		}
+		return new CatalogDelta(since, this.version, changed, this.wines.size(), true);
+	}
+
+	/**
+	 * Adds bottles of a wine to the cart of a user.
+	 * 
+	 * @param email     the email of the user. [String]
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the bottles to add. [int]
+	 * @return true if the wine exists and the bottles in the cart are in stock.
+	 *         [Boolean]
+	 */
+	public synchronized Boolean addToCart(String email, int productId, int quantity) {
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+		if (cart == null) {
+			return false;
+		}
+
+		int result = add(cart, productId, quantity);
+		if (result == CartBatchResult.OK) {
+			this.cartVersions.merge(email, 1, Integer::sum);
+		}
+		return result == CartBatchResult.OK;
+	}
+
+	/**
+	 * Removes a wine from the cart of a user.
+	 * 
+	 * @param email     the email of the user. [String]
+	 * @param productId the product id of the wine. [int]
+	 * @return true if the wine was in the cart. [Boolean]
+	 */
+	public synchronized Boolean removeFromCart(String email, int productId) {
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+		if (cart == null || cart.remove(productId) == null) {
+			return false;
+		}
+		this.cartVersions.merge(email, 1, Integer::sum);
+		return true;
+	}
+
+	/**
+	 * Gets the content of the cart of a user.
+	 * 
+	 * @param email the email of the user. [String]
+	 * @return the wines in the cart, with the quantities in the cart.
+	 *         [ArrayList of Wine]
+	 */
+	public synchronized ArrayList<Wine> displayCart(String email) {
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+		return cart == null ? new ArrayList<Wine>() : toWines(cart);
+	}
+
+	/**
+	 * Applies a {@code cart_batch} request atomically: the lines are checked in
+	 * order on a copy of the cart, which replaces the cart only if every line
+	 * succeeds.
+	 * 
+	 * @param request the request, {@code { "cart_batch", email, op, productId,
+	 *                quantity, ... }}. [String[]]
+	 * @return the result of the batch. [CartBatchResult]
+	 * @see CartBatcher
+	 */
+	public synchronized CartBatchResult cartBatch(String[] request) {
+		String email = request[1];
+		int lines = (request.length - 2) / 3;
+		int[] results = new int[lines];
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+
+		if (cart == null || (request.length - 2) % 3 != 0) {
+			Arrays.fill(results, CartBatchResult.INVALID);
+			return new CartBatchResult(results, false, displayCart(email), this.cartVersions.getOrDefault(email, 0));
+		}
+
+		LinkedHashMap<Integer, Integer> updated = new LinkedHashMap<Integer, Integer>(cart);
+		boolean applied = true;
+		for (int i = 0; i < lines; i++) {
+			String op = request[2 + i * 3];
+			try {
+				int productId = Integer.parseInt(request[3 + i * 3]);
+				int quantity = Integer.parseInt(request[4 + i * 3]);
+				if (CartBatcher.ADD.equals(op)) {
+					results[i] = add(updated, productId, quantity);
+				} else if (CartBatcher.REMOVE.equals(op)) {
+					results[i] = updated.remove(productId) != null ? CartBatchResult.OK : CartBatchResult.NOT_IN_CART;
+				} else if (CartBatcher.SET.equals(op)) {
+					results[i] = set(updated, productId, quantity);
+				} else {
+					results[i] = CartBatchResult.INVALID;
+				}
+			} catch (NumberFormatException e) {
+				results[i] = CartBatchResult.INVALID;
+			}
+			applied &= results[i] == CartBatchResult.OK;
+		}
+
+		if (applied) {
+			cart.clear();
+			cart.putAll(updated);
+			this.cartVersions.merge(email, 1, Integer::sum);
+		}
+		return new CartBatchResult(results, applied, toWines(cart), this.cartVersions.getOrDefault(email, 0));
+	}
+
+	/**
+	 * Turns the cart of a user into an order. The order is placed only if every
+	 * wine of the cart is in stock.
+	 * 
+	 * @param email the email of the user. [String]
+	 * @return the order, without wines if it has not been placed. [Order]
+	 */
+	public synchronized Order newOrder(String email) {
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+		if (cart == null || cart.isEmpty()) {
+			return new Order(0, false, email, new ArrayList<Wine>());
+		}
+
+		for (Map.Entry<Integer, Integer> line : cart.entrySet()) {
+			Wine wine = this.wines.get(line.getKey());
+			if (wine == null || wine.getQuantity() < line.getValue()) {
+				return new Order(0, false, email, new ArrayList<Wine>());
+			}
+		}
+
+		int[] productIds = new int[cart.size()];
+		int[] quantities = new int[cart.size()];
+		int line = 0;
+		for (Map.Entry<Integer, Integer> entry : cart.entrySet()) {
+			Wine wine = this.wines.get(entry.getKey());
+			setStock(wine, wine.getQuantity() - entry.getValue());
+			productIds[line] = entry.getKey();
+			quantities[line++] = entry.getValue();
+		}
+		cart.clear();
+		this.cartVersions.merge(email, 1, Integer::sum);
+
+		Order order = new Order(this.nextOrderId++, false, email, productIds, quantities);
+		this.orders.computeIfAbsent(email, key -> new ArrayList<Order>()).add(order);
+		return order;
+	}
+
+	/**
+	 * Gets the orders of a user.
+	 * 
+	 * @param email the email of the user. [String]
+	 * @return the orders, oldest first. [ArrayList of Order]
+	 */
+	public synchronized ArrayList<Order> getOrders(String email) {
+		return new ArrayList<Order>(this.orders.getOrDefault(email, new ArrayList<Order>()));
+	}
+
+	/**
+	 * Gets a page of the orders of a user, without their wines.
+	 * 
+	 * @param email    the email of the user. [String]
+	 * @param cursor   the id of the order after which the page starts. [int]
+	 * @param pageSize the number of orders, at most {@code MAX_PAGE_SIZE}. [int]
+	 * @return the page. [OrderPage]
+	 */
+	public synchronized OrderPage getOrdersPage(String email, int cursor, int pageSize) {
+		ArrayList<Order> orders = this.orders.getOrDefault(email, new ArrayList<Order>());
+		int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+		int from = firstAfter(orders, cursor);
+		int end = Math.min(from + size, orders.size());
+		ArrayList<Order> page = new ArrayList<Order>(end - from);
+		for (Order order : orders.subList(from, end)) {
+			page.add(new Order(order.getId(), order.getStatus(), order.getCustomer(), new ArrayList<Wine>()));
+		}
+		int nextCursor = end < orders.size() ? orders.get(end - 1).getId() : OrderPage.END;
+		return new OrderPage(page, nextCursor, orders.size());
+	}
+
+	/**
+	 * Gets everything the homepage of a user needs, in a single snapshot: the
+	 * first page of the catalog or its changes since the version known by the
+	 * client, the first page of the orders and the size of the cart.
+	 * 
+	 * @param email          the email of the user, empty for a guest. [String]
+	 * @param since          the version of the catalog cached by the client,
+	 *                       -1 if it has no cache. [int]
+	 * @param pageSize       the number of wines per page. [int]
+	 * @param ordersPageSize the number of orders per page. [int]
+	 * @return the data of the homepage. [HomepageBootstrap]
+	 * @see HomepageBootstrap
+	 */
+	public synchronized HomepageBootstrap bootstrap(String email, int since, int pageSize, int ordersPageSize) {
+		CatalogDelta changes = since >= 0 ? getWinesSince(since) : null;
+		if (changes != null && !changes.isComplete()) {
+			// unknown version, the client downloads the catalog again
+			changes = null;
+		}
+		WinePage firstPage = changes == null ? getWinesPage(WinePage.FIRST, pageSize) : null;
+
+		LinkedHashMap<Integer, Integer> cart = cart(email);
+		OrderPage orders = null;
+		int cartSize = 0;
+		if (cart != null) {
+			orders = getOrdersPage(email, OrderPage.FIRST, ordersPageSize);
+			for (int quantity : cart.values()) {
+				cartSize += quantity;
+			}
+		}
+		return new HomepageBootstrap(firstPage, changes, orders, cartSize);
+	}
+
+	/**
+	 * Gets the wines of an order of a user, with the details of the catalog.
+	 * 
+	 * @param email   the email of the user. [String]
+	 * @param orderId the id of the order. [int]
+	 * @return the wines, with the ordered quantities; empty if the order doesn't
+	 *         exist or belongs to another user. [ArrayList of Wine]
+	 */
+	public synchronized ArrayList<Wine> getOrderLines(String email, int orderId) {
+		ArrayList<Order> orders = this.orders.getOrDefault(email, new ArrayList<Order>());
+		int index = firstAfter(orders, orderId - 1);
+		if (index >= orders.size() || orders.get(index).getId() != orderId) {
+			return new ArrayList<Wine>();
+		}
+
+		Order order = orders.get(index);
+		LinkedHashMap<Integer, Integer> lines = new LinkedHashMap<Integer, Integer>();
+		for (int i = 0; i < order.getLineCount(); i++) {
+			lines.put(order.getProductId(i), order.getQuantity(i));
+		}
+		return toWines(lines);
+	}
+
+	/**
+	 * Finds the first order with an id greater than {@code cursor}.
+	 * 
+	 * @param orders the orders of a user, sorted by id. [ArrayList of Order]
+	 * @param cursor the id. [int]
+	 * @return the position of the order, {@code orders.size()} if there's none.
+	 *         [int]
+	 */
+	private static int firstAfter(ArrayList<Order> orders, int cursor) {
+		int low = 0;
+		int high = orders.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (orders.get(middle).getId() <= cursor) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the current version of the catalog.
+	 * 
+	 * @return the version of the catalog. [int]
+	 */
+	public synchronized int getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Gets the cart of a registered user, creating it on first use.
+	 * 
+	 * @param email the email of the user. [String]
+	 * @return the cart, product id -> bottles, {@code null} if the user doesn't
+	 *         exist. [LinkedHashMap]
+	 */
+	private LinkedHashMap<Integer, Integer> cart(String email) {
+		if (!this.users.containsKey(email)) {
+			return null;
+		}
+		return this.carts.computeIfAbsent(email, key -> new LinkedHashMap<Integer, Integer>());
+	}
+
+	/**
+	 * Adds bottles to a cart, if they are in stock.
+	 * 
+	 * @param cart      the cart. [LinkedHashMap]
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the bottles to add. [int]
+	 * @return the result of the line. [int]
+	 */
+	private int add(LinkedHashMap<Integer, Integer> cart, int productId, int quantity) {
+		if (quantity <= 0) {
+			return CartBatchResult.INVALID_QUANTITY;
+		}
+		return set(cart, productId, cart.getOrDefault(productId, 0) + quantity);
+	}
+
+	/**
+	 * Sets the bottles of a wine in a cart, if they are in stock. 0 removes the
+	 * wine.
+	 * 
+	 * @param cart      the cart. [LinkedHashMap]
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the bottles. [int]
+	 * @return the result of the line. [int]
+	 */
+	private int set(LinkedHashMap<Integer, Integer> cart, int productId, int quantity) {
+		Wine wine = this.wines.get(productId);
+		if (quantity < 0) {
+			return CartBatchResult.INVALID_QUANTITY;
+		} else if (wine == null || wine.getQuantity() < quantity) {
+			return CartBatchResult.NOT_AVAILABLE;
+		} else if (quantity == 0) {
+			cart.remove(productId);
+		} else {
+			cart.put(productId, quantity);
+		}
+		return CartBatchResult.OK;
+	}
+
+	/**
+	 * Converts a cart, or the lines of an order, into wines with the quantities
+	 * in the cart.
+	 * 
+	 * @param cart the cart. [Map]
+	 * @return the wines. [ArrayList of Wine]
+	 */
+	private ArrayList<Wine> toWines(Map<Integer, Integer> cart) {
+		ArrayList<Wine> result = new ArrayList<Wine>(cart.size());
+		for (Map.Entry<Integer, Integer> line : cart.entrySet()) {
+			Wine wine = this.wines.get(line.getKey());
+			result.add(new Wine(wine.getProductId(), wine.getName(), wine.getProducer(), wine.getYear(),
+					wine.getNotes(), line.getValue(), wine.getGrapewines()));
+		}
+		return result;
+	}
+
+	/**
+	 * Changes the stock of a wine.
+	 * 
+	 * @param wine     the wine. [Wine]
+	 * @param quantity the new stock. [int]
+	 */
+	private void setStock(Wine wine, int quantity) {
+		Wine restocked = this.index.restock(wine.getProductId(), quantity);
+		this.wines.put(wine.getProductId(), restocked);
+		this.facets.add(restocked);
+		changed(wine.getProductId());
+	}
+
+	/**
+	 * Records a change of the catalog.
+	 * 
+	 * @param productId the product id of the changed wine. [int]
+	 */
+	private void changed(int productId) {
+		this.version++;
+		Integer previous = this.changedAt.put(productId, this.version);
+		if (previous != null) {
+			this.changes.remove(previous);
+		}
+		this.changes.put(this.version, productId);
+		for (Runnable listener : this.listeners) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Adds a listener notified after every change of the catalog. It is called
+	 * while the store is locked, so it must return quickly and must not call
+	 * the store.
+	 * 
+	 * @param listener the listener. [Runnable]
+	 */
+	public void addChangeListener(Runnable listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Forgets the changes recorded so far: the current catalog becomes the
+	 * oldest version clients can ask the changes from.
+	 */
+	private synchronized void forgetChanges() {
+		this.changes.clear();
+		this.changedAt.clear();
+		this.baseVersion = this.version;
+	}
+}
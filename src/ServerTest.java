@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Test class. Sends malformed requests to a {@code Server} started on a free
+ * port and checks that every one of them gets a reply, with every protocol.
+ */
+public class ServerTest {
+
+	private static final int TIMEOUT = 5000;
+
+	private Server server;
+
+	/**
+	 * Starts the server with a sample catalog.
+	 * 
+	 * @throws IOException if the server can't be started.
+	 */
+	@BeforeEach
+	public void start() throws IOException {
+		this.server = new Server(0, ServerStore.withSampleData(100), 2);
+		Thread selector = new Thread(this.server, "test-server");
+		selector.setDaemon(true);
+		selector.start();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@AfterEach
+	public void stop() {
+		this.server.close();
+	}
+
+	/**
+	 * Sends requests whose arguments make the store throw, then a valid one on
+	 * the same connection.
+	 * 
+	 * @param protocol {@code legacy}, {@code binary} or {@code multiplexed}.
+	 *                 [String]
+	 * @throws Exception if a request gets no reply in time.
+	 */
+	@ParameterizedTest
+	@ValueSource(strings = { "legacy", "binary", "multiplexed" })
+	public void malformedRequests(String protocol) throws Exception {
+		ConnectionPool pool = new ConnectionPool(Client.HOST, this.server.getPort(), 1, 60_000, 15_000, 10_000);
+		pool.setBinaryProtocol(!"legacy".equals(protocol));
+		pool.setMultiplexing("multiplexed".equals(protocol));
+		Client client = new Client(pool);
+		try {
+			String[][] malformed = { { "search", "", "2015-2010" }, { "search" }, { "get_wines_page", "a", "10" },
+					{ "browse_facets", "", "year", "", "10" } };
+			for (String[] request : malformed) {
+				// without a reply the request times out
+				client.request(request, TIMEOUT);
+			}
+			String[] unknown = { "unknown_command" };
+			assertNull(client.request(unknown, TIMEOUT));
+
+			String[] ping = { "ping" };
+			assertEquals(Boolean.TRUE, client.request(ping, TIMEOUT));
+		} finally {
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timeline of the startup of the GUI. Every milestone is recorded once, as the
+ * milliseconds elapsed since the JVM started, so that the whole cold start is
+ * measured: JVM and JavaFX initialization, first frame, warm-up and first
+ * response of the server. Exported with the {@code ClientMetrics}, it allows
+ * to spot the regressions of the startup time between two builds.
+ * 
+ * @see App
+ * @see StartupWarmUp
+ * @see ClientMetrics
+ */
+public class StartupTimeline {
+
+	public static final String MAIN = "main";
+	public static final String START = "start";
+	public static final String FIRST_FRAME = "first frame";
+	public static final String INTERACTIVE = "interactive";
+	public static final String FIRST_RESPONSE = "first server response";
+
+	private static StartupTimeline shared;
+
+	private final Map<String, Long> milestones = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Gets the timeline of this JVM, creating it on first use.
+	 * 
+	 * @return the timeline. [StartupTimeline]
+	 */
+	public static synchronized StartupTimeline getShared() {
+		if (shared == null) {
+			shared = new StartupTimeline();
+		}
+		return shared;
+	}
+
+	/**
+	 * Records a milestone, unless it has already been reached.
+	 * 
+	 * @param milestone the name of the milestone. [String]
+	 */
+	public synchronized void mark(String milestone) {
+		this.milestones.putIfAbsent(milestone, ManagementFactory.getRuntimeMXBean().getUptime());
+	}
+
+	/**
+	 * Gets the time a milestone has been reached.
+	 * 
+	 * @param milestone the name of the milestone. [String]
+	 * @return the milliseconds since the JVM started, -1 if the milestone hasn't
+	 *         been reached. [long]
+	 */
+	public synchronized long getMillis(String milestone) {
+		return this.milestones.getOrDefault(milestone, -1L);
+	}
+
+	/**
+	 * Gets the milestones in the order they have been reached.
+	 * 
+	 * @return the names of the milestones. [ArrayList of String]
+	 */
+	public synchronized ArrayList<String> getMilestones() {
+		return new ArrayList<String>(this.milestones.keySet());
+	}
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import javafx.scene.image.Image;
+
+/**
+ * Warm-up of the GUI, run in background while the login page is displayed.
+ * The work the first clicks would otherwise wait for is done in parallel:
+ * reading the main pages, built on the JavaFX application thread as soon as
+ * they are read, decoding the images, loading the classes of the controllers
+ * and opening the first connection to the server, handshake included. Every task records its end in the {@code StartupTimeline}.
+ * 
+ * @see App
+ * @see StartupTimeline
+ */
+public class StartupWarmUp {
+
+	private static final String[] PAGES = { "homepage_user", "cart", "register" };
+	private static final String[] IMAGES = { "img/wine.png", "img/avatar.png", "img/back.png" };
+	private static final String[] CLASSES = { "ControllerHomepageUser", "ControllerCart", "ControllerRegister",
+			"CatalogCache", "PagedWineList", "CartBatcher", "OrderHistoryItem", "Wine", "Order", "WireCodec" };
+
+	/**
+	 * Starts the warm-up tasks in parallel.
+	 * 
+	 * @return the future completed when every task has ended, even if some of
+	 *         them failed. [CompletableFuture]
+	 */
+	public static CompletableFuture<Void> start() {
+		ExecutorService executor = AsyncClient.newTaskExecutor("startup-warm-up");
+		String[] ping = { "ping" };
+
+		CompletableFuture<?>[] tasks = {
+				track("pages built", Loader.preload(PAGES)),
+				track("images decoded", CompletableFuture.runAsync(StartupWarmUp::decodeImages, executor)),
+				track("classes loaded", CompletableFuture.runAsync(StartupWarmUp::loadClasses, executor)),
+				track("server connected", AsyncClient.getShared().request(ping)) };
+		executor.shutdown();
+		return CompletableFuture.allOf(tasks)
+				.whenComplete((result, error) -> StartupTimeline.getShared().mark("warm-up done"));
+	}
+
+	/**
+	 * Records the end of a task, successful or not, in the timeline.
+	 * 
+	 * @param milestone the milestone reached when the task succeeds. [String]
+	 * @param task      the task. [CompletableFuture]
+	 * @return the future completed when the end has been recorded, never
+	 *         exceptionally. [CompletableFuture]
+	 */
+	private static CompletableFuture<Void> track(String milestone, CompletableFuture<?> task) {
+		return task.handle((result, error) -> {
+			StartupTimeline.getShared().mark(error == null ? milestone : milestone + " (failed)");
+			return null;
+		});
+	}
+
+	/**
+	 * Decodes the images, so that their decoders are loaded before the pages
+	 * displaying them.
+	 */
+	private static void decodeImages() {
+		for (String image : IMAGES) {
+			new Image(StartupWarmUp.class.getResource(image).toExternalForm());
+		}
+	}
+
+	/**
+	 * Loads and initializes the classes used by the first pages. A class that
+	 * can't be found doesn't stop the others from loading, but fails the task.
+	 * 
+	 * @throws IllegalStateException if a class can't be found.
+	 */
+	private static void loadClasses() {
+		ClassLoader loader = StartupWarmUp.class.getClassLoader();
+		ClassNotFoundException missing = null;
+		for (String name : CLASSES) {
+			try {
+				Class.forName(name, true, loader);
+			} catch (ClassNotFoundException e) {
+				missing = e;
+			}
+		}
+		if (missing != null) {
+			throw new IllegalStateException("The classes of the first pages could not be loaded", missing);
+		}
+	}
+}
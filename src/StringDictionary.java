@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Dictionary of the values of a string column: every distinct value is kept
+ * once and identified by a code, so that a column repeating few values costs
+ * an {@code int} per row. Codes are assigned in order of first appearance and
+ * never change. Many threads can use the same dictionary.
+ * 
+ * @see CatalogStore
+ */
+public class StringDictionary {
+
+	private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+	private final ArrayList<String> values = new ArrayList<String>();
+
+	/**
+	 * Gets the code of a value, adding the value if it is new.
+	 * 
+	 * @param value the value. [String]
+	 * @return the code of the value. [int]
+	 */
+	public synchronized int encode(String value) {
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.values.size();
+			this.codes.put(value, code);
+			this.values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the value of a code.
+	 * 
+	 * @param code the code, returned by {@code encode}. [int]
+	 * @return the value. [String]
+	 */
+	public synchronized String decode(int code) {
+		return this.values.get(code);
+	}
+
+	/**
+	 * Gets the number of distinct values.
+	 * 
+	 * @return the number of values. [int]
+	 */
+	public synchronized int size() {
+		return this.values.size();
+	}
+}
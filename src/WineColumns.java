@@ -0,0 +1,151 @@
+import java.util.function.Function;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.util.Callback;
+
+/**
+ * Typed cell value factories for the columns of the tables of {@code Wine}.
+ * Unlike {@code PropertyValueFactory}, they call the getters directly instead
+ * of through reflection, and wrap the value in a read-only constant instead of
+ * a new property with its listeners: a wine displayed by a row is never
+ * changed, the row receives a new one. The years and the quantities are boxed
+ * once, so scrolling the table allocates only the constant of each cell.
+ * 
+ * @see ControllerHomepageUser
+ * @see ControllerCart
+ */
+public class WineColumns {
+
+	// boxes of the small numbers, shared by all the cells
+	private static final Integer[] NUMBERS = new Integer[4096];
+
+	static {
+		for (int i = 0; i < NUMBERS.length; i++) {
+			NUMBERS[i] = i;
+		}
+	}
+
+	/**
+	 * Cell value factory of the name.
+	 */
+	public static final Callback<CellDataFeatures<Wine, String>, ObservableValue<String>> NAME = text(Wine::getName);
+
+	/**
+	 * Cell value factory of the producer.
+	 */
+	public static final Callback<CellDataFeatures<Wine, String>, ObservableValue<String>> PRODUCER = text(
+			Wine::getProducer);
+
+	/**
+	 * Cell value factory of the grapes.
+	 */
+	public static final Callback<CellDataFeatures<Wine, String>, ObservableValue<String>> GRAPES = text(
+			Wine::getGrapewines);
+
+	/**
+	 * Cell value factory of the notes.
+	 */
+	public static final Callback<CellDataFeatures<Wine, String>, ObservableValue<String>> NOTES = text(Wine::getNotes);
+
+	/**
+	 * Cell value factory of the year.
+	 */
+	public static final Callback<CellDataFeatures<Wine, Integer>, ObservableValue<Integer>> YEAR = cell -> cell
+			.getValue() != null ? new Constant<Integer>(box(cell.getValue().getYear())) : null;
+
+	/**
+	 * Cell value factory of the quantity.
+	 */
+	public static final Callback<CellDataFeatures<Wine, Integer>, ObservableValue<Integer>> QUANTITY = cell -> cell
+			.getValue() != null ? new Constant<Integer>(box(cell.getValue().getQuantity())) : null;
+
+	/**
+	 * Creates the cell value factory of a text column.
+	 * 
+	 * @param getter the getter of the value. [Function of Wine and String]
+	 * @return the cell value factory. [Callback]
+	 */
+	private static Callback<CellDataFeatures<Wine, String>, ObservableValue<String>> text(
+			Function<Wine, String> getter) {
+		return cell -> cell.getValue() != null ? new Constant<String>(getter.apply(cell.getValue())) : null;
+	}
+
+	/**
+	 * Boxes a number, without allocating if it is small.
+	 * 
+	 * @param value the number. [int]
+	 * @return the boxed number. [Integer]
+	 */
+	private static Integer box(int value) {
+		return value >= 0 && value < NUMBERS.length ? NUMBERS[value] : Integer.valueOf(value);
+	}
+
+	/**
+	 * Read-only value that never changes, so its listeners are never called
+	 * and don't need to be kept.
+	 * 
+	 * @param <T> the type of the value.
+	 */
+	private static class Constant<T> implements ObservableValue<T> {
+
+		private final T value;
+
+		/**
+		 * {@code Constant} class constructor.
+		 * 
+		 * @param value the value. [T]
+		 */
+		Constant(T value) {
+			this.value = value;
+		}
+
+		/**
+		 * Gets the value.
+		 * 
+		 * @return the value. [T]
+		 */
+		@Override
+		public T getValue() {
+			return this.value;
+		}
+
+		/**
+		 * Does nothing, the value never changes.
+		 * 
+		 * @param listener the listener. [ChangeListener]
+		 */
+		@Override
+		public void addListener(ChangeListener<? super T> listener) {
+		}
+
+		/**
+		 * Does nothing, the value never changes.
+		 * 
+		 * @param listener the listener. [ChangeListener]
+		 */
+		@Override
+		public void removeListener(ChangeListener<? super T> listener) {
+		}
+
+		/**
+		 * Does nothing, the value never changes.
+		 * 
+		 * @param listener the listener. [InvalidationListener]
+		 */
+		@Override
+		public void addListener(InvalidationListener listener) {
+		}
+
+		/**
+		 * Does nothing, the value never changes.
+		 * 
+		 * @param listener the listener. [InvalidationListener]
+		 */
+		@Override
+		public void removeListener(InvalidationListener listener) {
+		}
+	}
+}
@@ -0,0 +1,86 @@
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Abstraction of a page of the catalog, returned by the {@code get_wines_page}
+ * command. The wines are sorted by product id: the cursor of the next page is
+ * the product id of the last wine of this page, so pages stay consistent even
+ * if wines are added while the user is scrolling.
+ * 
+ * @see Wine
+ * @see PagedWineList
+ */
+public class WinePage implements Serializable {
+
+	private static final long serialVersionUID = 4518893126709151286L;
+
+	/**
+	 * Cursor of the first page of the catalog.
+	 */
+	public static final int FIRST = -1;
+
+	/**
+	 * Cursor returned after the last page of the catalog.
+	 */
+	public static final int END = Integer.MAX_VALUE;
+
+	private ArrayList<Wine> wines;
+	private int nextCursor;
+	private int total;
+	private int version;
+
+	/**
+	 * {@code WinePage} class constructor.
+	 * 
+	 * @param wines      the wines of the page. [ArrayList of Wine]
+	 * @param nextCursor the cursor of the next page, {@code END} if this is the
+	 *                   last one. [int]
+	 * @param total      the number of wines in the whole catalog. [int]
+	 * @param version    the version of the catalog the page has been read from.
+	 *                   [int]
+	 */
+	public WinePage(final ArrayList<Wine> wines, final int nextCursor, final int total, final int version) {
+		this.wines = wines;
+		this.nextCursor = nextCursor;
+		this.total = total;
+		this.version = version;
+	}
+
+	/**
+	 * Gets the wines of the page.
+	 * 
+	 * @return the wines of the page. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> getWines() {
+		return this.wines;
+	}
+
+	/**
+	 * Gets the cursor of the next page.
+	 * 
+	 * @return the cursor of the next page, {@code END} if this is the last one.
+	 *         [int]
+	 */
+	public int getNextCursor() {
+		return this.nextCursor;
+	}
+
+	/**
+	 * Gets the number of wines in the whole catalog.
+	 * 
+	 * @return the size of the catalog. [int]
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Gets the version of the catalog the page has been read from.
+	 * 
+	 * @return the version of the catalog. [int]
+	 * @see CatalogDelta
+	 */
+	public int getVersion() {
+		return this.version;
+	}
+}
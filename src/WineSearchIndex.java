@@ -0,0 +1,438 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search engine over the catalog, used to answer the {@code search}
+ * command without scanning every wine. It keeps two indexes:
+ * <ul>
+ * <li>a sorted-term index: every word of the name, the producer and the grapes
+ * of a wine, lowercase, mapped to the sorted product ids of the wines that
+ * contain it. A prefix lookup is a range of the sorted terms.</li>
+ * <li>a year index: every year mapped to the sorted product ids of the wines of
+ * that year, so that exact years and ranges are a range of the sorted
+ * years.</li>
+ * </ul>
+ * The indexes are updated incrementally when a wine is added or restocked.
+ * Searches can run concurrently, updates are exclusive.
+ * 
+ * @see Wine
+ */
+public class WineSearchIndex {
+
+	/**
+	 * Year bound meaning "no bound".
+	 */
+	public static final int ANY_YEAR = Integer.MIN_VALUE;
+
+	private final HashMap<Integer, Wine> wines = new HashMap<Integer, Wine>();
+	private final TreeMap<String, IdList> terms = new TreeMap<String, IdList>();
+	private final TreeMap<Integer, IdList> years = new TreeMap<Integer, IdList>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Adds a wine to the index, or replaces the wine with the same product id.
+	 * 
+	 * @param wine the wine to add. [Wine]
+	 */
+	public void add(Wine wine) {
+		this.lock.writeLock().lock();
+		try {
+			Wine old = this.wines.put(wine.getProductId(), wine);
+			if (old != null && sameText(old, wine) && old.getYear() == wine.getYear()) {
+				// restock, the indexed fields didn't change
+				return;
+			}
+			if (old != null) {
+				unindex(old);
+			}
+			index(wine);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Changes the quantity of a wine. Only the stored wine is replaced, the
+	 * indexes don't depend on the quantity.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @param quantity  the new quantity. [int]
+	 * @return the restocked wine, {@code null} if it is not in the index. [Wine]
+	 */
+	public Wine restock(int productId, int quantity) {
+		this.lock.writeLock().lock();
+		try {
+			Wine old = this.wines.get(productId);
+			if (old == null) {
+				return null;
+			}
+			Wine wine = new Wine(productId, old.getName(), old.getProducer(), old.getYear(), old.getNotes(), quantity,
+					old.getGrapewines());
+			this.wines.put(productId, wine);
+			return wine;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets a wine.
+	 * 
+	 * @param productId the product id of the wine. [int]
+	 * @return the wine, {@code null} if it is not in the index. [Wine]
+	 */
+	public Wine get(int productId) {
+		this.lock.readLock().lock();
+		try {
+			return this.wines.get(productId);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of wines in the index.
+	 * 
+	 * @return the number of wines. [int]
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.wines.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Answers the arguments of the {@code search} command: the text typed in the
+	 * name box and the year box. The year can be empty, a single year or a range
+	 * such as {@code 2010-2015}.
+	 * 
+	 * @param text the text to search, can be empty. [String]
+	 * @param year the year or range of years, can be empty. [String]
+	 * @return the matching wines, sorted by product id, empty if the year is not
+	 *         valid. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> search(String text, String year) {
+		int[] years = parseYears(year);
+		return years != null ? search(text, years[0], years[1]) : new ArrayList<Wine>();
+	}
+
+	/**
+	 * Parses the text of the year box: empty, a single year or a range such as
+	 * {@code 2010-2015}, where either bound can be missing. A reversed range
+	 * such as {@code 2015-2010} is read as {@code 2010-2015}.
+	 * 
+	 * @param year the year or range of years, can be empty. [String]
+	 * @return the first and the last year, {@code ANY_YEAR} for a missing
+	 *         bound; {@code null} if the year is not valid. [int[]]
+	 */
+	static int[] parseYears(String year) {
+		int from = ANY_YEAR;
+		int to = ANY_YEAR;
+
+		if (year != null && !year.isBlank()) {
+			String[] bounds = year.trim().split("\\s*-\\s*", 2);
+			try {
+				from = bounds[0].isEmpty() ? ANY_YEAR : Integer.parseInt(bounds[0]);
+				to = bounds.length == 1 ? from : (bounds[1].isEmpty() ? ANY_YEAR : Integer.parseInt(bounds[1]));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		if (from != ANY_YEAR && to != ANY_YEAR && from > to) {
+			return new int[] { to, from };
+		}
+		return new int[] { from, to };
+	}
+
+	/**
+	 * Finds the wines whose name, producer or grapes contain a word starting
+	 * with each word of {@code text}, made in the specified years.
+	 * 
+	 * @param text     the words to search, {@code null} or empty to match every
+	 *                 wine. [String]
+	 * @param fromYear the first year, {@code ANY_YEAR} for no lower bound. [int]
+	 * @param toYear   the last year, {@code ANY_YEAR} for no upper bound. [int]
+	 * @return the matching wines, sorted by product id, empty if the first year
+	 *         is after the last one. [ArrayList of Wine]
+	 */
+	public ArrayList<Wine> search(String text, int fromYear, int toYear) {
+		String[] prefixes = tokenize(text);
+		boolean anyYear = fromYear == ANY_YEAR && toYear == ANY_YEAR;
+		int low = fromYear == ANY_YEAR ? Integer.MIN_VALUE : fromYear;
+		int high = toYear == ANY_YEAR ? Integer.MAX_VALUE : toYear;
+		if (low > high) {
+			// the same answer with or without words
+			return new ArrayList<Wine>();
+		}
+
+		this.lock.readLock().lock();
+		try {
+			int[] candidates;
+			int first = -1;
+
+			if (prefixes.length > 0) {
+				// starts from the most selective word, the others are checked on the wines
+				int smallest = Integer.MAX_VALUE;
+				for (int i = 0; i < prefixes.length; i++) {
+					int count = count(prefixes[i]);
+					if (count < smallest) {
+						smallest = count;
+						first = i;
+					}
+				}
+				candidates = collect(this.terms.subMap(prefixes[first], true, prefixes[first] + Character.MAX_VALUE,
+						false));
+			} else if (!anyYear) {
+				candidates = collect(this.years.subMap(low, true, high, true));
+			} else {
+				candidates = collect(this.years);
+			}
+
+			ArrayList<Wine> result = new ArrayList<Wine>();
+			for (int id : candidates) {
+				Wine wine = this.wines.get(id);
+				if ((anyYear || (wine.getYear() >= low && wine.getYear() <= high))
+						&& matchesAll(wine, prefixes, first)) {
+					result.add(wine);
+				}
+			}
+			return result;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks if a wine matches the text of a search, with the same rules of
+	 * {@code search}.
+	 * 
+	 * @param wine the wine. [Wine]
+	 * @param text the words to search. [String]
+	 * @return true if the wine matches. [Boolean]
+	 */
+	public static boolean matches(Wine wine, String text) {
+		String[] prefixes = tokenize(text);
+		return prefixes.length == 0 || matchesAll(wine, prefixes, -1);
+	}
+
+	/**
+	 * Adds a wine to the term and year indexes.
+	 * 
+	 * @param wine the wine to index. [Wine]
+	 */
+	private void index(Wine wine) {
+		int id = wine.getProductId();
+		for (String term : terms(wine)) {
+			this.terms.computeIfAbsent(term, key -> new IdList()).add(id);
+		}
+		this.years.computeIfAbsent(wine.getYear(), key -> new IdList()).add(id);
+	}
+
+	/**
+	 * Removes a wine from the term and year indexes.
+	 * 
+	 * @param wine the wine to remove. [Wine]
+	 */
+	private void unindex(Wine wine) {
+		int id = wine.getProductId();
+		for (String term : terms(wine)) {
+			IdList ids = this.terms.get(term);
+			if (ids != null && ids.remove(id) && ids.size == 0) {
+				this.terms.remove(term);
+			}
+		}
+		IdList ids = this.years.get(wine.getYear());
+		if (ids != null && ids.remove(id) && ids.size == 0) {
+			this.years.remove(wine.getYear());
+		}
+	}
+
+	/**
+	 * Counts the product ids indexed under the terms starting with
+	 * {@code prefix}, without merging them.
+	 * 
+	 * @param prefix the prefix. [String]
+	 * @return the number of product ids, duplicates included. [int]
+	 */
+	private int count(String prefix) {
+		int count = 0;
+		for (IdList ids : this.terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+			count += ids.size;
+		}
+		return count;
+	}
+
+	/**
+	 * Merges the product ids of a range of an index.
+	 * 
+	 * @param range the range of the index. [NavigableMap]
+	 * @return the distinct product ids, sorted. [int[]]
+	 */
+	private static int[] collect(NavigableMap<?, IdList> range) {
+		if (range.size() == 1) {
+			IdList ids = range.firstEntry().getValue();
+			return Arrays.copyOf(ids.ids, ids.size);
+		}
+
+		int total = 0;
+		for (IdList ids : range.values()) {
+			total += ids.size;
+		}
+		int[] merged = new int[total];
+		int position = 0;
+		for (Map.Entry<?, IdList> entry : range.entrySet()) {
+			IdList ids = entry.getValue();
+			System.arraycopy(ids.ids, 0, merged, position, ids.size);
+			position += ids.size;
+		}
+		Arrays.sort(merged);
+
+		// removes the wines found under more than one term
+		int distinct = 0;
+		for (int i = 0; i < merged.length; i++) {
+			if (i == 0 || merged[i] != merged[i - 1]) {
+				merged[distinct++] = merged[i];
+			}
+		}
+		return Arrays.copyOf(merged, distinct);
+	}
+
+	/**
+	 * Checks if a wine contains a word starting with each prefix, except the one
+	 * already used to find it.
+	 * 
+	 * @param wine     the wine. [Wine]
+	 * @param prefixes the prefixes. [String[]]
+	 * @param skip     the prefix to skip, -1 for none. [int]
+	 * @return true if every prefix matches. [Boolean]
+	 */
+	private static boolean matchesAll(Wine wine, String[] prefixes, int skip) {
+		if (prefixes.length == 0 || (prefixes.length == 1 && skip == 0)) {
+			return true;
+		}
+
+		String[] words = terms(wine);
+		for (int i = 0; i < prefixes.length; i++) {
+			if (i == skip) {
+				continue;
+			}
+			boolean found = false;
+			for (String word : words) {
+				if (word.startsWith(prefixes[i])) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if two wines have the same name, producer and grapes.
+	 * 
+	 * @param a the first wine. [Wine]
+	 * @param b the second wine. [Wine]
+	 * @return true if the indexed text is the same. [Boolean]
+	 */
+	private static boolean sameText(Wine a, Wine b) {
+		return String.valueOf(a.getName()).equals(String.valueOf(b.getName()))
+				&& String.valueOf(a.getProducer()).equals(String.valueOf(b.getProducer()))
+				&& String.valueOf(a.getGrapewines()).equals(String.valueOf(b.getGrapewines()));
+	}
+
+	/**
+	 * Gets the words of the name, the producer and the grapes of a wine.
+	 * 
+	 * @param wine the wine. [Wine]
+	 * @return the lowercase words, possibly repeated. [String[]]
+	 */
+	static String[] terms(Wine wine) {
+		String text = wine.getName() + " " + wine.getProducer() + " " + wine.getGrapewines();
+		return tokenize(text);
+	}
+
+	/**
+	 * Splits a text into lowercase words made of letters and digits.
+	 * 
+	 * @param text the text, can be {@code null}. [String]
+	 * @return the words. [String[]]
+	 */
+	static String[] tokenize(String text) {
+		if (text == null) {
+			return new String[0];
+		}
+
+		ArrayList<String> words = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words.toArray(new String[0]);
+	}
+
+	/**
+	 * Sorted list of distinct product ids, stored without boxing.
+	 */
+	private static class IdList {
+
+		private int[] ids = new int[2];
+		private int size;
+
+		/**
+		 * Adds a product id, keeping the list sorted. Product ids usually grow,
+		 * so the new one is usually appended.
+		 * 
+		 * @param id the product id. [int]
+		 */
+		void add(int id) {
+			int position = this.size > 0 && this.ids[this.size - 1] < id ? this.size
+					: Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (position >= 0 && position < this.size) {
+				// already present
+				return;
+			}
+			position = position < 0 ? -position - 1 : position;
+
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			System.arraycopy(this.ids, position, this.ids, position + 1, this.size - position);
+			this.ids[position] = id;
+			this.size++;
+		}
+
+		/**
+		 * Removes a product id.
+		 * 
+		 * @param id the product id. [int]
+		 * @return true if the id was in the list. [Boolean]
+		 */
+		boolean remove(int id) {
+			int position = Arrays.binarySearch(this.ids, 0, this.size, id);
+			if (position < 0) {
+				return false;
+			}
+			System.arraycopy(this.ids, position + 1, this.ids, position, this.size - position - 1);
+			this.size--;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class. Checks the prefix and year lookups of {@code WineSearchIndex}
+ * and the updates of its indexes when wines are added, replaced and
+ * restocked.
+ */
+public class WineSearchIndexTest {
+
+	private WineSearchIndex index;
+
+	/**
+	 * Indexes a small catalog.
+	 */
+	@BeforeEach
+	public void setUp() {
+		this.index = new WineSearchIndex();
+		this.index.add(new Wine(1, "Barolo Riserva", "Cantina Rossi", 2010, "", 5, "Nebbiolo"));
+		this.index.add(new Wine(2, "Barbera d'Asti", "Cantina Bianchi", 2012, "", 3, "Barbera"));
+		this.index.add(new Wine(3, "Chianti Classico", "Fattoria Verdi", 2015, "", 7, "Sangiovese, Merlot"));
+		this.index.add(new Wine(4, "Amarone", "Cantina Rossi", 2012, "", 1, "Corvina"));
+	}
+
+	/**
+	 * Words match the beginning of the words of the name, the producer and the
+	 * grapes, ignoring the case; every word must match.
+	 */
+	@Test
+	public void prefixes() {
+		assertArrayEquals(new int[] { 1, 2 }, ids(this.index.search("bar", "")));
+		assertArrayEquals(new int[] { 1, 4 }, ids(this.index.search("ROSSI", "")));
+		assertArrayEquals(new int[] { 4 }, ids(this.index.search("rossi amar", "")));
+		assertArrayEquals(new int[] { 3 }, ids(this.index.search("merl", "")));
+		assertArrayEquals(new int[] {}, ids(this.index.search("arolo", "")));
+		assertArrayEquals(new int[] { 1, 2, 3, 4 }, ids(this.index.search("", "")));
+	}
+
+	/**
+	 * Single years, ranges, open bounds and reversed ranges, with and without
+	 * words.
+	 */
+	@Test
+	public void years() {
+		assertArrayEquals(new int[] { 2, 4 }, ids(this.index.search("", "2012")));
+		assertArrayEquals(new int[] { 1, 2, 4 }, ids(this.index.search("", "2010-2012")));
+		assertArrayEquals(new int[] { 1, 2, 4 }, ids(this.index.search("", "-2012")));
+		assertArrayEquals(new int[] { 2, 3, 4 }, ids(this.index.search("", "2012-")));
+		assertArrayEquals(new int[] { 2, 3, 4 }, ids(this.index.search("", "2015-2011")));
+		assertArrayEquals(new int[] { 1, 4 }, ids(this.index.search("rossi", "2012-2010 ")));
+		assertArrayEquals(new int[] {}, ids(this.index.search("", "twenty")));
+		assertArrayEquals(new int[] {}, ids(this.index.search("", 2015, 2010)));
+	}
+
+	/**
+	 * The year box is parsed the same way whatever the order of the bounds.
+	 */
+	@Test
+	public void parseYears() {
+		assertArrayEquals(new int[] { 2010, 2015 }, WineSearchIndex.parseYears("2015-2010"));
+		assertArrayEquals(new int[] { 2010, 2015 }, WineSearchIndex.parseYears(" 2010 - 2015 "));
+		assertArrayEquals(new int[] { 2011, 2011 }, WineSearchIndex.parseYears("2011"));
+		assertArrayEquals(new int[] { WineSearchIndex.ANY_YEAR, 2011 }, WineSearchIndex.parseYears("-2011"));
+		assertArrayEquals(new int[] { WineSearchIndex.ANY_YEAR, WineSearchIndex.ANY_YEAR },
+				WineSearchIndex.parseYears(""));
+		assertNull(WineSearchIndex.parseYears("2010-x"));
+	}
+
+	/**
+	 * Replacing a wine removes its old words and year from the indexes.
+	 */
+	@Test
+	public void replace() {
+		this.index.add(new Wine(1, "Barbaresco", "Cantina Neri", 2016, "", 5, "Nebbiolo"));
+
+		assertEquals(4, this.index.size());
+		assertArrayEquals(new int[] {}, ids(this.index.search("barolo", "")));
+		assertArrayEquals(new int[] { 4 }, ids(this.index.search("rossi", "")));
+		assertArrayEquals(new int[] { 1 }, ids(this.index.search("neri", "")));
+		assertArrayEquals(new int[] {}, ids(this.index.search("", "2010")));
+		assertArrayEquals(new int[] { 1 }, ids(this.index.search("", "2016")));
+		assertArrayEquals(new int[] { 1, 2 }, ids(this.index.search("barb", "")));
+	}
+
+	/**
+	 * A restock changes the quantity only, the wine is still found.
+	 */
+	@Test
+	public void restock() {
+		Wine restocked = this.index.restock(3, 20);
+
+		assertEquals(20, restocked.getQuantity());
+		assertEquals(20, this.index.get(3).getQuantity());
+		ArrayList<Wine> found = this.index.search("chianti", "2015");
+		assertEquals(1, found.size());
+		assertEquals(20, found.get(0).getQuantity());
+		assertNull(this.index.restock(99, 1));
+		assertTrue(this.index.search("", "").stream().noneMatch(wine -> wine.getProductId() == 99));
+	}
+
+	/**
+	 * Gets the product ids of the wines found.
+	 * 
+	 * @param wines the wines. [ArrayList of Wine]
+	 * @return the product ids, in the order of the wines. [int[]]
+	 */
+	private static int[] ids(ArrayList<Wine> wines) {
+		return wines.stream().mapToInt(Wine::getProductId).toArray();
+	}
+}
@@ -0,0 +1,761 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the objects exchanged with the server. Integers
+ * are written as variable length zig-zag numbers and strings as their UTF-8
+ * bytes prefixed by the length, so a {@code Wine} usually takes a few tens of
+ * bytes instead of the hundreds needed by Java serialization. A string that
+ * appears more than once in the same message, like the producer or the grapes
+ * of many wines, is written once and then referenced by its index. Objects
+ * without a dedicated encoding are still sent, as {@code SERIALIZED}.
+ * 
+ * A {@code WireCodec} is not thread safe: the same instance is reused to encode
+ * every message of a connection.
+ * 
+ * @see Protocol
+ */
+public class WireCodec {
+
+	public static final byte NULL = 0;
+	public static final byte BOOLEAN = 1;
+	public static final byte INTEGER = 2;
+	public static final byte STRING = 3;
+	public static final byte USER = 4;
+	public static final byte WINE = 5;
+	public static final byte WINE_LIST = 6;
+	public static final byte ORDER = 7;
+	public static final byte ORDER_LIST = 8;
+	public static final byte WINE_PAGE = 9;
+	public static final byte CATALOG_DELTA = 10;
+	public static final byte CART_BATCH_RESULT = 11;
+	public static final byte ORDER_PAGE = 12;
+	public static final byte HOMEPAGE_BOOTSTRAP = 13;
+	public static final byte FACET_RESULT = 14;
+	public static final byte SERIALIZED = 127;
+
+	private byte[] buffer;
+	private int position;
+	private final HashMap<String, Integer> written = new HashMap<String, Integer>();
+
+	// reading cursor, only used by the decoding methods
+	private byte[] input;
+	private int offset;
+	private int limit;
+	private final ArrayList<String> read = new ArrayList<String>();
+
+	/**
+	 * {@code WireCodec} class constructor.
+	 */
+	public WireCodec() {
+		this.buffer = new byte[256];
+	}
+
+	/**
+	 * Clears the encoded data, the internal buffer is kept for the next message.
+	 */
+	public void reset() {
+		this.position = 0;
+		this.written.clear();
+	}
+
+	/**
+	 * Gets the internal buffer, valid from 0 to {@code size()}.
+	 * 
+	 * @return the encoded data. [byte[]]
+	 */
+	public byte[] buffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Gets the number of encoded bytes.
+	 * 
+	 * @return the number of encoded bytes. [int]
+	 */
+	public int size() {
+		return this.position;
+	}
+
+	/**
+	 * Encodes {@code value}, choosing the most compact encoding available.
+	 * 
+	 * @param value the object to encode. [Object]
+	 * @return the type tag that has to be sent along with the data. [byte]
+	 * @throws IOException if the object can't be serialized.
+	 */
+	public byte encode(Object value) throws IOException {
+		if (value == null) {
+			return NULL;
+		} else if (value instanceof Boolean) {
+			writeByte(((Boolean) value) ? 1 : 0);
+			return BOOLEAN;
+		} else if (value instanceof Integer) {
+			writeInt((Integer) value);
+			return INTEGER;
+		} else if (value instanceof String) {
+			writeString((String) value);
+			return STRING;
+		} else if (value instanceof User) {
+			writeUser((User) value);
+			return USER;
+		} else if (value instanceof Wine) {
+			writeWine((Wine) value);
+			return WINE;
+		} else if (value instanceof Order) {
+			writeOrder((Order) value);
+			return ORDER;
+		} else if (value instanceof WinePage) {
+			WinePage page = (WinePage) value;
+			writeInt(page.getNextCursor());
+			writeInt(page.getTotal());
+			writeInt(page.getVersion());
+			writeWines(page.getWines());
+			return WINE_PAGE;
+		} else if (value instanceof CatalogDelta) {
+			CatalogDelta delta = (CatalogDelta) value;
+			writeInt(delta.getFromVersion());
+			writeInt(delta.getVersion());
+			writeInt(delta.getTotal());
+			writeByte(delta.isComplete() ? 1 : 0);
+			writeWines(delta.getWines());
+			return CATALOG_DELTA;
+		} else if (value instanceof CartBatchResult) {
+			CartBatchResult result = (CartBatchResult) value;
+			writeLength(result.getResults().length);
+			for (int lineResult : result.getResults()) {
+				writeInt(lineResult);
+			}
+			writeByte(result.isApplied() ? 1 : 0);
+			writeInt(result.getVersion());
+			writeWines(result.getCart());
+			return CART_BATCH_RESULT;
+		} else if (value instanceof OrderPage) {
+			OrderPage page = (OrderPage) value;
+			writeInt(page.getNextCursor());
+			writeInt(page.getTotal());
+			writeLength(page.getOrders().size());
+			for (Order order : page.getOrders()) {
+				writeOrder(order);
+			}
+			return ORDER_PAGE;
+		} else if (value instanceof HomepageBootstrap) {
+			HomepageBootstrap bootstrap = (HomepageBootstrap) value;
+			writeInt(bootstrap.getCartSize());
+			writeNested(bootstrap.getFirstPage());
+			writeNested(bootstrap.getChanges());
+			writeNested(bootstrap.getOrders());
+			return HOMEPAGE_BOOTSTRAP;
+		} else if (value instanceof FacetResult) {
+			FacetResult result = (FacetResult) value;
+			writeInt(result.getTotal());
+			writeWines(result.getWines());
+			writeCounts(result.getProducers());
+			writeLength(result.getYears().size());
+			for (Map.Entry<Integer, Integer> year : result.getYears().entrySet()) {
+				writeInt(year.getKey());
+				writeInt(year.getValue());
+			}
+			writeCounts(result.getGrapes());
+			return FACET_RESULT;
+		} else if (value instanceof ArrayList<?> && isListOf((ArrayList<?>) value, Wine.class)) {
+			writeWines((ArrayList<?>) value);
+			return WINE_LIST;
+		} else if (value instanceof ArrayList<?> && isListOf((ArrayList<?>) value, Order.class)) {
+			ArrayList<?> orders = (ArrayList<?>) value;
+			writeInt(orders.size());
+			for (Object order : orders) {
+				writeOrder((Order) order);
+			}
+			return ORDER_LIST;
+		}
+
+		// no compact encoding available
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		writeBytes(bytes.toByteArray(), 0, bytes.size());
+		return SERIALIZED;
+	}
+
+	/**
+	 * Decodes an object encoded by {@code encode}.
+	 * 
+	 * @param tag    the type tag returned by {@code encode}. [byte]
+	 * @param data   the encoded data. [byte[]]
+	 * @param offset the position of the first byte. [int]
+	 * @param length the number of bytes. [int]
+	 * @return the decoded object. [Object]
+	 * @throws IOException            if the data is not valid.
+	 * @throws ClassNotFoundException if a serialized object has an unknown class.
+	 */
+	public Object decode(byte tag, byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+		this.input = data;
+		this.offset = offset;
+		this.limit = offset + length;
+		this.read.clear();
+
+		try {
+			return readValue(tag);
+		} finally {
+			this.input = null;
+		}
+	}
+
+	/**
+	 * Writes an object nested in another one, preceded by its type tag.
+	 * 
+	 * @param value the object to write, possibly {@code null}. [Object]
+	 * @throws IOException if the object can't be serialized.
+	 */
+	private void writeNested(Object value) throws IOException {
+		int tagPosition = this.position;
+		writeByte(NULL);
+		byte tag = encode(value);
+		this.buffer[tagPosition] = tag;
+	}
+
+	/**
+	 * Reads an object written by {@code writeNested}.
+	 * 
+	 * @param <T>  the expected type of the object.
+	 * @param type the expected type of the object. [Class]
+	 * @return the object, possibly {@code null}. [T]
+	 * @throws IOException            if the data is not valid or the object has
+	 *                                another type.
+	 * @throws ClassNotFoundException if a serialized object has an unknown class.
+	 */
+	private <T> T readNested(Class<T> type) throws IOException, ClassNotFoundException {
+		byte tag = (byte) readByte();
+		if (tag == HOMEPAGE_BOOTSTRAP) {
+			// a corrupt message could nest it until the stack overflows
+			throw new IOException("Unexpected nested type tag " + tag);
+		}
+		Object value = readValue(tag);
+		if (value != null && !type.isInstance(value)) {
+			throw new IOException("Unexpected nested " + value.getClass().getName());
+		}
+		return type.cast(value);
+	}
+
+	/**
+	 * Reads an object from the reading cursor.
+	 * 
+	 * @param tag the type tag returned by {@code encode}. [byte]
+	 * @return the decoded object. [Object]
+	 * @throws IOException            if the data is not valid.
+	 * @throws ClassNotFoundException if a serialized object has an unknown class.
+	 */
+	private Object readValue(byte tag) throws IOException, ClassNotFoundException {
+		switch (tag) {
+			case NULL:
+				return null;
+			case BOOLEAN:
+				return readByte() != 0;
+			case INTEGER:
+				return readInt();
+			case STRING:
+				return readString();
+			case USER:
+				return readUser();
+			case WINE:
+				return readWine();
+			case WINE_LIST:
+				return readWines();
+			case ORDER:
+				return readOrder();
+			case ORDER_LIST:
+				int size = checkCount(readInt(), "orders");
+				ArrayList<Order> orders = new ArrayList<Order>(size);
+				for (int i = 0; i < size; i++) {
+					orders.add(readOrder());
+				}
+				return orders;
+			case WINE_PAGE:
+				int nextCursor = readInt();
+				int total = readInt();
+				int version = readInt();
+				return new WinePage(readWines(), nextCursor, total, version);
+			case CATALOG_DELTA:
+				int fromVersion = readInt();
+				int toVersion = readInt();
+				int deltaTotal = readInt();
+				boolean complete = readByte() != 0;
+				return new CatalogDelta(fromVersion, toVersion, readWines(), deltaTotal, complete);
+			case CART_BATCH_RESULT:
+				int lines = checkCount(readLength(), "lines");
+				int[] results = new int[lines];
+				for (int i = 0; i < lines; i++) {
+					results[i] = readInt();
+				}
+				boolean applied = readByte() != 0;
+				int cartVersion = readInt();
+				return new CartBatchResult(results, applied, readWines(), cartVersion);
+			case ORDER_PAGE:
+				int nextOrderCursor = readInt();
+				int orderTotal = readInt();
+				int count = checkCount(readLength(), "orders");
+				ArrayList<Order> page = new ArrayList<Order>(count);
+				for (int i = 0; i < count; i++) {
+					page.add(readOrder());
+				}
+				return new OrderPage(page, nextOrderCursor, orderTotal);
+			case HOMEPAGE_BOOTSTRAP:
+				int cartSize = readInt();
+				WinePage firstPage = readNested(WinePage.class);
+				CatalogDelta changes = readNested(CatalogDelta.class);
+				return new HomepageBootstrap(firstPage, changes, readNested(OrderPage.class), cartSize);
+			case FACET_RESULT:
+				int matching = readInt();
+				ArrayList<Wine> wines = readWines();
+				LinkedHashMap<String, Integer> producers = readCounts();
+				int yearCount = checkCount(readLength(), "years");
+				LinkedHashMap<Integer, Integer> years = new LinkedHashMap<Integer, Integer>();
+				for (int i = 0; i < yearCount; i++) {
+					int year = readInt();
+					years.put(year, readInt());
+				}
+				return new FacetResult(wines, matching, producers, years, readCounts());
+			case SERIALIZED:
+				int serializedLength = checkCount(readLength(), "serialized bytes");
+				ObjectInputStream in = new ObjectInputStream(
+						new ByteArrayInputStream(this.input, this.offset, serializedLength));
+				this.offset += serializedLength;
+				return in.readObject();
+			default:
+				throw new IOException("Unknown type tag " + tag);
+		}
+	}
+
+	/**
+	 * Decodes the arguments of a request written by
+	 * {@code Protocol.writeRequest}.
+	 * 
+	 * @param command the name of the command, {@code null} if it has been sent as
+	 *                first argument. [String]
+	 * @param data    the encoded data. [byte[]]
+	 * @param offset  the position of the first byte. [int]
+	 * @param length  the number of bytes. [int]
+	 * @return the command and its arguments. [String[]]
+	 * @throws IOException if the data is not valid.
+	 */
+	public String[] decodeRequest(String command, byte[] data, int offset, int length) throws IOException {
+		this.input = data;
+		this.offset = offset;
+		this.limit = offset + length;
+		this.read.clear();
+
+		try {
+			int first = command == null ? 0 : 1;
+			int count = readInt();
+			if (count < 0 || count > length) {
+				throw new IOException("Invalid number of arguments " + count);
+			}
+			String[] request = new String[count + first];
+			if (command != null) {
+				request[0] = command;
+			}
+			for (int i = 0; i < count; i++) {
+				request[i + first] = readString();
+			}
+			return request;
+		} finally {
+			this.input = null;
+		}
+	}
+
+	/**
+	 * Checks if every element of {@code list} is an instance of {@code type}. An
+	 * empty list matches any type.
+	 * 
+	 * @param list the list to check. [ArrayList]
+	 * @param type the expected type. [Class]
+	 * @return true if all the elements have the expected type. [Boolean]
+	 */
+	private static boolean isListOf(ArrayList<?> list, Class<?> type) {
+		for (Object element : list) {
+			if (!type.isInstance(element)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a {@code User}.
+	 * 
+	 * @param user the user to write. [User]
+	 */
+	public void writeUser(User user) {
+		writeString(user.getName());
+		writeString(user.getSurname());
+		writeString(user.getEmail());
+		writeString(user.getPassword());
+		writeInt(user.getPermission());
+	}
+
+	/**
+	 * Reads a {@code User} written by {@code writeUser}.
+	 * 
+	 * @return the user. [User]
+	 * @throws IOException if the data is not valid.
+	 */
+	public User readUser() throws IOException {
+		return new User(readString(), readString(), readString(), readString(), readInt());
+	}
+
+	/**
+	 * Writes a {@code Wine}.
+	 * 
+	 * @param wine the wine to write. [Wine]
+	 */
+	public void writeWine(Wine wine) {
+		writeInt(wine.getProductId());
+		writeString(wine.getName());
+		writeString(wine.getProducer());
+		writeInt(wine.getYear());
+		writeString(wine.getNotes());
+		writeInt(wine.getQuantity());
+		writeString(wine.getGrapewines());
+	}
+
+	/**
+	 * Reads a {@code Wine} written by {@code writeWine}.
+	 * 
+	 * @return the wine. [Wine]
+	 * @throws IOException if the data is not valid.
+	 */
+	public Wine readWine() throws IOException {
+		int id = readInt();
+		String name = readString();
+		String producer = readString();
+		int year = readInt();
+		String notes = readString();
+		int quantity = readInt();
+		String grapes = readString();
+		return new Wine(id, name, producer, year, notes, quantity, grapes);
+	}
+
+	/**
+	 * Writes a list of {@code Wine}, prefixed by its size.
+	 * 
+	 * @param wines the wines to write. [ArrayList of Wine]
+	 */
+	public void writeWines(ArrayList<?> wines) {
+		writeInt(wines.size());
+		for (Object wine : wines) {
+			writeWine((Wine) wine);
+		}
+	}
+
+	/**
+	 * Reads a list of {@code Wine} written by {@code writeWines}.
+	 * 
+	 * @return the wines. [ArrayList of Wine]
+	 * @throws IOException if the data is not valid.
+	 */
+	public ArrayList<Wine> readWines() throws IOException {
+		int size = checkCount(readInt(), "wines");
+		ArrayList<Wine> wines = new ArrayList<Wine>(size);
+		for (int i = 0; i < size; i++) {
+			wines.add(readWine());
+		}
+		return wines;
+	}
+
+	/**
+	 * Writes the counts of a facet, as pairs of value and count prefixed by
+	 * their number.
+	 * 
+	 * @param counts the counts to write. [Map of String and Integer]
+	 */
+	public void writeCounts(Map<String, Integer> counts) {
+		writeLength(counts.size());
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			writeString(count.getKey());
+			writeInt(count.getValue());
+		}
+	}
+
+	/**
+	 * Reads the counts of a facet written by {@code writeCounts}.
+	 * 
+	 * @return the counts, in the order they were written. [LinkedHashMap of
+	 *         String and Integer]
+	 * @throws IOException if the data is not valid.
+	 */
+	public LinkedHashMap<String, Integer> readCounts() throws IOException {
+		int size = checkCount(readLength(), "counts");
+		LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			String value = readString();
+			counts.put(value, readInt());
+		}
+		return counts;
+	}
+
+	/**
+	 * Writes an {@code Order} and its lines, as pairs of product id and
+	 * quantity.
+	 * 
+	 * @param order the order to write. [Order]
+	 */
+	public void writeOrder(Order order) {
+		writeInt(order.getId());
+		Boolean status = order.getStatus();
+		writeByte(status == null ? 2 : (status ? 1 : 0));
+		writeString(order.getCustomer());
+		writeLength(order.getLineCount());
+		for (int i = 0; i < order.getLineCount(); i++) {
+			writeInt(order.getProductId(i));
+			writeInt(order.getQuantity(i));
+		}
+	}
+
+	/**
+	 * Reads an {@code Order} written by {@code writeOrder}.
+	 * 
+	 * @return the order. [Order]
+	 * @throws IOException if the data is not valid.
+	 */
+	public Order readOrder() throws IOException {
+		int id = readInt();
+		int status = readByte();
+		String customer = readString();
+		int count = checkCount(readLength(), "order lines");
+		int[] productIds = new int[count];
+		int[] quantities = new int[count];
+		for (int i = 0; i < count; i++) {
+			productIds[i] = readInt();
+			quantities[i] = readInt();
+		}
+		return new Order(id, status == 2 ? null : status == 1, customer, productIds, quantities);
+	}
+
+	/**
+	 * Writes a single byte.
+	 * 
+	 * @param value the byte to write. [int]
+	 */
+	public void writeByte(int value) {
+		ensureCapacity(1);
+		this.buffer[this.position++] = (byte) value;
+	}
+
+	/**
+	 * Reads a single byte.
+	 * 
+	 * @return the byte, from 0 to 255. [int]
+	 * @throws IOException if the message is over.
+	 */
+	public int readByte() throws IOException {
+		if (this.offset >= this.limit) {
+			throw new IOException("Truncated message");
+		}
+		return this.input[this.offset++] & 0xFF;
+	}
+
+	/**
+	 * Writes {@code value} as a zig-zag variable length integer: small values,
+	 * negative ones included, take a single byte.
+	 * 
+	 * @param value the value to write. [int]
+	 */
+	public void writeInt(int value) {
+		ensureCapacity(5);
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte) ((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		this.buffer[this.position++] = (byte) zigzag;
+	}
+
+	/**
+	 * Reads an integer written by {@code writeInt}.
+	 * 
+	 * @return the integer. [int]
+	 * @throws IOException if the data is not valid.
+	 */
+	public int readInt() throws IOException {
+		int zigzag = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			zigzag |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+		throw new IOException("Malformed integer");
+	}
+
+	/**
+	 * Writes a non negative integer as a variable length number.
+	 * 
+	 * @param value the value to write. [int]
+	 */
+	public void writeLength(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			this.buffer[this.position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.buffer[this.position++] = (byte) value;
+	}
+
+	/**
+	 * Reads an integer written by {@code writeLength}.
+	 * 
+	 * @return the integer. [int]
+	 * @throws IOException if the data is not valid.
+	 */
+	public int readLength() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					// only the lengths written by writeLength are valid
+					throw new IOException("Malformed length");
+				}
+				return value;
+			}
+		}
+		throw new IOException("Malformed length");
+	}
+
+	/**
+	 * Checks a number of elements, or of bytes, read from the message before
+	 * allocating room for them: every element takes at least one byte, so there
+	 * can't be more of them than the bytes left.
+	 * 
+	 * @param count the number read. [int]
+	 * @param what  what is counted, for the error message. [String]
+	 * @return {@code count}. [int]
+	 * @throws IOException if {@code count} is negative or greater than the bytes
+	 *                     left in the message.
+	 */
+	private int checkCount(int count, String what) throws IOException {
+		if (count < 0 || count > this.limit - this.offset) {
+			throw new IOException("Invalid number of " + what + " " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Writes {@code value}. The header is 0 for {@code null}, the length shifted
+	 * left by one with the lowest bit set for a new string followed by its UTF-8
+	 * bytes, or the index of a string already written in this message shifted
+	 * left by one, plus 2. ASCII strings are copied without any allocation.
+	 * 
+	 * @param value the value to write. [String]
+	 */
+	public void writeString(String value) {
+		if (value == null) {
+			writeLength(0);
+			return;
+		}
+
+		Integer index = this.written.get(value);
+		if (index != null) {
+			writeLength((index << 1) + 2);
+			return;
+		}
+		this.written.put(value, this.written.size());
+
+		int length = value.length();
+		boolean ascii = true;
+		for (int i = 0; i < length && ascii; i++) {
+			ascii = value.charAt(i) < 0x80;
+		}
+
+		if (ascii) {
+			writeLength((length << 1) | 1);
+			ensureCapacity(length);
+			for (int i = 0; i < length; i++) {
+				this.buffer[this.position++] = (byte) value.charAt(i);
+			}
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeLength((bytes.length << 1) | 1);
+			writeRaw(bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Reads a string written by {@code writeString}.
+	 * 
+	 * @return the string, possibly {@code null}. [String]
+	 * @throws IOException if the data is not valid.
+	 */
+	public String readString() throws IOException {
+		int header = readLength();
+		if (header == 0) {
+			return null;
+		}
+
+		if ((header & 1) == 0) {
+			int index = (header - 2) >>> 1;
+			if (index >= this.read.size()) {
+				throw new IOException("Invalid string reference " + index);
+			}
+			return this.read.get(index);
+		}
+
+		int length = header >>> 1;
+		if (length > this.limit - this.offset) {
+			throw new IOException("Truncated message");
+		}
+		String value = new String(this.input, this.offset, length, StandardCharsets.UTF_8);
+		this.offset += length;
+		this.read.add(value);
+		return value;
+	}
+
+	/**
+	 * Writes a block of bytes, prefixed by its length.
+	 * 
+	 * @param bytes  the bytes to write. [byte[]]
+	 * @param offset the position of the first byte. [int]
+	 * @param length the number of bytes. [int]
+	 */
+	public void writeBytes(byte[] bytes, int offset, int length) {
+		writeLength(length);
+		writeRaw(bytes, offset, length);
+	}
+
+	/**
+	 * Writes a block of bytes as it is.
+	 * 
+	 * @param bytes  the bytes to write. [byte[]]
+	 * @param offset the position of the first byte. [int]
+	 * @param length the number of bytes. [int]
+	 */
+	private void writeRaw(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, this.buffer, this.position, length);
+		this.position += length;
+	}
+
+	/**
+	 * Grows the buffer so that {@code more} bytes can be written.
+	 * 
+	 * @param more the number of bytes that are going to be written. [int]
+	 */
+	private void ensureCapacity(int more) {
+		if (this.position + more > this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.position + more));
+		}
+	}
+}
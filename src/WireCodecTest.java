@@ -0,0 +1,213 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class. Encodes and decodes every type of {@code WireCodec}, then checks
+ * that corrupt frames are rejected with an {@code IOException} instead of
+ * allocating the lengths they claim.
+ */
+public class WireCodecTest {
+
+	/**
+	 * Wines, orders and the types holding them are decoded as they were written.
+	 * 
+	 * @throws Exception if a valid frame can't be decoded.
+	 */
+	@Test
+	public void roundTrip() throws Exception {
+		assertNull(roundTrip(null));
+		assertEquals(Boolean.TRUE, roundTrip(true));
+		assertEquals(-42, roundTrip(-42));
+		assertEquals("Barolo \u00e8", roundTrip("Barolo \u00e8"));
+
+		User user = (User) roundTrip(new User("Mario", "Rossi", "mario@rossi.it", "pass", 1));
+		assertEquals("mario@rossi.it", user.getEmail());
+		assertEquals(1, user.getPermission());
+
+		@SuppressWarnings("unchecked")
+		ArrayList<Wine> wines = (ArrayList<Wine>) roundTrip(wines());
+		assertWines(wines(), wines);
+
+		Order order = (Order) roundTrip(new Order(7, null, "mario@rossi.it", new int[] { 1, 2 }, new int[] { 3, 4 }));
+		assertEquals(7, order.getId());
+		assertNull(order.getStatus());
+		assertEquals(2, order.getLineCount());
+		assertEquals(2, order.getProductId(1));
+		assertEquals(4, order.getQuantity(1));
+
+		WinePage page = (WinePage) roundTrip(new WinePage(wines(), 2, 10, 5));
+		assertEquals(2, page.getNextCursor());
+		assertEquals(10, page.getTotal());
+		assertEquals(5, page.getVersion());
+		assertWines(wines(), page.getWines());
+
+		CartBatchResult result = (CartBatchResult) roundTrip(
+				new CartBatchResult(new int[] { 0, -1 }, true, wines(), 3));
+		assertArrayEquals(new int[] { 0, -1 }, result.getResults());
+		assertTrue(result.isApplied());
+		assertEquals(3, result.getVersion());
+		assertWines(wines(), result.getCart());
+
+		ArrayList<Order> orders = new ArrayList<Order>();
+		orders.add(order);
+		HomepageBootstrap bootstrap = (HomepageBootstrap) roundTrip(new HomepageBootstrap(null,
+				new CatalogDelta(4, 5, wines(), 10, false), new OrderPage(orders, -1, 1), 6));
+		assertNull(bootstrap.getFirstPage());
+		assertEquals(5, bootstrap.getChanges().getVersion());
+		assertWines(wines(), bootstrap.getChanges().getWines());
+		assertEquals(1, bootstrap.getOrders().getOrders().size());
+		assertEquals(6, bootstrap.getCartSize());
+
+		LinkedHashMap<String, Integer> producers = new LinkedHashMap<String, Integer>();
+		producers.put("Cantina Rossi", 2);
+		LinkedHashMap<Integer, Integer> years = new LinkedHashMap<Integer, Integer>();
+		years.put(2010, 1);
+		years.put(2012, 1);
+		FacetResult facets = (FacetResult) roundTrip(
+				new FacetResult(wines(), 2, producers, years, new LinkedHashMap<String, Integer>()));
+		assertEquals(2, facets.getTotal());
+		assertEquals(producers, facets.getProducers());
+		assertEquals(years, facets.getYears());
+		assertTrue(facets.getGrapes().isEmpty());
+
+		int[] serialized = (int[]) roundTrip(new int[] { 1, 2, 3 });
+		assertArrayEquals(new int[] { 1, 2, 3 }, serialized);
+	}
+
+	/**
+	 * Counts and lengths that are negative or greater than the bytes left are
+	 * rejected.
+	 */
+	@Test
+	public void corruptLengths() {
+		WireCodec codec = new WireCodec();
+
+		// a list of a million wines in a few bytes
+		codec.writeInt(1_000_000);
+		assertCorrupt(WireCodec.WINE_LIST, codec);
+		codec.writeInt(-3);
+		assertCorrupt(WireCodec.WINE_LIST, codec);
+		codec.writeInt(-3);
+		assertCorrupt(WireCodec.ORDER_LIST, codec);
+		codec.writeInt(1_000_000);
+		assertCorrupt(WireCodec.ORDER_LIST, codec);
+
+		// lengths that don't fit in a positive int
+		codec.writeLength(-5);
+		assertCorrupt(WireCodec.CART_BATCH_RESULT, codec);
+		codec.writeInt(1);
+		codec.writeByte(1);
+		codec.writeString("mario@rossi.it");
+		codec.writeLength(-5);
+		assertCorrupt(WireCodec.ORDER, codec);
+		codec.writeLength(-5);
+		assertCorrupt(WireCodec.STRING, codec);
+
+		codec.writeLength(1_000_000);
+		codec.writeByte(0);
+		assertCorrupt(WireCodec.SERIALIZED, codec);
+		codec.writeLength(-1);
+		assertCorrupt(WireCodec.SERIALIZED, codec);
+	}
+
+	/**
+	 * Truncated frames, unknown tags and nested bootstraps are rejected.
+	 * 
+	 * @throws IOException if a valid frame can't be encoded.
+	 */
+	@Test
+	public void corruptFrames() throws IOException {
+		WireCodec codec = new WireCodec();
+		byte tag = codec.encode(new WinePage(wines(), 2, 10, 5));
+		byte[] frame = Arrays.copyOf(codec.buffer(), codec.size());
+		for (int length = 0; length < frame.length; length++) {
+			int truncated = length;
+			assertThrows(IOException.class, () -> new WireCodec().decode(tag, frame, 0, truncated));
+		}
+
+		codec.reset();
+		assertCorrupt((byte) 99, codec);
+
+		// a bootstrap nested in itself
+		codec.writeInt(0);
+		codec.writeByte(WireCodec.HOMEPAGE_BOOTSTRAP);
+		codec.writeInt(0);
+		codec.writeByte(WireCodec.HOMEPAGE_BOOTSTRAP);
+		assertCorrupt(WireCodec.HOMEPAGE_BOOTSTRAP, codec);
+
+		// the string references an index not read yet
+		codec.writeLength(8);
+		assertCorrupt(WireCodec.STRING, codec);
+	}
+
+	/**
+	 * Encodes and decodes {@code value} with two codecs, as the server and the
+	 * client do.
+	 * 
+	 * @param value the object to encode. [Object]
+	 * @return the decoded object. [Object]
+	 * @throws Exception if the frame can't be decoded.
+	 */
+	private static Object roundTrip(Object value) throws Exception {
+		WireCodec codec = new WireCodec();
+		byte tag = codec.encode(value);
+		byte[] frame = new byte[codec.size() + 3];
+		// the frame doesn't start at the beginning of the array
+		System.arraycopy(codec.buffer(), 0, frame, 3, codec.size());
+		return new WireCodec().decode(tag, frame, 3, codec.size());
+	}
+
+	/**
+	 * Checks that the data written by {@code codec} can't be decoded, then
+	 * resets it.
+	 * 
+	 * @param tag   the type tag of the data. [byte]
+	 * @param codec the codec holding the data. [WireCodec]
+	 */
+	private static void assertCorrupt(byte tag, WireCodec codec) {
+		byte[] frame = Arrays.copyOf(codec.buffer(), codec.size());
+		codec.reset();
+		assertThrows(IOException.class, () -> new WireCodec().decode(tag, frame, 0, frame.length));
+	}
+
+	/**
+	 * Gets wines sharing their producer, so that strings are referenced.
+	 * 
+	 * @return the wines. [ArrayList of Wine]
+	 */
+	private static ArrayList<Wine> wines() {
+		ArrayList<Wine> wines = new ArrayList<Wine>();
+		wines.add(new Wine(1, "Barolo Riserva", "Cantina Rossi", 2010, "", 5, "Nebbiolo"));
+		wines.add(new Wine(2, "Amarone", "Cantina Rossi", 2012, null, 0, "Corvina"));
+		return wines;
+	}
+
+	/**
+	 * Checks that the decoded wines have the fields of the expected ones.
+	 * 
+	 * @param expected the written wines. [ArrayList of Wine]
+	 * @param actual   the decoded wines. [ArrayList of Wine]
+	 */
+	private static void assertWines(ArrayList<Wine> expected, ArrayList<Wine> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getProductId(), actual.get(i).getProductId());
+			assertEquals(expected.get(i).getName(), actual.get(i).getName());
+			assertEquals(expected.get(i).getProducer(), actual.get(i).getProducer());
+			assertEquals(expected.get(i).getYear(), actual.get(i).getYear());
+			assertEquals(expected.get(i).getNotes(), actual.get(i).getNotes());
+			assertEquals(expected.get(i).getQuantity(), actual.get(i).getQuantity());
+			assertEquals(expected.get(i).getGrapewines(), actual.get(i).getGrapewines());
+		}
+	}
+}